@@ -0,0 +1,67 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Auswertungen über <code>{@link AppointmentColumns}</code>: standardmäßig 10 Millionen Appointments von
+ * 100.000 Providern (100 je Provider über 50 Tage), etwa 40 % reserviert. Die Spalten brauchen dafür 21 Bytes
+ * je Appointment, die Auswertungen laufen im Common Pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class AppointmentColumnsBenchmark {
+
+    static final LocalDateTime START = LocalDateTime.of(2021, 12, 1, 8, 0);
+    static final int SLOTS_PER_PROVIDER = 100;
+    static final int CUSTOMERS = 100_000;
+
+    @Param({"100000"})
+    public int providers;
+
+    private AppointmentColumns columns;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int slots = providers * SLOTS_PER_PROVIDER;
+        columns = new AppointmentColumns(slots, ForkJoinPool.commonPool());
+        ProviderType[] types = ProviderType.values();
+        for (int row = 0; row < slots; row++) {
+            int provider = row / SLOTS_PER_PROVIDER;
+            int slot = row % SLOTS_PER_PROVIDER;
+            columns.put(row + 1, columns.providerIndexOf(provider + 1), (byte) types[provider % types.length].ordinal(),
+                    START.plusDays(slot / 2).plusHours(slot % 2),
+                    row % 5 < 2 ? "customer" + (row % CUSTOMERS) + "@campus02.at" : null);
+        }
+    }
+
+    @Benchmark
+    public Map<ProviderType, AppointmentColumns.Utilization> byType() {
+        return columns.utilizationByType(null, null);
+    }
+
+    @Benchmark
+    public Map<Integer, AppointmentColumns.Utilization> byProvider() {
+        return columns.utilizationByProvider(null, null);
+    }
+
+    @Benchmark
+    public SortedMap<LocalDate, AppointmentColumns.Utilization> byDay() {
+        return columns.utilizationByDay(null, null, null);
+    }
+
+    @Benchmark
+    public AppointmentColumns.Utilization range() {
+        return columns.utilization(START, LocalDateTime.of(2022, 1, 1, 0, 0));
+    }
+}
@@ -0,0 +1,104 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latenz jeder Methode von <code>{@link AppointmentRepository}</code> (durchschnittliche Zeit pro Aufruf).
+ * Schreibende Benchmarks stellen den ursprünglichen Zustand wieder her, damit der Datenbestand über die
+ * Iterationen gleich bleibt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AppointmentRepositoryBenchmark {
+
+    @Benchmark
+    public Customer readCustomer(BenchmarkData data, RepositoryPerThread state) {
+        return state.repository.read(data.randomCustomer().getEmail());
+    }
+
+    @Benchmark
+    public Provider readProvider(BenchmarkData data, RepositoryPerThread state) {
+        return state.repository.read(data.randomProvider().getId());
+    }
+
+    @Benchmark
+    public Object findCustomersBy(BenchmarkData data, RepositoryPerThread state) {
+        Customer customer = data.randomCustomer();
+        return state.repository.findCustomersBy(customer.getLastname().toUpperCase(), customer.getFirstname());
+    }
+
+    @Benchmark
+    public Object findProvidersBy(BenchmarkData data, RepositoryPerThread state) {
+        Provider provider = data.randomProvider();
+        return state.repository.findProvidersBy(provider.getType(), provider.getAddress().substring(0, 9));
+    }
+
+    @Benchmark
+    public Object findAppointmentsAt(BenchmarkData data, RepositoryPerThread state) {
+        String city = BenchmarkData.CITIES[ThreadLocalRandom.current().nextInt(BenchmarkData.CITIES.length)];
+        return state.repository.findAppointmentsAt((8000 + ThreadLocalRandom.current().nextInt(1000)) + " " + city);
+    }
+
+    @Benchmark
+    public Object findAppointments(RepositoryPerThread state) {
+        LocalDateTime from = BenchmarkData.FIRST_SLOT
+                .plusDays(ThreadLocalRandom.current().nextInt(BenchmarkData.APPOINTMENTS_PER_PROVIDER))
+                .plusMinutes(ThreadLocalRandom.current().nextInt(600));
+        return state.repository.findAppointments(from, from.plusMinutes(30));
+    }
+
+    @Benchmark
+    public Object getAppointmentsFor(BenchmarkData data, RepositoryPerThread state) {
+        return state.repository.getAppointmentsFor(data.randomCustomer());
+    }
+
+    @Benchmark
+    public Customer updateCustomer(BenchmarkData data, RepositoryPerThread state) {
+        Customer customer = state.repository.read(data.randomCustomer().getEmail());
+        customer.setFirstname(customer.getFirstname());
+        return state.repository.update(customer);
+    }
+
+    @Benchmark
+    public Provider updateProvider(BenchmarkData data, RepositoryPerThread state) {
+        Provider provider = state.repository.read(data.randomProvider().getId());
+        provider.setAddress(provider.getAddress());
+        return state.repository.update(provider);
+    }
+
+    @Benchmark
+    public boolean createAndDeleteCustomer(RepositoryPerThread state) {
+        Customer customer = new Customer("benchmark" + ThreadLocalRandom.current().nextLong() + "@campus02.at");
+        customer.setLastname("Benchmark");
+        return state.repository.create(customer) && state.repository.delete(customer);
+    }
+
+    @Benchmark
+    public boolean createAndDeleteProvider(RepositoryPerThread state) {
+        Provider provider = new Provider();
+        provider.setType(ProviderType.PHARMACY);
+        provider.setAddress("Benchmarkgasse 1, 8010 Graz");
+        Appointment appointment = new Appointment();
+        appointment.setTime(BenchmarkData.FIRST_SLOT);
+        provider.getAppointments().add(appointment);
+        return state.repository.create(provider) && state.repository.delete(provider);
+    }
+
+    @Benchmark
+    public void reserveAndCancel(BenchmarkData data, RepositoryPerThread state, Blackhole blackhole) {
+        Appointment appointment = data.randomAppointment();
+        Customer customer = data.randomCustomer();
+        boolean reserved = state.repository.reserve(appointment, customer);
+        blackhole.consume(reserved);
+        if (reserved)
+            blackhole.consume(state.repository.cancel(appointment, customer));
+    }
+}
@@ -0,0 +1,118 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Gemeinsamer Datenbestand aller Benchmarks: eine Persistence Unit auf einer Derby In-Memory Datenbank
+ * (oder ein <code>{@link AppointmentRepositoryInMemory}</code>), befüllt mit <code>providers</code> Providern,
+ * je {@value #APPOINTMENTS_PER_PROVIDER} Appointments und ebenso vielen Customern wie Providern.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkData {
+
+    static final int APPOINTMENTS_PER_PROVIDER = 10;
+    static final LocalDateTime FIRST_SLOT = LocalDateTime.of(2021, 12, 1, 8, 0);
+    // reicht für die größte Thread-Anzahl des Skalierungs-Laufs (1 bis 64 Threads)
+    static final int POOL_SIZE = 64;
+    static final int GROUP_SIZE = 64;
+    static final long GROUP_DELAY_MILLIS = 1;
+    static final String[] CITIES = {"Graz", "Leibnitz", "Wien", "Linz", "Salzburg", "Klagenfurt", "Leoben"};
+
+    @Param({"jpa", "pooled", "inMemory", "groupCommit"})
+    public String implementation;
+
+    @Param({"1000"})
+    public int providers;
+
+    EntityManagerFactory factory;
+    // nur für "pooled", "groupCommit" und "inMemory": das Repository ist thread-safe und wird von allen Threads gemeinsam verwendet
+    AppointmentRepository shared;
+
+    final List<Customer> customers = new ArrayList<>();
+    final List<Provider> providerList = new ArrayList<>();
+    final List<Appointment> appointments = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        AppointmentRepository loader;
+        if (isInMemory()) {
+            shared = AppointmentRepositoryFactory.getInMemory();
+            loader = shared;
+        } else {
+            factory = Persistence.createEntityManagerFactory("assignment", Collections.singletonMap(
+                    "javax.persistence.jdbc.url", "jdbc:derby:memory:benchmark;create=true"));
+            if ("pooled".equals(implementation))
+                shared = AppointmentRepositoryFactory.getPooled(factory, POOL_SIZE);
+            if ("groupCommit".equals(implementation))
+                shared = AppointmentRepositoryFactory.getGroupCommit(factory, POOL_SIZE, GROUP_SIZE, GROUP_DELAY_MILLIS);
+            loader = shared != null ? shared : AppointmentRepositoryFactory.get(factory);
+        }
+
+        for (int i = 0; i < providers; i++) {
+            Customer customer = new Customer("customer" + i + "@campus02.at");
+            customer.setLastname("Lastname" + (i % 100));
+            customer.setFirstname("Firstname" + i);
+            customers.add(customer);
+
+            Provider provider = new Provider();
+            provider.setType(ProviderType.values()[i % ProviderType.values().length]);
+            provider.setAddress("Gasse " + i + ", " + (8000 + i % 1000) + " " + CITIES[i % CITIES.length]);
+            for (int j = 0; j < APPOINTMENTS_PER_PROVIDER; j++) {
+                Appointment appointment = new Appointment();
+                appointment.setTime(FIRST_SLOT.plusDays(j).plusMinutes(i % 600));
+                provider.getAppointments().add(appointment);
+            }
+            providerList.add(provider);
+        }
+        loader.createCustomers(customers);
+        loader.createProviders(providerList);
+        for (Provider provider : providerList) {
+            appointments.addAll(provider.getAppointments());
+        }
+        if (loader != shared)
+            loader.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (shared instanceof GroupCommitAppointmentRepository) {
+            // Commits je Sekunde = Durchsatz (reserve/cancel je Sekunde) / Operationen je Commit
+            GroupCommitAppointmentRepository grouped = (GroupCommitAppointmentRepository) shared;
+            System.out.printf("%nBenchmarkData: %d reserve/cancel in %d commits (%.1f per commit)%n",
+                    grouped.getOperations(), grouped.getCommits(),
+                    grouped.getOperations() / (double) Math.max(1, grouped.getCommits()));
+        }
+        if (shared != null)
+            shared.close();
+        if (factory != null)
+            factory.close();
+    }
+
+    boolean isInMemory() {
+        return "inMemory".equals(implementation);
+    }
+
+    boolean isShared() {
+        return shared != null;
+    }
+
+    Customer randomCustomer() {
+        return customers.get(ThreadLocalRandom.current().nextInt(customers.size()));
+    }
+
+    Provider randomProvider() {
+        return providerList.get(ThreadLocalRandom.current().nextInt(providerList.size()));
+    }
+
+    Appointment randomAppointment() {
+        return appointments.get(ThreadLocalRandom.current().nextInt(appointments.size()));
+    }
+}
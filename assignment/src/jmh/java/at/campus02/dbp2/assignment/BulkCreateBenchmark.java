@@ -0,0 +1,89 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Anlegen von <code>count</code> Customern und ebenso vielen Providern mit je zwei Appointments: einzeln
+ * (eine Transaktion je Entity) gegen <code>createCustomers</code>/<code>createProviders</code>
+ * (eine Transaktion und JDBC-Batches je Chunk).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkCreateBenchmark {
+
+    @Param({"500"})
+    public int count;
+
+    private EntityManagerFactory factory;
+    private AppointmentRepository repository;
+    private int round;
+    private List<Customer> customers;
+    private List<Provider> providers;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        factory = Persistence.createEntityManagerFactory("assignment", Collections.singletonMap(
+                "javax.persistence.jdbc.url", "jdbc:derby:memory:bulk-benchmark;create=true"));
+        repository = AppointmentRepositoryFactory.get(factory);
+    }
+
+    // neue Entities je Aufruf, die Emails dürfen sich nicht wiederholen
+    @Setup(Level.Invocation)
+    public void prepare() {
+        round++;
+        customers = new ArrayList<>();
+        providers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Customer customer = new Customer("customer" + round + "-" + i + "@campus02.at");
+            customer.setLastname("Lastname" + (i % 100));
+            customer.setFirstname("Firstname" + i);
+            customers.add(customer);
+
+            Provider provider = new Provider();
+            provider.setType(ProviderType.DOCTOR);
+            provider.setAddress("Gasse " + i + ", " + (8000 + i % 1000) + " Graz");
+            for (int j = 0; j < 2; j++) {
+                Appointment appointment = new Appointment();
+                appointment.setTime(BenchmarkData.FIRST_SLOT.plusDays(j).plusMinutes(i % 600));
+                provider.getAppointments().add(appointment);
+            }
+            providers.add(provider);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repository.close();
+        factory.close();
+    }
+
+    @Benchmark
+    public int looped() {
+        int created = 0;
+        for (Customer customer : customers) {
+            if (repository.create(customer))
+                created++;
+        }
+        for (Provider provider : providers) {
+            if (repository.create(provider))
+                created++;
+        }
+        return created;
+    }
+
+    @Benchmark
+    public int bulk() {
+        return repository.createCustomers(customers).size() + repository.createProviders(providers).size();
+    }
+}
@@ -0,0 +1,89 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suche nach Customern ohne Berücksichtigung der Groß-/Kleinschreibung: die bisherige Abfrage mit
+ * <code>lower(c.lastname)</code> (Table Scan) gegen <code>{@link AppointmentRepository#findCustomersBy}</code> über die
+ * normalisierten, indizierten Spalten. Standardmäßig mit 1 Million Customern (Befüllen dauert einige Minuten),
+ * kleiner z.B. mit <code>-PjmhIncludes=CustomerSearchBenchmark -PjmhCustomers=100000</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerSearchBenchmark {
+
+    // 10 Customer je Nachname
+    static final int CUSTOMERS_PER_LASTNAME = 10;
+
+    @State(Scope.Benchmark)
+    public static class Customers {
+
+        @Param({"1000000"})
+        public int customers;
+
+        EntityManagerFactory factory;
+        EntityManager manager;
+        AppointmentRepository repository;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            factory = Persistence.createEntityManagerFactory("assignment", Collections.singletonMap(
+                    "javax.persistence.jdbc.url", "jdbc:derby:memory:customerSearch;create=true"));
+            // beide Varianten verwenden denselben EntityManager und leeren ihn nach jeder Suche
+            manager = factory.createEntityManager();
+            repository = new AppointmentRepositoryJpa(manager);
+            List<Customer> chunk = new ArrayList<>();
+            for (int i = 0; i < customers; i++) {
+                Customer customer = new Customer("customer" + i + "@campus02.at");
+                customer.setLastname("Lastname" + (i / CUSTOMERS_PER_LASTNAME));
+                customer.setFirstname("Firstname" + i);
+                chunk.add(customer);
+                // createCustomers löst die Customer je Chunk vom Persistence Context, die Liste hier ebenso begrenzen
+                if (chunk.size() == 10_000 || i == customers - 1) {
+                    repository.createCustomers(chunk);
+                    chunk.clear();
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            repository.close();
+            factory.close();
+        }
+
+        String randomLastname() {
+            int lastnames = customers / CUSTOMERS_PER_LASTNAME;
+            return "LASTNAME" + ThreadLocalRandom.current().nextInt(lastnames);
+        }
+    }
+
+    @Benchmark
+    public Object lowerFunction(Customers data) {
+        List<Customer> found = data.manager.createQuery(
+                "select c from Customer c where lower(c.lastname) = lower(:lastname)", Customer.class)
+                .setParameter("lastname", data.randomLastname())
+                .getResultList();
+        data.manager.clear();
+        return found;
+    }
+
+    @Benchmark
+    public Object normalizedColumns(Customers data) {
+        List<Customer> found = data.repository.findCustomersBy(data.randomLastname(), null);
+        data.manager.clear();
+        return found;
+    }
+}
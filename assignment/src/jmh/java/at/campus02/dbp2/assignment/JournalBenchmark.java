@@ -0,0 +1,103 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static at.campus02.dbp2.assignment.JournalEntry.Type.RESERVED;
+
+/**
+ * Durchsatz des <code>{@link Journal}</code>: Anhängen einzelner Einträge und Wiederholen aller Einträge für den
+ * Aufbau eines Index der reservierten Appointments (standardmäßig 2 Millionen Einträge).
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+
+    static final int APPOINTMENTS = 100_000;
+
+    static String email(int appointment) {
+        return "customer" + (appointment % 1000) + "@campus02.at";
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Empty {
+
+        Path directory;
+        Journal journal;
+        final AtomicInteger next = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("journal-benchmark");
+            journal = new Journal(directory);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            journal.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Filled {
+
+        @Param({"2000000"})
+        public int events;
+
+        Path directory;
+        Journal journal;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("journal-benchmark");
+            journal = new Journal(directory);
+            for (int i = 0; i < events; i++) {
+                int appointment = i % APPOINTMENTS;
+                if ((i / APPOINTMENTS) % 2 == 0)
+                    journal.reserved(appointment, email(appointment));
+                else
+                    journal.cancelled(appointment, email(appointment));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            journal.close();
+            delete(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long append(Empty state) {
+        int appointment = state.next.getAndIncrement() % APPOINTMENTS;
+        return state.journal.reserved(appointment, email(appointment));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BitSet replay(Filled state) {
+        BitSet reserved = new BitSet(APPOINTMENTS);
+        state.journal.replay(1, entry -> reserved.set(entry.getAppointmentId(), entry.getType() == RESERVED));
+        return reserved;
+    }
+}
@@ -0,0 +1,25 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Repository, das ein Benchmark-Thread verwendet. Die JPA-Implementierung hält einen EntityManager und
+ * ist nicht thread-safe, daher bekommt jeder Thread sein eigenes Repository von der gemeinsamen Factory.
+ * Thread-safe Implementierungen ("pooled", "groupCommit", "inMemory") werden von allen Threads gemeinsam verwendet.
+ */
+@State(Scope.Thread)
+public class RepositoryPerThread {
+
+    AppointmentRepository repository;
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkData data) {
+        repository = data.isShared() ? data.shared : AppointmentRepositoryFactory.get(data.factory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(BenchmarkData data) {
+        if (!data.isShared())
+            repository.close();
+    }
+}
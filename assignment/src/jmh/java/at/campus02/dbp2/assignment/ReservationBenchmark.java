@@ -0,0 +1,33 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durchsatz und Latenzverteilung von <code>reserve</code>/<code>cancel</code> unter Konkurrenz.
+ * Die Anzahl der Threads wird über <code>-PjmhThreads</code> gesteuert, alle Threads buchen zufällige
+ * Appointments desselben Datenbestands und stornieren sie bei Erfolg sofort wieder.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReservationBenchmark {
+
+    @Benchmark
+    public boolean reserveThenCancel(BenchmarkData data, RepositoryPerThread state) {
+        Appointment appointment = data.randomAppointment();
+        Customer customer = data.randomCustomer();
+        return state.repository.reserve(appointment, customer) && state.repository.cancel(appointment, customer);
+    }
+
+    @Benchmark
+    public boolean reserveConflicting(BenchmarkData data, RepositoryPerThread state) {
+        // alle Threads konkurrieren um dasselbe Appointment
+        Appointment appointment = data.appointments.get(0);
+        Customer customer = data.randomCustomer();
+        return state.repository.reserve(appointment, customer) && state.repository.cancel(appointment, customer);
+    }
+}
@@ -0,0 +1,75 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schreibdurchsatz von <code>create(Provider)</code> (je eine Transaktion) mit einem und mit mehreren Shards,
+ * die Postleitzahlen verteilen sich gleichmäßig auf die Shards. Zum Vergleich <code>create(Customer)</code>,
+ * das auf alle Shards repliziert wird und daher mit mehr Shards nicht schneller werden kann. Die Anzahl der
+ * Threads wird über <code>-PjmhThreads</code> gesteuert.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardingBenchmark {
+
+    static final int ENTITY_MANAGERS_PER_SHARD = 64;
+    static final LocalDateTime FIRST_SLOT = LocalDateTime.of(2021, 12, 1, 8, 0);
+
+    @Param({"1", "4"})
+    public int shards;
+
+    private final List<EntityManagerFactory> factories = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private ShardedAppointmentRepository repository;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        for (int i = 0; i < shards; i++) {
+            factories.add(Persistence.createEntityManagerFactory("assignment", Collections.singletonMap(
+                    "javax.persistence.jdbc.url", "jdbc:derby:memory:shard" + i + ";create=true")));
+        }
+        repository = AppointmentRepositoryFactory.getSharded(factories, ENTITY_MANAGERS_PER_SHARD);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repository.close();
+        factories.forEach(EntityManagerFactory::close);
+    }
+
+    @Benchmark
+    public boolean createProvider() {
+        int i = next.getAndIncrement();
+        Provider provider = new Provider();
+        provider.setType(ProviderType.DOCTOR);
+        provider.setAddress("Gasse " + i + ", " + (8000 + i % 1000) + " Graz");
+        for (int slot = 0; slot < 2; slot++) {
+            Appointment appointment = new Appointment();
+            appointment.setTime(FIRST_SLOT.plusMinutes(15L * slot));
+            provider.getAppointments().add(appointment);
+        }
+        return repository.create(provider);
+    }
+
+    @Benchmark
+    public boolean createCustomer() {
+        int i = next.getAndIncrement();
+        Customer customer = new Customer("customer" + i + "@campus02.at");
+        customer.setLastname("Nachname" + i);
+        customer.setFirstname("Vorname");
+        return repository.create(customer);
+    }
+}
@@ -0,0 +1,64 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start eines <code>{@link RepositorySnapshot}</code>: Aufbau aus der Datenbank (ohne Shared Cache, wie nach
+ * einem Neustart) gegen Laden der zuvor geschriebenen Datei. Standardmäßig 5000 Provider mit je
+ * {@value BookingService#APPOINTMENTS_PER_PROVIDER} Appointments und ebenso vielen Customern.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+
+    @Param({"5000"})
+    public int providers;
+
+    private EntityManagerFactory factory;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        factory = Persistence.createEntityManagerFactory("assignment", Collections.singletonMap(
+                "javax.persistence.jdbc.url", "jdbc:derby:memory:snapshot-benchmark;create=true"));
+        AppointmentRepository repository = AppointmentRepositoryFactory.get(factory);
+        BookingService.seed(repository, providers);
+        file = Files.createTempFile("repository", ".snapshot");
+        RepositorySnapshot.rebuild(repository, 1).write(file);
+        repository.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        factory.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public RepositorySnapshot rebuild() {
+        factory.getCache().evictAll();
+        AppointmentRepository repository = AppointmentRepositoryFactory.get(factory);
+        try {
+            return RepositorySnapshot.rebuild(repository, 1);
+        } finally {
+            repository.close();
+        }
+    }
+
+    @Benchmark
+    public RepositorySnapshot load() {
+        return RepositorySnapshot.load(file);
+    }
+}
@@ -0,0 +1,72 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Case-insensitive Teilstring-Suche über Adressen: Scan aller Adressen gegen <code>{@link TrigramIndex}</code>
+ * (Schnitt der Posting-Listen, danach Prüfung nur der Kandidaten). Standardmäßig mit 100.000 Providern.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrigramIndexBenchmark {
+
+    static final String[] CITIES = {"Graz", "Leibnitz", "Wien", "Linz", "Salzburg", "Klagenfurt", "Leoben"};
+
+    @State(Scope.Benchmark)
+    public static class Addresses {
+
+        @Param({"100000"})
+        public int providers;
+
+        final List<String> addresses = new ArrayList<>();
+        final TrigramIndex<Integer> index = new TrigramIndex<>();
+
+        @Setup(Level.Trial)
+        public void setup() {
+            for (int i = 0; i < providers; i++) {
+                String address = "Gasse " + i + ", " + (8000 + i % 1000) + " " + CITIES[i % CITIES.length];
+                addresses.add(address);
+                index.add(i, address);
+            }
+        }
+
+        // Postleitzahl und Anfang des Ortes, wie bei findProvidersBy
+        String randomPart() {
+            int i = ThreadLocalRandom.current().nextInt(providers);
+            return ((8000 + i % 1000) + " " + CITIES[i % CITIES.length].substring(0, 4)).toLowerCase(Locale.ROOT);
+        }
+    }
+
+    @Benchmark
+    public int scan(Addresses data) {
+        String part = data.randomPart();
+        int found = 0;
+        for (String address : data.addresses) {
+            if (address.toLowerCase(Locale.ROOT).contains(part))
+                found++;
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int trigramIndex(Addresses data) {
+        String part = data.randomPart();
+        Set<Integer> candidates = data.index.candidates(part);
+        int found = 0;
+        for (Integer id : candidates) {
+            if (data.addresses.get(id).toLowerCase(Locale.ROOT).contains(part))
+                found++;
+        }
+        return found;
+    }
+}
@@ -1,33 +1,130 @@
 package at.campus02.dbp2.assignment;
 
+import org.eclipse.persistence.config.CacheUsage;
+import org.eclipse.persistence.config.QueryHints;
+
+import javax.persistence.*;
 import java.time.LocalDateTime;
 import java.util.Objects;
 
+@NamedQuery(
+        name = "Appointment.findAvailableBetween",
+        query = "select a from Appointment a " +
+                "where a.customer is null " +
+                "and a.time between :from and :to " +
+                "order by a.time")
+@NamedQuery(
+        name = "Appointment.reserve",
+        query = "update Appointment a " +
+                "set a.customer = :customer, a.version = a.version + 1 " +
+                "where a.id = :id and a.customer is null",
+        // sonst verwirft EclipseLink nach dem Update alle Appointments im Shared Cache, das Repository verwirft nur
+        // das geänderte
+        hints = @QueryHint(name = QueryHints.CACHE_USAGE, value = CacheUsage.NoCache))
+@NamedQuery(
+        name = "Appointment.cancel",
+        query = "update Appointment a " +
+                "set a.customer = null, a.version = a.version + 1 " +
+                "where a.id = :id and a.customer = :customer",
+        hints = @QueryHint(name = QueryHints.CACHE_USAGE, value = CacheUsage.NoCache))
+@NamedQuery(
+        name = "Appointment.findByCustomer",
+        query = "select a from Appointment a " +
+                "where a.customer.email = :email")
+@NamedEntityGraph(
+        name = Appointment.WITH_PROVIDER,
+        attributeNodes = @NamedAttributeNode("provider"))
+
+@Entity
+@Table(indexes = @Index(name = "IDX_APPOINTMENT_TIME", columnList = "TIME"))
 public class Appointment {
 
+    /**
+     * Fetch-Plan: Appointment samt Provider (z.B. für die Anzeige der Adresse in einer Trefferliste).
+     */
+    public static final String WITH_PROVIDER = "Appointment.withProvider";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "AppointmentIds")
+    @TableGenerator(name = "AppointmentIds", allocationSize = AppointmentRepositoryJpa.BATCH_SIZE)
+    private Integer id;
+
+    @ManyToOne
+    private Customer customer;
+
+    @ManyToOne
+    private Provider provider;
+
+    private LocalDateTime time;
+
+    // wird bei jeder Änderung erhöht, damit konkurrierende Änderungen erkannt werden (optimistic locking)
+    @Version
+    private Integer version;
+
+    // Zeit oder Customer wurden seit dem Laden (bzw. dem letzten Schreiben) geändert, siehe update(Provider)
+    @Transient
+    private boolean changed;
+
     public Integer getId() {
-        return null;
+        return id;
+    }
+
+    // nur für Implementierungen ohne JPA, die IDs selbst vergeben müssen
+    void setId(Integer id) {
+        this.id = id;
     }
 
     public Customer getCustomer() {
-        return null;
+        return customer;
     }
 
     public void setCustomer(Customer customer) {
+        this.customer = customer;
+        markChanged();
     }
 
     public Provider getProvider() {
-        return null;
+        return provider;
     }
 
     public void setProvider(Provider provider) {
+        this.provider = provider;
+    }
+
+    Integer getVersion() {
+        return version;
+    }
+
+    // nach dem Schreiben (z.B. reserve/cancel per Bulk-Update): der Aufrufer bekommt die neue Version, sonst
+    // scheitert ein späteres merge
+    void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    boolean isChanged() {
+        return changed;
+    }
+
+    // der Stand entspricht (wieder) der Datenbank, z.B. nach reserve/cancel oder update(Provider)
+    void clearChanged() {
+        changed = false;
+        if (provider != null)
+            provider.appointmentUnchanged(this);
+    }
+
+    private void markChanged() {
+        changed = true;
+        if (provider != null)
+            provider.appointmentChanged(this);
     }
 
     public LocalDateTime getTime() {
-        return null;
+        return time;
     }
 
     public void setTime(LocalDateTime time) {
+        this.time = time;
+        markChanged();
     }
 
     @Override
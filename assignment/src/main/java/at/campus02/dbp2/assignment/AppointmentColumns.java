@@ -0,0 +1,635 @@
+package at.campus02.dbp2.assignment;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Spaltenweise Kopie aller Appointments für Auswertungen (Auslastung je Provider, ProviderType und Tag).
+ * <p>
+ * Statt eines Objektgraphen je Appointment (Appointment, LocalDateTime samt LocalDate und LocalTime, Provider,
+ * Customer) liegt jedes Feld in einem eigenen primitiven Array, eine Zeile je Appointment: <code>long</code>
+ * Zeitpunkt (Sekunden seit 1970, UTC), <code>int</code> Provider und Customer (als Index in ein Verzeichnis der
+ * Provider-IDs bzw. Emails, <code>{@link #FREE}</code> für freie Appointments) und <code>byte</code> ProviderType.
+ * Eine Zeile braucht damit 21 Bytes (samt Appointment-ID für Änderungen), eine Auswertung läuft als Fork/Join Scan
+ * über zusammenhängenden Speicher und erzeugt keine Objekte je Zeile.
+ * <p>
+ * Aufgebaut wird die Kopie einmal aus einem Repository (<code>{@link #load}</code>), aktuell gehalten über das
+ * <code>{@link Journal}</code> (<code>{@link #catchUp}</code>), wie bei <code>{@link RepositorySnapshot}</code>.
+ * Gelöschte Appointments werden nur markiert, ihre Zeilen bleiben belegt. Appointments ohne Zeitpunkt werden
+ * nicht ausgewertet. Änderungen sperren Auswertungen kurz (Read-Write Lock), Auswertungen laufen parallel.
+ * <p>
+ * Je Provider und Customer merkt sich die Kopie die IDs seiner Appointments bzw. Reservierungen, damit Änderungen
+ * eines Providers oder das Löschen eines Customers nur dessen Zeilen anfassen statt alle zu durchsuchen.
+ */
+public final class AppointmentColumns {
+
+    /**
+     * Customer-Index eines freien Appointments.
+     */
+    public static final int FREE = -1;
+
+    // Customer-Index eines gelöschten Appointments, wird bei Auswertungen übersprungen
+    private static final int REMOVED = -2;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final long SECONDS_PER_DAY = 86_400;
+    private static final ProviderType[] PROVIDER_TYPES = ProviderType.values();
+    // kleinere Bereiche werden nicht mehr aufgeteilt
+    private static final int MIN_ROWS_PER_TASK = 1 << 16;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ForkJoinPool pool;
+
+    // <editor-fold desc="Spalten">
+    private int[] ids;
+    private long[] times;
+    private int[] providers;
+    private int[] customers;
+    private byte[] types;
+    private int size;
+    // Zeilen sind nach Appointment-ID sortiert, damit reserve/cancel die Zeile per Binärsuche finden. Neue Zeilen
+    // werden angehängt, die ersten "sortedRows" sind sortiert, der Rest wird am Ende von add/load einsortiert.
+    private int sortedRows;
+    // </editor-fold>
+
+    // Verzeichnisse: Index -> Provider-ID bzw. Email und zurück
+    private final List<Integer> providerIds = new ArrayList<>();
+    private final Map<Integer, Integer> providerIndex = new HashMap<>();
+    private final List<String> emails = new ArrayList<>();
+    private final Map<String, Integer> customerIndex = new HashMap<>();
+    // je Provider- bzw. Customer-Index die IDs seiner Appointments bzw. Reservierungen
+    private final List<IdList> appointmentsOfProvider = new ArrayList<>();
+    private final List<IdList> reservationsOfCustomer = new ArrayList<>();
+
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    private long journalSequence = 1;
+
+    public AppointmentColumns() {
+        this(1024, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param capacity erwartete Anzahl an Appointments (die Spalten wachsen bei Bedarf).
+     * @param pool Pool für parallele Auswertungen.
+     */
+    public AppointmentColumns(int capacity, ForkJoinPool pool) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive!");
+        this.pool = pool;
+        ids = new int[capacity];
+        times = new long[capacity];
+        providers = new int[capacity];
+        customers = new int[capacity];
+        types = new byte[capacity];
+    }
+
+    /**
+     * Liest alle Provider samt Appointments über ein Repository (einmalig, z.B. beim Start).
+     * @param source Repository für den Zugriff auf die Datenbank.
+     * @param journalSequence Position im Journal, die vor dem Lesen aktuell war (für <code>catchUp</code>).
+     */
+    public static AppointmentColumns load(AppointmentRepository source, long journalSequence) {
+        AppointmentColumns columns = new AppointmentColumns();
+        // die IDs kommen je Typ aufsteigend, über alle Typen nicht: erst alle anhängen, dann einmal sortieren
+        for (ProviderType type : PROVIDER_TYPES) {
+            for (Provider provider : source.findProvidersBy(type, "", Provider.WITH_APPOINTMENTS)) {
+                columns.merge(provider);
+            }
+        }
+        columns.sortRows();
+        columns.journalSequence = journalSequence;
+        return columns;
+    }
+
+    /**
+     * @return Anzahl der Zeilen (samt gelöschter Appointments).
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Speicherbedarf der Spalten in Bytes (ohne die Verzeichnisse der Provider und Emails).
+     */
+    public long getFootprint() {
+        lock.readLock().lock();
+        try {
+            return (long) ids.length * (Integer.BYTES * 3 + Long.BYTES + Byte.BYTES);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // <editor-fold desc="Änderungen">
+    /**
+     * Übernimmt einen Provider samt Appointments: neue Appointments werden angehängt, bestehende aktualisiert und
+     * Appointments, die der Provider nicht mehr hat, als gelöscht markiert.
+     */
+    public void add(Provider provider) {
+        if (provider == null || provider.getId() == null)
+            return;
+        lock.writeLock().lock();
+        try {
+            merge(provider);
+            sortRows();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // wie add, neue Zeilen bleiben aber unsortiert am Ende (nur unter dem Write Lock oder vor der ersten Auswertung)
+    private void merge(Provider provider) {
+        int index = providerIndexOf(provider.getId());
+        byte type = provider.getType() == null ? -1 : (byte) provider.getType().ordinal();
+        Map<Integer, Appointment> current = new LinkedHashMap<>();
+        for (Appointment appointment : provider.getAppointments()) {
+            if (appointment.getId() != null)
+                current.putIfAbsent(appointment.getId(), appointment);
+        }
+        IdList appointments = appointmentsOfProvider.get(index);
+        for (int i = 0; i < appointments.size; i++) {
+            int row = rowOf(appointments.ids[i]);
+            if (row >= 0 && providers[row] == index && !current.containsKey(ids[row]))
+                customers[row] = REMOVED;
+        }
+        appointments.clear();
+        for (Appointment appointment : current.values()) {
+            String email = appointment.getCustomer() == null ? null : appointment.getCustomer().getEmail();
+            put(appointment.getId(), index, type, appointment.getTime(), email);
+            appointments.add(appointment.getId());
+        }
+    }
+
+    /**
+     * Markiert alle Appointments eines Providers als gelöscht.
+     */
+    public void remove(Integer providerId) {
+        lock.writeLock().lock();
+        try {
+            Integer index = providerIndex.get(providerId);
+            if (index == null)
+                return;
+            IdList appointments = appointmentsOfProvider.get(index);
+            for (int i = 0; i < appointments.size; i++) {
+                int row = rowOf(appointments.ids[i]);
+                if (row >= 0 && providers[row] == index)
+                    customers[row] = REMOVED;
+            }
+            appointments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return <code>true</code>, wenn das Appointment bekannt ist (und nicht gelöscht).
+     */
+    public boolean reserve(int appointmentId, String email) {
+        lock.writeLock().lock();
+        try {
+            int row = rowOf(appointmentId);
+            if (row < 0 || customers[row] == REMOVED)
+                return false;
+            setCustomer(row, customerIndexOf(email));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return <code>true</code>, wenn das Appointment bekannt ist (und nicht gelöscht).
+     */
+    public boolean cancel(int appointmentId) {
+        lock.writeLock().lock();
+        try {
+            int row = rowOf(appointmentId);
+            if (row < 0 || customers[row] == REMOVED)
+                return false;
+            customers[row] = FREE;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gibt alle Appointments eines (gelöschten) Customers frei.
+     */
+    public void release(String email) {
+        lock.writeLock().lock();
+        try {
+            Integer index = customerIndex.get(email);
+            if (index == null)
+                return;
+            IdList reservations = reservationsOfCustomer.get(index);
+            for (int i = 0; i < reservations.size; i++) {
+                int row = rowOf(reservations.ids[i]);
+                if (row >= 0 && customers[row] == index)
+                    customers[row] = FREE;
+            }
+            reservations.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Wendet alle Einträge des Journals ab der zuletzt erreichten Position an.
+     * @return Anzahl der angewendeten Einträge.
+     */
+    public long catchUp(Journal journal) {
+        // Änderungen laufen einzeln unter dem Write Lock, die Position schützt der Monitor
+        synchronized (this) {
+            return journal.replay(journalSequence, entry -> {
+                switch (entry.getType()) {
+                    case PROVIDER_CREATED:
+                    case PROVIDER_UPDATED:
+                        add(entry.toProvider());
+                        break;
+                    case PROVIDER_DELETED:
+                        remove(entry.getProviderId());
+                        break;
+                    case CUSTOMER_DELETED:
+                        release(entry.getEmail());
+                        break;
+                    case RESERVED:
+                        reserve(entry.getAppointmentId(), entry.getEmail());
+                        break;
+                    case CANCELLED:
+                        cancel(entry.getAppointmentId());
+                        break;
+                    default:
+                }
+                journalSequence = entry.getSequence() + 1;
+            });
+        }
+    }
+
+    // hängt eine Zeile an bzw. aktualisiert sie, nur unter dem Write Lock (oder vor der ersten Auswertung).
+    // Angehängte Zeilen findet rowOf erst nach sortRows, die Verzeichnisse der Provider pflegt add.
+    void put(int appointmentId, int provider, byte type, LocalDateTime time, String email) {
+        int row = rowOf(appointmentId);
+        if (row < 0) {
+            grow();
+            row = size++;
+            // IDs kommen fast immer aufsteigend, dann bleiben die Zeilen ohne Sortieren sortiert
+            if (row == sortedRows && (row == 0 || ids[row - 1] < appointmentId))
+                sortedRows++;
+            ids[row] = appointmentId;
+            customers[row] = FREE;
+        }
+        long seconds = time == null ? NO_TIME : time.toEpochSecond(ZoneOffset.UTC);
+        times[row] = seconds;
+        providers[row] = provider;
+        setCustomer(row, email == null ? FREE : customerIndexOf(email));
+        types[row] = type;
+        if (seconds != NO_TIME) {
+            minTime = Math.min(minTime, seconds);
+            maxTime = Math.max(maxTime, seconds);
+        }
+    }
+
+    // merkt eine neue Reservierung beim Customer vor, veraltete Einträge werden erst beim Vergrößern entfernt
+    private void setCustomer(int row, int customer) {
+        if (customer >= 0 && customers[row] != customer) {
+            IdList reservations = reservationsOfCustomer.get(customer);
+            if (reservations.size == reservations.ids.length && sortedRows == size)
+                reservations.retain(id -> {
+                    int reserved = rowOf(id);
+                    return reserved >= 0 && customers[reserved] == customer;
+                });
+            reservations.add(ids[row]);
+        }
+        customers[row] = customer;
+    }
+
+    int providerIndexOf(Integer providerId) {
+        return providerIndex.computeIfAbsent(providerId, id -> {
+            providerIds.add(id);
+            appointmentsOfProvider.add(new IdList());
+            return providerIds.size() - 1;
+        });
+    }
+
+    private int customerIndexOf(String email) {
+        return customerIndex.computeIfAbsent(email, e -> {
+            emails.add(e);
+            reservationsOfCustomer.add(new IdList());
+            return emails.size() - 1;
+        });
+    }
+
+    // Zeile bzw. -(Einfügeposition) - 1 wie Arrays.binarySearch, nur über die sortierten Zeilen
+    private int rowOf(int appointmentId) {
+        if (sortedRows > 0 && ids[sortedRows - 1] < appointmentId)
+            return -sortedRows - 1;
+        return Arrays.binarySearch(ids, 0, sortedRows, appointmentId);
+    }
+
+    // sortiert angehängte Zeilen einmal für alle ein: ID und bisherige Zeile in einem long, danach umkopieren
+    void sortRows() {
+        if (sortedRows == size)
+            return;
+        long[] order = new long[size];
+        for (int row = 0; row < size; row++) {
+            order[row] = (long) ids[row] << 32 | row;
+        }
+        Arrays.sort(order);
+        int[] sortedIds = new int[ids.length];
+        long[] sortedTimes = new long[ids.length];
+        int[] sortedProviders = new int[ids.length];
+        int[] sortedCustomers = new int[ids.length];
+        byte[] sortedTypes = new byte[ids.length];
+        for (int row = 0; row < size; row++) {
+            int from = (int) order[row];
+            sortedIds[row] = ids[from];
+            sortedTimes[row] = times[from];
+            sortedProviders[row] = providers[from];
+            sortedCustomers[row] = customers[from];
+            sortedTypes[row] = types[from];
+        }
+        ids = sortedIds;
+        times = sortedTimes;
+        providers = sortedProviders;
+        customers = sortedCustomers;
+        types = sortedTypes;
+        sortedRows = size;
+    }
+
+    private void grow() {
+        if (size < ids.length)
+            return;
+        int capacity = ids.length + (ids.length >> 1) + 1;
+        ids = Arrays.copyOf(ids, capacity);
+        times = Arrays.copyOf(times, capacity);
+        providers = Arrays.copyOf(providers, capacity);
+        customers = Arrays.copyOf(customers, capacity);
+        types = Arrays.copyOf(types, capacity);
+    }
+
+    // wachsende Liste von Appointment-IDs ohne Boxing
+    private static final class IdList {
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        void retain(IntPredicate keep) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (keep.test(ids[i]))
+                    ids[kept++] = ids[i];
+            }
+            size = kept;
+        }
+
+        void clear() {
+            ids = new int[2];
+            size = 0;
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="Auswertungen">
+    /**
+     * Auslastung aller Appointments im Zeitraum.
+     * @param from Beginn (inklusive) oder <code>null</code> für unbeschränkt.
+     * @param to Ende (exklusive) oder <code>null</code> für unbeschränkt.
+     */
+    public Utilization utilization(LocalDateTime from, LocalDateTime to) {
+        long[] counts = aggregate(Grouping.ALL, null, from, to, 1, 0);
+        return new Utilization(counts[0], counts[1]);
+    }
+
+    /**
+     * Auslastung je Provider (ID) im Zeitraum, nur Provider mit mindestens einem Appointment.
+     */
+    public Map<Integer, Utilization> utilizationByProvider(LocalDateTime from, LocalDateTime to) {
+        lock.readLock().lock();
+        try {
+            long[] counts = aggregate(Grouping.PROVIDER, null, from, to, providerIds.size(), 0);
+            Map<Integer, Utilization> result = new HashMap<>();
+            for (int group = 0; group < providerIds.size(); group++) {
+                if (counts[2 * group] > 0)
+                    result.put(providerIds.get(group), new Utilization(counts[2 * group], counts[2 * group + 1]));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Auslastung je ProviderType im Zeitraum, nur Typen mit mindestens einem Appointment.
+     */
+    public Map<ProviderType, Utilization> utilizationByType(LocalDateTime from, LocalDateTime to) {
+        // Gruppe 0 sind Provider ohne Typ, die hier nicht aufscheinen
+        long[] counts = aggregate(Grouping.TYPE, null, from, to, PROVIDER_TYPES.length + 1, 0);
+        Map<ProviderType, Utilization> result = new EnumMap<>(ProviderType.class);
+        for (ProviderType type : PROVIDER_TYPES) {
+            int group = type.ordinal() + 1;
+            if (counts[2 * group] > 0)
+                result.put(type, new Utilization(counts[2 * group], counts[2 * group + 1]));
+        }
+        return result;
+    }
+
+    /**
+     * Auslastung je Tag im Zeitraum, nur Tage mit mindestens einem Appointment.
+     * @param type nur Provider dieses Typs oder <code>null</code> für alle.
+     */
+    public SortedMap<LocalDate, Utilization> utilizationByDay(ProviderType type, LocalDateTime from, LocalDateTime to) {
+        lock.readLock().lock();
+        try {
+            SortedMap<LocalDate, Utilization> result = new TreeMap<>();
+            if (minTime > maxTime)
+                return result;
+            long firstDay = Math.floorDiv(minTime, SECONDS_PER_DAY);
+            int days = (int) (Math.floorDiv(maxTime, SECONDS_PER_DAY) - firstDay + 1);
+            long[] counts = aggregate(Grouping.DAY, type, from, to, days, firstDay);
+            for (int group = 0; group < days; group++) {
+                if (counts[2 * group] > 0)
+                    result.put(LocalDate.ofEpochDay(firstDay + group),
+                            new Utilization(counts[2 * group], counts[2 * group + 1]));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private enum Grouping {ALL, PROVIDER, TYPE, DAY}
+
+    // je Gruppe zwei Zähler: [2 * Gruppe] Appointments, [2 * Gruppe + 1] davon reserviert
+    private long[] aggregate(Grouping grouping, ProviderType type, LocalDateTime from, LocalDateTime to,
+                             int groups, long firstDay) {
+        Scan scan = new Scan();
+        scan.grouping = grouping;
+        scan.type = type == null ? Byte.MIN_VALUE : (byte) type.ordinal();
+        scan.from = from == null ? NO_TIME + 1 : from.toEpochSecond(ZoneOffset.UTC);
+        scan.to = to == null ? Long.MAX_VALUE : to.toEpochSecond(ZoneOffset.UTC);
+        scan.groups = groups;
+        scan.firstDay = firstDay;
+        lock.readLock().lock();
+        try {
+            scan.rowsPerTask = Math.max(MIN_ROWS_PER_TASK, size / (pool.getParallelism() * 4));
+            return pool.invoke(new ScanTask(scan, 0, size));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Parameter einer Auswertung, gemeinsam für alle Teilaufgaben
+    private static class Scan {
+        Grouping grouping;
+        byte type;
+        long from;
+        long to;
+        int groups;
+        long firstDay;
+        int rowsPerTask;
+    }
+
+    // ForkJoinTask ist Serializable, Scan-Tasks werden aber nie serialisiert
+    @SuppressWarnings("serial")
+    private final class ScanTask extends RecursiveTask<long[]> {
+        private final Scan scan;
+        private final int start;
+        private final int end;
+
+        ScanTask(Scan scan, int start, int end) {
+            this.scan = scan;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (end - start <= scan.rowsPerTask)
+                return scan();
+            int middle = (start + end) >>> 1;
+            ScanTask left = new ScanTask(scan, start, middle);
+            left.fork();
+            long[] counts = new ScanTask(scan, middle, end).compute();
+            long[] other = left.join();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other[i];
+            }
+            return counts;
+        }
+
+        private long[] scan() {
+            long[] counts = new long[2 * scan.groups];
+            // Felder in lokale Variablen, damit die Schleife nur auf Arrays und Registern arbeitet
+            long[] times = AppointmentColumns.this.times;
+            int[] customers = AppointmentColumns.this.customers;
+            int[] providers = AppointmentColumns.this.providers;
+            byte[] types = AppointmentColumns.this.types;
+            long from = scan.from;
+            long to = scan.to;
+            byte type = scan.type;
+            for (int row = start; row < end; row++) {
+                int customer = customers[row];
+                long time = times[row];
+                if (customer == REMOVED || time < from || time >= to)
+                    continue;
+                if (type != Byte.MIN_VALUE && types[row] != type)
+                    continue;
+                int group;
+                switch (scan.grouping) {
+                    case PROVIDER:
+                        group = providers[row];
+                        break;
+                    case TYPE:
+                        group = types[row] + 1;
+                        break;
+                    case DAY:
+                        group = (int) (Math.floorDiv(time, SECONDS_PER_DAY) - scan.firstDay);
+                        break;
+                    default:
+                        group = 0;
+                }
+                counts[2 * group]++;
+                if (customer >= 0)
+                    counts[2 * group + 1]++;
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Anzahl der Appointments und davon reservierten in einer Gruppe.
+     */
+    public static final class Utilization {
+        private final long slots;
+        private final long reserved;
+
+        Utilization(long slots, long reserved) {
+            this.slots = slots;
+            this.reserved = reserved;
+        }
+
+        public long getSlots() {
+            return slots;
+        }
+
+        public long getReserved() {
+            return reserved;
+        }
+
+        /**
+         * @return Anteil der reservierten Appointments (0 bis 1).
+         */
+        public double getRate() {
+            return slots == 0 ? 0 : (double) reserved / slots;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Utilization that = (Utilization) o;
+            return slots == that.slots && reserved == that.reserved;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(slots, reserved);
+        }
+
+        @Override
+        public String toString() {
+            return "Utilization{" +
+                    "slots=" + slots +
+                    ", reserved=" + reserved +
+                    '}';
+        }
+    }
+    // </editor-fold>
+}
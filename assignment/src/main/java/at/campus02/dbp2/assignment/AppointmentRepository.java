@@ -1,7 +1,13 @@
 package at.campus02.dbp2.assignment;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public interface AppointmentRepository {
 
@@ -106,6 +112,49 @@ public interface AppointmentRepository {
      */
     boolean delete(Provider provider);
 
+    /**
+     * Erzeugt mehrere Customer in der Datenbank.
+     * <p>Bedingungen: <ul>
+     *   <li> Bei Parameter <code>null</code> passiert nichts und eine leere Liste wird zurückgegeben.
+     *   <li> Für jeden einzelnen Customer gelten dieselben Bedingungen wie bei <code>{@link #create(Customer)}</code>.
+     *   <li> Kommt dieselbe Email mehrfach vor, wird nur der erste dieser Customer persistiert.
+     * </ul>
+     * Die Standard-Implementierung ruft <code>{@link #create(Customer)}</code> für jeden Customer auf,
+     * Implementierungen können das z.B. mit Batch-Statements in wenigen Transaktionen erledigen.
+     * @param customers die zu persistierenden Customer.
+     * @return für jeden übergebenen Customer (in derselben Reihenfolge) das Ergebnis von <code>create</code>.
+     */
+    default List<Boolean> createCustomers(Collection<Customer> customers) {
+        List<Boolean> results = new ArrayList<>();
+        if (customers == null)
+            return results;
+        for (Customer customer : customers) {
+            results.add(create(customer));
+        }
+        return results;
+    }
+
+    /**
+     * Erzeugt mehrere Provider (samt ihren Appointments) in der Datenbank.
+     * <p>Bedingungen: <ul>
+     *   <li> Bei Parameter <code>null</code> passiert nichts und eine leere Liste wird zurückgegeben.
+     *   <li> Für jeden einzelnen Provider gelten dieselben Bedingungen wie bei <code>{@link #create(Provider)}</code>.
+     * </ul>
+     * Die Standard-Implementierung ruft <code>{@link #create(Provider)}</code> für jeden Provider auf,
+     * Implementierungen können das z.B. mit Batch-Statements in wenigen Transaktionen erledigen.
+     * @param providers die zu persistierenden Provider.
+     * @return für jeden übergebenen Provider (in derselben Reihenfolge) das Ergebnis von <code>create</code>.
+     */
+    default List<Boolean> createProviders(Collection<Provider> providers) {
+        List<Boolean> results = new ArrayList<>();
+        if (providers == null)
+            return results;
+        for (Provider provider : providers) {
+            results.add(create(provider));
+        }
+        return results;
+    }
+
     /**
      * Findet alle Customer mit angegebenem Vor- bzw. Nachnamen.
      * <p>Bedingungen: <ul>
@@ -175,6 +224,174 @@ public interface AppointmentRepository {
      */
     List<Appointment> getAppointmentsFor(Customer customer);
 
+    /**
+     * Findet die gebuchten Appointments mehrerer Customer auf einmal.
+     * <p>Bedingungen: <ul>
+     *   <li> Bei Parameter <code>null</code> wird eine leere Map zurückgegeben.
+     *   <li> <code>null</code> und Customer ohne Email werden ignoriert.
+     *   <li> Für jeden anderen Customer enthält die Map einen Eintrag, bei unbekannten Customern mit leerer Liste.
+     * </ul>
+     * Die Standard-Implementierung ruft <code>{@link #getAppointmentsFor(Customer)}</code> für jeden Customer auf,
+     * Implementierungen können das z.B. mit einer einzigen Query erledigen.
+     * @param customers die Customer, deren gebuchte Appointments gefunden werden sollen.
+     * @return die gebuchten Appointments je Customer (in der Reihenfolge der übergebenen Customer).
+     */
+    default Map<Customer, List<Appointment>> getAppointmentsForCustomers(Collection<Customer> customers) {
+        Map<Customer, List<Appointment>> result = new LinkedHashMap<>();
+        if (customers == null)
+            return result;
+        for (Customer customer : customers) {
+            if (customer != null && customer.getEmail() != null && !result.containsKey(customer))
+                result.put(customer, getAppointmentsFor(customer));
+        }
+        return result;
+    }
+
+    /**
+     * Seitenweise Variante von <code>{@link #findCustomersBy(String, String)}</code>, sortiert nach Email.
+     * @param lastname Nachname des zu suchenden Customer.
+     * @param firstname Vorname des zu suchenden Customer (oder <code>null</code>).
+     * @param after letzter Customer der vorherigen Seite oder <code>null</code> für die erste Seite.
+     * @param limit maximale Anzahl an Customern (muss positiv sein).
+     * @return die nächsten höchstens <code>limit</code> gefundenen Customer.
+     */
+    default List<Customer> findCustomersBy(String lastname, String firstname, Customer after, int limit) {
+        return Keyset.page(findCustomersBy(lastname, firstname), Keyset.CUSTOMER_ORDER, after, limit);
+    }
+
+    /**
+     * Seitenweise Variante von <code>{@link #findProvidersBy(ProviderType, String)}</code>, sortiert nach ID.
+     * @param type ProviderType des zu suchenden Providers.
+     * @param addressPart Teil der Adresse des zu suchenden Providers.
+     * @param after letzter Provider der vorherigen Seite oder <code>null</code> für die erste Seite.
+     * @param limit maximale Anzahl an Providern (muss positiv sein).
+     * @return die nächsten höchstens <code>limit</code> gefundenen Provider.
+     */
+    default List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit) {
+        return Keyset.page(findProvidersBy(type, addressPart), Keyset.PROVIDER_ORDER, after, limit);
+    }
+
+    /**
+     * Seitenweise Variante von <code>{@link #findAppointmentsAt(String)}</code>, sortiert nach Zeitpunkt und ID.
+     * @param addressPart Teil der Adresse des Providers, bei dem der Termin verfügbar ist.
+     * @param after letztes Appointment der vorherigen Seite oder <code>null</code> für die erste Seite.
+     * @param limit maximale Anzahl an Appointments (muss positiv sein).
+     * @return die nächsten höchstens <code>limit</code> buchbaren Appointments.
+     */
+    default List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit) {
+        return Keyset.page(findAppointmentsAt(addressPart), Keyset.APPOINTMENT_ORDER, after, limit);
+    }
+
+    /**
+     * Variante von <code>{@link #findProvidersBy(ProviderType, String)}</code> mit Fetch-Plan: die im Plan
+     * enthaltenen Beziehungen werden gleich mitgeladen, statt später für jeden Provider einzeln.
+     * Implementierungen ohne Lazy Loading können den Plan ignorieren.
+     * @param type ProviderType des zu suchenden Providers.
+     * @param addressPart Teil der Adresse des zu suchenden Providers.
+     * @param fetchPlan Name des Fetch-Plans (z.B. <code>{@link Provider#WITH_APPOINTMENTS}</code>) oder
+     *                  <code>null</code> für das Standardverhalten.
+     * @return Liste der gefundenen Provider.
+     */
+    default List<Provider> findProvidersBy(ProviderType type, String addressPart, String fetchPlan) {
+        return findProvidersBy(type, addressPart);
+    }
+
+    /**
+     * Seitenweise Variante von <code>{@link #findProvidersBy(ProviderType, String, String)}</code>.
+     */
+    default List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit,
+                                           String fetchPlan) {
+        return findProvidersBy(type, addressPart, after, limit);
+    }
+
+    /**
+     * Variante von <code>{@link #findAppointmentsAt(String)}</code> mit Fetch-Plan: die im Plan enthaltenen
+     * Beziehungen werden gleich mitgeladen, statt später für jedes Appointment einzeln.
+     * Implementierungen ohne Lazy Loading können den Plan ignorieren.
+     * @param addressPart Teil der Adresse des Providers, bei dem der Termin verfügbar ist.
+     * @param fetchPlan Name des Fetch-Plans (z.B. <code>{@link Appointment#WITH_PROVIDER}</code>) oder
+     *                  <code>null</code> für das Standardverhalten.
+     * @return Liste der buchbaren Appointments.
+     */
+    default List<Appointment> findAppointmentsAt(String addressPart, String fetchPlan) {
+        return findAppointmentsAt(addressPart);
+    }
+
+    /**
+     * Seitenweise Variante von <code>{@link #findAppointmentsAt(String, String)}</code>.
+     */
+    default List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit, String fetchPlan) {
+        return findAppointmentsAt(addressPart, after, limit);
+    }
+
+    /**
+     * Seitenweise Variante von <code>{@link #findAppointments(LocalDateTime, LocalDateTime)}</code>, sortiert nach
+     * Zeitpunkt und ID.
+     * @param from untere Schranke (oder <code>null</code>).
+     * @param to obere Schranke (oder <code>null</code>).
+     * @param after letztes Appointment der vorherigen Seite oder <code>null</code> für die erste Seite.
+     * @param limit maximale Anzahl an Appointments (muss positiv sein).
+     * @return die nächsten höchstens <code>limit</code> buchbaren Appointments.
+     */
+    default List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to, Appointment after, int limit) {
+        return Keyset.page(findAppointments(from, to), Keyset.APPOINTMENT_ORDER, after, limit);
+    }
+
+    /**
+     * Seitenweise Variante von <code>{@link #getAppointmentsFor(Customer)}</code>, sortiert nach Zeitpunkt und ID.
+     * @param customer der Customer, dessen gebuchte Appointments gefunden werden sollen.
+     * @param after letztes Appointment der vorherigen Seite oder <code>null</code> für die erste Seite.
+     * @param limit maximale Anzahl an Appointments (muss positiv sein).
+     * @return die nächsten höchstens <code>limit</code> gebuchten Appointments des Customers.
+     */
+    default List<Appointment> getAppointmentsFor(Customer customer, Appointment after, int limit) {
+        return Keyset.page(getAppointmentsFor(customer), Keyset.APPOINTMENT_ORDER, after, limit);
+    }
+
+    /**
+     * Liefert dieselben Appointments wie <code>{@link #findAppointmentsAt(String)}</code> als <code>Stream</code>,
+     * sortiert nach Zeitpunkt und ID. Implementierungen laden die Daten dabei erst beim Konsumieren des Streams,
+     * der Speicherbedarf ist also unabhängig von der Anzahl der Treffer.
+     * <p>Der Stream sollte nach Verwendung geschlossen werden (z.B. mit try-with-resources).
+     * @param addressPart Teil der Adresse des Providers, bei dem der Termin verfügbar ist.
+     * @return Stream der buchbaren Appointments.
+     */
+    default Stream<Appointment> streamAppointmentsAt(String addressPart) {
+        return findAppointmentsAt(addressPart).stream().sorted(Keyset.APPOINTMENT_ORDER);
+    }
+
+    /**
+     * Liefert dieselben Appointments wie <code>{@link #findAppointments(LocalDateTime, LocalDateTime)}</code> als
+     * <code>Stream</code>, sortiert nach Zeitpunkt und ID (siehe <code>{@link #streamAppointmentsAt(String)}</code>).
+     * @param from untere Schranke (oder <code>null</code>).
+     * @param to obere Schranke (oder <code>null</code>).
+     * @return Stream der buchbaren Appointments.
+     */
+    default Stream<Appointment> streamAppointments(LocalDateTime from, LocalDateTime to) {
+        return findAppointments(from, to).stream().sorted(Keyset.APPOINTMENT_ORDER);
+    }
+
+    /**
+     * Liefert, welche Appointments eines Providers an einem Tag noch frei sind, ohne die Appointments selbst
+     * zurückzuliefern (siehe <code>{@link DayAvailability}</code>).
+     * <p>Bedingungen: <ul>
+     *   <li> Bei Parameter <code>null</code> (für providerId oder day) wird <code>null</code> zurückgegeben.
+     *   <li> Existiert der Provider nicht, wird <code>null</code> zurückgegeben.
+     *   <li> Hat der Provider an diesem Tag keine Appointments, wird eine leere Verfügbarkeit zurückgegeben.
+     * </ul>
+     * @param providerId die ID des Providers.
+     * @param day der gewünschte Tag.
+     * @return die Verfügbarkeit des Providers an diesem Tag.
+     */
+    default DayAvailability getAvailability(Integer providerId, LocalDate day) {
+        if (providerId == null || day == null)
+            return null;
+        Provider provider = read(providerId);
+        if (provider == null)
+            return null;
+        return ProviderAvailability.of(provider).day(day);
+    }
+
     /**
      * Reserviert ein freies Appointment für einen Customer.
      * <p>Bedingungen: <ul>
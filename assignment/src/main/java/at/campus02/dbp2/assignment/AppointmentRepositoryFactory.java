@@ -1,6 +1,9 @@
 package at.campus02.dbp2.assignment;
 
 import javax.persistence.EntityManagerFactory;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class AppointmentRepositoryFactory {
 
@@ -17,6 +20,91 @@ public class AppointmentRepositoryFactory {
      * @return eine Implementierung von <code>{@link AppointmentRepository}</code>.
      */
     public static AppointmentRepository get(EntityManagerFactory factory) {
-        return null;
+        return new AppointmentRepositoryJpa(factory);
+    }
+
+    /**
+     * Factory Methode für eine thread-safe JPA-Implementierung von <code>{@link AppointmentRepository}</code>,
+     * die sich für jede Operation einen EntityManager aus einem begrenzten Pool leiht. Eine Instanz kann von
+     * beliebig vielen Threads gleichzeitig verwendet werden.
+     * @param factory EntityManagerFactory zur Erzeugung der EntityManager.
+     * @param maxEntityManagers maximale Anzahl gleichzeitig verwendeter EntityManager.
+     * @return eine thread-safe Implementierung von <code>{@link AppointmentRepository}</code>.
+     */
+    public static AppointmentRepository getPooled(EntityManagerFactory factory, int maxEntityManagers) {
+        return new AppointmentRepositoryPooled(factory, maxEntityManagers);
+    }
+
+    /**
+     * Factory Methode für eine thread-safe JPA-Implementierung von <code>{@link AppointmentRepository}</code>
+     * wie <code>{@link #getPooled}</code>, die gleichzeitige <code>reserve</code>/<code>cancel</code>-Aufrufe
+     * gesammelt in einer gemeinsamen Transaktion committet (siehe <code>{@link GroupCommitAppointmentRepository}</code>).
+     * @param factory EntityManagerFactory zur Erzeugung der EntityManager.
+     * @param maxEntityManagers maximale Anzahl gleichzeitig verwendeter EntityManager (ohne Commit-Thread).
+     * @param maxBatchSize maximale Anzahl an reserve/cancel je Transaktion.
+     * @param maxDelayMillis maximale Wartezeit auf weitere Aufrufe in Millisekunden (0: nicht warten).
+     * @return eine thread-safe Implementierung von <code>{@link AppointmentRepository}</code> mit Group Commit.
+     */
+    public static GroupCommitAppointmentRepository getGroupCommit(EntityManagerFactory factory, int maxEntityManagers,
+                                                                  int maxBatchSize, long maxDelayMillis) {
+        return new GroupCommitAppointmentRepository(factory, getPooled(factory, maxEntityManagers),
+                maxBatchSize, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Factory Methode für eine thread-safe Implementierung von <code>{@link AppointmentRepository}</code>, die
+     * Provider samt Appointments nach Postleitzahl auf mehrere Datenbanken verteilt
+     * (siehe <code>{@link ShardedAppointmentRepository}</code>).
+     * @param factories je Datenbank (Shard) eine EntityManagerFactory, immer in derselben Reihenfolge.
+     * @param maxEntityManagersPerShard maximale Anzahl gleichzeitig verwendeter EntityManager je Shard.
+     * @return eine thread-safe, auf mehrere Datenbanken verteilte Implementierung.
+     */
+    public static ShardedAppointmentRepository getSharded(List<EntityManagerFactory> factories,
+                                                          int maxEntityManagersPerShard) {
+        return new ShardedAppointmentRepository(factories, maxEntityManagersPerShard);
+    }
+
+    /**
+     * Factory Methode, die ein bestehendes <code>{@link AppointmentRepository}</code> so erweitert, dass jede
+     * Änderung in ein <code>{@link Journal}</code> geschrieben wird (siehe
+     * <code>{@link JournalingAppointmentRepository}</code>).
+     * @param repository das Repository, dessen Änderungen aufgezeichnet werden.
+     * @param directory Verzeichnis des Journals, ein bestehendes Journal wird fortgesetzt.
+     * @return das Repository mit Journal.
+     */
+    public static JournalingAppointmentRepository getJournaling(AppointmentRepository repository, Path directory) {
+        return new JournalingAppointmentRepository(repository, new Journal(directory));
+    }
+
+    /**
+     * Factory Methode, die ein bestehendes <code>{@link AppointmentRepository}</code> um einen Read-Through Cache
+     * für <code>read(String)</code> und <code>read(Integer)</code> erweitert.
+     * @param repository das Repository, dessen Lesezugriffe gecacht werden.
+     * @param maximumSize maximale Anzahl an Customern bzw. Providern im Cache.
+     * @return das Repository mit Cache.
+     */
+    public static CachingAppointmentRepository getCached(AppointmentRepository repository, int maximumSize) {
+        return new CachingAppointmentRepository(repository, maximumSize);
+    }
+
+    /**
+     * Factory Methode für eine JPA-Implementierung von <code>{@link AppointmentRepository}</code>, deren Aufrufe
+     * gemessen werden (Anzahl, Fehler, Latenz-Perzentile und SQL-Statements je Methode).
+     * @param factory EntityManagerFactory zur Erzeugung des EntityManagers.
+     * @param name Name, unter dem die Messwerte per JMX veröffentlicht werden (oder <code>null</code>).
+     * @return eine instrumentierte Implementierung von <code>{@link AppointmentRepository}</code>.
+     */
+    public static InstrumentedAppointmentRepository getInstrumented(EntityManagerFactory factory, String name) {
+        SqlStatementCounter.register(factory);
+        return new InstrumentedAppointmentRepository(get(factory), name);
+    }
+
+    /**
+     * Factory Methode für eine Implementierung von <code>{@link AppointmentRepository}</code>, die alle Daten
+     * nur im Speicher hält (ohne Datenbank) und von mehreren Threads gleichzeitig verwendet werden kann.
+     * @return eine In-Memory Implementierung von <code>{@link AppointmentRepository}</code>.
+     */
+    public static AppointmentRepository getInMemory() {
+        return new AppointmentRepositoryInMemory();
     }
 }
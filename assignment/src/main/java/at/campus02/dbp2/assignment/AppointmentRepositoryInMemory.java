@@ -0,0 +1,504 @@
+package at.campus02.dbp2.assignment;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Implementierung von <code>{@link AppointmentRepository}</code>, die alle Daten im Speicher hält.
+ * <p>
+ * Neben den Primärschlüsseln (Email bzw. ID) werden Sekundärindizes für Nachname, ProviderType, Adresse
+ * (als <code>{@link TrigramIndex}</code> für die Teilstring-Suche), Provider und Customer geführt, damit die
+ * Such-Methoden nicht alle Einträge durchlaufen müssen.
+ * Freie Appointments sind zusätzlich nach Zeitpunkt sortiert indiziert, eine Zeitraum-Suche kostet damit
+ * O(log n + k) statt O(n).
+ * <p>
+ * Schreibende Operationen werden über einen Lock serialisiert, lesende Operationen arbeiten ohne Lock
+ * direkt auf den concurrent Collections. Da die gespeicherten Entities von außen verändert werden können,
+ * merkt sich das Repository die Werte, unter denen eine Entity indiziert wurde, und prüft die Treffer
+ * eines Index beim Lesen nochmals gegen den aktuellen Zustand.
+ */
+public class AppointmentRepositoryInMemory implements AppointmentRepository {
+
+    private final Map<String, Customer> customers = new ConcurrentHashMap<>();
+    private final Map<Integer, Provider> providers = new ConcurrentHashMap<>();
+    private final Map<Integer, Appointment> appointments = new ConcurrentHashMap<>();
+
+    // Sekundärindizes: Schlüssel -> Primärschlüssel der Entities
+    private final Map<String, Set<String>> customersByLastname = new ConcurrentHashMap<>();
+    private final Map<ProviderType, Set<Integer>> providersByType = new ConcurrentHashMap<>();
+    private final TrigramIndex<Integer> providersByAddress = new TrigramIndex<>();
+    private final Map<Integer, Set<Integer>> appointmentsByProvider = new ConcurrentHashMap<>();
+    private final Map<String, Set<Integer>> appointmentsByCustomer = new ConcurrentHashMap<>();
+    // enthält nur freie Appointments, reserve/cancel tragen sie aus bzw. wieder ein
+    private final NavigableMap<LocalDateTime, Set<Integer>> availableByTime = new ConcurrentSkipListMap<>();
+
+    // Werte, unter denen die Entities aktuell in den Sekundärindizes eingetragen sind
+    private final Map<String, String> indexedLastnames = new ConcurrentHashMap<>();
+    private final Map<Integer, IndexedProvider> indexedProviders = new ConcurrentHashMap<>();
+    private final Map<Integer, IndexedAppointment> indexedAppointments = new ConcurrentHashMap<>();
+
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    @Override
+    public boolean create(Customer customer) {
+        if (customer == null || customer.getEmail() == null)
+            return false;
+        writeLock.lock();
+        try {
+            if (customers.putIfAbsent(customer.getEmail(), customer) != null)
+                return false;
+            indexCustomer(customer);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Customer read(String email) {
+        if (email == null)
+            return null;
+        return customers.get(email);
+    }
+
+    @Override
+    public Customer update(Customer customer) {
+        if (customer == null || customer.getEmail() == null)
+            return null;
+        writeLock.lock();
+        try {
+            if (!customers.containsKey(customer.getEmail()))
+                throw new IllegalArgumentException("Customer does not exist, cannot update!");
+            unindexCustomer(customer.getEmail());
+            customers.put(customer.getEmail(), customer);
+            indexCustomer(customer);
+            return customer;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(Customer customer) {
+        if (customer == null || customer.getEmail() == null)
+            return false;
+        writeLock.lock();
+        try {
+            if (!customers.containsKey(customer.getEmail()))
+                throw new IllegalArgumentException("Cannot delete not existing customer!");
+            // Reservierungen dieses Customers aufheben
+            for (Integer id : new ArrayList<>(indexOf(appointmentsByCustomer, customer.getEmail()))) {
+                Appointment appointment = appointments.get(id);
+                if (appointment != null) {
+                    appointment.setCustomer(null);
+                    indexAppointment(appointment);
+                }
+            }
+            unindexCustomer(customer.getEmail());
+            customers.remove(customer.getEmail());
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean create(Provider provider) {
+        if (provider == null)
+            return false;
+        writeLock.lock();
+        try {
+            if (provider.getId() != null && providers.containsKey(provider.getId()))
+                return false;
+            if (provider.getId() == null)
+                provider.setId(sequence.incrementAndGet());
+            else
+                // vorgegebene IDs (z.B. aus einem Snapshot) dürfen später nicht nochmals vergeben werden
+                sequence.accumulateAndGet(provider.getId(), Math::max);
+            providers.put(provider.getId(), provider);
+            indexProvider(provider);
+            storeAppointments(provider);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Provider read(Integer id) {
+        if (id == null)
+            return null;
+        return providers.get(id);
+    }
+
+    @Override
+    public Provider update(Provider provider) {
+        if (provider == null)
+            return null;
+        writeLock.lock();
+        try {
+            if (provider.getId() == null || !providers.containsKey(provider.getId()))
+                throw new IllegalArgumentException("Provider does not exist, cannot update!");
+
+            // Appointments entfernen, die nicht mehr zu diesem Provider gehören
+            Set<Integer> remaining = new HashSet<>();
+            for (Appointment appointment : provider.getAppointments()) {
+                remaining.add(appointment.getId());
+            }
+            for (Integer id : new ArrayList<>(indexOf(appointmentsByProvider, provider.getId()))) {
+                if (!remaining.contains(id)) {
+                    removeAppointment(id);
+                }
+            }
+
+            unindexProvider(provider.getId());
+            providers.put(provider.getId(), provider);
+            indexProvider(provider);
+            storeAppointments(provider);
+            return provider;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(Provider provider) {
+        if (provider == null)
+            return false;
+        writeLock.lock();
+        try {
+            if (provider.getId() == null || !providers.containsKey(provider.getId()))
+                throw new IllegalArgumentException("Cannot delete not existing provider!");
+            for (Integer id : new ArrayList<>(indexOf(appointmentsByProvider, provider.getId()))) {
+                removeAppointment(id);
+            }
+            unindexProvider(provider.getId());
+            providers.remove(provider.getId());
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname) {
+        if (lastname == null && firstname == null)
+            return new ArrayList<>(customers.values());
+        if (lastname == null)
+            throw new IllegalArgumentException("Lastname is required!");
+
+        List<Customer> result = new ArrayList<>();
+        for (String email : indexOf(customersByLastname, normalize(lastname))) {
+            Customer customer = customers.get(email);
+            if (customer != null
+                    && lastname.equalsIgnoreCase(customer.getLastname())
+                    && (firstname == null || firstname.equalsIgnoreCase(customer.getFirstname()))) {
+                result.add(customer);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart) {
+        if (type == null || addressPart == null)
+            return Collections.emptyList();
+        Set<Integer> ofType = indexOf(providersByType, type);
+        List<Provider> result = new ArrayList<>();
+        for (Integer id : providerIdsAt(addressPart)) {
+            Provider provider = providers.get(id);
+            if (provider != null && ofType.contains(id) && provider.getType() == type) {
+                result.add(provider);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart) {
+        if (addressPart == null)
+            return Collections.emptyList();
+        List<Appointment> result = new ArrayList<>();
+        for (Integer providerId : providerIdsAt(addressPart)) {
+            for (Integer id : indexOf(appointmentsByProvider, providerId)) {
+                Appointment appointment = appointments.get(id);
+                if (appointment != null && appointment.getCustomer() == null) {
+                    result.add(appointment);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime lower = from == null ? AppointmentRepositoryJpa.DEFAULT_FROM : from;
+        LocalDateTime upper = to == null ? AppointmentRepositoryJpa.DEFAULT_TO : to;
+        if (lower.isAfter(upper))
+            return Collections.emptyList();
+        List<Appointment> result = new ArrayList<>();
+        for (Set<Integer> ids : availableByTime.subMap(lower, true, upper, true).values()) {
+            for (Integer id : ids) {
+                Appointment appointment = appointments.get(id);
+                if (appointment != null && appointment.getCustomer() == null) {
+                    result.add(appointment);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to, Appointment after, int limit) {
+        Keyset.checkLimit(limit);
+        return available(from, to, after).limit(limit).collect(Collectors.toList());
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointments(LocalDateTime from, LocalDateTime to) {
+        return available(from, to, null);
+    }
+
+    // freie Appointments direkt aus dem Zeit-Index, ab "after" und nach Zeitpunkt und ID sortiert
+    private Stream<Appointment> available(LocalDateTime from, LocalDateTime to, Appointment after) {
+        LocalDateTime lower = from == null ? AppointmentRepositoryJpa.DEFAULT_FROM : from;
+        LocalDateTime upper = to == null ? AppointmentRepositoryJpa.DEFAULT_TO : to;
+        if (after != null) {
+            // ohne Zeitpunkt steht "after" ganz hinten, der Index enthält nur Appointments mit Zeitpunkt
+            if (after.getTime() == null)
+                return Stream.empty();
+            if (after.getTime().isAfter(lower))
+                lower = after.getTime();
+        }
+        if (lower.isAfter(upper))
+            return Stream.empty();
+        return availableByTime.subMap(lower, true, upper, true).entrySet().stream()
+                .flatMap(entry -> entry.getValue().stream()
+                        .filter(id -> after == null || !entry.getKey().equals(after.getTime())
+                                || after.getId() != null && id > after.getId())
+                        .sorted()
+                        .map(appointments::get))
+                .filter(appointment -> appointment != null && appointment.getCustomer() == null);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer) {
+        if (customer == null || customer.getEmail() == null)
+            return Collections.emptyList();
+        List<Appointment> result = new ArrayList<>();
+        for (Integer id : indexOf(appointmentsByCustomer, customer.getEmail())) {
+            Appointment appointment = appointments.get(id);
+            if (appointment != null
+                    && appointment.getCustomer() != null
+                    && customer.getEmail().equals(appointment.getCustomer().getEmail())) {
+                result.add(appointment);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean reserve(Appointment appointment, Customer customer) {
+        if (customer == null || customer.getEmail() == null || appointment == null || appointment.getId() == null)
+            return false;
+        writeLock.lock();
+        try {
+            Customer stored = customers.get(customer.getEmail());
+            Appointment existing = appointments.get(appointment.getId());
+            if (stored == null || existing == null || existing.getCustomer() != null)
+                return false;
+            existing.setCustomer(stored);
+            appointment.setCustomer(stored);
+            indexAppointment(existing);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean cancel(Appointment appointment, Customer customer) {
+        if (customer == null || customer.getEmail() == null || appointment == null || appointment.getId() == null)
+            return false;
+        writeLock.lock();
+        try {
+            Customer stored = customers.get(customer.getEmail());
+            Appointment existing = appointments.get(appointment.getId());
+            if (stored == null || existing == null || existing.getCustomer() == null
+                    || !stored.getEmail().equals(existing.getCustomer().getEmail()))
+                return false;
+            existing.setCustomer(null);
+            appointment.setCustomer(null);
+            indexAppointment(existing);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        // keine Ressourcen, die geschlossen werden müssten
+    }
+
+    // für RepositorySnapshot: aktueller Inhalt ohne Kopie
+    Collection<Customer> customers() {
+        return customers.values();
+    }
+
+    Collection<Provider> providers() {
+        return providers.values();
+    }
+
+    // <editor-fold desc="Index Maintenance">
+    private void storeAppointments(Provider provider) {
+        // doppelte Einträge entfernen, jedes Appointment soll nur einmal in der Liste vorkommen
+        List<Appointment> distinct = new ArrayList<>(new LinkedHashSet<>(provider.getAppointments()));
+        provider.getAppointments().clear();
+        provider.getAppointments().addAll(distinct);
+        for (Appointment appointment : distinct) {
+            appointment.setProvider(provider);
+            if (appointment.getId() == null)
+                appointment.setId(sequence.incrementAndGet());
+            else
+                sequence.accumulateAndGet(appointment.getId(), Math::max);
+            appointments.put(appointment.getId(), appointment);
+            indexAppointment(appointment);
+        }
+    }
+
+    private void removeAppointment(Integer id) {
+        IndexedAppointment indexed = indexedAppointments.remove(id);
+        if (indexed != null) {
+            removeFromIndex(availableByTime, indexed.availableAt(), id);
+            removeFromIndex(appointmentsByProvider, indexed.providerId, id);
+            removeFromIndex(appointmentsByCustomer, indexed.email, id);
+        }
+        appointments.remove(id);
+    }
+
+    private void indexCustomer(Customer customer) {
+        String lastname = normalize(customer.getLastname());
+        addToIndex(customersByLastname, lastname, customer.getEmail());
+        if (lastname != null)
+            indexedLastnames.put(customer.getEmail(), lastname);
+    }
+
+    private void unindexCustomer(String email) {
+        removeFromIndex(customersByLastname, indexedLastnames.remove(email), email);
+    }
+
+    private void indexProvider(Provider provider) {
+        IndexedProvider indexed = new IndexedProvider(provider.getType(), normalize(provider.getAddress()));
+        addToIndex(providersByType, indexed.type, provider.getId());
+        if (indexed.address != null)
+            providersByAddress.add(provider.getId(), indexed.address);
+        indexedProviders.put(provider.getId(), indexed);
+    }
+
+    private void unindexProvider(Integer id) {
+        IndexedProvider indexed = indexedProviders.remove(id);
+        if (indexed != null) {
+            removeFromIndex(providersByType, indexed.type, id);
+            providersByAddress.remove(id, indexed.address);
+        }
+    }
+
+    private void indexAppointment(Appointment appointment) {
+        Integer id = appointment.getId();
+        IndexedAppointment indexed = new IndexedAppointment(
+                appointment.getTime(),
+                appointment.getProvider() == null ? null : appointment.getProvider().getId(),
+                appointment.getCustomer() == null ? null : appointment.getCustomer().getEmail());
+        IndexedAppointment previous = indexedAppointments.put(id, indexed);
+        // neue Einträge zuerst hinzufügen, damit lesende Threads das Appointment nie "verlieren"
+        addToIndex(availableByTime, indexed.availableAt(), id);
+        addToIndex(appointmentsByProvider, indexed.providerId, id);
+        addToIndex(appointmentsByCustomer, indexed.email, id);
+        if (previous != null) {
+            if (!Objects.equals(previous.availableAt(), indexed.availableAt()))
+                removeFromIndex(availableByTime, previous.availableAt(), id);
+            if (!Objects.equals(previous.providerId, indexed.providerId))
+                removeFromIndex(appointmentsByProvider, previous.providerId, id);
+            if (!Objects.equals(previous.email, indexed.email))
+                removeFromIndex(appointmentsByCustomer, previous.email, id);
+        }
+    }
+
+    private Set<Integer> providerIdsAt(String addressPart) {
+        String part = normalize(addressPart);
+        // bei sehr kurzen Suchbegriffen kann der Trigramm-Index nicht einschränken -> alle Provider prüfen
+        Set<Integer> candidates = providersByAddress.candidates(part);
+        Iterable<Integer> ids = candidates == null ? indexedProviders.keySet() : candidates;
+        Set<Integer> result = new HashSet<>();
+        for (Integer id : ids) {
+            IndexedProvider indexed = indexedProviders.get(id);
+            if (indexed != null && indexed.address != null && indexed.address.contains(part)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static <K, V> Set<V> indexOf(Map<K, Set<V>> index, K key) {
+        if (key == null)
+            return Collections.emptySet();
+        Set<V> values = index.get(key);
+        return values == null ? Collections.emptySet() : values;
+    }
+
+    private static <K, V> void addToIndex(Map<K, Set<V>> index, K key, V value) {
+        // ConcurrentHashMap und ConcurrentSkipListMap erlauben keine null-Keys
+        if (key == null)
+            return;
+        index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(value);
+    }
+
+    private static <K, V> void removeFromIndex(Map<K, Set<V>> index, K key, V value) {
+        if (key == null)
+            return;
+        index.computeIfPresent(key, (k, values) -> {
+            values.remove(value);
+            return values.isEmpty() ? null : values;
+        });
+    }
+
+    private static class IndexedProvider {
+        final ProviderType type;
+        final String address;
+
+        IndexedProvider(ProviderType type, String address) {
+            this.type = type;
+            this.address = address;
+        }
+    }
+
+    private static class IndexedAppointment {
+        final LocalDateTime time;
+        final Integer providerId;
+        final String email;
+
+        IndexedAppointment(LocalDateTime time, Integer providerId, String email) {
+            this.time = time;
+            this.providerId = providerId;
+            this.email = email;
+        }
+
+        // Schlüssel im Zeit-Index, reservierte Appointments werden dort nicht geführt
+        LocalDateTime availableAt() {
+            return email == null ? time : null;
+        }
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,794 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
+
+import javax.persistence.AttributeNode;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.EntityType;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class AppointmentRepositoryJpa implements AppointmentRepository {
+
+    static final LocalDateTime DEFAULT_FROM = LocalDateTime.of(2000, 1, 1, 0, 0);
+    static final LocalDateTime DEFAULT_TO = LocalDateTime.of(3000, 1, 1, 0, 0);
+
+    // Anzahl der Entities pro Transaktion bei Bulk-Operationen (passend zu "eclipselink.jdbc.batch-writing.size")
+    static final int BATCH_SIZE = 500;
+
+    private final EntityManager manager;
+    // Seitengröße beim Nachladen der Streams
+    private int streamPageSize = BATCH_SIZE;
+
+    public AppointmentRepositoryJpa(EntityManagerFactory factory) {
+        this(factory.createEntityManager());
+    }
+
+    AppointmentRepositoryJpa(EntityManager manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    public boolean create(Customer customer) {
+        if (customer == null || customer.getEmail() == null)
+            return false;
+        if (read(customer.getEmail()) != null)
+            return false;
+        manager.getTransaction().begin();
+        try {
+            manager.persist(customer);
+            manager.getTransaction().commit();
+            return true;
+        } catch (PersistenceException e) {
+            // ein anderer Thread (z.B. über das Pooled Repository) hat dieselbe Email seit dem read() angelegt
+            if (manager.getTransaction().isActive())
+                manager.getTransaction().rollback();
+            if (manager.contains(customer))
+                manager.detach(customer);
+            if (read(customer.getEmail()) == null)
+                throw e;
+            return false;
+        }
+    }
+
+    @Override
+    public Customer read(String email) {
+        if (email == null)
+            return null;
+        return manager.find(Customer.class, email);
+    }
+
+    @Override
+    public Customer update(Customer customer) {
+        if (customer == null || customer.getEmail() == null)
+            return null;
+        if (read(customer.getEmail()) == null)
+            throw new IllegalArgumentException("Customer does not exist, cannot update!");
+        manager.getTransaction().begin();
+        Customer managed = manager.merge(customer);
+        manager.getTransaction().commit();
+        return managed;
+    }
+
+    @Override
+    public boolean delete(Customer customer) {
+        if (customer == null || customer.getEmail() == null)
+            return false;
+        Customer managed = read(customer.getEmail());
+        if (managed == null)
+            throw new IllegalArgumentException("Cannot delete not existing customer!");
+        manager.getTransaction().begin();
+        // Reservierungen dieses Customers aufheben, sonst verletzt das Löschen den Foreign Key
+        for (Appointment appointment : getAppointmentsFor(managed)) {
+            appointment.setCustomer(null);
+        }
+        manager.remove(managed);
+        manager.getTransaction().commit();
+        return true;
+    }
+
+    @Override
+    public boolean create(Provider provider) {
+        if (provider == null)
+            return false;
+        if (provider.getId() != null && read(provider.getId()) != null)
+            return false;
+        // Beziehung muss auf beiden Seiten gesetzt sein, "mappedBy" liegt am Appointment
+        for (Appointment appointment : provider.getAppointments()) {
+            appointment.setProvider(provider);
+        }
+        manager.getTransaction().begin();
+        manager.persist(provider);
+        manager.getTransaction().commit();
+        return true;
+    }
+
+    @Override
+    public Provider read(Integer id) {
+        if (id == null)
+            return null;
+        return manager.find(Provider.class, id);
+    }
+
+    @Override
+    public Provider update(Provider provider) {
+        if (provider == null)
+            return null;
+        Provider managed = provider.getId() == null ? null : read(provider.getId());
+        if (managed == null)
+            throw new IllegalArgumentException("Provider does not exist, cannot update!");
+
+        // Nur die Appointments schreiben, die der Provider seit dem Laden bzw. dem letzten Schreiben als hinzugefügt,
+        // entfernt oder geändert mitgeschrieben hat (siehe Provider.getAppointments()) - die Collection selbst wird
+        // weder geladen noch durchsucht, die Kosten hängen nur von der Anzahl der Änderungen ab.
+        List<Appointment> added = new ArrayList<>(provider.getAddedAppointments());
+        List<Appointment> changed = new ArrayList<>();
+        for (Appointment appointment : provider.getChangedAppointments()) {
+            if (!provider.getAddedAppointments().contains(appointment) && !provider.getRemovedAppointments().contains(appointment))
+                changed.add(appointment);
+        }
+        List<Integer> removedIds = new ArrayList<>();
+        for (Appointment appointment : provider.getRemovedAppointments()) {
+            if (appointment.getId() != null)
+                removedIds.add(appointment.getId());
+        }
+
+        PersistenceUnitUtil util = manager.getEntityManagerFactory().getPersistenceUnitUtil();
+        boolean loaded = util.isLoaded(managed, "appointments");
+        // neu in den Persistence Context aufgenommene Appointments, die in einer geladenen Collection fehlen
+        List<Appointment> inserted = new ArrayList<>();
+        Map<Appointment, Appointment> merged = new IdentityHashMap<>();
+        Set<Provider> previousProviders = Collections.newSetFromMap(new IdentityHashMap<>());
+        manager.getTransaction().begin();
+        try {
+            managed.setType(provider.getType());
+            managed.setAddress(provider.getAddress());
+            for (Appointment appointment : added) {
+                if (appointment.getId() == null) {
+                    // neue Appointments direkt persistieren, damit das übergebene Objekt seine ID bekommt
+                    appointment.setProvider(managed);
+                    manager.persist(appointment);
+                    inserted.add(appointment);
+                    continue;
+                }
+                // bereits gespeichertes Appointment (z.B. von einem anderen Provider verschoben): mergen, ein
+                // persist würde die vorhandene ID ein zweites Mal einfügen
+                Appointment stored = manager.find(Appointment.class, appointment.getId());
+                if (stored != null && stored.getProvider() != null && stored.getProvider() != managed)
+                    previousProviders.add(stored.getProvider());
+                appointment.setProvider(managed);
+                Appointment copy = manager.merge(appointment);
+                merged.put(appointment, copy);
+                inserted.add(copy);
+                if (managed == provider && copy != appointment) {
+                    // die verwaltete Collection muss die verwaltete Instanz enthalten, sonst wird das Appointment
+                    // beim Commit (Cascade) als neu eingefügt - neue Einträge stehen meist am Ende der Liste
+                    int index = managed.getAppointments().lastIndexOf(appointment);
+                    if (index >= 0)
+                        managed.getAppointments().set(index, copy);
+                }
+            }
+            for (Appointment appointment : changed) {
+                appointment.setProvider(managed);
+                merged.put(appointment, manager.merge(appointment));
+            }
+            // nur die entfernten Appointments dieses Providers laden und über den Persistence Context löschen (Batch
+            // Writing), bereits verwaltete Instanzen werden dabei wiederverwendet und sind danach nicht veraltet
+            for (int start = 0; start < removedIds.size(); start += BATCH_SIZE) {
+                List<Appointment> removed = manager.createQuery(
+                        "select a from Appointment a where a.id in :ids and a.provider.id = :provider",
+                        Appointment.class)
+                        .setParameter("ids", removedIds.subList(start, Math.min(start + BATCH_SIZE, removedIds.size())))
+                        .setParameter("provider", managed.getId())
+                        .getResultList();
+                if (loaded)
+                    managed.getAppointments().removeAll(new HashSet<>(removed));
+                for (Appointment appointment : removed) {
+                    manager.remove(appointment);
+                }
+            }
+            manager.getTransaction().commit();
+        } finally {
+            if (manager.getTransaction().isActive())
+                manager.getTransaction().rollback();
+            // gemergte Appointments des Aufrufers zeigen weiter auf seinen Provider
+            for (Map.Entry<Appointment, Appointment> entry : merged.entrySet()) {
+                if (entry.getKey() != entry.getValue())
+                    entry.getKey().setProvider(provider);
+            }
+        }
+        // die übergebenen Appointments entsprechen jetzt der Datenbank und bekommen die beim Commit erhöhte Version
+        // (persistierte Appointments sind verwaltet und haben ihre Version schon)
+        for (Map.Entry<Appointment, Appointment> entry : merged.entrySet()) {
+            entry.getKey().setVersion(entry.getValue().getVersion());
+            entry.getKey().clearChanged();
+        }
+        for (Appointment appointment : added) {
+            appointment.clearChanged();
+        }
+
+        // Die Collection des Providers wurde nicht angefasst: im Shared Cache verwerfen und im Persistence Context
+        // nur nachziehen, falls sie dort bereits geladen ist - sonst wird sie erst beim nächsten Zugriff gelesen.
+        // Provider, von denen Appointments hierher verschoben wurden, werden ebenso verworfen bzw. neu gelesen.
+        manager.getEntityManagerFactory().getCache().evict(Provider.class, managed.getId());
+        for (Provider previous : previousProviders) {
+            manager.getEntityManagerFactory().getCache().evict(Provider.class, previous.getId());
+            if (util.isLoaded(previous, "appointments"))
+                manager.refresh(previous);
+        }
+        if (!loaded)
+            manager.refresh(managed);
+        else if (managed != provider)
+            // ist der übergebene Provider selbst verwaltet, enthält seine Liste die neuen Appointments schon
+            managed.getAppointments().addAll(inserted);
+        managed.clearChanges();
+        provider.clearChanges();
+        return managed;
+    }
+
+    @Override
+    public boolean delete(Provider provider) {
+        if (provider == null)
+            return false;
+        Provider managed = provider.getId() == null ? null : read(provider.getId());
+        if (managed == null)
+            throw new IllegalArgumentException("Cannot delete not existing provider!");
+        manager.getTransaction().begin();
+        manager.remove(managed);
+        manager.getTransaction().commit();
+        return true;
+    }
+
+    @Override
+    public List<Boolean> createCustomers(Collection<Customer> customers) {
+        List<Boolean> results = new ArrayList<>();
+        if (customers == null)
+            return results;
+        List<Customer> all = new ArrayList<>(customers);
+        Set<String> seen = new HashSet<>();
+        for (int start = 0; start < all.size(); start += BATCH_SIZE) {
+            List<Customer> chunk = all.subList(start, Math.min(start + BATCH_SIZE, all.size()));
+
+            // bereits vorhandene Emails mit einer Query je Chunk ermitteln statt mit einem find je Customer
+            List<String> emails = new ArrayList<>();
+            for (Customer customer : chunk) {
+                if (customer != null && customer.getEmail() != null)
+                    emails.add(customer.getEmail());
+            }
+            Set<String> existing = emails.isEmpty() ? Collections.emptySet() : new HashSet<>(manager
+                    .createQuery("select c.email from Customer c where c.email in :emails", String.class)
+                    .setParameter("emails", emails)
+                    .getResultList());
+
+            List<Customer> toPersist = new ArrayList<>();
+            for (Customer customer : chunk) {
+                boolean create = customer != null && customer.getEmail() != null
+                        && !existing.contains(customer.getEmail())
+                        && seen.add(customer.getEmail());
+                if (create)
+                    toPersist.add(customer);
+                results.add(create);
+            }
+            if (!persistChunk(toPersist)) {
+                // Chunk ist gescheitert (z.B. parallel angelegter Customer) -> einzeln wiederholen
+                createSingly(chunk, results, start, this::create);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<Boolean> createProviders(Collection<Provider> providers) {
+        List<Boolean> results = new ArrayList<>();
+        if (providers == null)
+            return results;
+        List<Provider> all = new ArrayList<>(providers);
+        for (int start = 0; start < all.size(); start += BATCH_SIZE) {
+            List<Provider> chunk = all.subList(start, Math.min(start + BATCH_SIZE, all.size()));
+
+            List<Integer> ids = new ArrayList<>();
+            for (Provider provider : chunk) {
+                if (provider != null && provider.getId() != null)
+                    ids.add(provider.getId());
+            }
+            Set<Integer> existing = ids.isEmpty() ? Collections.emptySet() : new HashSet<>(manager
+                    .createQuery("select p.id from Provider p where p.id in :ids", Integer.class)
+                    .setParameter("ids", ids)
+                    .getResultList());
+
+            List<Provider> toPersist = new ArrayList<>();
+            for (Provider provider : chunk) {
+                boolean create = provider != null && !existing.contains(provider.getId());
+                if (create) {
+                    for (Appointment appointment : provider.getAppointments()) {
+                        appointment.setProvider(provider);
+                    }
+                    toPersist.add(provider);
+                }
+                results.add(create);
+            }
+            if (!persistChunk(toPersist))
+                createSingly(chunk, results, start, this::create);
+        }
+        return results;
+    }
+
+    private boolean persistChunk(List<?> entities) {
+        if (entities.isEmpty())
+            return true;
+        manager.getTransaction().begin();
+        try {
+            for (Object entity : entities) {
+                manager.persist(entity);
+            }
+            manager.getTransaction().commit();
+            return true;
+        } catch (PersistenceException e) {
+            return false;
+        } finally {
+            if (manager.getTransaction().isActive())
+                manager.getTransaction().rollback();
+            // Persistence Context nicht über alle Chunks anwachsen lassen - nur die eigenen Entities (samt
+            // Appointments) lösen, andere Entities des Aufrufers bleiben verwaltet
+            for (Object entity : entities) {
+                if (manager.contains(entity))
+                    manager.detach(entity);
+            }
+        }
+    }
+
+    // wiederholt die im Chunk vorgesehenen Entities einzeln, eine fehlerhafte Entity bekommt "false"
+    private <T> void createSingly(List<T> chunk, List<Boolean> results, int start, Predicate<T> create) {
+        for (int i = 0; i < chunk.size(); i++) {
+            if (!results.get(start + i))
+                continue;
+            try {
+                results.set(start + i, create.test(chunk.get(i)));
+            } catch (PersistenceException e) {
+                if (manager.getTransaction().isActive())
+                    manager.getTransaction().rollback();
+                if (manager.contains(chunk.get(i)))
+                    manager.detach(chunk.get(i));
+                results.set(start + i, false);
+            }
+        }
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname) {
+        if (lastname == null && firstname == null) {
+            return manager.createQuery("select c from Customer c", Customer.class).getResultList();
+        }
+        if (lastname == null)
+            throw new IllegalArgumentException("Lastname is required!");
+
+        // normalisierte Spalten statt lower(...), damit Derby den Index IDX_CUSTOMER_NAME verwenden kann
+        String queryString = "select c from Customer c where c.lastnameNormalized = :lastname";
+        if (firstname != null) {
+            queryString += " and c.firstnameNormalized = :firstname";
+        }
+        TypedQuery<Customer> query = manager.createQuery(queryString, Customer.class);
+        query.setParameter("lastname", Customer.normalize(lastname));
+        if (firstname != null) {
+            query.setParameter("firstname", Customer.normalize(firstname));
+        }
+        return query.getResultList();
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart) {
+        return findProvidersBy(type, addressPart, (String) null);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, String fetchPlan) {
+        if (type == null || addressPart == null)
+            return Collections.emptyList();
+        TypedQuery<Provider> query = manager.createQuery(
+                "select p from Provider p " +
+                        "where p.type = :type " +
+                        "and " + addressContains("p", addressPart),
+                Provider.class
+        );
+        query.setParameter("type", type);
+        setAddressPart(query, addressPart);
+        return withFetchPlan(manager, query, Provider.class, "p", fetchPlan).getResultList();
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart) {
+        return findAppointmentsAt(addressPart, (String) null);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, String fetchPlan) {
+        if (addressPart == null)
+            return Collections.emptyList();
+        TypedQuery<Appointment> query = manager.createQuery(
+                "select a from Appointment a " +
+                        "where a.customer is null " +
+                        "and " + addressContains("a.provider", addressPart),
+                Appointment.class
+        );
+        setAddressPart(query, addressPart);
+        return withFetchPlan(manager, query, Appointment.class, "a", fetchPlan).getResultList();
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to) {
+        TypedQuery<Appointment> query = manager.createNamedQuery(
+                "Appointment.findAvailableBetween",
+                Appointment.class
+        );
+        query.setParameter("from", from == null ? DEFAULT_FROM : from);
+        query.setParameter("to", to == null ? DEFAULT_TO : to);
+        return query.getResultList();
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer) {
+        if (customer == null || customer.getEmail() == null)
+            return Collections.emptyList();
+        TypedQuery<Appointment> query = manager.createNamedQuery(
+                "Appointment.findByCustomer",
+                Appointment.class
+        );
+        query.setParameter("email", customer.getEmail());
+        return query.getResultList();
+    }
+
+    @Override
+    public Map<Customer, List<Appointment>> getAppointmentsForCustomers(Collection<Customer> customers) {
+        Map<Customer, List<Appointment>> result = new LinkedHashMap<>();
+        if (customers == null)
+            return result;
+        Map<String, List<Appointment>> byEmail = new HashMap<>();
+        for (Customer customer : customers) {
+            if (customer != null && customer.getEmail() != null && !result.containsKey(customer)) {
+                List<Appointment> appointments = byEmail.computeIfAbsent(customer.getEmail(), e -> new ArrayList<>());
+                result.put(customer, appointments);
+            }
+        }
+        List<String> emails = new ArrayList<>(byEmail.keySet());
+        for (int start = 0; start < emails.size(); start += BATCH_SIZE) {
+            // Customer und Provider gleich mitladen, sonst folgt für jeden noch nicht geladenen ein eigenes SELECT
+            List<Appointment> appointments = manager.createQuery(
+                    "select a from Appointment a join fetch a.customer join fetch a.provider " +
+                            "where a.customer.email in :emails order by a.time, a.id", Appointment.class)
+                    .setParameter("emails", emails.subList(start, Math.min(start + BATCH_SIZE, emails.size())))
+                    .getResultList();
+            for (Appointment appointment : appointments) {
+                byEmail.get(appointment.getCustomer().getEmail()).add(appointment);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname, Customer after, int limit) {
+        Keyset.checkLimit(limit);
+        if (lastname == null && firstname != null)
+            throw new IllegalArgumentException("Lastname is required!");
+        String queryString = "select c from Customer c where 1 = 1";
+        if (lastname != null)
+            queryString += " and c.lastnameNormalized = :lastname";
+        if (firstname != null)
+            queryString += " and c.firstnameNormalized = :firstname";
+        if (after != null)
+            queryString += " and c.email > :afterEmail";
+        TypedQuery<Customer> query = manager.createQuery(queryString + " order by c.email", Customer.class);
+        if (lastname != null)
+            query.setParameter("lastname", Customer.normalize(lastname));
+        if (firstname != null)
+            query.setParameter("firstname", Customer.normalize(firstname));
+        if (after != null)
+            query.setParameter("afterEmail", after.getEmail());
+        return query.setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit) {
+        return findProvidersBy(type, addressPart, after, limit, null);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit,
+                                          String fetchPlan) {
+        Keyset.checkLimit(limit);
+        if (type == null || addressPart == null)
+            return Collections.emptyList();
+        String queryString = "select p from Provider p " +
+                "where p.type = :type " +
+                "and " + addressContains("p", addressPart);
+        if (after != null)
+            queryString += " and p.id > :afterId";
+        TypedQuery<Provider> query = manager.createQuery(queryString + " order by p.id", Provider.class);
+        query.setParameter("type", type);
+        setAddressPart(query, addressPart);
+        if (after != null)
+            query.setParameter("afterId", after.getId());
+        return withFetchPlan(manager, query, Provider.class, "p", fetchPlan).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit) {
+        return findAppointmentsAt(addressPart, after, limit, null);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit, String fetchPlan) {
+        Keyset.checkLimit(limit);
+        if (addressPart == null)
+            return Collections.emptyList();
+        return appointmentsAt(manager, addressPart, after, limit, fetchPlan);
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to, Appointment after, int limit) {
+        Keyset.checkLimit(limit);
+        return appointmentsBetween(manager, from, to, after, limit);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer, Appointment after, int limit) {
+        Keyset.checkLimit(limit);
+        if (customer == null || customer.getEmail() == null)
+            return Collections.emptyList();
+        return appointmentPage(manager, "a.customer.email = :email", after, limit)
+                .setParameter("email", customer.getEmail())
+                .getResultList();
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointmentsAt(String addressPart) {
+        if (addressPart == null)
+            return Stream.empty();
+        return streamPages((em, after) -> appointmentsAt(em, addressPart, after, streamPageSize, null));
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointments(LocalDateTime from, LocalDateTime to) {
+        return streamPages((em, after) -> appointmentsBetween(em, from, to, after, streamPageSize));
+    }
+
+    @Override
+    public DayAvailability getAvailability(Integer providerId, LocalDate day) {
+        if (providerId == null || day == null)
+            return null;
+        // nur ID, Zeitpunkt und Buchungsstatus lesen, keine Appointment-Entities
+        List<Object[]> rows = manager.createQuery(
+                "select a.id, a.time, c.email from Appointment a left join a.customer c " +
+                        "where a.provider.id = :id and a.time >= :from and a.time < :to", Object[].class)
+                .setParameter("id", providerId)
+                .setParameter("from", day.atStartOfDay())
+                .setParameter("to", day.plusDays(1).atStartOfDay())
+                .getResultList();
+        if (rows.isEmpty() && manager.find(Provider.class, providerId) == null)
+            return null;
+        return ProviderAvailability.of(providerId, rows).day(day);
+    }
+
+    private List<Appointment> appointmentsAt(EntityManager em, String addressPart, Appointment after, int limit,
+                                             String fetchPlan) {
+        TypedQuery<Appointment> query = setAddressPart(appointmentPage(em,
+                "a.customer is null and " + addressContains("a.provider", addressPart), after, limit), addressPart);
+        return withFetchPlan(em, query, Appointment.class, "a", fetchPlan).getResultList();
+    }
+
+    // <editor-fold desc="Adresssuche">
+    /**
+     * Bedingung "Adresse enthält <code>addressPart</code>" (case-insensitive) für den Provider unter
+     * <code>provider</code>: die Trigramme der Adresse (Tabelle PROVIDER_TRIGRAM, siehe Provider) wählen über ihren
+     * Index die Kandidaten, LIKE prüft nur noch diese. Teilstrings kürzer als ein Trigramm sucht nur LIKE.
+     */
+    private static String addressContains(String provider, String addressPart) {
+        String like = "lower(" + provider + ".address) like lower(:addressPart) escape '\\'";
+        if (TrigramIndex.trigrams(addressPart).isEmpty())
+            return like;
+        return provider + ".id in (select t.id from Provider t join t.addressTrigrams g where g in :grams " +
+                "group by t.id having count(g) = :gramCount) and " + like;
+    }
+
+    private static <T> TypedQuery<T> setAddressPart(TypedQuery<T> query, String addressPart) {
+        query.setParameter("addressPart", "%" + escapeLike(addressPart) + "%");
+        Set<String> grams = TrigramIndex.trigrams(addressPart);
+        if (!grams.isEmpty()) {
+            query.setParameter("grams", new ArrayList<>(grams));
+            query.setParameter("gramCount", (long) grams.size());
+        }
+        return query;
+    }
+
+    // "%" und "_" werden wie im In-Memory Repository als Zeichen gesucht, nicht als Platzhalter
+    static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+    // </editor-fold>
+
+    /**
+     * Übersetzt einen Fetch-Plan (<code>@NamedEntityGraph</code>) in EclipseLink Query Hints.
+     * <p>
+     * EclipseLink lädt die Attribute eines Entity Graphs (als "loadgraph") erst nach der Query und einzeln je
+     * Zeile nach. Daher werden einwertige Beziehungen per Join in derselben Query und Collections per Batch
+     * (eine weitere Query mit IN über alle Zeilen des Ergebnisses) geladen - unabhängig von der Anzahl der Zeilen
+     * und auch bei seitenweisen Queries.
+     * @throws IllegalArgumentException falls es keinen Plan mit diesem Namen für die Entity gibt.
+     */
+    private static <T> TypedQuery<T> withFetchPlan(EntityManager em, TypedQuery<T> query, Class<T> type,
+                                                   String alias, String fetchPlan) {
+        if (fetchPlan == null)
+            return query;
+        EntityType<T> entity = em.getMetamodel().entity(type);
+        for (AttributeNode<?> node : em.getEntityGraph(fetchPlan).getAttributeNodes()) {
+            String path = alias + "." + node.getAttributeName();
+            if (entity.getAttribute(node.getAttributeName()).isCollection()) {
+                query.setHint(QueryHints.BATCH, path);
+                query.setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN);
+            } else {
+                query.setHint(QueryHints.LEFT_FETCH, path);
+            }
+        }
+        return query;
+    }
+
+    private List<Appointment> appointmentsBetween(EntityManager em, LocalDateTime from, LocalDateTime to,
+                                                  Appointment after, int limit) {
+        return appointmentPage(em, "a.customer is null and a.time between :from and :to", after, limit)
+                .setParameter("from", from == null ? DEFAULT_FROM : from)
+                .setParameter("to", to == null ? DEFAULT_TO : to)
+                .getResultList();
+    }
+
+    // Keyset-Bedingung auf (time, id): die Datenbank kann über den Index auf TIME direkt an die richtige
+    // Stelle springen, statt wie bei einem OFFSET alle vorherigen Zeilen zu lesen und zu verwerfen.
+    private TypedQuery<Appointment> appointmentPage(EntityManager em, String condition, Appointment after, int limit) {
+        String queryString = "select a from Appointment a where " + condition;
+        if (after != null)
+            queryString += " and (a.time > :afterTime or (a.time = :afterTime and a.id > :afterId))";
+        TypedQuery<Appointment> query = em.createQuery(queryString + " order by a.time, a.id", Appointment.class);
+        if (after != null) {
+            query.setParameter("afterTime", after.getTime());
+            query.setParameter("afterId", after.getId());
+        }
+        return query.setMaxResults(limit);
+    }
+
+    /**
+     * Erzeugt einen Stream, der die Treffer seitenweise über einen eigenen EntityManager nachlädt.
+     * Nach jeder Seite wird dessen Persistence Context geleert, es bleibt also immer nur eine Seite im Speicher.
+     */
+    private <T> Stream<T> streamPages(BiFunction<EntityManager, T, List<T>> nextPage) {
+        EntityManager streamManager = manager.getEntityManagerFactory().createEntityManager();
+        Iterator<T> iterator = new Iterator<T>() {
+            private List<T> page = Collections.emptyList();
+            private int position;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (position < page.size())
+                    return true;
+                if (exhausted)
+                    return false;
+                T last = page.isEmpty() ? null : page.get(page.size() - 1);
+                streamManager.clear();
+                page = nextPage.apply(streamManager, last);
+                position = 0;
+                exhausted = page.size() < streamPageSize;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return page.get(position++);
+            }
+        };
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(streamManager::close);
+    }
+
+    @Override
+    public boolean reserve(Appointment appointment, Customer customer) {
+        if (customer == null || appointment == null || appointment.getId() == null)
+            return false;
+        Customer managedCustomer = read(customer.getEmail());
+        if (managedCustomer == null)
+            return false;
+        // Prüfen und Zuweisen in einem einzigen UPDATE: nur ein Aufruf kann den freien Termin bekommen,
+        // alle anderen ändern 0 Zeilen und bekommen "false", ohne dass vorher Locks gehalten werden.
+        return executeReservationUpdate("Appointment.reserve", appointment, managedCustomer, managedCustomer);
+    }
+
+    @Override
+    public boolean cancel(Appointment appointment, Customer customer) {
+        if (customer == null || appointment == null || appointment.getId() == null)
+            return false;
+        Customer managedCustomer = read(customer.getEmail());
+        if (managedCustomer == null)
+            return false;
+        return executeReservationUpdate("Appointment.cancel", appointment, managedCustomer, null);
+    }
+
+    /**
+     * Führt das Bulk-Update in einer eigenen Transaktion aus und bringt bei Erfolg das übergebene Appointment auf den
+     * neuen Stand (<code>reserved</code> als Customer, Version um 1 erhöht).
+     * @return <code>false</code>, wenn das Update keine Zeile geändert hat.
+     */
+    private boolean executeReservationUpdate(String queryName, Appointment appointment, Customer customer,
+                                             Customer reserved) {
+        manager.getTransaction().begin();
+        boolean updated;
+        try {
+            updated = manager.createNamedQuery(queryName)
+                    .setParameter("id", appointment.getId())
+                    .setParameter("customer", customer)
+                    .executeUpdate() == 1;
+            manager.getTransaction().commit();
+        } finally {
+            if (manager.getTransaction().isActive())
+                manager.getTransaction().rollback();
+        }
+        if (!updated)
+            return false;
+        // Bulk-Updates umgehen Shared Cache und Persistence Context: nur dieses Appointment verwerfen und ein
+        // verwaltetes Appointment neu lesen
+        manager.getEntityManagerFactory().getCache().evict(Appointment.class, appointment.getId());
+        if (manager.contains(appointment)) {
+            manager.refresh(appointment);
+        } else {
+            appointment.setCustomer(reserved);
+            appointment.setVersion(nextVersion(appointment));
+        }
+        appointment.clearChanged();
+        return true;
+    }
+
+    /**
+     * Das Bulk-Update erhöht die Version um 1 (siehe <code>Appointment.reserve</code>). Wurde das Appointment seit dem
+     * Lesen anderweitig geändert, ist die Version des Aufrufers danach weiterhin veraltet - ein späteres merge scheitert
+     * dann, wie bei jeder anderen veralteten Kopie, statt die fremde Änderung zu überschreiben.
+     */
+    static Integer nextVersion(Appointment appointment) {
+        return appointment.getVersion() == null ? null : appointment.getVersion() + 1;
+    }
+
+    // z.B. für Tests, die mit wenigen Appointments über mehrere Seiten streamen wollen
+    void setStreamPageSize(int streamPageSize) {
+        Keyset.checkLimit(streamPageSize);
+        this.streamPageSize = streamPageSize;
+    }
+
+    /**
+     * Bereitet den EntityManager auf die nächste Operation vor (für <code>{@link AppointmentRepositoryPooled}</code>):
+     * eine offene Transaktion wird zurückgerollt und alle Entities werden detached.
+     * @return <code>false</code>, falls der EntityManager nicht mehr verwendet werden kann.
+     */
+    boolean reset() {
+        if (!manager.isOpen())
+            return false;
+        if (manager.getTransaction().isActive())
+            manager.getTransaction().rollback();
+        manager.clear();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (manager.isOpen()) {
+            manager.close();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package at.campus02.dbp2.assignment;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Thread-safe JPA-Implementierung von <code>{@link AppointmentRepository}</code>.
+ * <p>
+ * Ein EntityManager ist nicht thread-safe, statt alle Aufrufe zu synchronisieren leiht sich daher jede Operation
+ * einen EntityManager aus einem Pool und gibt ihn danach wieder zurück. Der Pool ist auf
+ * <code>maxEntityManagers</code> begrenzt, weitere Aufrufe warten, bis ein EntityManager frei wird.
+ * <p>
+ * Nach jeder Operation wird der Persistence Context geleert, zurückgelieferte Entities sind also immer detached.
+ */
+public class AppointmentRepositoryPooled implements AppointmentRepository {
+
+    private final EntityManagerFactory factory;
+    private final Semaphore permits;
+    private final Queue<AppointmentRepositoryJpa> idle = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    public AppointmentRepositoryPooled(EntityManagerFactory factory, int maxEntityManagers) {
+        if (maxEntityManagers <= 0)
+            throw new IllegalArgumentException("Pool size must be positive!");
+        this.factory = factory;
+        this.permits = new Semaphore(maxEntityManagers);
+    }
+
+    private <T> T withRepository(Function<AppointmentRepositoryJpa, T> operation) {
+        if (closed)
+            throw new IllegalStateException("Repository is closed!");
+        permits.acquireUninterruptibly();
+        try {
+            AppointmentRepositoryJpa repository = idle.poll();
+            if (repository == null)
+                repository = new AppointmentRepositoryJpa(factory.createEntityManager());
+            try {
+                return operation.apply(repository);
+            } finally {
+                release(repository);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void release(AppointmentRepositoryJpa repository) {
+        if (closed || !repository.reset()) {
+            repository.close();
+            return;
+        }
+        idle.offer(repository);
+        // close() kann zwischen Prüfung und offer() gelaufen sein
+        if (closed)
+            closeIdle();
+    }
+
+    private void closeIdle() {
+        AppointmentRepositoryJpa repository;
+        while ((repository = idle.poll()) != null) {
+            repository.close();
+        }
+    }
+
+    // <editor-fold desc="AppointmentRepository">
+    @Override
+    public boolean create(Customer customer) {
+        return withRepository(repository -> repository.create(customer));
+    }
+
+    @Override
+    public Customer read(String email) {
+        return withRepository(repository -> repository.read(email));
+    }
+
+    @Override
+    public Customer update(Customer customer) {
+        return withRepository(repository -> repository.update(customer));
+    }
+
+    @Override
+    public boolean delete(Customer customer) {
+        return withRepository(repository -> repository.delete(customer));
+    }
+
+    @Override
+    public boolean create(Provider provider) {
+        return withRepository(repository -> repository.create(provider));
+    }
+
+    @Override
+    public Provider read(Integer id) {
+        return withRepository(repository -> repository.read(id));
+    }
+
+    @Override
+    public Provider update(Provider provider) {
+        return withRepository(repository -> repository.update(provider));
+    }
+
+    @Override
+    public boolean delete(Provider provider) {
+        return withRepository(repository -> repository.delete(provider));
+    }
+
+    @Override
+    public List<Boolean> createCustomers(Collection<Customer> customers) {
+        return withRepository(repository -> repository.createCustomers(customers));
+    }
+
+    @Override
+    public List<Boolean> createProviders(Collection<Provider> providers) {
+        return withRepository(repository -> repository.createProviders(providers));
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname) {
+        return withRepository(repository -> repository.findCustomersBy(lastname, firstname));
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart) {
+        return withRepository(repository -> repository.findProvidersBy(type, addressPart));
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart) {
+        return withRepository(repository -> repository.findAppointmentsAt(addressPart));
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to) {
+        return withRepository(repository -> repository.findAppointments(from, to));
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer) {
+        return withRepository(repository -> repository.getAppointmentsFor(customer));
+    }
+
+    @Override
+    public Map<Customer, List<Appointment>> getAppointmentsForCustomers(Collection<Customer> customers) {
+        return withRepository(repository -> repository.getAppointmentsForCustomers(customers));
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname, Customer after, int limit) {
+        return withRepository(repository -> repository.findCustomersBy(lastname, firstname, after, limit));
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit) {
+        return withRepository(repository -> repository.findProvidersBy(type, addressPart, after, limit));
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit) {
+        return withRepository(repository -> repository.findAppointmentsAt(addressPart, after, limit));
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, String fetchPlan) {
+        return withRepository(repository -> repository.findProvidersBy(type, addressPart, fetchPlan));
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit,
+                                          String fetchPlan) {
+        return withRepository(repository -> repository.findProvidersBy(type, addressPart, after, limit, fetchPlan));
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, String fetchPlan) {
+        return withRepository(repository -> repository.findAppointmentsAt(addressPart, fetchPlan));
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit, String fetchPlan) {
+        return withRepository(repository -> repository.findAppointmentsAt(addressPart, after, limit, fetchPlan));
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to, Appointment after, int limit) {
+        return withRepository(repository -> repository.findAppointments(from, to, after, limit));
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer, Appointment after, int limit) {
+        return withRepository(repository -> repository.getAppointmentsFor(customer, after, limit));
+    }
+
+    // Streams laden über einen eigenen EntityManager nach und blockieren daher keinen Platz im Pool
+    @Override
+    public Stream<Appointment> streamAppointmentsAt(String addressPart) {
+        return withRepository(repository -> repository.streamAppointmentsAt(addressPart));
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointments(LocalDateTime from, LocalDateTime to) {
+        return withRepository(repository -> repository.streamAppointments(from, to));
+    }
+
+    @Override
+    public DayAvailability getAvailability(Integer providerId, LocalDate day) {
+        return withRepository(repository -> repository.getAvailability(providerId, day));
+    }
+
+    @Override
+    public boolean reserve(Appointment appointment, Customer customer) {
+        return withRepository(repository -> repository.reserve(appointment, customer));
+    }
+
+    @Override
+    public boolean cancel(Appointment appointment, Customer customer) {
+        return withRepository(repository -> repository.cancel(appointment, customer));
+    }
+
+    /**
+     * Schließt alle freien EntityManager, gerade verwendete werden nach ihrer Operation geschlossen.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        closeIdle();
+    }
+    // </editor-fold>
+}
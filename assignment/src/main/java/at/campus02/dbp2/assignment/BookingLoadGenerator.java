@@ -0,0 +1,193 @@
+package at.campus02.dbp2.assignment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lastgenerator für den <code>{@link BookingService}</code>: mehrere Clients suchen freie Termine,
+ * reservieren einen der gefundenen Termine und stornieren einen Teil ihrer Reservierungen wieder.
+ * <p>
+ * Gemessen werden Durchsatz und Latenz-Perzentile je Operation über HTTP, also inklusive Netzwerk-Stack,
+ * Server, Repository und Datenbank.
+ */
+public class BookingLoadGenerator {
+
+    // Anteile der Operationen in Prozent, der Rest sind Stornierungen
+    static final int SEARCH_PERCENT = 70;
+    static final int RESERVE_PERCENT = 20;
+
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+    private static final Logger LOG = Logger.getLogger(BookingLoadGenerator.class.getName());
+
+    private final String baseUrl;
+    private final int customers;
+    private final Map<String, Operation> operations = new LinkedHashMap<>();
+
+    public BookingLoadGenerator(String baseUrl, int customers) {
+        this.baseUrl = baseUrl;
+        this.customers = customers;
+        operations.put("search", new Operation());
+        operations.put("reserve", new Operation());
+        operations.put("cancel", new Operation());
+    }
+
+    /**
+     * Argumente (alle optional): <code>[baseUrl] [clients] [seconds] [customers]</code>
+     */
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:" + BookingService.DEFAULT_PORT;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int customers = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+        LOG.info("running " + clients + " clients for " + seconds + "s against " + baseUrl + " on "
+                + (BookingService.virtualThreadsAvailable() ? "virtual threads" : "a cached thread pool"));
+        BookingLoadGenerator generator = new BookingLoadGenerator(baseUrl, customers);
+        generator.run(clients, seconds, TimeUnit.SECONDS);
+        // der Bericht ist die Ausgabe des Programms
+        for (String line : generator.report()) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Lässt <code>clients</code> Clients für die angegebene Dauer parallel Requests schicken.
+     * @return Dauer des Laufs in Nanosekunden.
+     */
+    public long run(int clients, long duration, TimeUnit unit) throws Exception {
+        ExecutorService executor = BookingService.newRequestExecutor();
+        long start = System.nanoTime();
+        long end = start + unit.toNanos(duration);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            results.add(executor.submit(() -> {
+                client(end);
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+        long elapsed = System.nanoTime() - start;
+        for (Operation operation : operations.values()) {
+            operation.elapsed = elapsed;
+        }
+        return elapsed;
+    }
+
+    /**
+     * @return eine Zeile pro Operation mit Anzahl, Fehlern, Durchsatz und Latenz-Perzentilen.
+     */
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+            Operation operation = entry.getValue();
+            lines.add(String.format("%-8s requests=%d conflicts=%d errors=%d %.0f req/s p50=%.2fms p99=%.2fms p999=%.2fms",
+                    entry.getKey(), operation.requests.sum(), operation.conflicts.sum(), operation.errors.sum(),
+                    operation.requests.sum() / (operation.elapsed / 1_000_000_000.0),
+                    operation.latency.percentile(0.5) / 1_000_000.0,
+                    operation.latency.percentile(0.99) / 1_000_000.0,
+                    operation.latency.percentile(0.999) / 1_000_000.0));
+        }
+        return lines;
+    }
+
+    long requests(String operation) {
+        return operations.get(operation).requests.sum();
+    }
+
+    long errors(String operation) {
+        return operations.get(operation).errors.sum();
+    }
+
+    private void client(long end) throws UnsupportedEncodingException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String email = URLEncoder.encode(BookingService.customerEmail(random.nextInt(customers)), "UTF-8");
+        List<String> found = new ArrayList<>();
+        Deque<String> reserved = new ArrayDeque<>();
+        while (System.nanoTime() < end) {
+            int dice = random.nextInt(100);
+            if (dice < SEARCH_PERCENT || found.isEmpty()) {
+                String city = BookingService.CITIES[random.nextInt(BookingService.CITIES.length)];
+                String body = call("search", "GET", "/appointments?address=" + city + "&limit=10");
+                if (body != null) {
+                    found.clear();
+                    Matcher matcher = ID.matcher(body);
+                    while (matcher.find()) {
+                        found.add(matcher.group(1));
+                    }
+                }
+            } else if (dice < SEARCH_PERCENT + RESERVE_PERCENT || reserved.isEmpty()) {
+                String id = found.remove(random.nextInt(found.size()));
+                if (call("reserve", "POST", "/reservations?appointment=" + id + "&email=" + email) != null)
+                    reserved.push(id);
+            } else {
+                call("cancel", "DELETE", "/reservations?appointment=" + reserved.pop() + "&email=" + email);
+            }
+        }
+    }
+
+    /**
+     * @return den Body der Antwort bei Status 200, sonst <code>null</code>.
+     */
+    private String call(String name, String method, String path) {
+        Operation operation = operations.get(name);
+        long start = System.nanoTime();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setRequestMethod(method);
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            String body = read(in);
+            if (status == 409)
+                operation.conflicts.increment();
+            else if (status != 200)
+                operation.errors.increment();
+            return status == 200 ? body : null;
+        } catch (IOException e) {
+            operation.errors.increment();
+            return null;
+        } finally {
+            operation.latency.record(System.nanoTime() - start);
+            operation.requests.increment();
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        if (in == null)
+            return "";
+        try (InputStream stream = in) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class Operation {
+        final LongAdder requests = new LongAdder();
+        final LongAdder conflicts = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+        volatile long elapsed;
+    }
+}
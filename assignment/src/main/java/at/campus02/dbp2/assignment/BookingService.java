@@ -0,0 +1,337 @@
+package at.campus02.dbp2.assignment;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Einfacher Buchungs-Service über dem <code>{@link AppointmentRepository}</code>, basierend auf dem im JDK
+ * enthaltenen HTTP-Server. Jeder Request läuft in einem eigenen virtuellen Thread (ab Java 21, davor in einem
+ * Thread aus einem Cached Thread Pool), das Repository muss daher thread-safe sein.
+ * <p>
+ * Endpunkte:
+ * <ul>
+ *     <li><code>GET /appointments?address=graz&amp;limit=20</code> - freie Termine an einer Adresse</li>
+ *     <li><code>GET /appointments?from=2021-12-01T08:00&amp;to=2021-12-02T08:00&amp;limit=20</code> - freie Termine
+ *     in einem Zeitraum</li>
+ *     <li><code>GET /availability?provider=1&amp;day=2021-12-01</code> - freie Termine eines Providers an einem Tag</li>
+ *     <li><code>POST /reservations?appointment=42&amp;email=customer1@campus02.at</code> - Termin reservieren</li>
+ *     <li><code>DELETE /reservations?appointment=42&amp;email=customer1@campus02.at</code> - Reservierung stornieren</li>
+ * </ul>
+ * Start z.B. mit <code>gradle runBookingService</code>, Last erzeugt <code>{@link BookingLoadGenerator}</code>.
+ * <p>
+ * <code>main</code> schaltet TCP_NODELAY für den HTTP-Server ein (System Property
+ * <code>sun.net.httpserver.nodelay</code>, sofern nicht schon gesetzt). Ohne warten kleine Antworten auf das
+ * verzögerte ACK des Clients, das kostet ca. 40ms je Request. Die Property gilt für alle HTTP-Server der JVM und
+ * wird nur beim ersten Start eines Servers gelesen, wer den Service anders startet, setzt sie daher selbst
+ * (z.B. <code>-Dsun.net.httpserver.nodelay=true</code>).
+ */
+public class BookingService {
+
+    static final int DEFAULT_PORT = 8080;
+    static final int DEFAULT_LIMIT = 20;
+    static final int APPOINTMENTS_PER_PROVIDER = 10;
+    static final LocalDateTime FIRST_SLOT = LocalDateTime.of(2021, 12, 1, 8, 0);
+    static final String[] CITIES = {"Graz", "Leibnitz", "Wien", "Linz", "Salzburg", "Klagenfurt", "Leoben"};
+
+    private static final Logger LOG = Logger.getLogger(BookingService.class.getName());
+
+    private final AppointmentRepository repository;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public BookingService(AppointmentRepository repository, int port) throws IOException {
+        this.repository = repository;
+        this.executor = newRequestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/appointments", this::handleAppointments);
+        server.createContext("/reservations", this::handleReservations);
+        server.createContext("/availability", this::handleAvailability);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Startet den Service.
+     * Argumente (alle optional): <code>[port] [providers] [pooled|groupCommit|inMemory]</code>
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int providers = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        String mode = args.length > 2 ? args[2] : "pooled";
+        boolean inMemory = "inMemory".equals(mode);
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        EntityManagerFactory factory = inMemory ? null : Persistence.createEntityManagerFactory("assignment");
+        AppointmentRepository repository = inMemory
+                ? AppointmentRepositoryFactory.getInMemory()
+                : AppointmentRepositoryFactory.getCached("groupCommit".equals(mode)
+                        ? AppointmentRepositoryFactory.getGroupCommit(factory, 64, 64, 1)
+                        : AppointmentRepositoryFactory.getPooled(factory, 64), 10_000);
+        seed(repository, providers);
+        BookingService service = new BookingService(repository, port);
+        service.start();
+        LOG.info("listening on port " + service.getPort() + " with " + providers + " providers (" + mode + "), "
+                + (service.usesVirtualThreads() ? "requests run on virtual threads"
+                : "virtual threads not available on Java " + System.getProperty("java.specification.version")
+                + ", requests run on a cached thread pool"));
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.stop();
+            repository.close();
+            if (factory != null)
+                factory.close();
+        }));
+    }
+
+    /**
+     * Legt <code>providers</code> Provider mit je {@value #APPOINTMENTS_PER_PROVIDER} freien Terminen und ebenso
+     * viele Customer (<code>customer0@campus02.at</code>, ...) an.
+     */
+    static void seed(AppointmentRepository repository, int providers) {
+        List<Customer> customers = new ArrayList<>();
+        List<Provider> providerList = new ArrayList<>();
+        for (int i = 0; i < providers; i++) {
+            Customer customer = new Customer(customerEmail(i));
+            customer.setLastname("Lastname" + (i % 100));
+            customer.setFirstname("Firstname" + i);
+            customers.add(customer);
+
+            Provider provider = new Provider();
+            provider.setType(ProviderType.values()[i % ProviderType.values().length]);
+            provider.setAddress("Gasse " + i + ", " + (8000 + i % 1000) + " " + CITIES[i % CITIES.length]);
+            for (int j = 0; j < APPOINTMENTS_PER_PROVIDER; j++) {
+                Appointment appointment = new Appointment();
+                appointment.setTime(FIRST_SLOT.plusDays(j).plusMinutes(i % 600));
+                provider.getAppointments().add(appointment);
+            }
+            providerList.add(provider);
+        }
+        repository.createCustomers(customers);
+        repository.createProviders(providerList);
+    }
+
+    static String customerEmail(int i) {
+        return "customer" + i + "@campus02.at";
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return <code>true</code>, wenn die Requests in virtuellen Threads laufen (siehe
+     *         <code>{@link #newRequestExecutor()}</code>), sonst in einem Cached Thread Pool.
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreadsAvailable();
+    }
+
+    /**
+     * Executor mit einem virtuellen Thread pro Task, sofern die Java-Version das unterstützt (ab Java 21), sonst ein
+     * Cached Thread Pool. Das Projekt wird auch mit älteren Versionen gebaut, daher wird die Methode per Reflection
+     * gesucht.
+     */
+    static ExecutorService newRequestExecutor() {
+        if (virtualThreadsAvailable()) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create virtual thread executor!", e);
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    // <editor-fold desc="Handler">
+    private void handleAppointments(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, error("Method not allowed!"));
+                return;
+            }
+            Map<String, String> parameters = parameters(exchange);
+            int limit = parameters.containsKey("limit") ? Integer.parseInt(parameters.get("limit")) : DEFAULT_LIMIT;
+            List<Appointment> appointments;
+            if (parameters.containsKey("address")) {
+                appointments = repository.findAppointmentsAt(parameters.get("address"), null, limit);
+            } else {
+                LocalDateTime from = parameters.containsKey("from") ? LocalDateTime.parse(parameters.get("from")) : null;
+                LocalDateTime to = parameters.containsKey("to") ? LocalDateTime.parse(parameters.get("to")) : null;
+                appointments = repository.findAppointments(from, to, null, limit);
+            }
+            send(exchange, 200, toJson(appointments));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            send(exchange, 500, error(e.getMessage()));
+        }
+    }
+
+    private void handleAvailability(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, error("Method not allowed!"));
+                return;
+            }
+            Map<String, String> parameters = parameters(exchange);
+            if (!parameters.containsKey("provider") || !parameters.containsKey("day")) {
+                send(exchange, 400, error("Parameters 'provider' and 'day' are required!"));
+                return;
+            }
+            DayAvailability availability = repository.getAvailability(
+                    Integer.valueOf(parameters.get("provider")), LocalDate.parse(parameters.get("day")));
+            if (availability == null) {
+                send(exchange, 404, error("Provider not found!"));
+                return;
+            }
+            send(exchange, 200, toJson(availability));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            send(exchange, 500, error(e.getMessage()));
+        }
+    }
+
+    private void handleReservations(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"POST".equals(method) && !"DELETE".equals(method)) {
+                send(exchange, 405, error("Method not allowed!"));
+                return;
+            }
+            Map<String, String> parameters = parameters(exchange);
+            if (!parameters.containsKey("appointment") || !parameters.containsKey("email")) {
+                send(exchange, 400, error("Parameters 'appointment' and 'email' are required!"));
+                return;
+            }
+            // das Repository benötigt nur die ID des Appointments und die Email des Customers
+            Appointment appointment = new Appointment();
+            appointment.setId(Integer.valueOf(parameters.get("appointment")));
+            Customer customer = new Customer(parameters.get("email"));
+
+            if ("POST".equals(method)) {
+                boolean reserved = repository.reserve(appointment, customer);
+                send(exchange, reserved ? 200 : 409, "{\"reserved\":" + reserved + "}");
+            } else {
+                boolean cancelled = repository.cancel(appointment, customer);
+                send(exchange, cancelled ? 200 : 409, "{\"cancelled\":" + cancelled + "}");
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            send(exchange, 500, error(e.getMessage()));
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="Helper">
+    private static Map<String, String> parameters(HttpExchange exchange) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null)
+            return parameters;
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    static String toJson(List<Appointment> appointments) {
+        StringBuilder json = new StringBuilder("[");
+        for (Appointment appointment : appointments) {
+            if (json.length() > 1)
+                json.append(',');
+            json.append("{\"id\":").append(appointment.getId())
+                    .append(",\"time\":").append(quote(String.valueOf(appointment.getTime())));
+            if (appointment.getProvider() != null) {
+                json.append(",\"provider\":").append(appointment.getProvider().getId())
+                        .append(",\"address\":").append(quote(appointment.getProvider().getAddress()));
+            }
+            json.append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    static String toJson(DayAvailability availability) {
+        StringBuilder json = new StringBuilder("{\"provider\":").append(availability.getProviderId())
+                .append(",\"day\":").append(quote(availability.getDay().toString()))
+                .append(",\"free\":[");
+        List<Integer> ids = availability.getFreeAppointmentIds();
+        List<LocalTime> times = availability.getFreeTimes();
+        for (int i = 0; i < ids.size(); i++) {
+            if (i > 0)
+                json.append(',');
+            json.append("{\"id\":").append(ids.get(i))
+                    .append(",\"time\":").append(quote(times.get(i).toString())).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private static String quote(String value) {
+        if (value == null)
+            return "null";
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\')
+                quoted.append('\\').append(c);
+            else if (c < 0x20)
+                quoted.append(String.format("\\u%04x", (int) c));
+            else
+                quoted.append(c);
+        }
+        return quoted.append('"').toString();
+    }
+    // </editor-fold>
+}
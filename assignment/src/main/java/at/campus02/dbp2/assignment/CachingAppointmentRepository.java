@@ -0,0 +1,392 @@
+package at.campus02.dbp2.assignment;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Decorator für ein <code>{@link AppointmentRepository}</code>, der <code>read(String)</code> und
+ * <code>read(Integer)</code> über je einen begrenzten LRU-Cache (<code>{@link EntityCache}</code>) beantwortet.
+ * <p>
+ * Einträge werden bei update/delete sowie bei erfolgreichen reserve/cancel (für den Provider des Appointments)
+ * invalidiert, update/delete eines Customers invalidiert auch die Provider, deren Appointments ihn enthalten. Zusätzlich wird je Provider die Verfügbarkeit (<code>{@link #getAvailability}</code>) als Bitmap
+ * gehalten, die reserve/cancel direkt nachführen statt sie zu verwerfen.
+ * <p>
+ * Die gecachten Entities werden von allen Aufrufern gemeinsam verwendet, <code>read</code> liefert daher jeweils
+ * eine Kopie (Provider samt Appointments und deren Customern). Änderungen daran landen erst über
+ * <code>update</code> im Repository und im Cache. Ist das darunterliegende Repository thread-safe, gilt das auch
+ * für den Cache.
+ */
+public class CachingAppointmentRepository implements AppointmentRepository {
+
+    /**
+     * Geschätzter Speicherbedarf eines Eintrags in <code>availabilityOfAppointment</code> in Bytes
+     * (Knoten der ConcurrentHashMap, Integer-Schlüssel, Anteil an der Tabelle).
+     */
+    static final int AVAILABILITY_INDEX_BYTES = 32 + 16 + 8;
+
+    private final AppointmentRepository delegate;
+    private final EntityCache<String, Customer> customers;
+    private final EntityCache<Integer, Provider> providers;
+    // Appointment-ID -> Provider-ID der gecachten Provider, damit reserve/cancel den richtigen Provider
+    // invalidieren können, auch wenn das übergebene Appointment keinen Provider gesetzt hat
+    private final Map<Integer, Integer> providerOfAppointment = new ConcurrentHashMap<>();
+    // Email -> IDs der gecachten Provider, deren Appointments (als Kopie) diesen Customer enthalten
+    private final Map<String, Set<Integer>> providersOfCustomer = new ConcurrentHashMap<>();
+    // update/delete von Customern: ein gleichzeitig geladener Provider könnte den alten Stand enthalten
+    private final AtomicLong customerModifications = new AtomicLong();
+    private final EntityCache<Integer, ProviderAvailability> availabilities;
+    private final Map<Integer, ProviderAvailability> availabilityOfAppointment = new ConcurrentHashMap<>();
+    // reserve/cancel, deren Provider nicht bekannt ist: eine gleichzeitig geladene Verfügbarkeit könnte betroffen
+    // sein und wird nicht gecacht. Ist der Provider bekannt, invalidiert reserve/cancel nur dessen Eintrag, und
+    // der EntityCache verwirft eine gleichzeitig geladene Verfügbarkeit dieses Providers selbst.
+    private final AtomicLong unattributedModifications = new AtomicLong();
+
+    public CachingAppointmentRepository(AppointmentRepository delegate, int maximumSize) {
+        this.delegate = delegate;
+        this.customers = new EntityCache<>(maximumSize, null);
+        this.providers = new EntityCache<>(maximumSize, (id, provider) -> {
+            for (Appointment appointment : provider.getAppointments()) {
+                if (appointment.getId() != null)
+                    providerOfAppointment.remove(appointment.getId(), id);
+                if (appointment.getCustomer() != null) {
+                    providersOfCustomer.computeIfPresent(appointment.getCustomer().getEmail(), (email, ids) -> {
+                        ids.remove(id);
+                        return ids.isEmpty() ? null : ids;
+                    });
+                }
+            }
+        });
+        this.availabilities = new EntityCache<>(maximumSize, (id, availability) -> {
+            for (int appointmentId : availability.appointmentIds()) {
+                availabilityOfAppointment.remove(appointmentId, availability);
+            }
+        });
+    }
+
+    public CacheStatistics getCustomerCacheStatistics() {
+        return customers.statistics();
+    }
+
+    public CacheStatistics getProviderCacheStatistics() {
+        return providers.statistics();
+    }
+
+    public CacheStatistics getAvailabilityCacheStatistics() {
+        return availabilities.statistics();
+    }
+
+    // <editor-fold desc="AppointmentRepository">
+    @Override
+    public boolean create(Customer customer) {
+        return delegate.create(customer);
+    }
+
+    @Override
+    public Customer read(String email) {
+        return copyOf(customers.get(email, delegate::read));
+    }
+
+    @Override
+    public Customer update(Customer customer) {
+        try {
+            return delegate.update(customer);
+        } finally {
+            if (customer != null) {
+                customers.invalidate(customer.getEmail());
+                invalidateProvidersOf(customer);
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(Customer customer) {
+        try {
+            return delegate.delete(customer);
+        } finally {
+            if (customer != null) {
+                customers.invalidate(customer.getEmail());
+                invalidateProvidersOf(customer);
+                // Reservierungen des Customers wurden aufgehoben, die Verfügbarkeiten halten keine Customer und
+                // werden daher alle verworfen
+                availabilities.invalidateAll();
+            }
+        }
+    }
+
+    @Override
+    public boolean create(Provider provider) {
+        return delegate.create(provider);
+    }
+
+    @Override
+    public Provider read(Integer id) {
+        return copyOf(cachedProvider(id));
+    }
+
+    private Provider cachedProvider(Integer id) {
+        return providers.get(id, key -> {
+            long before = customerModifications.get();
+            Provider provider = delegate.read(key);
+            if (provider != null) {
+                for (Appointment appointment : provider.getAppointments()) {
+                    if (appointment.getId() != null)
+                        providerOfAppointment.put(appointment.getId(), key);
+                    if (appointment.getCustomer() != null)
+                        providersOfCustomer.computeIfAbsent(appointment.getCustomer().getEmail(),
+                                email -> ConcurrentHashMap.newKeySet()).add(key);
+                }
+            }
+            // Customer während des Ladens geändert: Ergebnis zurückgeben, aber nicht cachen
+            if (customerModifications.get() != before)
+                providers.invalidate(key);
+            return provider;
+        });
+    }
+
+    @Override
+    public Provider update(Provider provider) {
+        try {
+            return delegate.update(provider);
+        } finally {
+            if (provider != null) {
+                providers.invalidate(provider.getId());
+                availabilities.invalidate(provider.getId());
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(Provider provider) {
+        try {
+            return delegate.delete(provider);
+        } finally {
+            if (provider != null) {
+                providers.invalidate(provider.getId());
+                availabilities.invalidate(provider.getId());
+            }
+        }
+    }
+
+    @Override
+    public List<Boolean> createCustomers(Collection<Customer> customers) {
+        return delegate.createCustomers(customers);
+    }
+
+    @Override
+    public List<Boolean> createProviders(Collection<Provider> providers) {
+        return delegate.createProviders(providers);
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname) {
+        return delegate.findCustomersBy(lastname, firstname);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart) {
+        return delegate.findProvidersBy(type, addressPart);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart) {
+        return delegate.findAppointmentsAt(addressPart);
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to) {
+        return delegate.findAppointments(from, to);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer) {
+        return delegate.getAppointmentsFor(customer);
+    }
+
+    @Override
+    public Map<Customer, List<Appointment>> getAppointmentsForCustomers(Collection<Customer> customers) {
+        return delegate.getAppointmentsForCustomers(customers);
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname, Customer after, int limit) {
+        return delegate.findCustomersBy(lastname, firstname, after, limit);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit) {
+        return delegate.findProvidersBy(type, addressPart, after, limit);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit) {
+        return delegate.findAppointmentsAt(addressPart, after, limit);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, String fetchPlan) {
+        return delegate.findProvidersBy(type, addressPart, fetchPlan);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit,
+                                          String fetchPlan) {
+        return delegate.findProvidersBy(type, addressPart, after, limit, fetchPlan);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, String fetchPlan) {
+        return delegate.findAppointmentsAt(addressPart, fetchPlan);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit, String fetchPlan) {
+        return delegate.findAppointmentsAt(addressPart, after, limit, fetchPlan);
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to, Appointment after, int limit) {
+        return delegate.findAppointments(from, to, after, limit);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer, Appointment after, int limit) {
+        return delegate.getAppointmentsFor(customer, after, limit);
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointmentsAt(String addressPart) {
+        return delegate.streamAppointmentsAt(addressPart);
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointments(LocalDateTime from, LocalDateTime to) {
+        return delegate.streamAppointments(from, to);
+    }
+
+    @Override
+    public DayAvailability getAvailability(Integer providerId, LocalDate day) {
+        if (providerId == null || day == null)
+            return null;
+        ProviderAvailability availability = availabilities.get(providerId, key -> {
+            long before = unattributedModifications.get();
+            Provider provider = cachedProvider(key);
+            if (provider == null)
+                return null;
+            ProviderAvailability loaded = ProviderAvailability.of(provider);
+            for (int appointmentId : loaded.appointmentIds()) {
+                availabilityOfAppointment.put(appointmentId, loaded);
+            }
+            // reserve/cancel eines unbekannten Providers während des Ladens: Ergebnis zurückgeben, aber nicht cachen
+            if (unattributedModifications.get() != before)
+                availabilities.invalidate(key);
+            return loaded;
+        });
+        return availability == null ? null : availability.day(day);
+    }
+
+    @Override
+    public boolean reserve(Appointment appointment, Customer customer) {
+        boolean reserved = delegate.reserve(appointment, customer);
+        if (reserved) {
+            invalidateProviderOf(appointment);
+            updateAvailability(appointment, false);
+        }
+        return reserved;
+    }
+
+    @Override
+    public boolean cancel(Appointment appointment, Customer customer) {
+        boolean cancelled = delegate.cancel(appointment, customer);
+        if (cancelled) {
+            invalidateProviderOf(appointment);
+            updateAvailability(appointment, true);
+        }
+        return cancelled;
+    }
+
+    @Override
+    public void close() {
+        customers.invalidateAll();
+        providers.invalidateAll();
+        availabilities.invalidateAll();
+        delegate.close();
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="Kopien">
+    static Customer copyOf(Customer customer) {
+        if (customer == null)
+            return null;
+        Customer copy = new Customer(customer.getEmail());
+        copy.setLastname(customer.getLastname());
+        copy.setFirstname(customer.getFirstname());
+        return copy;
+    }
+
+    static Provider copyOf(Provider provider) {
+        if (provider == null)
+            return null;
+        Provider copy = new Provider();
+        copy.setId(provider.getId());
+        copy.setType(provider.getType());
+        copy.setAddress(provider.getAddress());
+        for (Appointment appointment : provider.getAppointments()) {
+            Appointment appointmentCopy = new Appointment();
+            appointmentCopy.setId(appointment.getId());
+            appointmentCopy.setTime(appointment.getTime());
+            appointmentCopy.setCustomer(copyOf(appointment.getCustomer()));
+            appointmentCopy.setProvider(copy);
+            appointmentCopy.setVersion(appointment.getVersion());
+            // die Kopie entspricht dem gelesenen Stand
+            appointmentCopy.clearChanged();
+            copy.getAppointments().add(appointmentCopy);
+        }
+        // ab hier schreibt die Kopie Änderungen des Aufrufers für update(Provider) mit
+        copy.clearChanges();
+        return copy;
+    }
+    // </editor-fold>
+
+    private void invalidateProvidersOf(Customer customer) {
+        customerModifications.incrementAndGet();
+        Set<Integer> ids = customer.getEmail() == null ? null : providersOfCustomer.get(customer.getEmail());
+        if (ids == null)
+            return;
+        // invalidate() entfernt die ID über den Callback wieder aus der Menge
+        for (Integer id : ids.toArray(new Integer[0])) {
+            providers.invalidate(id);
+        }
+    }
+
+    private void invalidateProviderOf(Appointment appointment) {
+        Integer providerId = providerIdOf(appointment);
+        if (providerId != null)
+            providers.invalidate(providerId);
+    }
+
+    private void updateAvailability(Appointment appointment, boolean free) {
+        ProviderAvailability availability = availabilityOfAppointment.get(appointment.getId());
+        if (availability != null && availability.setFree(appointment.getId(), free))
+            return;
+        // Appointment ist (noch) nicht in der Bitmap, z.B. durch ein update(Provider) an einem anderen Repository
+        // oder weil die Verfügbarkeit gerade geladen wird
+        Integer providerId = providerIdOf(appointment);
+        if (providerId != null)
+            availabilities.invalidate(providerId);
+        else
+            unattributedModifications.incrementAndGet();
+    }
+
+    private Integer providerIdOf(Appointment appointment) {
+        if (appointment.getProvider() != null && appointment.getProvider().getId() != null)
+            return appointment.getProvider().getId();
+        return providerOfAppointment.get(appointment.getId());
+    }
+}
@@ -1,31 +1,67 @@
 package at.campus02.dbp2.assignment;
 
+import javax.persistence.*;
+import java.util.Locale;
 import java.util.Objects;
 
+@Entity
+@Table(indexes = @Index(name = "IDX_CUSTOMER_NAME", columnList = "LASTNAME_NORMALIZED, FIRSTNAME_NORMALIZED"))
 public class Customer {
 
+    @Id
+    private String email;
+    private String lastname;
+    private String firstname;
+
+    // Namen in Kleinbuchstaben für die Suche ohne Berücksichtigung der Groß-/Kleinschreibung:
+    // "lower(c.lastname) = ..." kann keinen Index verwenden, "c.lastnameNormalized = ..." schon.
+    @Column(name = "LASTNAME_NORMALIZED")
+    private String lastnameNormalized;
+    @Column(name = "FIRSTNAME_NORMALIZED")
+    private String firstnameNormalized;
+
     public Customer() {
     }
 
     public Customer(String email) {
+        this.email = email;
     }
 
     public String getEmail() {
-        return null;
+        return email;
     }
 
     public String getFirstname() {
-        return null;
+        return firstname;
     }
 
     public void setFirstname(String firstname) {
+        this.firstname = firstname;
+        this.firstnameNormalized = normalize(firstname);
     }
 
     public String getLastname() {
-        return null;
+        return lastname;
     }
 
     public void setLastname(String lastname) {
+        this.lastname = lastname;
+        this.lastnameNormalized = normalize(lastname);
+    }
+
+    /**
+     * Normalisierte Form eines Namens, wie sie in der Datenbank für die Suche gespeichert wird.
+     */
+    static String normalize(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+    }
+
+    // falls die Namen nicht über die Setter gesetzt wurden (z.B. per merge eines anders erzeugten Objekts)
+    @PrePersist
+    @PreUpdate
+    void updateNormalizedNames() {
+        lastnameNormalized = normalize(lastname);
+        firstnameNormalized = normalize(firstname);
     }
 
     @Override
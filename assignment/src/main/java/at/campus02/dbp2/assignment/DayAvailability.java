@@ -0,0 +1,129 @@
+package at.campus02.dbp2.assignment;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verfügbarkeit der Termine eines Providers an einem Tag.
+ * <p>
+ * Die Termine des Tages bilden das Raster (sortiert nach Uhrzeit, auf Minuten genau), ob ein Termin noch frei
+ * ist steht als Bit in einem <code>long[]</code>: für 64 Termine reicht ein einziges Maschinenwort, Abfragen wie
+ * "wie viele Termine sind noch frei" sind damit ein <code>Long.bitCount</code> statt geladener Entities.
+ * <p>
+ * Instanzen sind unveränderliche Schnappschüsse.
+ */
+public final class DayAvailability {
+
+    private final Integer providerId;
+    private final LocalDate day;
+    // Minute des Tages und ID je Termin, beide in der Reihenfolge des Rasters
+    private final short[] minutes;
+    private final int[] appointmentIds;
+    private final long[] free;
+
+    DayAvailability(Integer providerId, LocalDate day, short[] minutes, int[] appointmentIds, long[] free) {
+        this.providerId = providerId;
+        this.day = day;
+        this.minutes = minutes;
+        this.appointmentIds = appointmentIds;
+        this.free = free;
+    }
+
+    static int words(int slots) {
+        return (slots + 63) >>> 6;
+    }
+
+    public Integer getProviderId() {
+        return providerId;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public int getSlotCount() {
+        return minutes.length;
+    }
+
+    public int getFreeCount() {
+        int count = 0;
+        for (long word : free) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @return <code>true</code>, falls zu dieser Uhrzeit (auf Minuten genau) mindestens ein Termin frei ist.
+     */
+    public boolean isFree(LocalTime time) {
+        int minute = time.getHour() * 60 + time.getMinute();
+        for (int i = 0; i < minutes.length; i++) {
+            if (minutes[i] == minute && isFree(i))
+                return true;
+        }
+        return false;
+    }
+
+    public List<LocalTime> getFreeTimes() {
+        List<LocalTime> times = new ArrayList<>();
+        for (int i = nextFree(0); i >= 0; i = nextFree(i + 1)) {
+            times.add(LocalTime.of(minutes[i] / 60, minutes[i] % 60));
+        }
+        return times;
+    }
+
+    /**
+     * @return die IDs der freien Termine (z.B. für <code>{@link AppointmentRepository#reserve}</code>).
+     */
+    public List<Integer> getFreeAppointmentIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = nextFree(0); i >= 0; i = nextFree(i + 1)) {
+            ids.add(appointmentIds[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * @return geschätzter Speicherbedarf dieser Instanz in Bytes (Objekt-Header und Arrays).
+     */
+    long footprint() {
+        return 32 + arrayBytes(minutes.length, 2) + arrayBytes(appointmentIds.length, 4) + arrayBytes(free.length, 8);
+    }
+
+    // Array auf einer 64-Bit-JVM mit Compressed Oops: 16 Bytes Header, auf 8 Bytes aufgerundet
+    static long arrayBytes(long length, int elementBytes) {
+        return (16 + length * elementBytes + 7) & ~7L;
+    }
+
+    private boolean isFree(int index) {
+        return (free[index >>> 6] & (1L << index)) != 0;
+    }
+
+    // Index des nächsten freien Termins ab "from" oder -1
+    private int nextFree(int from) {
+        int word = from >>> 6;
+        if (word >= free.length)
+            return -1;
+        long bits = free[word] & (-1L << from);
+        while (true) {
+            if (bits != 0)
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            if (++word == free.length)
+                return -1;
+            bits = free[word];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DayAvailability{" +
+                "providerId=" + providerId +
+                ", day=" + day +
+                ", slots=" + getSlotCount() +
+                ", free=" + getFreeCount() +
+                '}';
+    }
+}
@@ -0,0 +1,132 @@
+package at.campus02.dbp2.assignment;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Begrenzter, thread-safe Read-Through Cache mit LRU-Verdrängung.
+ * <p>
+ * Die Einträge sind auf mehrere Segmente verteilt, jedes Segment ist eine eigene LRU-Liste mit eigenem Lock.
+ * Dadurch blockieren sich Threads nur, wenn sie gleichzeitig auf dasselbe Segment zugreifen. Geladen wird
+ * außerhalb des Locks, damit ein langsamer Datenbankzugriff nicht das ganze Segment blockiert.
+ */
+class EntityCache<K, V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final BiConsumer<K, V> onRemoval;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maximumSize maximale Anzahl an Einträgen (wird gleichmäßig auf die Segmente aufgeteilt).
+     * @param onRemoval wird für jeden verdrängten oder invalidierten Eintrag aufgerufen (unter dem Segment-Lock).
+     */
+    // ein Array der inneren Klasse Segment lässt sich nur als Raw Type anlegen
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    EntityCache(int maximumSize, BiConsumer<K, V> onRemoval) {
+        if (maximumSize <= 0)
+            throw new IllegalArgumentException("Cache size must be positive!");
+        this.onRemoval = onRemoval;
+        int segmentCount = Math.min(SEGMENTS, maximumSize);
+        segments = new EntityCache.Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // Rest der Division auf die ersten Segmente verteilen, damit die Summe genau maximumSize ist
+            segments[i] = new Segment(maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0));
+        }
+    }
+
+    /**
+     * Liefert den Wert aus dem Cache oder lädt ihn über <code>loader</code>.
+     * <code>null</code> wird nicht gecacht, damit später angelegte Entities ohne Invalidierung gefunden werden.
+     */
+    V get(K key, Function<K, V> loader) {
+        if (key == null)
+            return null;
+        Segment segment = segmentFor(key);
+        long version;
+        synchronized (segment) {
+            V cached = segment.entries.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            version = segment.version;
+        }
+        misses.increment();
+        V loaded = loader.apply(key);
+        if (loaded != null) {
+            synchronized (segment) {
+                // wurde während des Ladens invalidiert, ist der geladene Wert eventuell schon veraltet
+                if (segment.version == version)
+                    segment.entries.put(key, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    void invalidate(K key) {
+        if (key == null)
+            return;
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.version++;
+            V removed = segment.entries.remove(key);
+            if (removed != null && onRemoval != null)
+                onRemoval.accept(key, removed);
+        }
+    }
+
+    void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.version++;
+                if (onRemoval != null)
+                    segment.entries.forEach(onRemoval);
+                segment.entries.clear();
+            }
+        }
+    }
+
+    CacheStatistics statistics() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    private Segment segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[Math.floorMod(hash, segments.length)];
+    }
+
+    private class Segment {
+        // wird bei jeder Invalidierung erhöht, siehe get()
+        long version;
+        final LinkedHashMap<K, V> entries;
+
+        Segment(int capacity) {
+            entries = new LinkedHashMap<K, V>(capacity * 4 / 3 + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    if (size() <= capacity)
+                        return false;
+                    evictions.increment();
+                    if (onRemoval != null)
+                        onRemoval.accept(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+            };
+        }
+    }
+}
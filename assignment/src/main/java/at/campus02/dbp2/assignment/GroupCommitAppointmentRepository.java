@@ -0,0 +1,401 @@
+package at.campus02.dbp2.assignment;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Decorator für ein thread-safe <code>{@link AppointmentRepository}</code>, der <code>reserve</code> und
+ * <code>cancel</code> per Group Commit ausführt.
+ * <p>
+ * Statt jede Reservierung in einer eigenen Transaktion zu committen (bei Derby jeweils ein Flush des
+ * Transaktions-Logs), werden gleichzeitige Aufrufe in einer Queue gesammelt und von einem eigenen Thread
+ * gemeinsam in einer Transaktion ausgeführt - sobald <code>maxBatchSize</code> Aufrufe vorliegen oder
+ * <code>maxDelay</code> seit dem ersten Aufruf der Gruppe vergangen ist. Mit <code>maxDelay</code> 0 wird nicht
+ * gewartet, eine Gruppe enthält dann alle Aufrufe, die während des vorherigen Commits eingetroffen sind.
+ * <p>
+ * Jeder Aufrufer blockiert bis zum Commit seiner Gruppe und bekommt sein eigenes Ergebnis (<code>false</code> bei
+ * einem Konflikt). Schlägt die gemeinsame Transaktion fehl, werden die Aufrufe der Gruppe einzeln wiederholt.
+ * Alle anderen Methoden werden direkt an das übergebene Repository weitergereicht.
+ */
+public class GroupCommitAppointmentRepository implements AppointmentRepository {
+
+    private static final Request SHUTDOWN = new Request(null, null, null);
+
+    private final AppointmentRepository delegate;
+    private final EntityManager manager;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder operations = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * @param factory EntityManagerFactory für den EntityManager des Commit-Threads.
+     * @param delegate thread-safe Repository für alle anderen Methoden.
+     * @param maxBatchSize maximale Anzahl an reserve/cancel je Transaktion.
+     * @param maxDelay maximale Wartezeit auf weitere Aufrufe, bevor eine Gruppe committet wird.
+     * @param unit Einheit von <code>maxDelay</code>.
+     */
+    public GroupCommitAppointmentRepository(EntityManagerFactory factory, AppointmentRepository delegate,
+                                            int maxBatchSize, long maxDelay, TimeUnit unit) {
+        if (maxBatchSize <= 0)
+            throw new IllegalArgumentException("Batch size must be positive!");
+        if (maxDelay < 0)
+            throw new IllegalArgumentException("Delay must not be negative!");
+        this.delegate = delegate;
+        this.manager = factory.createEntityManager();
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.writer = new Thread(this::writeLoop, "group-commit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return Anzahl der bisher committeten Transaktionen (Gruppen).
+     */
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    /**
+     * @return Anzahl der bisher ausgeführten reserve/cancel-Aufrufe.
+     */
+    public long getOperations() {
+        return operations.sum();
+    }
+
+    // <editor-fold desc="Group Commit">
+    private static class Request {
+        final String queryName;
+        final Integer appointmentId;
+        final String email;
+        final CompletableFuture<Customer> result = new CompletableFuture<>();
+
+        Request(String queryName, Integer appointmentId, String email) {
+            this.queryName = queryName;
+            this.appointmentId = appointmentId;
+            this.email = email;
+        }
+    }
+
+    /**
+     * Stellt den Aufruf in die Queue und wartet auf den Commit seiner Gruppe.
+     * Bei Erfolg bekommt das Appointment den neuen Customer (bzw. keinen) und die neue Version.
+     * @return der Customer, falls das Update erfolgreich war, ansonsten <code>null</code>.
+     */
+    private Customer submit(String queryName, Appointment appointment, String email) {
+        if (closed)
+            throw new IllegalStateException("Repository is closed!");
+        Request request = new Request(queryName, appointment.getId(), email);
+        queue.offer(request);
+        // close() kann zwischen Prüfung und offer() gelaufen sein, dann verarbeitet der Commit-Thread nichts mehr
+        if (closed && !writer.isAlive())
+            failPending();
+        try {
+            Customer customer = request.result.join();
+            if (customer != null) {
+                appointment.setCustomer("Appointment.reserve".equals(queryName) ? customer : null);
+                appointment.setVersion(AppointmentRepositoryJpa.nextVersion(appointment));
+                appointment.clearChanged();
+            }
+            return customer;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    private void writeLoop() {
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0)
+                        continue;
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            int shutdown = batch.indexOf(SHUTDOWN);
+            if (shutdown >= 0) {
+                // Aufrufe nach dem Shutdown-Marker bleiben für failPending() liegen
+                for (Request request : batch.subList(shutdown, batch.size())) {
+                    if (request != SHUTDOWN)
+                        request.result.completeExceptionally(new IllegalStateException("Repository is closed!"));
+                }
+                batch.subList(shutdown, batch.size()).clear();
+                running = false;
+            }
+            if (!batch.isEmpty())
+                execute(batch);
+            batch.clear();
+        }
+    }
+
+    private void execute(List<Request> batch) {
+        Customer[] results = new Customer[batch.size()];
+        try {
+            manager.getTransaction().begin();
+            Map<String, Customer> customers = customers(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                Request request = batch.get(i);
+                Customer customer = customers.get(request.email);
+                // in der Gruppe werden die Updates nacheinander ausgeführt, ein zweites reserve desselben
+                // Appointments ändert also wie bisher 0 Zeilen und bekommt "false"
+                if (customer != null && manager.createNamedQuery(request.queryName)
+                        .setParameter("id", request.appointmentId)
+                        .setParameter("customer", customer)
+                        .executeUpdate() == 1) {
+                    results[i] = customer;
+                }
+            }
+            manager.getTransaction().commit();
+        } catch (RuntimeException e) {
+            if (manager.getTransaction().isActive())
+                manager.getTransaction().rollback();
+            manager.clear();
+            if (batch.size() == 1) {
+                batch.get(0).result.completeExceptionally(e);
+                return;
+            }
+            // ein einzelner fehlerhafter Aufruf soll nicht die ganze Gruppe scheitern lassen
+            for (Request request : batch) {
+                execute(Collections.singletonList(request));
+            }
+            return;
+        }
+        // Bulk-Updates umgehen Persistence Context und Shared Cache, nur die geänderten Appointments verwerfen
+        manager.clear();
+        for (int i = 0; i < batch.size(); i++) {
+            if (results[i] != null)
+                manager.getEntityManagerFactory().getCache().evict(Appointment.class, batch.get(i).appointmentId);
+        }
+        commits.increment();
+        operations.add(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(results[i]);
+        }
+    }
+
+    private Map<String, Customer> customers(List<Request> batch) {
+        Set<String> emails = new HashSet<>();
+        for (Request request : batch) {
+            emails.add(request.email);
+        }
+        Map<String, Customer> customers = new HashMap<>();
+        for (Customer customer : manager.createQuery(
+                "select c from Customer c where c.email in :emails", Customer.class)
+                .setParameter("emails", emails).getResultList()) {
+            customers.put(customer.getEmail(), customer);
+        }
+        return customers;
+    }
+
+    private void failPending() {
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.completeExceptionally(new IllegalStateException("Repository is closed!"));
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="AppointmentRepository">
+    @Override
+    public boolean create(Customer customer) {
+        return delegate.create(customer);
+    }
+
+    @Override
+    public Customer read(String email) {
+        return delegate.read(email);
+    }
+
+    @Override
+    public Customer update(Customer customer) {
+        return delegate.update(customer);
+    }
+
+    @Override
+    public boolean delete(Customer customer) {
+        return delegate.delete(customer);
+    }
+
+    @Override
+    public boolean create(Provider provider) {
+        return delegate.create(provider);
+    }
+
+    @Override
+    public Provider read(Integer id) {
+        return delegate.read(id);
+    }
+
+    @Override
+    public Provider update(Provider provider) {
+        return delegate.update(provider);
+    }
+
+    @Override
+    public boolean delete(Provider provider) {
+        return delegate.delete(provider);
+    }
+
+    @Override
+    public List<Boolean> createCustomers(Collection<Customer> customers) {
+        return delegate.createCustomers(customers);
+    }
+
+    @Override
+    public List<Boolean> createProviders(Collection<Provider> providers) {
+        return delegate.createProviders(providers);
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname) {
+        return delegate.findCustomersBy(lastname, firstname);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart) {
+        return delegate.findProvidersBy(type, addressPart);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart) {
+        return delegate.findAppointmentsAt(addressPart);
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to) {
+        return delegate.findAppointments(from, to);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer) {
+        return delegate.getAppointmentsFor(customer);
+    }
+
+    @Override
+    public Map<Customer, List<Appointment>> getAppointmentsForCustomers(Collection<Customer> customers) {
+        return delegate.getAppointmentsForCustomers(customers);
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname, Customer after, int limit) {
+        return delegate.findCustomersBy(lastname, firstname, after, limit);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit) {
+        return delegate.findProvidersBy(type, addressPart, after, limit);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit) {
+        return delegate.findAppointmentsAt(addressPart, after, limit);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, String fetchPlan) {
+        return delegate.findProvidersBy(type, addressPart, fetchPlan);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit,
+                                          String fetchPlan) {
+        return delegate.findProvidersBy(type, addressPart, after, limit, fetchPlan);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, String fetchPlan) {
+        return delegate.findAppointmentsAt(addressPart, fetchPlan);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit, String fetchPlan) {
+        return delegate.findAppointmentsAt(addressPart, after, limit, fetchPlan);
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to, Appointment after, int limit) {
+        return delegate.findAppointments(from, to, after, limit);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer, Appointment after, int limit) {
+        return delegate.getAppointmentsFor(customer, after, limit);
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointmentsAt(String addressPart) {
+        return delegate.streamAppointmentsAt(addressPart);
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointments(LocalDateTime from, LocalDateTime to) {
+        return delegate.streamAppointments(from, to);
+    }
+
+    @Override
+    public DayAvailability getAvailability(Integer providerId, LocalDate day) {
+        return delegate.getAvailability(providerId, day);
+    }
+
+    @Override
+    public boolean reserve(Appointment appointment, Customer customer) {
+        if (customer == null || customer.getEmail() == null || appointment == null || appointment.getId() == null)
+            return false;
+        return submit("Appointment.reserve", appointment, customer.getEmail()) != null;
+    }
+
+    @Override
+    public boolean cancel(Appointment appointment, Customer customer) {
+        if (customer == null || customer.getEmail() == null || appointment == null || appointment.getId() == null)
+            return false;
+        return submit("Appointment.cancel", appointment, customer.getEmail()) != null;
+    }
+
+    /**
+     * Bereits eingereihte Aufrufe werden noch committet, danach werden der Commit-Thread beendet und das
+     * darunterliegende Repository geschlossen.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        queue.offer(SHUTDOWN);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failPending();
+        if (manager.isOpen())
+            manager.close();
+        delegate.close();
+    }
+    // </editor-fold>
+}
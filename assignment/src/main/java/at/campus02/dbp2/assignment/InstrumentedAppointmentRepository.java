@@ -0,0 +1,281 @@
+package at.campus02.dbp2.assignment;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Decorator für ein beliebiges <code>{@link AppointmentRepository}</code>, der für jede Methode die Anzahl der
+ * Aufrufe, der Fehler (geworfene Exceptions), ein Latenz-Histogramm und die Anzahl der ausgeführten
+ * SQL-Statements erfasst.
+ * <p>
+ * Die Messwerte sind über <code>{@link #snapshot()}</code> und per JMX (<code>{@link RepositoryMetricsMXBean}</code>)
+ * abrufbar. SQL-Statements werden nur gezählt, wenn der <code>{@link SqlStatementCounter}</code> an der
+ * EntityManagerFactory registriert ist (siehe
+ * <code>{@link AppointmentRepositoryFactory#getInstrumented}</code>).
+ */
+public class InstrumentedAppointmentRepository implements AppointmentRepository, RepositoryMetricsMXBean {
+
+    private final AppointmentRepository delegate;
+    private final Map<String, MethodMetrics> metrics = new ConcurrentHashMap<>();
+    private final ObjectName objectName;
+
+    /**
+     * @param delegate das Repository, dessen Aufrufe gemessen werden.
+     * @param name Name, unter dem die Messwerte per JMX veröffentlicht werden, oder <code>null</code>, falls
+     *             keine JMX-Registrierung gewünscht ist.
+     */
+    public InstrumentedAppointmentRepository(AppointmentRepository delegate, String name) {
+        this.delegate = delegate;
+        this.objectName = name == null ? null : register(name);
+    }
+
+    /**
+     * @return die aktuellen Messwerte je Methode, sortiert nach Methodenname.
+     */
+    public Map<String, MethodStatistics> snapshot() {
+        Map<String, MethodStatistics> snapshot = new TreeMap<>();
+        for (Map.Entry<String, MethodMetrics> entry : metrics.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().toStatistics());
+        }
+        return snapshot;
+    }
+
+    @Override
+    public Map<String, MethodStatistics> getStatistics() {
+        return snapshot();
+    }
+
+    @Override
+    public void reset() {
+        metrics.clear();
+    }
+
+    // <editor-fold desc="AppointmentRepository">
+    @Override
+    public boolean create(Customer customer) {
+        return measure("create(Customer)", () -> delegate.create(customer));
+    }
+
+    @Override
+    public Customer read(String email) {
+        return measure("read(String)", () -> delegate.read(email));
+    }
+
+    @Override
+    public Customer update(Customer customer) {
+        return measure("update(Customer)", () -> delegate.update(customer));
+    }
+
+    @Override
+    public boolean delete(Customer customer) {
+        return measure("delete(Customer)", () -> delegate.delete(customer));
+    }
+
+    @Override
+    public boolean create(Provider provider) {
+        return measure("create(Provider)", () -> delegate.create(provider));
+    }
+
+    @Override
+    public Provider read(Integer id) {
+        return measure("read(Integer)", () -> delegate.read(id));
+    }
+
+    @Override
+    public Provider update(Provider provider) {
+        return measure("update(Provider)", () -> delegate.update(provider));
+    }
+
+    @Override
+    public boolean delete(Provider provider) {
+        return measure("delete(Provider)", () -> delegate.delete(provider));
+    }
+
+    @Override
+    public List<Boolean> createCustomers(Collection<Customer> customers) {
+        return measure("createCustomers", () -> delegate.createCustomers(customers));
+    }
+
+    @Override
+    public List<Boolean> createProviders(Collection<Provider> providers) {
+        return measure("createProviders", () -> delegate.createProviders(providers));
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname) {
+        return measure("findCustomersBy", () -> delegate.findCustomersBy(lastname, firstname));
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart) {
+        return measure("findProvidersBy", () -> delegate.findProvidersBy(type, addressPart));
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart) {
+        return measure("findAppointmentsAt", () -> delegate.findAppointmentsAt(addressPart));
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to) {
+        return measure("findAppointments", () -> delegate.findAppointments(from, to));
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer) {
+        return measure("getAppointmentsFor", () -> delegate.getAppointmentsFor(customer));
+    }
+
+    @Override
+    public Map<Customer, List<Appointment>> getAppointmentsForCustomers(Collection<Customer> customers) {
+        return measure("getAppointmentsForCustomers", () -> delegate.getAppointmentsForCustomers(customers));
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname, Customer after, int limit) {
+        return measure("findCustomersBy(page)", () -> delegate.findCustomersBy(lastname, firstname, after, limit));
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit) {
+        return measure("findProvidersBy(page)", () -> delegate.findProvidersBy(type, addressPart, after, limit));
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit) {
+        return measure("findAppointmentsAt(page)", () -> delegate.findAppointmentsAt(addressPart, after, limit));
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, String fetchPlan) {
+        return measure("findProvidersBy(fetchPlan)", () -> delegate.findProvidersBy(type, addressPart, fetchPlan));
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit,
+                                          String fetchPlan) {
+        return measure("findProvidersBy(page, fetchPlan)",
+                () -> delegate.findProvidersBy(type, addressPart, after, limit, fetchPlan));
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, String fetchPlan) {
+        return measure("findAppointmentsAt(fetchPlan)", () -> delegate.findAppointmentsAt(addressPart, fetchPlan));
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit, String fetchPlan) {
+        return measure("findAppointmentsAt(page, fetchPlan)",
+                () -> delegate.findAppointmentsAt(addressPart, after, limit, fetchPlan));
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to, Appointment after, int limit) {
+        return measure("findAppointments(page)", () -> delegate.findAppointments(from, to, after, limit));
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer, Appointment after, int limit) {
+        return measure("getAppointmentsFor(page)", () -> delegate.getAppointmentsFor(customer, after, limit));
+    }
+
+    // bei Streams wird nur das Erzeugen gemessen, das Nachladen passiert erst beim Konsumieren
+    @Override
+    public Stream<Appointment> streamAppointmentsAt(String addressPart) {
+        return measure("streamAppointmentsAt", () -> delegate.streamAppointmentsAt(addressPart));
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointments(LocalDateTime from, LocalDateTime to) {
+        return measure("streamAppointments", () -> delegate.streamAppointments(from, to));
+    }
+
+    @Override
+    public DayAvailability getAvailability(Integer providerId, LocalDate day) {
+        return measure("getAvailability", () -> delegate.getAvailability(providerId, day));
+    }
+
+    @Override
+    public boolean reserve(Appointment appointment, Customer customer) {
+        return measure("reserve", () -> delegate.reserve(appointment, customer));
+    }
+
+    @Override
+    public boolean cancel(Appointment appointment, Customer customer) {
+        return measure("cancel", () -> delegate.cancel(appointment, customer));
+    }
+
+    @Override
+    public void close() {
+        measure("close", () -> {
+            delegate.close();
+            return null;
+        });
+        unregister();
+    }
+    // </editor-fold>
+
+    private <T> T measure(String method, Supplier<T> call) {
+        MethodMetrics methodMetrics = metrics.computeIfAbsent(method, m -> new MethodMetrics());
+        long statementsBefore = SqlStatementCounter.current();
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            methodMetrics.errors.increment();
+            throw e;
+        } finally {
+            methodMetrics.latency.record(System.nanoTime() - start);
+            methodMetrics.sqlStatements.add(SqlStatementCounter.current() - statementsBefore);
+            methodMetrics.calls.increment();
+        }
+    }
+
+    private ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("at.campus02.dbp2.assignment:type=AppointmentRepository,name="
+                    + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register repository metrics.", e);
+        }
+    }
+
+    private void unregister() {
+        if (objectName == null)
+            return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister repository metrics.", e);
+        }
+    }
+
+    private static class MethodMetrics {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder sqlStatements = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        MethodStatistics toStatistics() {
+            return new MethodStatistics(calls.sum(), errors.sum(),
+                    latency.percentile(0.5), latency.percentile(0.99), latency.percentile(0.999),
+                    sqlStatements.sum());
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package at.campus02.dbp2.assignment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static at.campus02.dbp2.assignment.JournalEntry.*;
+
+/**
+ * Binäres Append-Only Journal aller Änderungen an Customern, Providern und Reservierungen (siehe
+ * <code>{@link JournalingAppointmentRepository}</code>), z.B. für Audits, zum Aufbau von In-Memory Indizes ohne
+ * die ganze Datenbank abzufragen oder für nachgelagerte Consumer.
+ * <p>
+ * Die Einträge (Aufbau siehe <code>{@link JournalEntry}</code>) werden in Segment-Dateien fester Größe geschrieben,
+ * die per Memory Mapping eingebunden sind: ein Eintrag ist damit nur ein Kopieren in den Speicher, das Schreiben auf
+ * die Platte übernimmt das Betriebssystem. Passt ein Eintrag nicht mehr in das aktuelle Segment, wird ein neues
+ * begonnen, dessen Dateiname die Sequenznummer des ersten Eintrags enthält. Das Ende der Daten in einem Segment ist
+ * eine Länge von 0 (neue Dateien sind mit 0 gefüllt). Jeder Eintrag trägt eine CRC32-Prüfsumme, ein beim Absturz
+ * nur teilweise geschriebener Eintrag am Ende wird beim Öffnen erkannt und verworfen.
+ * <p>
+ * Es darf immer nur eine Instanz je Verzeichnis schreiben, Schreiben ist innerhalb der Instanz synchronisiert.
+ * <code>{@link #replay}</code> liest über eigene Mappings und kann gleichzeitig zum Schreiben verwendet werden.
+ * Dauerhaft (auch bei einem Absturz des Betriebssystems) sind Einträge erst nach <code>{@link #force()}</code>
+ * bzw. <code>{@link #close()}</code>.
+ */
+public final class Journal implements AutoCloseable {
+
+    /**
+     * Standardgröße eines Segments: 64 MiB, bei einer Reservierung mit etwa 60 Bytes rund 1 Million Einträge.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    private static final String PREFIX_NAME = "journal-";
+    private static final String SUFFIX_NAME = ".seg";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final CRC32 crc = new CRC32();
+    // Zwischenpuffer für den Eintrag, bevor Länge und Prüfsumme bekannt sind
+    private ByteBuffer scratch = ByteBuffer.allocate(1024);
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long nextSequence;
+    private boolean closed;
+
+    /**
+     * Öffnet bzw. erzeugt ein Journal mit der Standardgröße für Segmente.
+     * @param directory Verzeichnis der Segment-Dateien, wird bei Bedarf angelegt.
+     */
+    public Journal(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Öffnet bzw. erzeugt ein Journal. Bei einem bestehenden Journal wird nach dem letzten gültigen Eintrag
+     * weitergeschrieben.
+     * @param directory Verzeichnis der Segment-Dateien, wird bei Bedarf angelegt.
+     * @param segmentSize Größe neuer Segmente in Bytes (bestehende Segmente behalten ihre Größe).
+     */
+    public Journal(Path directory, int segmentSize) {
+        if (segmentSize < 1024)
+            throw new IllegalArgumentException("Segment size must be at least 1024 bytes!");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            List<Path> segments = getSegments();
+            if (segments.isEmpty())
+                open(1);
+            else
+                recover(segments.get(segments.size() - 1));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return die Sequenznummer, die der nächste Eintrag bekommt.
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * @return alle Segment-Dateien in der Reihenfolge der Einträge, z.B. zum Archivieren.
+     */
+    public List<Path> getSegments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files
+                    .filter(path -> path.getFileName().toString().startsWith(PREFIX_NAME))
+                    .filter(path -> path.getFileName().toString().endsWith(SUFFIX_NAME))
+                    .collect(Collectors.toList());
+            // die Sequenznummer im Namen hat eine feste Breite, die Namen sind also sortierbar
+            Collections.sort(segments);
+            return segments;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // <editor-fold desc="Schreiben">
+    public long customerCreated(Customer customer) {
+        return appendCustomer(Type.CUSTOMER_CREATED, customer);
+    }
+
+    public long customerUpdated(Customer customer) {
+        return appendCustomer(Type.CUSTOMER_UPDATED, customer);
+    }
+
+    public synchronized long customerDeleted(String email) {
+        begin(Type.CUSTOMER_DELETED);
+        putString(email);
+        return commit();
+    }
+
+    public long providerCreated(Provider provider) {
+        return appendProvider(Type.PROVIDER_CREATED, provider);
+    }
+
+    public long providerUpdated(Provider provider) {
+        return appendProvider(Type.PROVIDER_UPDATED, provider);
+    }
+
+    public synchronized long providerDeleted(int providerId) {
+        begin(Type.PROVIDER_DELETED);
+        scratch.putInt(providerId);
+        return commit();
+    }
+
+    public long reserved(int appointmentId, String email) {
+        return appendReservation(Type.RESERVED, appointmentId, email);
+    }
+
+    public long cancelled(int appointmentId, String email) {
+        return appendReservation(Type.CANCELLED, appointmentId, email);
+    }
+
+    private synchronized long appendCustomer(Type type, Customer customer) {
+        begin(type);
+        putString(customer.getEmail());
+        putString(customer.getLastname());
+        putString(customer.getFirstname());
+        return commit();
+    }
+
+    private synchronized long appendProvider(Type type, Provider provider) {
+        begin(type);
+        scratch.putInt(provider.getId());
+        ensure(1);
+        scratch.put(provider.getType() == null ? -1 : (byte) provider.getType().ordinal());
+        putString(provider.getAddress());
+        ensure(4);
+        scratch.putInt(provider.getAppointments().size());
+        for (Appointment appointment : provider.getAppointments()) {
+            ensure(4 + 8);
+            scratch.putInt(appointment.getId());
+            scratch.putLong(appointment.getTime() == null ? Long.MIN_VALUE : fromTime(appointment.getTime()));
+            putString(appointment.getCustomer() == null ? null : appointment.getCustomer().getEmail());
+        }
+        return commit();
+    }
+
+    private synchronized long appendReservation(Type type, int appointmentId, String email) {
+        begin(type);
+        scratch.putInt(appointmentId);
+        putString(email);
+        return commit();
+    }
+
+    private void begin(Type type) {
+        if (closed)
+            throw new IllegalStateException("Journal is closed!");
+        scratch.clear();
+        scratch.putLong(nextSequence);
+        scratch.putLong(System.currentTimeMillis());
+        scratch.put((byte) type.ordinal());
+        ensure(4);
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            ensure(2);
+            scratch.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE)
+            throw new IllegalArgumentException("String is too long for the journal!");
+        ensure(2 + bytes.length);
+        scratch.putShort((short) bytes.length);
+        scratch.put(bytes);
+    }
+
+    private void ensure(int bytes) {
+        if (scratch.remaining() >= bytes)
+            return;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + bytes));
+        scratch.flip();
+        larger.put(scratch);
+        scratch = larger;
+    }
+
+    // kopiert den Eintrag ins Segment, die Länge zuletzt: erst damit ist der Eintrag für Leser sichtbar
+    private long commit() {
+        int length = scratch.position();
+        if (PREFIX + length > segment.capacity())
+            throw new IllegalArgumentException("Entry does not fit into a segment!");
+        try {
+            if (PREFIX + length > segment.remaining())
+                open(nextSequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        crc.reset();
+        crc.update(scratch.array(), 0, length);
+        int start = segment.position();
+        segment.position(start + PREFIX);
+        scratch.flip();
+        segment.put(scratch);
+        segment.putInt(start + CRC_OFFSET, (int) crc.getValue());
+        segment.putInt(start + LENGTH_OFFSET, length);
+        return nextSequence++;
+    }
+
+    /**
+     * Schreibt alle Einträge dauerhaft auf die Platte.
+     */
+    public synchronized void force() {
+        if (!closed)
+            segment.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        force();
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="Segmente">
+    private void open(long firstSequence) throws IOException {
+        if (segment != null) {
+            segment.force();
+            channel.close();
+        }
+        Path path = directory.resolve(String.format("%s%019d%s", PREFIX_NAME, firstSequence, SUFFIX_NAME));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        nextSequence = firstSequence;
+    }
+
+    // sucht im letzten Segment das Ende der gültigen Einträge
+    private void recover(Path last) throws IOException {
+        channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        nextSequence = firstSequenceOf(last);
+        ByteBuffer view = segment.duplicate();
+        int position = 0;
+        int length;
+        while ((length = validLength(segment, view, position)) > 0) {
+            nextSequence = segment.getLong(position + SEQUENCE_OFFSET) + 1;
+            position += PREFIX + length;
+        }
+        if (length < 0) {
+            // unvollständiger Eintrag: überschreiben, damit keine Reste davon als Eintrag gelesen werden
+            int end = Math.min(segment.capacity(), position + PREFIX - length);
+            for (int i = position; i < end; i++) {
+                segment.put(i, (byte) 0);
+            }
+        }
+        segment.position(position);
+    }
+
+    private static long firstSequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX_NAME.length(), name.length() - SUFFIX_NAME.length()));
+    }
+
+    /**
+     * @return die Länge des Eintrags an <code>position</code>, 0 am Ende der Daten bzw. die negative Länge
+     * (mindestens -1) bei einem ungültigen Eintrag.
+     */
+    private static int validLength(ByteBuffer buffer, ByteBuffer view, int position) {
+        if (buffer.capacity() - position < PREFIX)
+            return 0;
+        int length = buffer.getInt(position + LENGTH_OFFSET);
+        if (length == 0)
+            return 0;
+        if (length < PAYLOAD_OFFSET - PREFIX || length > buffer.capacity() - position - PREFIX)
+            return -1;
+        CRC32 crc = new CRC32();
+        view.limit(position + PREFIX + length).position(position + PREFIX);
+        crc.update(view);
+        view.limit(view.capacity());
+        return (int) crc.getValue() == buffer.getInt(position + CRC_OFFSET) ? length : -length;
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="Replay">
+    /**
+     * Übergibt alle Einträge ab einer Sequenznummer der Reihe nach an einen Consumer. Während des Replays
+     * geschriebene Einträge werden übergeben, sofern sie beim Erreichen ihrer Position schon vollständig sind - mit
+     * der Sequenznummer des letzten übergebenen Eintrags + 1 kann später fortgesetzt werden.
+     * @param fromSequence Sequenznummer des ersten Eintrags (1 für das ganze Journal).
+     * @param consumer erhält jeden Eintrag. Das übergebene Objekt wird wiederverwendet und ist nur während des
+     *                 Aufrufs gültig.
+     * @return Anzahl der übergebenen Einträge.
+     */
+    public long replay(long fromSequence, Consumer<JournalEntry> consumer) {
+        List<Path> segments = getSegments();
+        // Segmente vor dem, das fromSequence enthält, überspringen
+        int first = 0;
+        for (int i = 1; i < segments.size(); i++) {
+            if (firstSequenceOf(segments.get(i)) <= fromSequence)
+                first = i;
+        }
+        JournalEntry entry = new JournalEntry();
+        CRC32 crc = new CRC32();
+        long count = 0;
+        for (int i = first; i < segments.size(); i++) {
+            MappedByteBuffer buffer;
+            try (FileChannel reader = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                // das Mapping bleibt nach dem Schließen des Channels gültig
+                buffer = reader.map(FileChannel.MapMode.READ_ONLY, 0, reader.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ByteBuffer view = buffer.duplicate();
+            ByteBuffer cursor = buffer.duplicate();
+            int position = 0;
+            while (buffer.capacity() - position >= PREFIX) {
+                int length = buffer.getInt(position + LENGTH_OFFSET);
+                if (length == 0)
+                    break;
+                if (length < PAYLOAD_OFFSET - PREFIX || length > buffer.capacity() - position - PREFIX)
+                    return count;
+                crc.reset();
+                view.limit(position + PREFIX + length).position(position + PREFIX);
+                crc.update(view);
+                view.limit(view.capacity());
+                // ungültig bedeutet: gerade in Arbeit bzw. beim Absturz unvollständig geblieben
+                if ((int) crc.getValue() != buffer.getInt(position + CRC_OFFSET))
+                    return count;
+                if (buffer.getLong(position + SEQUENCE_OFFSET) >= fromSequence) {
+                    entry.wrap(buffer, cursor, position);
+                    consumer.accept(entry);
+                    count++;
+                }
+                position += PREFIX + length;
+            }
+        }
+        return count;
+    }
+    // </editor-fold>
+
+    @Override
+    public String toString() {
+        return "Journal{" +
+                "directory=" + directory +
+                ", nextSequence=" + getNextSequence() +
+                '}';
+    }
+}
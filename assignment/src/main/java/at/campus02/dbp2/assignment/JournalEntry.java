@@ -0,0 +1,196 @@
+package at.campus02.dbp2.assignment;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Ein Eintrag im <code>{@link Journal}</code>, wie er beim Replay an den Consumer übergeben wird.
+ * <p>
+ * Damit ein Replay ohne Objekterzeugung je Eintrag auskommt, ist das Objekt nur eine Sicht auf den gemappten
+ * Speicher: es wird für den nächsten Eintrag wiederverwendet und ist daher nur während des Aufrufs des Consumers
+ * gültig. Felder werden erst beim Aufruf des jeweiligen Getters dekodiert.
+ * <p>
+ * Aufbau eines Eintrags (Big Endian):
+ * <pre>
+ * int   Länge ab Sequenznummer
+ * int   CRC32 ab Sequenznummer
+ * long  Sequenznummer
+ * long  Zeitpunkt (Millisekunden seit 1970)
+ * byte  Typ
+ * ...   Inhalt je Typ, Strings als short Länge (-1 für null) und UTF-8 Bytes
+ * </pre>
+ */
+public final class JournalEntry {
+
+    /**
+     * Art der Änderung. Der Inhalt der Einträge:
+     * <ul>
+     *     <li>CUSTOMER_CREATED, CUSTOMER_UPDATED: email, lastname, firstname</li>
+     *     <li>CUSTOMER_DELETED: email - die Reservierungen des Customers sind damit ebenfalls aufgehoben</li>
+     *     <li>PROVIDER_CREATED, PROVIDER_UPDATED: id, type, address und alle Appointments (id, time, email)</li>
+     *     <li>PROVIDER_DELETED: id - samt aller Appointments des Providers</li>
+     *     <li>RESERVED, CANCELLED: Appointment id, email</li>
+     * </ul>
+     */
+    public enum Type {
+        CUSTOMER_CREATED, CUSTOMER_UPDATED, CUSTOMER_DELETED,
+        PROVIDER_CREATED, PROVIDER_UPDATED, PROVIDER_DELETED,
+        RESERVED, CANCELLED
+    }
+
+    private static final Type[] TYPES = Type.values();
+    private static final ProviderType[] PROVIDER_TYPES = ProviderType.values();
+
+    static final int LENGTH_OFFSET = 0;
+    static final int CRC_OFFSET = 4;
+    static final int SEQUENCE_OFFSET = 8;
+    static final int TIMESTAMP_OFFSET = 16;
+    static final int TYPE_OFFSET = 24;
+    static final int PAYLOAD_OFFSET = 25;
+    // Länge und CRC stehen vor dem geprüften Bereich
+    static final int PREFIX = 8;
+
+    private ByteBuffer buffer;
+    private int offset;
+    // für relative Zugriffe beim Dekodieren (Java 8 kennt keine absoluten Bulk-Zugriffe)
+    private ByteBuffer cursor;
+
+    JournalEntry() {
+    }
+
+    void wrap(ByteBuffer buffer, ByteBuffer cursor, int offset) {
+        this.buffer = buffer;
+        this.cursor = cursor;
+        this.offset = offset;
+    }
+
+    /**
+     * @return fortlaufende Nummer des Eintrags im Journal (beginnend bei 1).
+     */
+    public long getSequence() {
+        return buffer.getLong(offset + SEQUENCE_OFFSET);
+    }
+
+    /**
+     * @return Zeitpunkt der Aufzeichnung in Millisekunden seit 1970.
+     */
+    public long getTimestamp() {
+        return buffer.getLong(offset + TIMESTAMP_OFFSET);
+    }
+
+    public Type getType() {
+        return TYPES[buffer.get(offset + TYPE_OFFSET)];
+    }
+
+    /**
+     * @return die Email des Customers (alle CUSTOMER_ Einträge) bzw. des reservierenden Customers
+     * (RESERVED, CANCELLED).
+     */
+    public String getEmail() {
+        switch (getType()) {
+            case CUSTOMER_CREATED:
+            case CUSTOMER_UPDATED:
+            case CUSTOMER_DELETED:
+                cursor.position(offset + PAYLOAD_OFFSET);
+                return readString(cursor);
+            case RESERVED:
+            case CANCELLED:
+                cursor.position(offset + PAYLOAD_OFFSET + 4);
+                return readString(cursor);
+            default:
+                throw new IllegalStateException("Entry " + getType() + " has no email!");
+        }
+    }
+
+    /**
+     * @return die ID des Appointments (RESERVED, CANCELLED).
+     */
+    public int getAppointmentId() {
+        Type type = getType();
+        if (type != Type.RESERVED && type != Type.CANCELLED)
+            throw new IllegalStateException("Entry " + type + " has no appointment id!");
+        return buffer.getInt(offset + PAYLOAD_OFFSET);
+    }
+
+    /**
+     * @return die ID des Providers (alle PROVIDER_ Einträge).
+     */
+    public int getProviderId() {
+        Type type = getType();
+        if (type != Type.PROVIDER_CREATED && type != Type.PROVIDER_UPDATED && type != Type.PROVIDER_DELETED)
+            throw new IllegalStateException("Entry " + type + " has no provider id!");
+        return buffer.getInt(offset + PAYLOAD_OFFSET);
+    }
+
+    /**
+     * @return ein neuer Customer mit dem aufgezeichneten Zustand (CUSTOMER_CREATED, CUSTOMER_UPDATED).
+     */
+    public Customer toCustomer() {
+        Type type = getType();
+        if (type != Type.CUSTOMER_CREATED && type != Type.CUSTOMER_UPDATED)
+            throw new IllegalStateException("Entry " + type + " has no customer!");
+        cursor.position(offset + PAYLOAD_OFFSET);
+        Customer customer = new Customer(readString(cursor));
+        customer.setLastname(readString(cursor));
+        customer.setFirstname(readString(cursor));
+        return customer;
+    }
+
+    /**
+     * @return ein neuer Provider mit dem aufgezeichneten Zustand samt Appointments (PROVIDER_CREATED,
+     * PROVIDER_UPDATED). Reservierte Appointments referenzieren einen Customer, von dem nur die Email gesetzt ist.
+     */
+    public Provider toProvider() {
+        Type type = getType();
+        if (type != Type.PROVIDER_CREATED && type != Type.PROVIDER_UPDATED)
+            throw new IllegalStateException("Entry " + type + " has no provider!");
+        cursor.position(offset + PAYLOAD_OFFSET);
+        Provider provider = new Provider();
+        provider.setId(cursor.getInt());
+        byte providerType = cursor.get();
+        provider.setType(providerType < 0 ? null : PROVIDER_TYPES[providerType]);
+        provider.setAddress(readString(cursor));
+        int appointments = cursor.getInt();
+        for (int i = 0; i < appointments; i++) {
+            Appointment appointment = new Appointment();
+            appointment.setId(cursor.getInt());
+            long time = cursor.getLong();
+            appointment.setTime(time == Long.MIN_VALUE ? null : toTime(time));
+            String email = readString(cursor);
+            appointment.setCustomer(email == null ? null : new Customer(email));
+            appointment.setProvider(provider);
+            provider.getAppointments().add(appointment);
+        }
+        return provider;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalEntry{" +
+                "sequence=" + getSequence() +
+                ", type=" + getType() +
+                '}';
+    }
+
+    // <editor-fold desc="Kodierung">
+    static String readString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long fromTime(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static LocalDateTime toTime(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,318 @@
+package at.campus02.dbp2.assignment;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Decorator für ein <code>{@link AppointmentRepository}</code>, der jede erfolgreiche Änderung (create, update und
+ * delete von Customern und Providern, reserve, cancel) nach dem Commit in ein <code>{@link Journal}</code>
+ * schreibt. Aufgezeichnet wird der Zustand, den das Repository zurückliefert bzw. übernommen hat.
+ * <p>
+ * Damit ein Replay dieselbe Reihenfolge ergibt wie in der Datenbank, wird jede Änderung samt Eintrag im Journal
+ * unter einer Sperre ausgeführt: reserve/cancel und Änderungen an Customern sperren nur das Appointment bzw. den
+ * Customer (Lock Striping) und laufen sonst parallel, Änderungen an Providern (selten, können aber Appointments samt
+ * Reservierungen ändern) sperren alle anderen Änderungen. Lesende Methoden werden direkt weitergereicht.
+ * <p>
+ * Ist das darunterliegende Repository thread-safe, ist es auch dieser Decorator.
+ */
+public class JournalingAppointmentRepository implements AppointmentRepository {
+
+    // Anzahl der Sperren für Appointments und Customer, Zweierpotenz
+    private static final int STRIPES = 64;
+
+    private final AppointmentRepository delegate;
+    private final Journal journal;
+    private final ReadWriteLock providerLock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    /**
+     * @param delegate das Repository, dessen Änderungen aufgezeichnet werden.
+     * @param journal das Journal, wird mit dem Repository geschlossen.
+     */
+    public JournalingAppointmentRepository(AppointmentRepository delegate, Journal journal) {
+        this.delegate = delegate;
+        this.journal = journal;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    // <editor-fold desc="Sperren">
+    private static int stripe(Object key) {
+        if (key == null)
+            return 0;
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    // Änderung an einzelnen Appointments bzw. Customern: nur gegen Änderungen an Providern gesperrt
+    private <T> T locked(Object first, Object second, Supplier<T> change) {
+        // immer in derselben Reihenfolge sperren, sonst droht ein Deadlock
+        int a = Math.min(stripe(first), stripe(second));
+        int b = Math.max(stripe(first), stripe(second));
+        providerLock.readLock().lock();
+        stripes[a].lock();
+        if (b != a)
+            stripes[b].lock();
+        try {
+            return change.get();
+        } finally {
+            if (b != a)
+                stripes[b].unlock();
+            stripes[a].unlock();
+            providerLock.readLock().unlock();
+        }
+    }
+
+    private <T> T exclusive(Supplier<T> change) {
+        providerLock.writeLock().lock();
+        try {
+            return change.get();
+        } finally {
+            providerLock.writeLock().unlock();
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="Änderungen">
+    @Override
+    public boolean create(Customer customer) {
+        return locked(emailOf(customer), null, () -> {
+            boolean created = delegate.create(customer);
+            if (created)
+                journal.customerCreated(customer);
+            return created;
+        });
+    }
+
+    @Override
+    public Customer update(Customer customer) {
+        return locked(emailOf(customer), null, () -> {
+            Customer updated = delegate.update(customer);
+            if (updated != null)
+                journal.customerUpdated(updated);
+            return updated;
+        });
+    }
+
+    @Override
+    public boolean delete(Customer customer) {
+        return locked(emailOf(customer), null, () -> {
+            boolean deleted = delegate.delete(customer);
+            if (deleted)
+                journal.customerDeleted(customer.getEmail());
+            return deleted;
+        });
+    }
+
+    @Override
+    public boolean create(Provider provider) {
+        return exclusive(() -> {
+            boolean created = delegate.create(provider);
+            if (created)
+                journal.providerCreated(provider);
+            return created;
+        });
+    }
+
+    @Override
+    public Provider update(Provider provider) {
+        return exclusive(() -> {
+            Provider updated = delegate.update(provider);
+            if (updated != null)
+                journal.providerUpdated(updated);
+            return updated;
+        });
+    }
+
+    @Override
+    public boolean delete(Provider provider) {
+        return exclusive(() -> {
+            boolean deleted = delegate.delete(provider);
+            if (deleted)
+                journal.providerDeleted(provider.getId());
+            return deleted;
+        });
+    }
+
+    // neue Customer sind vor dem Eintrag im Journal für andere Threads noch nicht sichtbar, daher exklusiv
+    @Override
+    public List<Boolean> createCustomers(Collection<Customer> customers) {
+        return exclusive(() -> {
+            List<Boolean> results = delegate.createCustomers(customers);
+            Iterator<Customer> customer = customers == null ? null : customers.iterator();
+            for (Boolean created : results) {
+                Customer next = customer.next();
+                if (created)
+                    journal.customerCreated(next);
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public List<Boolean> createProviders(Collection<Provider> providers) {
+        return exclusive(() -> {
+            List<Boolean> results = delegate.createProviders(providers);
+            Iterator<Provider> provider = providers == null ? null : providers.iterator();
+            for (Boolean created : results) {
+                Provider next = provider.next();
+                if (created)
+                    journal.providerCreated(next);
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public boolean reserve(Appointment appointment, Customer customer) {
+        Integer id = appointment == null ? null : appointment.getId();
+        return locked(id, emailOf(customer), () -> {
+            boolean reserved = delegate.reserve(appointment, customer);
+            if (reserved)
+                journal.reserved(id, customer.getEmail());
+            return reserved;
+        });
+    }
+
+    @Override
+    public boolean cancel(Appointment appointment, Customer customer) {
+        Integer id = appointment == null ? null : appointment.getId();
+        return locked(id, emailOf(customer), () -> {
+            boolean cancelled = delegate.cancel(appointment, customer);
+            if (cancelled)
+                journal.cancelled(id, customer.getEmail());
+            return cancelled;
+        });
+    }
+
+    private static String emailOf(Customer customer) {
+        return customer == null ? null : customer.getEmail();
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="Lesen">
+    @Override
+    public Customer read(String email) {
+        return delegate.read(email);
+    }
+
+    @Override
+    public Provider read(Integer id) {
+        return delegate.read(id);
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname) {
+        return delegate.findCustomersBy(lastname, firstname);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart) {
+        return delegate.findProvidersBy(type, addressPart);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart) {
+        return delegate.findAppointmentsAt(addressPart);
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to) {
+        return delegate.findAppointments(from, to);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer) {
+        return delegate.getAppointmentsFor(customer);
+    }
+
+    @Override
+    public Map<Customer, List<Appointment>> getAppointmentsForCustomers(Collection<Customer> customers) {
+        return delegate.getAppointmentsForCustomers(customers);
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname, Customer after, int limit) {
+        return delegate.findCustomersBy(lastname, firstname, after, limit);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit) {
+        return delegate.findProvidersBy(type, addressPart, after, limit);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit) {
+        return delegate.findAppointmentsAt(addressPart, after, limit);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, String fetchPlan) {
+        return delegate.findProvidersBy(type, addressPart, fetchPlan);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit,
+                                          String fetchPlan) {
+        return delegate.findProvidersBy(type, addressPart, after, limit, fetchPlan);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, String fetchPlan) {
+        return delegate.findAppointmentsAt(addressPart, fetchPlan);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit, String fetchPlan) {
+        return delegate.findAppointmentsAt(addressPart, after, limit, fetchPlan);
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to, Appointment after, int limit) {
+        return delegate.findAppointments(from, to, after, limit);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer, Appointment after, int limit) {
+        return delegate.getAppointmentsFor(customer, after, limit);
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointmentsAt(String addressPart) {
+        return delegate.streamAppointmentsAt(addressPart);
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointments(LocalDateTime from, LocalDateTime to) {
+        return delegate.streamAppointments(from, to);
+    }
+
+    @Override
+    public DayAvailability getAvailability(Integer providerId, LocalDate day) {
+        return delegate.getAvailability(providerId, day);
+    }
+    // </editor-fold>
+
+    /**
+     * Schließt das darunterliegende Repository und das Journal.
+     */
+    @Override
+    public void close() {
+        delegate.close();
+        journal.close();
+    }
+}
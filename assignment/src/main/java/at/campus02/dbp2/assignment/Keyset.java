@@ -0,0 +1,63 @@
+package at.campus02.dbp2.assignment;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sortierungen und Hilfsmethoden für die seitenweisen ("keyset") Varianten der Such-Methoden.
+ * <p>
+ * Eine Seite wird nicht über einen Offset, sondern über das letzte Element der vorherigen Seite definiert:
+ * es werden die ersten <code>limit</code> Elemente geliefert, die in der jeweiligen Sortierung nach diesem
+ * Element kommen.
+ */
+final class Keyset {
+
+    static final Comparator<Customer> CUSTOMER_ORDER =
+            Comparator.comparing(Customer::getEmail, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    static final Comparator<Provider> PROVIDER_ORDER =
+            Comparator.comparing(Provider::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    static final Comparator<Appointment> APPOINTMENT_ORDER =
+            Comparator.comparing(Appointment::getTime, Comparator.nullsLast(Comparator.naturalOrder()))
+                    .thenComparing(Appointment::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private Keyset() {
+    }
+
+    static void checkLimit(int limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("Limit must be positive!");
+    }
+
+    /**
+     * Berechnet eine Seite aus einem bereits vollständig geladenen Ergebnis. Statt alle Treffer je Seite zu
+     * sortieren, werden nur die kleinsten <code>limit</code> Elemente nach <code>after</code> behalten
+     * (O(n log limit)).
+     * @param all alle Treffer (in beliebiger Reihenfolge).
+     * @param order die Sortierung der Seiten.
+     * @param after letztes Element der vorherigen Seite oder <code>null</code> für die erste Seite.
+     * @param limit maximale Anzahl an Elementen der Seite.
+     * @return die sortierte Seite.
+     */
+    static <T> List<T> page(List<T> all, Comparator<T> order, T after, int limit) {
+        checkLimit(limit);
+        // das größte behaltene Element steht oben und wird als erstes verdrängt
+        PriorityQueue<T> smallest = new PriorityQueue<>(order.reversed());
+        for (T element : all) {
+            if (after != null && order.compare(element, after) <= 0)
+                continue;
+            if (smallest.size() < limit) {
+                smallest.add(element);
+            } else if (order.compare(element, smallest.peek()) < 0) {
+                smallest.poll();
+                smallest.add(element);
+            }
+        }
+        List<T> page = new ArrayList<>(smallest);
+        page.sort(order);
+        return page;
+    }
+}
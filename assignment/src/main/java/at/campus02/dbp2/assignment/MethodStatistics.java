@@ -0,0 +1,64 @@
+package at.campus02.dbp2.assignment;
+
+/**
+ * Unveränderlicher Schnappschuss der Messwerte einer Methode von <code>{@link InstrumentedAppointmentRepository}</code>.
+ * Latenzen werden in Nanosekunden angegeben.
+ */
+public class MethodStatistics {
+
+    private final long calls;
+    private final long errors;
+    private final long p50;
+    private final long p99;
+    private final long p999;
+    private final long sqlStatements;
+
+    public MethodStatistics(long calls, long errors, long p50, long p99, long p999, long sqlStatements) {
+        this.calls = calls;
+        this.errors = errors;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.sqlStatements = sqlStatements;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getSqlStatements() {
+        return sqlStatements;
+    }
+
+    public double getSqlStatementsPerCall() {
+        return calls == 0 ? 0 : (double) sqlStatements / calls;
+    }
+
+    @Override
+    public String toString() {
+        return "MethodStatistics{" +
+                "calls=" + calls +
+                ", errors=" + errors +
+                ", p50=" + p50 +
+                ", p99=" + p99 +
+                ", p999=" + p999 +
+                ", sqlStatements=" + sqlStatements +
+                '}';
+    }
+}
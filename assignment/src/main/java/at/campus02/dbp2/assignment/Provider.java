@@ -1,31 +1,211 @@
 package at.campus02.dbp2.assignment;
 
-import java.util.List;
-import java.util.Objects;
+import javax.persistence.*;
+import java.util.*;
 
+@NamedEntityGraph(
+        name = Provider.WITH_APPOINTMENTS,
+        attributeNodes = @NamedAttributeNode("appointments"))
+
+@Entity
 public class Provider {
 
+    /**
+     * Fetch-Plan: Provider samt seiner Appointments (z.B. für die Anzeige der Termine eines Suchergebnisses).
+     */
+    public static final String WITH_APPOINTMENTS = "Provider.withAppointments";
+
+    // IDs werden blockweise aus der Sequenz-Tabelle reserviert, damit Bulk-Inserts nicht je Zeile nachfragen
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "ProviderIds")
+    @TableGenerator(name = "ProviderIds", allocationSize = AppointmentRepositoryJpa.BATCH_SIZE)
+    private Integer id;
+    private ProviderType type;
+    private String address;
+
+    @OneToMany(mappedBy = "provider", cascade = CascadeType.ALL, orphanRemoval = true)
+    private final List<Appointment> appointments = new ArrayList<>();
+
+    // Trigramme der Adresse als Seitentabelle für die Adresssuche (siehe AppointmentRepositoryJpa), JPA pflegt sie
+    // beim Anlegen, Ändern und Löschen mit; ohne JPA (z.B. im In-Memory Repository) bleibt das Feld leer
+    @ElementCollection
+    @CollectionTable(name = "PROVIDER_TRIGRAM", joinColumns = @JoinColumn(name = "PROVIDER_ID"),
+            indexes = @Index(name = "IDX_PROVIDER_TRIGRAM", columnList = "GRAM, PROVIDER_ID"))
+    @Column(name = "GRAM", length = TrigramIndex.GRAM_LENGTH)
+    private Set<String> addressTrigrams;
+    // Adresse, zu der addressTrigrams gespeichert sind
+    @Transient
+    private String indexedAddress;
+
+    // seit dem Laden bzw. dem letzten Schreiben hinzugefügte, entfernte und geänderte Appointments, damit
+    // update(Provider) die Collection weder laden noch durchsuchen muss; null, solange der Provider weder geladen
+    // noch gespeichert wurde (z.B. im In-Memory Repository, dort wird nichts mitgeschrieben)
+    @Transient
+    private Set<Appointment> added;
+    @Transient
+    private Set<Appointment> removed;
+    @Transient
+    private Set<Appointment> changed;
+    @Transient
+    private final List<Appointment> trackedAppointments = new TrackedAppointments();
+
     public Integer getId() {
-        return null;
+        return id;
+    }
+
+    // nur für Implementierungen ohne JPA, die IDs selbst vergeben müssen
+    void setId(Integer id) {
+        this.id = id;
     }
 
     public ProviderType getType() {
-        return null;
+        return type;
     }
 
     public void setType(ProviderType type) {
+        this.type = type;
     }
 
     public String getAddress() {
-        return null;
+        return address;
     }
 
     public void setAddress(String address) {
+        this.address = address;
     }
 
+    /**
+     * Die Liste schreibt Änderungen mit (siehe <code>{@link #getAddedAppointments()}</code> und
+     * <code>{@link #getRemovedAppointments()}</code>), ein bereits enthaltenes neues Appointment wird kein zweites
+     * Mal eingefügt.
+     */
     public List<Appointment> getAppointments() {
-        return null;
+        return trackedAppointments;
+    }
+
+    // <editor-fold desc="Trigramme der Adresse">
+    // eine geladene Collection wird nur bei geänderter Adresse angefasst (und erst dann gelesen)
+    @PrePersist
+    @PreUpdate
+    private void indexAddress() {
+        if (addressTrigrams != null && Objects.equals(address, indexedAddress))
+            return;
+        Set<String> grams = TrigramIndex.trigrams(address);
+        if (addressTrigrams == null) {
+            addressTrigrams = new HashSet<>(grams);
+        } else {
+            addressTrigrams.retainAll(grams);
+            addressTrigrams.addAll(grams);
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="Change Tracking">
+    Set<Appointment> getAddedAppointments() {
+        return added == null ? Collections.emptySet() : added;
+    }
+
+    Set<Appointment> getRemovedAppointments() {
+        return removed == null ? Collections.emptySet() : removed;
+    }
+
+    Set<Appointment> getChangedAppointments() {
+        return changed == null ? Collections.emptySet() : changed;
+    }
+
+    /**
+     * Der Stand entspricht (wieder) der Datenbank: vergisst alle mitgeschriebenen Änderungen und beginnt, neue
+     * mitzuschreiben. Wird nach dem Laden und Speichern von JPA aufgerufen, sonst vom Repository.
+     */
+    @PostLoad
+    @PostPersist
+    @PostUpdate
+    void clearChanges() {
+        indexedAddress = address;
+        // Appointments werden nur über ihre Identität erkannt, equals/hashCode ändern sich mit Zeit und Customer
+        added = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        changed = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    // von Appointment.setTime()/setCustomer() aufgerufen
+    void appointmentChanged(Appointment appointment) {
+        if (changed != null)
+            changed.add(appointment);
+    }
+
+    // von Appointment.clearChanged() aufgerufen
+    void appointmentUnchanged(Appointment appointment) {
+        if (changed != null)
+            changed.remove(appointment);
+    }
+
+    private void appointmentAdded(Appointment appointment) {
+        if (added != null && !removed.remove(appointment))
+            added.add(appointment);
+    }
+
+    private void appointmentRemoved(Appointment appointment) {
+        if (removed != null && !added.remove(appointment))
+            removed.add(appointment);
+    }
+
+    // Sicht auf die gemappte Liste (die JPA beim Laden durch eine eigene ersetzt), die Änderungen mitschreibt
+    private class TrackedAppointments extends AbstractList<Appointment> implements RandomAccess {
+
+        @Override
+        public Appointment get(int index) {
+            return appointments.get(index);
+        }
+
+        @Override
+        public int size() {
+            return appointments.size();
+        }
+
+        @Override
+        public boolean add(Appointment appointment) {
+            if (added != null && added.contains(appointment))
+                return false;
+            add(size(), appointment);
+            return true;
+        }
+
+        @Override
+        public void add(int index, Appointment appointment) {
+            if (added != null && added.contains(appointment))
+                return;
+            appointments.add(index, appointment);
+            modCount++;
+            appointmentAdded(appointment);
+        }
+
+        @Override
+        public Appointment set(int index, Appointment appointment) {
+            Appointment previous = appointments.set(index, appointment);
+            appointmentRemoved(previous);
+            appointmentAdded(appointment);
+            return previous;
+        }
+
+        @Override
+        public Appointment remove(int index) {
+            Appointment previous = appointments.remove(index);
+            modCount++;
+            appointmentRemoved(previous);
+            return previous;
+        }
+
+        @Override
+        public void clear() {
+            for (Appointment appointment : appointments) {
+                appointmentRemoved(appointment);
+            }
+            appointments.clear();
+            modCount++;
+        }
     }
+    // </editor-fold>
 
     @Override
     public boolean equals(Object o) {
@@ -0,0 +1,137 @@
+package at.campus02.dbp2.assignment;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Frei/gebucht-Bitmaps aller Tage eines Providers, aktualisierbar je Appointment.
+ * Grundlage für <code>{@link DayAvailability}</code>, thread-safe.
+ */
+final class ProviderAvailability {
+
+    private static final Comparator<Object[]> SLOT_ORDER =
+            Comparator.<Object[], LocalDateTime>comparing(row -> (LocalDateTime) row[1])
+                    .thenComparing(row -> (Integer) row[0]);
+
+    private final Integer providerId;
+    private final Map<LocalDate, Day> days = new HashMap<>();
+    // Index nach Appointment-ID: IDs aufsteigend sortiert, dazu Tag und Position im Raster (binäre Suche statt
+    // eines HashMap-Eintrags samt Integer und Slot-Objekt je Appointment)
+    private int[] ids;
+    private Day[] slotDays;
+    private int[] slotIndexes;
+
+    private ProviderAvailability(Integer providerId) {
+        this.providerId = providerId;
+    }
+
+    static ProviderAvailability of(Provider provider) {
+        List<Object[]> rows = new ArrayList<>();
+        for (Appointment appointment : provider.getAppointments()) {
+            rows.add(new Object[]{appointment.getId(), appointment.getTime(), appointment.getCustomer()});
+        }
+        return of(provider.getId(), rows);
+    }
+
+    /**
+     * @param rows je Appointment <code>{id, time, customer}</code>, ein Appointment ist frei, wenn
+     *             <code>customer</code> <code>null</code> ist.
+     */
+    static ProviderAvailability of(Integer providerId, Collection<Object[]> rows) {
+        ProviderAvailability availability = new ProviderAvailability(providerId);
+        Map<LocalDate, List<Object[]>> byDay = new HashMap<>();
+        for (Object[] row : rows) {
+            if (row[0] != null && row[1] != null)
+                byDay.computeIfAbsent(((LocalDateTime) row[1]).toLocalDate(), d -> new ArrayList<>()).add(row);
+        }
+        // je Appointment {id, Day, Position im Raster}
+        List<Object[]> slots = new ArrayList<>();
+        for (Map.Entry<LocalDate, List<Object[]>> entry : byDay.entrySet()) {
+            List<Object[]> appointments = entry.getValue();
+            appointments.sort(SLOT_ORDER);
+            Day day = new Day(appointments.size());
+            for (int i = 0; i < appointments.size(); i++) {
+                Object[] row = appointments.get(i);
+                LocalDateTime time = (LocalDateTime) row[1];
+                day.minutes[i] = (short) (time.getHour() * 60 + time.getMinute());
+                day.appointmentIds[i] = (Integer) row[0];
+                if (row[2] == null)
+                    day.free[i >>> 6] |= 1L << i;
+                slots.add(new Object[]{row[0], day, i});
+            }
+            availability.days.put(entry.getKey(), day);
+        }
+        slots.sort(Comparator.comparing(slot -> (Integer) slot[0]));
+        availability.ids = new int[slots.size()];
+        availability.slotDays = new Day[slots.size()];
+        availability.slotIndexes = new int[slots.size()];
+        for (int i = 0; i < slots.size(); i++) {
+            availability.ids[i] = (Integer) slots.get(i)[0];
+            availability.slotDays[i] = (Day) slots.get(i)[1];
+            availability.slotIndexes[i] = (Integer) slots.get(i)[2];
+        }
+        return availability;
+    }
+
+    /**
+     * @return die IDs aller Appointments, aufsteigend sortiert (nicht verändern).
+     */
+    int[] appointmentIds() {
+        return ids;
+    }
+
+    synchronized DayAvailability day(LocalDate date) {
+        Day day = days.get(date);
+        if (day == null)
+            return new DayAvailability(providerId, date, new short[0], new int[0], new long[0]);
+        // Raster ist unveränderlich und kann geteilt werden, nur die Bits werden kopiert
+        return new DayAvailability(providerId, date, day.minutes, day.appointmentIds, day.free.clone());
+    }
+
+    /**
+     * @return <code>false</code>, falls das Appointment nicht zu diesem Provider gehört.
+     */
+    synchronized boolean setFree(Integer appointmentId, boolean free) {
+        int slot = appointmentId == null ? -1 : Arrays.binarySearch(ids, appointmentId);
+        if (slot < 0)
+            return false;
+        Day day = slotDays[slot];
+        int index = slotIndexes[slot];
+        if (free)
+            day.free[index >>> 6] |= 1L << index;
+        else
+            day.free[index >>> 6] &= ~(1L << index);
+        return true;
+    }
+
+    /**
+     * @return geschätzter Speicherbedarf in Bytes: Objekt, Tage (HashMap samt Einträgen und Schlüsseln), Raster
+     * und Bits je Tag sowie der Index nach ID.
+     */
+    long footprint() {
+        // Objekt mit 5 Referenzen, HashMap-Objekt mit Tabelle (Load Factor 0.75, höchstens doppelt so groß)
+        long bytes = 32 + 48 + DayAvailability.arrayBytes(2L * days.size(), 4);
+        for (Day day : days.values()) {
+            // HashMap-Eintrag, LocalDate-Schlüssel und Day-Objekt
+            bytes += 32 + 24 + 24;
+            bytes += DayAvailability.arrayBytes(day.minutes.length, 2)
+                    + DayAvailability.arrayBytes(day.appointmentIds.length, 4)
+                    + DayAvailability.arrayBytes(day.free.length, 8);
+        }
+        return bytes + DayAvailability.arrayBytes(ids.length, 4) + DayAvailability.arrayBytes(slotDays.length, 4)
+                + DayAvailability.arrayBytes(slotIndexes.length, 4);
+    }
+
+    private static class Day {
+        final short[] minutes;
+        final int[] appointmentIds;
+        final long[] free;
+
+        Day(int size) {
+            minutes = new short[size];
+            appointmentIds = new int[size];
+            free = new long[DayAvailability.words(size)];
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package at.campus02.dbp2.assignment;
+
+import java.util.Map;
+
+/**
+ * JMX-Schnittstelle von <code>{@link InstrumentedAppointmentRepository}</code>.
+ */
+public interface RepositoryMetricsMXBean {
+
+    /**
+     * @return die aktuellen Messwerte je Methode (Key ist die Signatur, z.B. <code>"reserve"</code>).
+     */
+    Map<String, MethodStatistics> getStatistics();
+
+    /**
+     * Setzt alle Messwerte zurück.
+     */
+    void reset();
+}
@@ -0,0 +1,344 @@
+package at.campus02.dbp2.assignment;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Zustand eines <code>{@link AppointmentRepositoryInMemory}</code> (Customer, Provider, Appointments und
+ * Reservierungen) samt der Position im <code>{@link Journal}</code>, bis zu der alle Änderungen enthalten sind.
+ * <p>
+ * Für einen schnellen Neustart wird der Zustand in eine kompakte Binärdatei geschrieben und beim Start per Memory
+ * Mapping geladen. Was sich seither in der Datenbank geändert hat, steht im Journal des
+ * <code>{@link JournalingAppointmentRepository}</code>: <code>{@link #catchUp(Journal)}</code> wendet die Einträge ab
+ * der gespeicherten Position an, danach entspricht das Repository wieder der Datenbank - ohne sie abzufragen.
+ * <p>
+ * Das Repository ist als Read-Replica gedacht: geändert wird es nur über <code>catchUp</code>, damit Snapshot und
+ * Journal-Position zusammenpassen. Die Einträge werden idempotent angewendet (bereits enthaltene Änderungen ändern
+ * nichts), ein mit <code>{@link #rebuild}</code> aus der Datenbank gelesener Zustand kann also mit dem Journal ab
+ * einer Position vor dem Lesen fortgesetzt werden.
+ * <p>
+ * Aufbau der Datei (Big Endian), Strings wie im Journal als short Länge (-1 für null) und UTF-8 Bytes:
+ * <pre>
+ * int   Kennung, int Version
+ * long  nächste Sequenznummer im Journal
+ * int   Anzahl Customer, je Customer: email, lastname, firstname
+ * int   Anzahl Provider, je Provider: int id, byte type (-1 für null), address,
+ *       int Anzahl Appointments, je Appointment: int id, long time, int Index des Customers (-1 für frei)
+ * </pre>
+ */
+public final class RepositorySnapshot {
+
+    private static final int MAGIC = 0x41505353;
+    private static final int VERSION = 1;
+    private static final ProviderType[] PROVIDER_TYPES = ProviderType.values();
+
+    private final AppointmentRepositoryInMemory repository;
+    private long journalSequence;
+    private long size;
+    private long loadNanos;
+    private long catchUpNanos;
+    private long caughtUp;
+
+    private RepositorySnapshot(AppointmentRepositoryInMemory repository, long journalSequence) {
+        this.repository = repository;
+        this.journalSequence = journalSequence;
+    }
+
+    /**
+     * Neuer, leerer Zustand, der mit <code>{@link #catchUp}</code> aus dem ganzen Journal aufgebaut werden kann.
+     */
+    public static RepositorySnapshot empty() {
+        return new RepositorySnapshot(new AppointmentRepositoryInMemory(), 1);
+    }
+
+    /**
+     * @return das Repository mit dem Zustand des Snapshots (ggf. samt nachgeholter Änderungen).
+     */
+    public AppointmentRepositoryInMemory getRepository() {
+        return repository;
+    }
+
+    /**
+     * @return Sequenznummer des ersten Journal-Eintrags, der noch nicht enthalten ist.
+     */
+    public synchronized long getJournalSequence() {
+        return journalSequence;
+    }
+
+    /**
+     * @return Größe der zuletzt geschriebenen bzw. geladenen Datei in Bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Dauer des Ladens bzw. Aufbaus in Millisekunden.
+     */
+    public synchronized long getLoadMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(loadNanos);
+    }
+
+    /**
+     * @return Dauer des letzten <code>catchUp</code> in Millisekunden.
+     */
+    public synchronized long getCatchUpMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(catchUpNanos);
+    }
+
+    /**
+     * @return Anzahl der beim letzten <code>catchUp</code> angewendeten Journal-Einträge.
+     */
+    public synchronized long getCaughtUp() {
+        return caughtUp;
+    }
+
+    // <editor-fold desc="Aufbau aus der Datenbank">
+    /**
+     * Liest den ganzen Zustand über ein Repository aus der Datenbank (der langsame Weg, z.B. für den ersten
+     * Snapshot). Die Entities werden kopiert, damit das Ergebnis nichts mit dem Persistence Context teilt.
+     * @param source Repository für den Zugriff auf die Datenbank.
+     * @param journalSequence Position im Journal, die vor dem Lesen aktuell war.
+     */
+    public static RepositorySnapshot rebuild(AppointmentRepository source, long journalSequence) {
+        long begin = System.nanoTime();
+        RepositorySnapshot snapshot = new RepositorySnapshot(new AppointmentRepositoryInMemory(), journalSequence);
+        Map<String, Customer> customers = new HashMap<>();
+        for (Customer customer : source.findCustomersBy(null, null)) {
+            Customer copy = copyOf(customer);
+            customers.put(copy.getEmail(), copy);
+            snapshot.repository.create(copy);
+        }
+        for (ProviderType type : PROVIDER_TYPES) {
+            for (Provider provider : source.findProvidersBy(type, "", Provider.WITH_APPOINTMENTS)) {
+                Provider copy = new Provider();
+                copy.setId(provider.getId());
+                copy.setType(provider.getType());
+                copy.setAddress(provider.getAddress());
+                for (Appointment appointment : provider.getAppointments()) {
+                    Appointment appointmentCopy = new Appointment();
+                    appointmentCopy.setId(appointment.getId());
+                    appointmentCopy.setTime(appointment.getTime());
+                    if (appointment.getCustomer() != null)
+                        appointmentCopy.setCustomer(customers.get(appointment.getCustomer().getEmail()));
+                    copy.getAppointments().add(appointmentCopy);
+                }
+                snapshot.repository.create(copy);
+            }
+        }
+        snapshot.loadNanos = System.nanoTime() - begin;
+        return snapshot;
+    }
+
+    private static Customer copyOf(Customer customer) {
+        Customer copy = new Customer(customer.getEmail());
+        copy.setLastname(customer.getLastname());
+        copy.setFirstname(customer.getFirstname());
+        return copy;
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="Schreiben">
+    /**
+     * Schreibt den aktuellen Zustand in eine Datei. Es wird zuerst in eine temporäre Datei geschrieben und diese
+     * dann umbenannt, ein Absturz während des Schreibens lässt den vorherigen Snapshot also unverändert.
+     * @return Größe der Datei in Bytes.
+     */
+    public synchronized long write(Path file) {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalSequence);
+
+            // Reservierungen verweisen über den Index auf den Customer, statt jedes Mal die Email zu speichern
+            Map<String, Integer> customerIndex = new HashMap<>();
+            Customer[] customers = repository.customers().toArray(new Customer[0]);
+            out.writeInt(customers.length);
+            for (Customer customer : customers) {
+                customerIndex.put(customer.getEmail(), customerIndex.size());
+                writeString(out, customer.getEmail());
+                writeString(out, customer.getLastname());
+                writeString(out, customer.getFirstname());
+            }
+
+            Provider[] providers = repository.providers().toArray(new Provider[0]);
+            out.writeInt(providers.length);
+            for (Provider provider : providers) {
+                out.writeInt(provider.getId());
+                out.writeByte(provider.getType() == null ? -1 : provider.getType().ordinal());
+                writeString(out, provider.getAddress());
+                List<Appointment> appointments = provider.getAppointments();
+                out.writeInt(appointments.size());
+                for (Appointment appointment : appointments) {
+                    out.writeInt(appointment.getId());
+                    out.writeLong(appointment.getTime() == null ? Long.MIN_VALUE
+                            : JournalEntry.fromTime(appointment.getTime()));
+                    Integer index = appointment.getCustomer() == null ? null
+                            : customerIndex.get(appointment.getCustomer().getEmail());
+                    out.writeInt(index == null ? -1 : index);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            size = Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return size;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE)
+            throw new IllegalArgumentException("String is too long for the snapshot!");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="Laden">
+    /**
+     * Lädt einen Snapshot per Memory Mapping.
+     * @param file eine mit <code>{@link #write}</code> geschriebene Datei.
+     */
+    public static RepositorySnapshot load(Path file) {
+        long begin = System.nanoTime();
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC)
+            throw new IllegalArgumentException("Not a repository snapshot: " + file);
+        if (buffer.getInt() != VERSION)
+            throw new IllegalArgumentException("Unsupported snapshot version: " + file);
+        RepositorySnapshot snapshot = new RepositorySnapshot(new AppointmentRepositoryInMemory(), buffer.getLong());
+
+        Customer[] customers = new Customer[buffer.getInt()];
+        for (int i = 0; i < customers.length; i++) {
+            customers[i] = new Customer(JournalEntry.readString(buffer));
+            customers[i].setLastname(JournalEntry.readString(buffer));
+            customers[i].setFirstname(JournalEntry.readString(buffer));
+            snapshot.repository.create(customers[i]);
+        }
+
+        int providers = buffer.getInt();
+        for (int i = 0; i < providers; i++) {
+            Provider provider = new Provider();
+            provider.setId(buffer.getInt());
+            byte type = buffer.get();
+            provider.setType(type < 0 ? null : PROVIDER_TYPES[type]);
+            provider.setAddress(JournalEntry.readString(buffer));
+            int appointments = buffer.getInt();
+            for (int j = 0; j < appointments; j++) {
+                Appointment appointment = new Appointment();
+                appointment.setId(buffer.getInt());
+                long time = buffer.getLong();
+                appointment.setTime(time == Long.MIN_VALUE ? null : JournalEntry.toTime(time));
+                int customer = buffer.getInt();
+                appointment.setCustomer(customer < 0 ? null : customers[customer]);
+                provider.getAppointments().add(appointment);
+            }
+            snapshot.repository.create(provider);
+        }
+        snapshot.size = buffer.capacity();
+        snapshot.loadNanos = System.nanoTime() - begin;
+        return snapshot;
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="Nachholen">
+    /**
+     * Wendet alle Einträge des Journals ab <code>{@link #getJournalSequence()}</code> an. Kann wiederholt
+     * aufgerufen werden, um das Repository aktuell zu halten.
+     * @return Anzahl der angewendeten Einträge.
+     */
+    public synchronized long catchUp(Journal journal) {
+        long begin = System.nanoTime();
+        caughtUp = journal.replay(journalSequence, entry -> {
+            apply(entry);
+            journalSequence = entry.getSequence() + 1;
+        });
+        catchUpNanos = System.nanoTime() - begin;
+        return caughtUp;
+    }
+
+    private void apply(JournalEntry entry) {
+        switch (entry.getType()) {
+            case CUSTOMER_CREATED:
+            case CUSTOMER_UPDATED:
+                Customer customer = entry.toCustomer();
+                if (repository.read(customer.getEmail()) == null)
+                    repository.create(customer);
+                else
+                    repository.update(customer);
+                break;
+            case CUSTOMER_DELETED:
+                Customer deleted = repository.read(entry.getEmail());
+                if (deleted != null)
+                    repository.delete(deleted);
+                break;
+            case PROVIDER_CREATED:
+            case PROVIDER_UPDATED:
+                Provider provider = entry.toProvider();
+                // die Einträge kennen vom Customer nur die Email
+                for (Appointment appointment : provider.getAppointments()) {
+                    if (appointment.getCustomer() != null)
+                        appointment.setCustomer(repository.read(appointment.getCustomer().getEmail()));
+                }
+                if (repository.read(provider.getId()) == null)
+                    repository.create(provider);
+                else
+                    repository.update(provider);
+                break;
+            case PROVIDER_DELETED:
+                Provider existing = repository.read(entry.getProviderId());
+                if (existing != null)
+                    repository.delete(existing);
+                break;
+            case RESERVED:
+            case CANCELLED:
+                Appointment appointment = new Appointment();
+                appointment.setId(entry.getAppointmentId());
+                Customer reservedBy = new Customer(entry.getEmail());
+                if (entry.getType() == JournalEntry.Type.RESERVED)
+                    repository.reserve(appointment, reservedBy);
+                else
+                    repository.cancel(appointment, reservedBy);
+                break;
+            default:
+        }
+    }
+    // </editor-fold>
+
+    @Override
+    public String toString() {
+        return "RepositorySnapshot{" +
+                "journalSequence=" + getJournalSequence() +
+                ", size=" + getSize() +
+                ", loadMillis=" + getLoadMillis() +
+                '}';
+    }
+}
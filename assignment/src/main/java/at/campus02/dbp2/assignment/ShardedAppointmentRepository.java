@@ -0,0 +1,514 @@
+package at.campus02.dbp2.assignment;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Thread-safe <code>{@link AppointmentRepository}</code>, das Provider samt Appointments auf mehrere Datenbanken
+ * (Shards, je eine eigene EntityManagerFactory) verteilt.
+ * <p>
+ * <ul>
+ *     <li>Der Shard eines Providers ergibt sich beim Anlegen aus der Postleitzahl seiner Adresse (ohne
+ *     Postleitzahl aus der ganzen Adresse) und bleibt danach fix, auch wenn sich die Adresse ändert.</li>
+ *     <li>Jeder Shard vergibt IDs aus einem eigenen Bereich (<code>{@value #ID_RANGE}</code> IDs je Shard), damit
+ *     lassen sich <code>read(Integer)</code>, <code>reserve</code>, <code>cancel</code> usw. ohne Lookup an genau
+ *     einen Shard weiterleiten.</li>
+ *     <li>Customer werden auf alle Shards repliziert, weil Appointments jedes Shards auf sie verweisen. Sie
+ *     werden zuerst auf ihrem "Heimat-Shard" (nach Email) geschrieben, der für Existenz-Prüfungen maßgeblich
+ *     ist. Suchen nach Customern beantwortet daher ein einzelner Shard.</li>
+ *     <li>Schreibzugriffe auf Customer skalieren daher nicht mit der Anzahl der Shards: jeder Shard muss jede
+ *     Änderung committen, und nach dem Commit am Heimat-Shard folgen die Replikate (untereinander parallel)
+ *     in einer zweiten Runde. Nur Provider und Appointments verteilen sich auf die Shards, siehe
+ *     <code>ShardingBenchmark</code> (<code>createProvider</code> gegen <code>createCustomer</code>).</li>
+ *     <li>Schlägt das Schreiben eines Customers auf einem Replikat fehl (nachdem der Heimat-Shard bereits
+ *     committed hat), werden die Replikate sofort auf den Stand des Heimat-Shards gebracht. Gelingt auch das
+ *     nicht, wirft die Operation eine <code>IllegalStateException</code> und die Email bleibt in
+ *     <code>{@link #getUnsyncedCustomers()}</code>, bis <code>{@link #resync(String)}</code> erfolgreich war.</li>
+ *     <li>Suchen nach Providern und Appointments laufen parallel auf allen Shards, die Ergebnisse werden
+ *     zusammengeführt und sortiert, bei seitenweisen Varianten in der jeweiligen Keyset-Sortierung.</li>
+ * </ul>
+ */
+public class ShardedAppointmentRepository implements AppointmentRepository {
+
+    static final int ID_RANGE = 1 << 27;
+    static final int MAX_SHARDS = 16;
+    private static final String[] ID_GENERATORS = {"ProviderIds", "AppointmentIds"};
+    // vierstellige (österreichische) oder fünfstellige Postleitzahl vor dem Ort, z.B. "Annenstraße 14, 8020 Graz"
+    private static final Pattern POSTAL_CODE = Pattern.compile("\\b(\\d{4,5})\\s+\\p{L}");
+
+    private final List<AppointmentRepository> shards = new ArrayList<>();
+    private final ExecutorService executor;
+    private final Set<String> unsynced = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param factories je Shard eine EntityManagerFactory (höchstens {@value #MAX_SHARDS}). Die Reihenfolge
+     *                  bestimmt die ID-Bereiche und muss daher immer gleich bleiben.
+     * @param maxEntityManagersPerShard maximale Anzahl gleichzeitig verwendeter EntityManager je Shard.
+     */
+    public ShardedAppointmentRepository(List<EntityManagerFactory> factories, int maxEntityManagersPerShard) {
+        if (factories == null || factories.isEmpty() || factories.size() > MAX_SHARDS)
+            throw new IllegalArgumentException("Between 1 and " + MAX_SHARDS + " shards are supported!");
+        for (int i = 0; i < factories.size(); i++) {
+            assignIdRange(factories.get(i), i);
+            shards.add(new AppointmentRepositoryPooled(factories.get(i), maxEntityManagersPerShard));
+        }
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(factories.size(), task -> {
+            Thread thread = new Thread(task, "shard-query-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    // <editor-fold desc="Routing">
+    /**
+     * Setzt die ID-Generatoren eines Shards auf den Anfang seines Bereichs (falls sie noch darunter liegen).
+     */
+    private static void assignIdRange(EntityManagerFactory factory, int shard) {
+        long start = (long) shard * ID_RANGE;
+        EntityManager manager = factory.createEntityManager();
+        try {
+            manager.getTransaction().begin();
+            for (String generator : ID_GENERATORS) {
+                int updated = manager.createNativeQuery(
+                        "update SEQUENCE set SEQ_COUNT = ? where SEQ_NAME = ? and SEQ_COUNT < ?")
+                        .setParameter(1, start)
+                        .setParameter(2, generator)
+                        .setParameter(3, start)
+                        .executeUpdate();
+                if (updated == 0 && ((Number) manager.createNativeQuery(
+                        "select count(*) from SEQUENCE where SEQ_NAME = ?")
+                        .setParameter(1, generator).getSingleResult()).intValue() == 0) {
+                    manager.createNativeQuery("insert into SEQUENCE (SEQ_NAME, SEQ_COUNT) values (?, ?)")
+                            .setParameter(1, generator)
+                            .setParameter(2, start)
+                            .executeUpdate();
+                }
+            }
+            manager.getTransaction().commit();
+        } finally {
+            if (manager.getTransaction().isActive())
+                manager.getTransaction().rollback();
+            manager.close();
+        }
+    }
+
+    /**
+     * @return der Shard, der IDs aus diesem Bereich vergibt. Für ungültige IDs ein beliebiger Shard, der die ID
+     * dann ebenso wenig kennt.
+     */
+    private AppointmentRepository shardOfId(Integer id) {
+        if (id == null || id <= 0)
+            return shards.get(0);
+        int shard = (id - 1) / ID_RANGE;
+        return shard < shards.size() ? shards.get(shard) : shards.get(0);
+    }
+
+    int shardOf(String address) {
+        if (address == null)
+            return 0;
+        Matcher matcher = POSTAL_CODE.matcher(address);
+        int key = matcher.find() ? Integer.parseInt(matcher.group(1)) : address.hashCode();
+        return Math.floorMod(key, shards.size());
+    }
+
+    private AppointmentRepository homeOf(String email) {
+        return shards.get(Math.floorMod(email.hashCode(), shards.size()));
+    }
+
+    private List<AppointmentRepository> replicasOf(String email) {
+        List<AppointmentRepository> replicas = new ArrayList<>(shards);
+        replicas.remove(homeOf(email));
+        return replicas;
+    }
+
+    /**
+     * Führt die Operation parallel für alle übergebenen Ziele (Shards oder deren Index) aus. Schlägt sie auf
+     * einem Ziel fehl, wird trotzdem auf alle anderen gewartet, bevor die erste Exception geworfen wird.
+     * @return die Ergebnisse in der Reihenfolge der Ziele.
+     */
+    private <S, T> List<T> scatter(List<S> targets, Function<S, T> operation) {
+        if (targets.size() == 1)
+            return Collections.singletonList(operation.apply(targets.get(0)));
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (S target : targets) {
+            futures.add(CompletableFuture.supplyAsync(() -> operation.apply(target), executor));
+        }
+        List<T> results = new ArrayList<>();
+        RuntimeException failure = null;
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (failure == null)
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        if (failure != null)
+            throw failure;
+        return results;
+    }
+
+    /**
+     * Schreibt einen Customer parallel auf alle Replikate. Das passiert erst nach dem Heimat-Shard, weil nur
+     * dieser entscheidet, ob es den Customer (noch nicht) gibt. Liefert ein Replikat <code>false</code> oder
+     * wirft es eine Exception, werden die Replikate auf den Stand des Heimat-Shards gebracht.
+     * @throws IllegalStateException wenn auch das nicht gelingt, die Email bleibt dann in
+     * <code>{@link #getUnsyncedCustomers()}</code>.
+     */
+    private void replicate(String email, Function<AppointmentRepository, Boolean> operation) {
+        RuntimeException failure = null;
+        try {
+            if (!scatter(replicasOf(email), operation).contains(false))
+                return;
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        unsynced.add(email);
+        if (!resync(email))
+            throw new IllegalStateException("Customer " + email + " could not be replicated to all shards!", failure);
+    }
+
+    /**
+     * @return die Emails der Customer, deren Replikate nach einem Fehler nicht wieder mit dem Heimat-Shard
+     * abgeglichen werden konnten.
+     */
+    public Set<String> getUnsyncedCustomers() {
+        return Collections.unmodifiableSet(unsynced);
+    }
+
+    /**
+     * Bringt die Replikate eines Customers auf den Stand seines Heimat-Shards: fehlende werden angelegt,
+     * abweichende überschrieben, und existiert er am Heimat-Shard nicht (mehr), werden sie gelöscht.
+     * Gleichzeitige Änderungen desselben Customers dürfen dabei nicht laufen.
+     * @return true, wenn alle Replikate abgeglichen sind.
+     */
+    public boolean resync(String email) {
+        if (email == null)
+            return false;
+        try {
+            Customer home = homeOf(email).read(email);
+            if (scatter(replicasOf(email), shard -> sync(shard, email, home)).contains(false))
+                return false;
+        } catch (RuntimeException e) {
+            return false;
+        }
+        unsynced.remove(email);
+        return true;
+    }
+
+    private static boolean sync(AppointmentRepository shard, String email, Customer home) {
+        Customer replica = shard.read(email);
+        if (home == null)
+            return replica == null || shard.delete(replica);
+        if (replica == null)
+            return shard.create(home);
+        return shard.update(home) != null;
+    }
+
+    private <T> List<T> gather(Function<AppointmentRepository, List<T>> operation, Comparator<T> order) {
+        List<T> all = new ArrayList<>();
+        for (List<T> result : scatter(shards, operation)) {
+            all.addAll(result);
+        }
+        all.sort(order);
+        return all;
+    }
+
+    // jeder Shard liefert seine ersten "limit" Treffer nach "after", die globale Seite ist der Anfang davon
+    private <T> List<T> gatherPage(Function<AppointmentRepository, List<T>> operation, Comparator<T> order,
+                                   int limit) {
+        Keyset.checkLimit(limit);
+        List<T> all = gather(operation, order);
+        return new ArrayList<>(all.subList(0, Math.min(limit, all.size())));
+    }
+
+    /**
+     * Führt die (jeweils sortierten) Streams aller Shards zu einem sortierten Stream zusammen, ohne sie
+     * vollständig zu laden.
+     */
+    private static <T> Stream<T> mergeSorted(List<Stream<T>> streams, Comparator<T> order) {
+        PriorityQueue<Map.Entry<T, Iterator<T>>> heads =
+                new PriorityQueue<>((a, b) -> order.compare(a.getKey(), b.getKey()));
+        for (Stream<T> stream : streams) {
+            Iterator<T> iterator = stream.iterator();
+            if (iterator.hasNext())
+                heads.add(new AbstractMap.SimpleEntry<>(iterator.next(), iterator));
+        }
+        Iterator<T> merged = new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                Map.Entry<T, Iterator<T>> head = heads.poll();
+                if (head == null)
+                    throw new NoSuchElementException();
+                if (head.getValue().hasNext())
+                    heads.add(new AbstractMap.SimpleEntry<>(head.getValue().next(), head.getValue()));
+                return head.getKey();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false)
+                .onClose(() -> streams.forEach(Stream::close));
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="AppointmentRepository">
+    @Override
+    public boolean create(Customer customer) {
+        if (customer == null || customer.getEmail() == null)
+            return false;
+        if (!homeOf(customer.getEmail()).create(customer))
+            return false;
+        replicate(customer.getEmail(), shard -> shard.create(customer));
+        return true;
+    }
+
+    @Override
+    public Customer read(String email) {
+        if (email == null)
+            return null;
+        return homeOf(email).read(email);
+    }
+
+    @Override
+    public Customer update(Customer customer) {
+        if (customer == null || customer.getEmail() == null)
+            return null;
+        Customer updated = homeOf(customer.getEmail()).update(customer);
+        if (updated == null)
+            return null;
+        replicate(customer.getEmail(), shard -> shard.update(customer) != null);
+        return updated;
+    }
+
+    @Override
+    public boolean delete(Customer customer) {
+        if (customer == null || customer.getEmail() == null)
+            return false;
+        if (!homeOf(customer.getEmail()).delete(customer))
+            return false;
+        // hebt auch die Reservierungen des Customers auf allen Shards auf
+        replicate(customer.getEmail(), shard -> shard.delete(customer));
+        return true;
+    }
+
+    @Override
+    public boolean create(Provider provider) {
+        if (provider == null)
+            return false;
+        if (provider.getId() != null && read(provider.getId()) != null)
+            return false;
+        return shards.get(shardOf(provider.getAddress())).create(provider);
+    }
+
+    @Override
+    public Provider read(Integer id) {
+        if (id == null)
+            return null;
+        return shardOfId(id).read(id);
+    }
+
+    @Override
+    public Provider update(Provider provider) {
+        if (provider == null)
+            return null;
+        return shardOfId(provider.getId()).update(provider);
+    }
+
+    @Override
+    public boolean delete(Provider provider) {
+        if (provider == null)
+            return false;
+        return shardOfId(provider.getId()).delete(provider);
+    }
+
+    @Override
+    public List<Boolean> createCustomers(Collection<Customer> customers) {
+        if (customers == null)
+            return new ArrayList<>();
+        // alle Shards bekommen dieselben Customer, die Ergebnisse sind daher je Shard gleich
+        return scatter(shards, shard -> shard.createCustomers(customers)).get(0);
+    }
+
+    @Override
+    public List<Boolean> createProviders(Collection<Provider> providers) {
+        List<Boolean> results = new ArrayList<>();
+        if (providers == null)
+            return results;
+        List<List<Provider>> perShard = new ArrayList<>();
+        List<List<Integer>> positions = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            perShard.add(new ArrayList<>());
+            positions.add(new ArrayList<>());
+        }
+        for (Provider provider : providers) {
+            int shard = provider == null ? 0 : shardOf(provider.getAddress());
+            positions.get(shard).add(results.size());
+            perShard.get(shard).add(provider);
+            results.add(false);
+        }
+        List<Integer> targets = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            if (!perShard.get(i).isEmpty())
+                targets.add(i);
+        }
+        List<List<Boolean>> created = scatter(targets, i -> shards.get(i).createProviders(perShard.get(i)));
+        for (int t = 0; t < targets.size(); t++) {
+            List<Integer> shardPositions = positions.get(targets.get(t));
+            for (int i = 0; i < shardPositions.size(); i++) {
+                results.set(shardPositions.get(i), created.get(t).get(i));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname) {
+        return homeOf(String.valueOf(lastname)).findCustomersBy(lastname, firstname);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart) {
+        return gather(shard -> shard.findProvidersBy(type, addressPart), Keyset.PROVIDER_ORDER);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart) {
+        return gather(shard -> shard.findAppointmentsAt(addressPart), Keyset.APPOINTMENT_ORDER);
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to) {
+        return gather(shard -> shard.findAppointments(from, to), Keyset.APPOINTMENT_ORDER);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer) {
+        return gather(shard -> shard.getAppointmentsFor(customer), Keyset.APPOINTMENT_ORDER);
+    }
+
+    @Override
+    public Map<Customer, List<Appointment>> getAppointmentsForCustomers(Collection<Customer> customers) {
+        Map<Customer, List<Appointment>> merged = new LinkedHashMap<>();
+        for (Map<Customer, List<Appointment>> result : scatter(shards,
+                shard -> shard.getAppointmentsForCustomers(customers))) {
+            result.forEach((customer, appointments) ->
+                    merged.computeIfAbsent(customer, c -> new ArrayList<>()).addAll(appointments));
+        }
+        merged.values().forEach(appointments -> appointments.sort(Keyset.APPOINTMENT_ORDER));
+        return merged;
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname, Customer after, int limit) {
+        return homeOf(String.valueOf(lastname)).findCustomersBy(lastname, firstname, after, limit);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit) {
+        return gatherPage(shard -> shard.findProvidersBy(type, addressPart, after, limit),
+                Keyset.PROVIDER_ORDER, limit);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit) {
+        return gatherPage(shard -> shard.findAppointmentsAt(addressPart, after, limit),
+                Keyset.APPOINTMENT_ORDER, limit);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, String fetchPlan) {
+        return gather(shard -> shard.findProvidersBy(type, addressPart, fetchPlan), Keyset.PROVIDER_ORDER);
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart, Provider after, int limit,
+                                          String fetchPlan) {
+        return gatherPage(shard -> shard.findProvidersBy(type, addressPart, after, limit, fetchPlan),
+                Keyset.PROVIDER_ORDER, limit);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, String fetchPlan) {
+        return gather(shard -> shard.findAppointmentsAt(addressPart, fetchPlan), Keyset.APPOINTMENT_ORDER);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, Appointment after, int limit, String fetchPlan) {
+        return gatherPage(shard -> shard.findAppointmentsAt(addressPart, after, limit, fetchPlan),
+                Keyset.APPOINTMENT_ORDER, limit);
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to, Appointment after, int limit) {
+        return gatherPage(shard -> shard.findAppointments(from, to, after, limit), Keyset.APPOINTMENT_ORDER, limit);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer, Appointment after, int limit) {
+        return gatherPage(shard -> shard.getAppointmentsFor(customer, after, limit), Keyset.APPOINTMENT_ORDER, limit);
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointmentsAt(String addressPart) {
+        return mergeSorted(scatter(shards, shard -> shard.streamAppointmentsAt(addressPart)),
+                Keyset.APPOINTMENT_ORDER);
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointments(LocalDateTime from, LocalDateTime to) {
+        return mergeSorted(scatter(shards, shard -> shard.streamAppointments(from, to)), Keyset.APPOINTMENT_ORDER);
+    }
+
+    @Override
+    public DayAvailability getAvailability(Integer providerId, LocalDate day) {
+        if (providerId == null)
+            return null;
+        return shardOfId(providerId).getAvailability(providerId, day);
+    }
+
+    @Override
+    public boolean reserve(Appointment appointment, Customer customer) {
+        if (appointment == null)
+            return false;
+        return shardOfId(appointment.getId()).reserve(appointment, customer);
+    }
+
+    @Override
+    public boolean cancel(Appointment appointment, Customer customer) {
+        if (appointment == null)
+            return false;
+        return shardOfId(appointment.getId()).cancel(appointment, customer);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        for (AppointmentRepository shard : shards) {
+            shard.close();
+        }
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,42 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.SessionEventListener;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * EclipseLink Listener, der die an die Datenbank geschickten SQL-Statements pro Thread zählt.
+ * <p>
+ * EclipseLink führt die Statements im aufrufenden Thread aus, die Differenz von <code>{@link #current()}</code>
+ * vor und nach einem Repository-Aufruf ist also die Anzahl der Statements dieses Aufrufs.
+ */
+class SqlStatementCounter extends SessionEventAdapter {
+
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+    private SqlStatementCounter() {
+    }
+
+    /**
+     * Registriert den Zähler (einmalig) an der Session der übergebenen EntityManagerFactory.
+     */
+    static synchronized void register(EntityManagerFactory factory) {
+        for (SessionEventListener listener : JpaHelper.getServerSession(factory).getEventManager().getListeners()) {
+            if (listener instanceof SqlStatementCounter)
+                return;
+        }
+        JpaHelper.getServerSession(factory).getEventManager().addListener(new SqlStatementCounter());
+    }
+
+    static long current() {
+        return COUNT.get()[0];
+    }
+
+    @Override
+    public void preExecuteCall(SessionEvent event) {
+        COUNT.get()[0]++;
+    }
+}
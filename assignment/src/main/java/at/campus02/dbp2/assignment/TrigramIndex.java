@@ -0,0 +1,75 @@
+package at.campus02.dbp2.assignment;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Invertierter Index über alle Trigramme (Teilstrings der Länge 3) eines Textes.
+ * <p>
+ * Für eine case-insensitive "LIKE '%part%'"-Suche werden nur die Posting-Listen der Trigramme von
+ * <code>part</code> geschnitten. Das Ergebnis sind Kandidaten, die alle Trigramme enthalten - ob der Text
+ * den Suchbegriff tatsächlich (zusammenhängend) enthält, muss der Aufrufer noch prüfen.
+ * <p>
+ * Schreibende Zugriffe müssen vom Aufrufer serialisiert werden, lesende Zugriffe sind jederzeit möglich.
+ * @param <K> Typ der Schlüssel, unter denen die Texte indiziert werden.
+ */
+class TrigramIndex<K> {
+
+    static final int GRAM_LENGTH = 3;
+
+    private final Map<String, Set<K>> postings = new ConcurrentHashMap<>();
+
+    void add(K key, String text) {
+        for (String gram : trigrams(text)) {
+            postings.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+    }
+
+    void remove(K key, String text) {
+        for (String gram : trigrams(text)) {
+            postings.computeIfPresent(gram, (g, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    /**
+     * Liefert alle Schlüssel, deren Text sämtliche Trigramme von <code>part</code> enthält.
+     * @param part der gesuchte Teilstring.
+     * @return die Kandidaten oder <code>null</code>, falls <code>part</code> kürzer als ein Trigramm ist
+     *         und der Index daher nicht einschränken kann.
+     */
+    Set<K> candidates(String part) {
+        Set<String> grams = trigrams(part);
+        if (grams.isEmpty())
+            return null;
+
+        // mit der kürzesten Posting-Liste beginnen, damit die Schnittmenge möglichst klein bleibt
+        List<Set<K>> lists = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            Set<K> keys = postings.get(gram);
+            if (keys == null)
+                return Collections.emptySet();
+            lists.add(keys);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        Set<K> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    static Set<String> trigrams(String text) {
+        if (text == null || text.length() < GRAM_LENGTH)
+            return Collections.emptySet();
+        String normalized = text.toLowerCase(Locale.ROOT);
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+}
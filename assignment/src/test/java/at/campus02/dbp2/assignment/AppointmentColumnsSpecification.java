@@ -0,0 +1,161 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static at.campus02.dbp2.assignment.BaseSpecification.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class AppointmentColumnsSpecification {
+
+    private static final int SLOTS = 100_000;
+    private static final int PROVIDERS = 1_000;
+    private static final int CUSTOMERS = 100;
+    private static final LocalDateTime START = LocalDateTime.of(2021, 12, 1, 8, 0);
+
+    @TempDir
+    Path directory;
+
+    private static Provider providerWithAppointments(ProviderType type, String address, int appointments) {
+        Provider provider = prepareProvider(type, address);
+        for (int i = 0; i < appointments; i++) {
+            // zwei Appointments je Tag
+            provider.getAppointments().add(prepareAppointment(START.plusDays(i / 2).plusHours(i % 2)));
+        }
+        return provider;
+    }
+
+    // Auslastung je Provider direkt aus den Entities
+    private static Map<Integer, AppointmentColumns.Utilization> expected(AppointmentRepository repository) {
+        Map<Integer, AppointmentColumns.Utilization> expected = new HashMap<>();
+        for (ProviderType type : ProviderType.values()) {
+            for (Provider provider : repository.findProvidersBy(type, "")) {
+                long reserved = provider.getAppointments().stream().filter(a -> a.getCustomer() != null).count();
+                if (!provider.getAppointments().isEmpty())
+                    expected.put(provider.getId(),
+                            new AppointmentColumns.Utilization(provider.getAppointments().size(), reserved));
+            }
+        }
+        return expected;
+    }
+
+    @Test
+    public void ac01_utilizationFollowsTheJournal() {
+        // given
+        JournalingAppointmentRepository repository = AppointmentRepositoryFactory.getJournaling(
+                AppointmentRepositoryFactory.getInMemory(), directory);
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Customer customer = prepareCustomer("lastname", "firstname", i + "@campus02.at");
+            repository.create(customer);
+            customers.add(customer);
+        }
+        Provider doctor = providerWithAppointments(ProviderType.DOCTOR, "Annenstraße 14, 8020 Graz", 4);
+        Provider test = providerWithAppointments(ProviderType.TEST_CENTER, "Nullstraße 12, 8010 Graz", 2);
+        repository.create(doctor);
+        repository.create(test);
+        repository.reserve(doctor.getAppointments().get(0), customers.get(0));
+        repository.reserve(doctor.getAppointments().get(2), customers.get(1));
+        repository.reserve(test.getAppointments().get(1), customers.get(1));
+
+        // when
+        AppointmentColumns columns = AppointmentColumns.load(repository, repository.getJournal().getNextSequence());
+
+        // then
+        assertThat(columns.utilizationByProvider(null, null), is(expected(repository)));
+        Map<ProviderType, AppointmentColumns.Utilization> byType = columns.utilizationByType(null, null);
+        assertThat(byType.get(ProviderType.DOCTOR), is(new AppointmentColumns.Utilization(4, 2)));
+        assertThat(byType.get(ProviderType.TEST_CENTER), is(new AppointmentColumns.Utilization(2, 1)));
+        SortedMap<LocalDate, AppointmentColumns.Utilization> byDay =
+                columns.utilizationByDay(ProviderType.DOCTOR, null, null);
+        assertThat(byDay.keySet(), contains(START.toLocalDate(), START.toLocalDate().plusDays(1)));
+        assertThat(byDay.get(START.toLocalDate()), is(new AppointmentColumns.Utilization(2, 1)));
+        assertThat(columns.utilization(START.plusDays(1), null), is(new AppointmentColumns.Utilization(2, 1)));
+        assertThat(columns.utilization(START, START.plusHours(1)).getRate(), is(0.5));
+
+        // and when: weitere Änderungen über das Journal nachholen
+        repository.cancel(doctor.getAppointments().get(0), customers.get(0));
+        repository.reserve(doctor.getAppointments().get(1), customers.get(2));
+        repository.delete(customers.get(1));
+        repository.delete(test);
+        repository.create(providerWithAppointments(ProviderType.TEST_CENTER, "Hauptplatz 1, 8430 Leibnitz", 3));
+        Provider updated = repository.read(doctor.getId());
+        updated.getAppointments().remove(3);
+        repository.update(updated);
+        long caughtUp = columns.catchUp(repository.getJournal());
+
+        // then
+        assertThat(caughtUp, is(6L));
+        assertThat(columns.utilizationByProvider(null, null), is(expected(repository)));
+        assertThat(columns.utilizationByType(null, null).get(ProviderType.DOCTOR),
+                is(new AppointmentColumns.Utilization(3, 1)));
+        assertThat(columns.utilizationByType(null, null).get(ProviderType.TEST_CENTER),
+                is(new AppointmentColumns.Utilization(3, 0)));
+        assertThat(columns.catchUp(repository.getJournal()), is(0L));
+        repository.close();
+    }
+
+    @Test
+    public void ac02_loadSortsInterleavedIdsAndFindsTheirRows() {
+        // given: Provider abwechselnd je Typ angelegt, load liest je Typ, die IDs kommen daher durcheinander
+        AppointmentRepository repository = AppointmentRepositoryFactory.getInMemory();
+        ProviderType[] types = ProviderType.values();
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            Customer customer = prepareCustomer("lastname", "firstname", "customer" + i + "@campus02.at");
+            repository.create(customer);
+            customers.add(customer);
+        }
+        List<Provider> providers = new ArrayList<>();
+        for (int i = 0; i < PROVIDERS; i++) {
+            Provider provider = providerWithAppointments(types[i % types.length], "Gasse " + i + ", 8010 Graz",
+                    SLOTS / PROVIDERS);
+            repository.create(provider);
+            providers.add(provider);
+            for (int slot = 0; slot < provider.getAppointments().size(); slot += 2) {
+                repository.reserve(provider.getAppointments().get(slot), customers.get((i + slot) % CUSTOMERS));
+            }
+        }
+
+        // when
+        AppointmentColumns columns = AppointmentColumns.load(repository, 1);
+
+        // then
+        assertThat(columns.size(), is(SLOTS));
+        assertThat(columns.utilizationByProvider(null, null), is(expected(repository)));
+        assertThat(columns.utilization(null, null), is(new AppointmentColumns.Utilization(SLOTS, SLOTS / 2)));
+        assertThat(columns.utilizationByDay(null, null, null).size(), is(SLOTS / PROVIDERS / 2));
+
+        // and when: Änderungen finden ihre Zeilen über die IDs bzw. die Verzeichnisse
+        Provider first = providers.get(0);
+        Provider last = providers.get(PROVIDERS - 1);
+        boolean reserved = columns.reserve(last.getAppointments().get(1).getId(), customers.get(0).getEmail());
+        boolean cancelled = columns.cancel(providers.get(2).getAppointments().get(0).getId());
+        columns.release(customers.get(1).getEmail());
+        columns.remove(providers.get(1).getId());
+        first.getAppointments().remove(1);
+        columns.add(first);
+
+        // then
+        assertThat(reserved, is(true));
+        assertThat(cancelled, is(true));
+        // Customer 1 hat je Provider mit ungerader Nummer ein Appointment, bei Provider 1 das erste
+        long releasedReservations = SLOTS / CUSTOMERS / 2;
+        Map<Integer, AppointmentColumns.Utilization> byProvider = columns.utilizationByProvider(null, null);
+        assertThat(byProvider.containsKey(providers.get(1).getId()), is(false));
+        assertThat(byProvider.get(first.getId()), is(new AppointmentColumns.Utilization(SLOTS / PROVIDERS - 1,
+                SLOTS / PROVIDERS / 2)));
+        assertThat(columns.utilization(null, null), is(new AppointmentColumns.Utilization(
+                SLOTS - SLOTS / PROVIDERS - 1, SLOTS / 2 - releasedReservations - (SLOTS / PROVIDERS / 2 - 1))));
+    }
+}
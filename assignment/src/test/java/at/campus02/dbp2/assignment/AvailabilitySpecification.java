@@ -0,0 +1,183 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class AvailabilitySpecification extends BaseSpecification {
+
+    private static final LocalDate DAY = LocalDate.of(2021, 12, 1);
+    // geschätzter Speicherbedarf eines geladenen Appointments: Objekt (Header, 5 Referenzen, boolean), Integer-ID,
+    // LocalDateTime samt LocalDate und LocalTime, Referenz in der Liste des Providers
+    private static final long APPOINTMENT_ENTITY_BYTES = 40 + 16 + 24 + 24 + 24 + 4;
+
+    // Appointments des Providers nach Zeitpunkt sortiert (nach refresh ist die Reihenfolge der Liste beliebig)
+    private List<Appointment> createProviderWithSlots(int slots) {
+        Provider provider = prepareProvider(ProviderType.DOCTOR, graz_doc1);
+        for (int i = 0; i < slots; i++) {
+            provider.getAppointments().add(prepareAppointment(DAY.atTime(8, 0).plusMinutes(10L * i)));
+        }
+        // ein Termin am nächsten Tag, darf in der Verfügbarkeit von DAY nicht auftauchen
+        provider.getAppointments().add(prepareAppointment(DAY.plusDays(1).atTime(8, 0)));
+        List<Appointment> appointments = new ArrayList<>(createProvider(provider).getAppointments());
+        appointments.sort(Keyset.APPOINTMENT_ORDER);
+        return appointments;
+    }
+
+    @Test
+    public void av01_availabilityReflectsReservations() {
+        // given
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        List<Appointment> slots = createProviderWithSlots(70);
+        Provider provider = slots.get(0).getProvider();
+        Appointment booked = slots.get(65);
+        entityManager.clear();
+        repository.reserve(booked, customer);
+
+        // when
+        DayAvailability availability = repository.getAvailability(provider.getId(), DAY);
+
+        // then
+        assertThat(availability.getSlotCount(), is(70));
+        assertThat(availability.getFreeCount(), is(69));
+        assertThat(availability.getFreeAppointmentIds(), not(hasItem(booked.getId())));
+        assertThat(availability.getFreeAppointmentIds(), hasItem(slots.get(64).getId()));
+        assertThat(availability.isFree(booked.getTime().toLocalTime()), is(false));
+        assertThat(availability.isFree(LocalTime.of(8, 0)), is(true));
+        assertThat(availability.getFreeTimes().get(0), is(LocalTime.of(8, 0)));
+
+        assertThat(repository.getAvailability(provider.getId(), DAY.plusDays(2)).getSlotCount(), is(0));
+        assertThat(repository.getAvailability(-1, DAY), is(nullValue()));
+        assertThat(repository.getAvailability(null, DAY), is(nullValue()));
+        assertThat(repository.getAvailability(provider.getId(), null), is(nullValue()));
+    }
+
+    @Test
+    public void av02_cachedAvailabilityFollowsReserveCancelAndUpdate() {
+        // given
+        CachingAppointmentRepository cached = AppointmentRepositoryFactory.getCached(
+                AppointmentRepositoryFactory.getPooled(entityManagerFactory, 4), 10);
+        repository.close();
+        repository = cached;
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        List<Appointment> slots = createProviderWithSlots(3);
+        Provider provider = slots.get(0).getProvider();
+        // wie im BookingService: nur die ID des Appointments ist bekannt
+        Appointment byId = new Appointment();
+        byId.setId(slots.get(1).getId());
+
+        // when
+        int before = cached.getAvailability(provider.getId(), DAY).getFreeCount();
+        cached.reserve(byId, customer);
+        int afterReserve = cached.getAvailability(provider.getId(), DAY).getFreeCount();
+        cached.cancel(byId, customer);
+        int afterCancel = cached.getAvailability(provider.getId(), DAY).getFreeCount();
+
+        // then
+        assertThat(before, is(3));
+        assertThat(afterReserve, is(2));
+        assertThat(afterCancel, is(3));
+        // die Bitmap wurde nachgeführt, nicht neu geladen
+        assertThat(cached.getAvailabilityCacheStatistics().getMisses(), is(1L));
+
+        // and when
+        Provider changed = cached.read(provider.getId());
+        changed.getAppointments().add(prepareAppointment(DAY.atTime(17, 0)));
+        cached.update(changed);
+
+        // then
+        DayAvailability availability = cached.getAvailability(provider.getId(), DAY);
+        assertThat(availability.getFreeCount(), is(4));
+        assertThat(availability.isFree(LocalTime.of(17, 0)), is(true));
+    }
+
+    @Test
+    public void av03_bitmapFootprintIsFractionOfEntities() {
+        // given
+        int providers = 200;
+        int days = 5;
+        int slotsPerDay = 20;
+        List<ProviderAvailability> availabilities = new ArrayList<>();
+        for (int p = 0; p < providers; p++) {
+            Provider provider = prepareProvider(ProviderType.DOCTOR, graz_doc1);
+            provider.setId(p);
+            for (int d = 0; d < days; d++) {
+                for (int s = 0; s < slotsPerDay; s++) {
+                    Appointment appointment = prepareAppointment(
+                            LocalDateTime.of(DAY.plusDays(d), LocalTime.of(8, 0).plusMinutes(20L * s)));
+                    appointment.setId((p * days + d) * slotsPerDay + s);
+                    provider.getAppointments().add(appointment);
+                }
+            }
+            availabilities.add(ProviderAvailability.of(provider));
+        }
+
+        // when: Speicherbedarf aus den Strukturen (Arrays, Einträge) statt über den Heap gemessen
+        int appointments = providers * days * slotsPerDay;
+        long bitmapBytes = availabilities.stream().mapToLong(ProviderAvailability::footprint).sum();
+        // im CachingAppointmentRepository zusätzlich ein Eintrag je Appointment für reserve/cancel über die ID
+        long cachedBytes = bitmapBytes + (long) appointments * CachingAppointmentRepository.AVAILABILITY_INDEX_BYTES;
+
+        // then
+        assertThat(availabilities.get(0).day(DAY).getFreeCount(), is(slotsPerDay));
+        assertThat(bitmapBytes * 4, is(lessThan(appointments * APPOINTMENT_ENTITY_BYTES)));
+        assertThat(cachedBytes, is(lessThan(appointments * APPOINTMENT_ENTITY_BYTES)));
+    }
+
+    @Test
+    public void av04_reservationsOfOtherProvidersDoNotPreventCaching() {
+        // given: reserve laufen, während ein Provider für getAvailability gelesen wird
+        List<Runnable> duringRead = new ArrayList<>();
+        AppointmentRepository inMemory = new AppointmentRepositoryInMemory() {
+            @Override
+            public Provider read(Integer id) {
+                List<Runnable> actions = new ArrayList<>(duringRead);
+                duringRead.clear();
+                actions.forEach(Runnable::run);
+                return super.read(id);
+            }
+        };
+        CachingAppointmentRepository cached = AppointmentRepositoryFactory.getCached(inMemory, 10);
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        cached.create(customer);
+        // IDs in verschiedenen Segmenten des EntityCache
+        Provider loading = providerWithSlot(1);
+        Provider other = providerWithSlot(2);
+        Provider unknown = providerWithSlot(3);
+        cached.create(loading);
+        cached.create(other);
+        cached.create(unknown);
+        Appointment otherSlot = other.getAppointments().get(0);
+        // wie im BookingService: nur die ID ist bekannt, der Provider ist noch nicht gecacht
+        Appointment unknownById = new Appointment();
+        unknownById.setId(unknown.getAppointments().get(0).getId());
+
+        // when
+        duringRead.add(() -> cached.reserve(otherSlot, customer));
+        cached.getAvailability(loading.getId(), DAY);
+        cached.getAvailability(loading.getId(), DAY);
+        long missesAfterOther = cached.getAvailabilityCacheStatistics().getMisses();
+        duringRead.add(() -> cached.reserve(unknownById, customer));
+        cached.getAvailability(unknown.getId(), DAY);
+        DayAvailability afterUnknown = cached.getAvailability(unknown.getId(), DAY);
+
+        // then: nur ein reserve, dessen Provider nicht bestimmt werden kann, verhindert das Cachen
+        assertThat(missesAfterOther, is(1L));
+        assertThat(cached.getAvailabilityCacheStatistics().getMisses(), is(3L));
+        assertThat(afterUnknown.getFreeCount(), is(0));
+    }
+
+    private static Provider providerWithSlot(int id) {
+        Provider provider = prepareProvider(ProviderType.DOCTOR, "Gasse " + id + ", 8010 Graz");
+        provider.setId(id);
+        provider.getAppointments().add(prepareAppointment(DAY.atTime(8, 0)));
+        return provider;
+    }
+}
@@ -0,0 +1,95 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class BatchReadSpecification extends BaseSpecification {
+
+    private static final int CUSTOMERS = 20;
+
+    private List<Customer> setupReservations() {
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers.add(createCustomer(prepareCustomer(lastname, firstname + i, i + email)));
+        }
+        List<Provider> providers = new ArrayList<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            Provider provider = prepareProvider(ProviderType.DOCTOR, "Gasse " + i + ", 8010 Graz");
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusHours(i)));
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 2, 8, 0).plusHours(i)));
+            providers.add(createProvider(provider));
+        }
+        entityManager.clear();
+        // jeder Customer bucht je einen Termin bei zwei verschiedenen Providern
+        for (int i = 0; i < CUSTOMERS; i++) {
+            repository.reserve(providers.get(i).getAppointments().get(0), customers.get(i));
+            repository.reserve(providers.get(i).getAppointments().get(1), customers.get((i + 1) % CUSTOMERS));
+        }
+        return customers;
+    }
+
+    @Test
+    public void br01_batchResultMatchesSingleCalls() {
+        // given
+        List<Customer> customers = setupReservations();
+        Customer unknown = prepareCustomer(lastname, firstname, "unknown@campus02.at");
+        List<Customer> requested = new ArrayList<>(customers);
+        requested.addAll(Arrays.asList(null, unknown, prepareCustomer(lastname, firstname, null)));
+
+        // when
+        Map<Customer, List<Appointment>> result = repository.getAppointmentsForCustomers(requested);
+
+        // then
+        assertThat(result.size(), is(CUSTOMERS + 1));
+        assertThat(result.get(unknown), is(empty()));
+        for (Customer customer : customers) {
+            assertThat(result.get(customer), containsInAnyOrder(repository.getAppointmentsFor(customer).toArray()));
+            assertThat(result.get(customer).size(), is(2));
+        }
+        assertThat(repository.getAppointmentsForCustomers(null).isEmpty(), is(true));
+    }
+
+    @Test
+    public void br02_batchUsesOneStatementInsteadOfNPlusOne() {
+        // given
+        List<Customer> customers = setupReservations();
+        SqlStatementCounter.register(entityManagerFactory);
+        // leere Caches, damit auch das Nachladen von Customer und Provider als Statement sichtbar wird
+        entityManagerFactory.getCache().evictAll();
+        AppointmentRepository looped = AppointmentRepositoryFactory.get(entityManagerFactory);
+        AppointmentRepository batched = AppointmentRepositoryFactory.get(entityManagerFactory);
+
+        // when
+        long before = SqlStatementCounter.current();
+        for (Customer customer : customers) {
+            for (Appointment appointment : looped.getAppointmentsFor(customer)) {
+                appointment.getProvider().getAddress();
+            }
+        }
+        long loopedStatements = SqlStatementCounter.current() - before;
+
+        entityManagerFactory.getCache().evictAll();
+        before = SqlStatementCounter.current();
+        Map<Customer, List<Appointment>> result = batched.getAppointmentsForCustomers(customers);
+        for (List<Appointment> appointments : result.values()) {
+            for (Appointment appointment : appointments) {
+                appointment.getProvider().getAddress();
+            }
+        }
+        long batchedStatements = SqlStatementCounter.current() - before;
+        looped.close();
+        batched.close();
+
+        // then
+        assertThat(batchedStatements, is(1L));
+        assertThat(loopedStatements, is(greaterThan((long) CUSTOMERS)));
+    }
+}
@@ -0,0 +1,115 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class BookingServiceSpecification {
+
+    private static final int PROVIDERS = 50;
+
+    private AppointmentRepository repository;
+    private BookingService service;
+    private String baseUrl;
+
+    @BeforeEach
+    public void before() throws IOException {
+        repository = AppointmentRepositoryFactory.getInMemory();
+        BookingService.seed(repository, PROVIDERS);
+        service = new BookingService(repository, 0);
+        service.start();
+        baseUrl = "http://localhost:" + service.getPort();
+    }
+
+    @AfterEach
+    public void after() {
+        service.stop();
+        repository.close();
+    }
+
+    private int status;
+
+    private String call(String method, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+             Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+            return scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+        }
+    }
+
+    @Test
+    public void bs01_searchReserveAndCancelOverHttp() throws IOException {
+        // given
+        Appointment appointment = repository.findAppointmentsAt("graz", null, 1).get(0);
+        String reservation = "/reservations?appointment=" + appointment.getId() + "&email=customer1%40campus02.at";
+
+        // when
+        String found = call("GET", "/appointments?address=graz&limit=5");
+        int foundStatus = status;
+        call("POST", reservation);
+        int reserved = status;
+        call("POST", "/reservations?appointment=" + appointment.getId() + "&email=customer2%40campus02.at");
+        int conflicting = status;
+        call("DELETE", reservation);
+        int cancelled = status;
+        call("GET", "/appointments?from=invalid");
+        int invalid = status;
+
+        // then
+        assertThat(foundStatus, is(200));
+        assertThat(found, startsWith("[{\"id\":" + appointment.getId() + ","));
+        assertThat(found, containsString("Graz"));
+        assertThat(reserved, is(200));
+        assertThat(conflicting, is(409));
+        assertThat(cancelled, is(200));
+        assertThat(invalid, is(400));
+        assertThat(repository.getAppointmentsFor(new Customer("customer1@campus02.at")), is(empty()));
+    }
+
+    @Test
+    public void bs02_loadGeneratorReplaysMixedWorkload() throws Exception {
+        // given
+        BookingLoadGenerator generator = new BookingLoadGenerator(baseUrl, PROVIDERS);
+
+        // when
+        generator.run(8, 1, TimeUnit.SECONDS);
+
+        // then
+        assertThat(generator.report().size(), is(3));
+        assertThat(generator.requests("search"), is(greaterThan(0L)));
+        assertThat(generator.requests("reserve"), is(greaterThan(0L)));
+        assertThat(generator.errors("search") + generator.errors("reserve") + generator.errors("cancel"), is(0L));
+    }
+
+    @Test
+    public void bs03_requestsRunOnVirtualThreadsFromJava21() throws Exception {
+        // given
+        boolean java21 = !System.getProperty("java.specification.version").startsWith("1.")
+                && Integer.parseInt(System.getProperty("java.specification.version")) >= 21;
+        ExecutorService executor = BookingService.newRequestExecutor();
+
+        // when
+        Thread thread = executor.submit(Thread::currentThread).get();
+        executor.shutdown();
+        // Thread.isVirtual() gibt es erst ab Java 21
+        boolean virtual = java21 && (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+
+        // then
+        assertThat(service.usesVirtualThreads(), is(java21));
+        assertThat(virtual, is(java21));
+    }
+}
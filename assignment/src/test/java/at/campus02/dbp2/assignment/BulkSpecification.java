@@ -0,0 +1,112 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class BulkSpecification extends BaseSpecification {
+
+    // mehr als zwei Chunks
+    private static final int COUNT = 2 * AppointmentRepositoryJpa.BATCH_SIZE + 1;
+
+    @Test
+    public void bu01_createCustomersReportsResultPerCustomer() {
+        // given
+        Customer existing = createCustomer(prepareCustomer(lastname, firstname, email));
+        Customer fresh = prepareCustomer(lastname, firstname, "fresh@campus02.at");
+        Customer duplicate = prepareCustomer("other", "other", "fresh@campus02.at");
+        Customer withoutEmail = prepareCustomer(lastname, firstname, null);
+
+        // when
+        List<Boolean> results = repository.createCustomers(Arrays.asList(existing, fresh, null, duplicate, withoutEmail));
+
+        // then
+        assertThat(results, contains(false, true, false, false, false));
+        entityManager.clear();
+        assertThat(entityManager.find(Customer.class, "fresh@campus02.at"), is(fresh));
+    }
+
+    @Test
+    public void bu02_createProvidersPersistsProvidersAndAppointments() {
+        // given
+        Provider existing = createProvider(prepareProvider(ProviderType.DOCTOR, graz_doc1));
+        Provider provider = prepareProvider(ProviderType.TEST_CENTER, graz_test);
+        Appointment appointment = prepareAppointment(LocalDateTime.of(2021, 12, 1, 10, 0));
+        provider.getAppointments().add(appointment);
+
+        // when
+        List<Boolean> results = repository.createProviders(Arrays.asList(existing, null, provider));
+
+        // then
+        assertThat(results, contains(false, false, true));
+        assertThat(provider.getId(), is(notNullValue()));
+        assertThat(appointment.getId(), is(notNullValue()));
+        assertThat(repository.findAppointmentsAt("nullstraße"), contains(appointment));
+    }
+
+    @Test
+    public void bu03_bulkCreateSpansSeveralChunks() {
+        // given (Dauer gegen einzelne creates: BulkCreateBenchmark)
+        List<Customer> customers = new ArrayList<>();
+        List<Provider> providers = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            customers.add(prepareCustomer(lastname, firstname, "bulk" + i + email));
+            providers.add(providerWithAppointments(i));
+        }
+
+        // when
+        List<Boolean> customerResults = repository.createCustomers(customers);
+        List<Boolean> providerResults = repository.createProviders(providers);
+
+        // then
+        assertThat(customerResults.size(), is(COUNT));
+        assertThat(customerResults, everyItem(is(true)));
+        assertThat(providerResults.size(), is(COUNT));
+        assertThat(providerResults, everyItem(is(true)));
+        assertThat(entityManager.createQuery("select count(a) from Appointment a", Long.class).getSingleResult(),
+                is(2L * COUNT));
+    }
+
+    @Test
+    public void bu04_invalidCustomerFailsAloneAndOtherChunksAreCreated() throws IllegalAccessException {
+        // given: zwei Chunks, im ersten ein Customer, den die Datenbank ablehnt (Nachname zu lang)
+        Customer managed = prepareCustomer(lastname, firstname, email);
+        repository.create(managed);
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < AppointmentRepositoryJpa.BATCH_SIZE + 100; i++) {
+            customers.add(prepareCustomer(lastname, firstname, "bulk" + i + email));
+        }
+        Customer invalid = customers.remove(10);
+        invalid.setLastname(String.join("", Collections.nCopies(300, "x")));
+
+        // when
+        List<Boolean> results = repository.createCustomers(customers);
+        boolean stillManaged = getEntityManagerFromInterface(repository).contains(managed);
+        customers.add(10, invalid);
+        customers.add(11, prepareCustomer(lastname, firstname, "afterInvalid" + email));
+        List<Boolean> withInvalid = repository.createCustomers(customers);
+
+        // then: ein erfolgreicher Bulk-Insert lässt die übrigen Entities des Aufrufers verwaltet
+        // (ein Rollback löst dagegen laut JPA alle Entities des Persistence Context)
+        assertThat(results, everyItem(is(true)));
+        assertThat(stillManaged, is(true));
+        assertThat(withInvalid.get(10), is(false));
+        assertThat(withInvalid.get(11), is(true));
+        assertThat(entityManager.createQuery("select count(c) from Customer c", Long.class).getSingleResult(),
+                is((long) customers.size()));
+    }
+
+    private static Provider providerWithAppointments(int i) {
+        Provider provider = prepareProvider(ProviderType.PHARMACY, "Gasse " + i + ", 8010 Graz");
+        provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusMinutes(i)));
+        provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 2, 8, 0).plusMinutes(i)));
+        return provider;
+    }
+}
@@ -0,0 +1,178 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class CachingSpecification extends BaseSpecification {
+
+    private CachingAppointmentRepository cached(int maximumSize) {
+        CachingAppointmentRepository cached = AppointmentRepositoryFactory.getCached(
+                AppointmentRepositoryFactory.getPooled(entityManagerFactory, 4), maximumSize);
+        repository.close();
+        repository = cached;
+        return cached;
+    }
+
+    @Test
+    public void ca01_readsAreServedFromCacheUntilUpdate() {
+        // given
+        CachingAppointmentRepository cached = cached(10);
+        createCustomer(prepareCustomer(lastname, firstname, email));
+
+        // when
+        Customer first = cached.read(email);
+        Customer second = cached.read(email);
+        Customer unknown = cached.read("unknown@campus02.at");
+
+        // then
+        assertThat(second, is(first));
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(unknown, is(nullValue()));
+        assertThat(cached.getCustomerCacheStatistics().getHits(), is(1L));
+        assertThat(cached.getCustomerCacheStatistics().getMisses(), is(2L));
+
+        // and when
+        Customer changed = prepareCustomer(lastname, "changed", email);
+        cached.update(changed);
+
+        // then
+        assertThat(cached.read(email).getFirstname(), is("changed"));
+        assertThat(cached.getCustomerCacheStatistics().getMisses(), is(3L));
+
+        // and when
+        cached.delete(changed);
+
+        // then
+        assertThat(cached.read(email), is(nullValue()));
+    }
+
+    @Test
+    public void ca02_reserveAndCancelInvalidateProvider() {
+        // given
+        CachingAppointmentRepository cached = cached(10);
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        Provider provider = prepareProvider(ProviderType.DOCTOR, graz_doc1);
+        provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 10, 0)));
+        createProvider(provider);
+        // wie im BookingService: nur die ID des Appointments ist bekannt
+        Appointment byId = new Appointment();
+        byId.setId(provider.getAppointments().get(0).getId());
+
+        // when
+        Provider before = cached.read(provider.getId());
+        boolean reserved = cached.reserve(byId, customer);
+        Provider afterReserve = cached.read(provider.getId());
+        boolean cancelled = cached.cancel(byId, customer);
+        Provider afterCancel = cached.read(provider.getId());
+
+        // then
+        assertThat(reserved, is(true));
+        assertThat(cancelled, is(true));
+        assertThat(before.getAppointments().get(0).getCustomer(), is(nullValue()));
+        assertThat(afterReserve.getAppointments().get(0).getCustomer(), is(customer));
+        assertThat(afterCancel.getAppointments().get(0).getCustomer(), is(nullValue()));
+        assertThat(cached.getProviderCacheStatistics().getMisses(), is(3L));
+    }
+
+    @Test
+    public void ca03_leastRecentlyUsedEntriesAreEvicted() {
+        // given
+        EntityCache<Integer, String> cache = new EntityCache<>(2, null);
+        // maximumSize 2 ergibt 2 Segmente mit je einem Eintrag, daher Keys mit demselben Segment verwenden
+        cache.get(0, String::valueOf);
+        cache.get(2, String::valueOf);
+
+        // when
+        cache.get(0, String::valueOf);
+        cache.get(4, String::valueOf);
+
+        // then
+        CacheStatistics statistics = cache.statistics();
+        assertThat(statistics.getHits(), is(0L));
+        assertThat(statistics.getMisses(), is(4L));
+        assertThat(statistics.getEvictions(), is(3L));
+        assertThat(statistics.getSize(), is(1L));
+
+        // and given
+        EntityCache<Integer, String> lru = new EntityCache<>(32, null);
+        for (int i = 0; i < 32; i++) {
+            lru.get(i, String::valueOf);
+        }
+
+        // when ... Key 0 wird verwendet, Key 16 (gleiches Segment) nicht
+        lru.get(0, String::valueOf);
+        lru.get(32, String::valueOf);
+        lru.get(0, String::valueOf);
+
+        // then
+        assertThat(lru.statistics().getHits(), is(2L));
+        assertThat(lru.statistics().getEvictions(), is(1L));
+        assertThat(lru.statistics().getHitRate(), is(closeTo(2.0 / 35, 0.001)));
+    }
+
+    @Test
+    public void ca04_changesToReadEntitiesDoNotReachTheCache() {
+        // given
+        CachingAppointmentRepository cached = cached(10);
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        Provider provider = prepareProvider(ProviderType.DOCTOR, graz_doc1);
+        provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 10, 0)));
+        createProvider(provider);
+        cached.reserve(provider.getAppointments().get(0), customer);
+
+        // when: ein Aufrufer verändert die gelesenen Entities, ohne update aufzurufen
+        Customer readCustomer = cached.read(email);
+        readCustomer.setFirstname("changed");
+        Provider readProvider = cached.read(provider.getId());
+        readProvider.setAddress(leibnitz_test);
+        readProvider.getAppointments().get(0).getCustomer().setLastname("changed");
+        readProvider.getAppointments().clear();
+
+        // then
+        assertThat(cached.read(email).getFirstname(), is(firstname));
+        Provider again = cached.read(provider.getId());
+        assertThat(again.getAddress(), is(graz_doc1));
+        assertThat(again.getAppointments().size(), is(1));
+        assertThat(again.getAppointments().get(0).getCustomer(), is(customer));
+        assertThat(again.getAppointments().get(0).getProvider(), is(sameInstance(again)));
+        assertThat(cached.getProviderCacheStatistics().getHits(), is(1L));
+    }
+
+    @Test
+    public void ca05_customerChangesInvalidateOnlyProvidersEmbeddingTheCustomer() {
+        // given
+        CachingAppointmentRepository cached = cached(10);
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        Provider booked = prepareProvider(ProviderType.DOCTOR, graz_doc1);
+        booked.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 10, 0)));
+        createProvider(booked);
+        Provider other = createProvider(prepareProvider(ProviderType.DOCTOR, graz_doc2));
+        cached.reserve(booked.getAppointments().get(0), customer);
+        cached.read(booked.getId());
+        cached.read(other.getId());
+
+        // when
+        cached.update(prepareCustomer("changed", firstname, email));
+        Provider afterUpdate = cached.read(booked.getId());
+        cached.read(other.getId());
+
+        // then
+        assertThat(afterUpdate.getAppointments().get(0).getCustomer().getLastname(), is("changed"));
+        assertThat(cached.getProviderCacheStatistics().getMisses(), is(3L));
+        assertThat(cached.getProviderCacheStatistics().getHits(), is(1L));
+
+        // and when
+        cached.delete(customer);
+        Provider afterDelete = cached.read(booked.getId());
+        cached.read(other.getId());
+
+        // then
+        assertThat(afterDelete.getAppointments().get(0).getCustomer(), is(nullValue()));
+        assertThat(cached.getProviderCacheStatistics().getMisses(), is(4L));
+        assertThat(cached.getProviderCacheStatistics().getHits(), is(2L));
+    }
+}
@@ -0,0 +1,162 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.Cache;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ConcurrencySpecification extends BaseSpecification {
+
+    private static final int THREADS = 8;
+    private static final int APPOINTMENTS = 50;
+
+    @Test
+    public void cc01_concurrentReservationsNeverDoubleBookAnAppointment() throws Exception {
+        // given
+        Provider provider = prepareProvider(ProviderType.TEST_CENTER, graz_test);
+        for (int i = 0; i < APPOINTMENTS; i++) {
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusMinutes(10 * i)));
+        }
+        createProvider(provider);
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            customers.add(createCustomer(prepareCustomer(lastname, firstname + i, i + email)));
+        }
+
+        // when ... jeder Thread versucht mit eigenem Repository (und EntityManager) alle Termine zu buchen
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (Customer customer : customers) {
+            results.add(executor.submit(() -> {
+                AppointmentRepository own = AppointmentRepositoryFactory.get(entityManagerFactory);
+                try {
+                    start.await();
+                    int reserved = 0;
+                    for (Appointment appointment : provider.getAppointments()) {
+                        if (own.reserve(appointment, customer))
+                            reserved++;
+                    }
+                    return reserved;
+                } finally {
+                    own.close();
+                }
+            }));
+        }
+        start.countDown();
+        int reserved = 0;
+        for (Future<Integer> result : results) {
+            reserved += result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then
+        assertThat(reserved, is(APPOINTMENTS));
+        entityManager.clear();
+        long booked = entityManager
+                .createQuery("select count(a) from Appointment a where a.customer is not null", Long.class)
+                .getSingleResult();
+        assertThat(booked, is((long) APPOINTMENTS));
+        int perCustomer = 0;
+        for (Customer customer : customers) {
+            perCustomer += repository.getAppointmentsFor(customer).size();
+        }
+        assertThat(perCustomer, is(APPOINTMENTS));
+    }
+
+    @Test
+    public void cc02_cancelOnlySucceedsForReservingCustomer() {
+        // given
+        Customer customer1 = createCustomer(prepareCustomer(lastname, firstname, email));
+        Customer customer2 = createCustomer(prepareCustomer(lastname, firstname, "other." + email));
+        Provider provider = prepareProvider(ProviderType.DOCTOR, graz_doc1);
+        Appointment appointment = prepareAppointment(LocalDateTime.of(2021, 12, 1, 10, 0));
+        provider.getAppointments().add(appointment);
+        createProvider(provider);
+
+        // when
+        AppointmentRepository other = AppointmentRepositoryFactory.get(entityManagerFactory);
+        boolean reserved = repository.reserve(appointment, customer1);
+        boolean conflicting = other.reserve(appointment, customer2);
+        boolean wrongCancel = other.cancel(appointment, customer2);
+        boolean cancelled = other.cancel(appointment, customer1);
+        other.close();
+
+        // then
+        assertThat(reserved, is(true));
+        assertThat(conflicting, is(false));
+        assertThat(wrongCancel, is(false));
+        assertThat(cancelled, is(true));
+        entityManager.clear();
+        assertThat(entityManager.find(Appointment.class, appointment.getId()).getCustomer(), is(nullValue()));
+    }
+
+    @Test
+    public void cc03_providerUpdateAfterReserveKeepsTheVersion() {
+        // given: das Appointment des Aufrufers ist detached, wie nach clear() oder im Pooled Repository
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        Provider provider = prepareProvider(ProviderType.DOCTOR, graz_doc1);
+        Appointment appointment = prepareAppointment(LocalDateTime.of(2021, 12, 1, 10, 0));
+        provider.getAppointments().add(appointment);
+        createProvider(provider);
+        entityManager.clear();
+        AppointmentRepository pooled = AppointmentRepositoryFactory.getPooled(entityManagerFactory, 1);
+
+        // when
+        boolean reserved = pooled.reserve(appointment, customer);
+        appointment.setTime(LocalDateTime.of(2021, 12, 1, 11, 0));
+        pooled.update(provider);
+        boolean cancelled = repository.cancel(appointment, customer);
+        appointment.setTime(LocalDateTime.of(2021, 12, 1, 12, 0));
+        repository.update(provider);
+        pooled.close();
+
+        // then
+        assertThat(reserved, is(true));
+        assertThat(cancelled, is(true));
+        entityManager.clear();
+        Appointment stored = entityManager.find(Appointment.class, appointment.getId());
+        assertThat(stored.getTime(), is(LocalDateTime.of(2021, 12, 1, 12, 0)));
+        assertThat(stored.getCustomer(), is(nullValue()));
+        assertThat(stored.getVersion(), is(appointment.getVersion()));
+    }
+
+    @Test
+    public void cc04_reserveAndCancelEvictOnlyTheirAppointmentFromTheSharedCache() {
+        // given
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        Provider provider = prepareProvider(ProviderType.DOCTOR, graz_doc1);
+        Appointment appointment = prepareAppointment(LocalDateTime.of(2021, 12, 1, 10, 0));
+        Appointment other = prepareAppointment(LocalDateTime.of(2021, 12, 1, 11, 0));
+        provider.getAppointments().add(appointment);
+        provider.getAppointments().add(other);
+        createProvider(provider);
+        Cache cache = entityManagerFactory.getCache();
+
+        // when
+        boolean reserved = repository.reserve(appointment, customer);
+        boolean cachedAfterReserve = cache.contains(Appointment.class, other.getId());
+        boolean cancelled = repository.cancel(appointment, customer);
+
+        // then
+        assertThat(reserved, is(true));
+        assertThat(cancelled, is(true));
+        assertThat(cachedAfterReserve, is(true));
+        assertThat(cache.contains(Appointment.class, other.getId()), is(true));
+        assertThat(cache.contains(Appointment.class, appointment.getId()), is(false));
+        entityManager.clear();
+        Appointment stored = entityManager.find(Appointment.class, appointment.getId());
+        assertThat(stored.getCustomer(), is(nullValue()));
+        assertThat(stored.getVersion(), is(appointment.getVersion()));
+    }
+}
@@ -0,0 +1,64 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class CustomerSearchSpecification extends BaseSpecification {
+
+    private void setupCustomers(int count) {
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            customers.add(prepareCustomer("Lastname" + (i % 1000), "Firstname" + i, "customer" + i + "@campus02.at"));
+        }
+        repository.createCustomers(customers);
+    }
+
+    @Test
+    public void cs01_normalizedNamesFollowCreateAndUpdate() {
+        // given
+        createCustomer(prepareCustomer("McDonald", "Ève", email));
+
+        // when
+        List<Customer> byUpperCase = repository.findCustomersBy("MCDONALD", "ÈVE");
+        List<Customer> byLastname = repository.findCustomersBy("mcdonald", null);
+        Object stored = entityManager.createNativeQuery(
+                "select LASTNAME_NORMALIZED from CUSTOMER where EMAIL = ?1").setParameter(1, email).getSingleResult();
+
+        // then
+        assertThat(byUpperCase.size(), is(1));
+        assertThat(byLastname.size(), is(1));
+        assertThat(stored, is("mcdonald"));
+
+        // and when: ein neues Objekt (nicht das gelesene) wird übernommen
+        repository.update(prepareCustomer("O'Brien", "Ève", email));
+
+        // then
+        assertThat(repository.findCustomersBy("McDonald", null), is(empty()));
+        assertThat(repository.findCustomersBy("o'BRIEN", "ève").size(), is(1));
+        assertThat(repository.findCustomersBy("O'Brien", null, null, 10).size(), is(1));
+    }
+
+    @Test
+    public void cs02_searchUsesNameIndex() {
+        // given
+        setupCustomers(2_000);
+        AppointmentRepository sameConnection = new AppointmentRepositoryJpa(entityManager);
+
+        // when: Laufzeitstatistik von Derby gilt je Connection, die Transaktion hält die Connection fest
+        entityManager.getTransaction().begin();
+        entityManager.createNativeQuery("call SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)").executeUpdate();
+        List<Customer> found = sameConnection.findCustomersBy("LASTNAME7", "firstname1007");
+        Object plan = entityManager.createNativeQuery("values SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()")
+                .getSingleResult();
+        entityManager.getTransaction().rollback();
+
+        // then
+        assertThat(found.size(), is(1));
+        assertThat(String.valueOf(plan), containsString("IDX_CUSTOMER_NAME"));
+    }
+}
@@ -0,0 +1,87 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FetchPlanSpecification extends BaseSpecification {
+
+    private static final int APPOINTMENTS_PER_PROVIDER = 3;
+
+    private void setupProviders(int count) {
+        for (int i = 0; i < count; i++) {
+            Provider provider = prepareProvider(ProviderType.DOCTOR, "Gasse " + i + ", 8010 Graz");
+            for (int j = 0; j < APPOINTMENTS_PER_PROVIDER; j++) {
+                provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusHours(j)));
+            }
+            createProvider(provider);
+        }
+        SqlStatementCounter.register(entityManagerFactory);
+    }
+
+    // leerer Cache und neues Repository, damit jedes Nachladen als Statement sichtbar wird
+    private long providerPageStatements(int limit, String fetchPlan) {
+        entityManagerFactory.getCache().evictAll();
+        AppointmentRepository fresh = AppointmentRepositoryFactory.get(entityManagerFactory);
+        long before = SqlStatementCounter.current();
+        for (Provider provider : fresh.findProvidersBy(ProviderType.DOCTOR, "graz", null, limit, fetchPlan)) {
+            assertThat(provider.getAppointments().size(), is(APPOINTMENTS_PER_PROVIDER));
+        }
+        long statements = SqlStatementCounter.current() - before;
+        fresh.close();
+        return statements;
+    }
+
+    private long appointmentPageStatements(int limit, String fetchPlan) {
+        entityManagerFactory.getCache().evictAll();
+        AppointmentRepository fresh = AppointmentRepositoryFactory.get(entityManagerFactory);
+        long before = SqlStatementCounter.current();
+        for (Appointment appointment : fresh.findAppointmentsAt("graz", null, limit, fetchPlan)) {
+            assertThat(appointment.getProvider().getAddress(), containsString("Graz"));
+        }
+        long statements = SqlStatementCounter.current() - before;
+        fresh.close();
+        return statements;
+    }
+
+    @Test
+    public void fp01_providerPageWithAppointmentsCostsConstantStatements() {
+        // given
+        setupProviders(20);
+
+        // when
+        long withoutPlan = providerPageStatements(20, null);
+        long small = providerPageStatements(5, Provider.WITH_APPOINTMENTS);
+        long large = providerPageStatements(20, Provider.WITH_APPOINTMENTS);
+
+        // then
+        assertThat(withoutPlan, is(greaterThan(20L)));
+        assertThat(small, is(2L));
+        assertThat(large, is(2L));
+    }
+
+    @Test
+    public void fp02_appointmentPageWithProviderCostsOneStatement() {
+        // given
+        setupProviders(20);
+
+        // when
+        long withoutPlan = appointmentPageStatements(20, null);
+        long withPlan = appointmentPageStatements(20, Appointment.WITH_PROVIDER);
+        List<Appointment> unpaged = repository.findAppointmentsAt("graz", Appointment.WITH_PROVIDER);
+        List<Provider> unpagedProviders = repository.findProvidersBy(ProviderType.DOCTOR, "graz", Provider.WITH_APPOINTMENTS);
+
+        // then
+        assertThat(withoutPlan, is(greaterThan(10L)));
+        assertThat(withPlan, is(1L));
+        assertThat(unpaged.size(), is(20 * APPOINTMENTS_PER_PROVIDER));
+        assertThat(unpagedProviders.size(), is(20));
+        assertThrows(IllegalArgumentException.class,
+                () -> repository.findAppointmentsAt("graz", Provider.WITH_APPOINTMENTS));
+    }
+}
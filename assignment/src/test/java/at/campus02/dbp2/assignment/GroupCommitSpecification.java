@@ -0,0 +1,167 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class GroupCommitSpecification extends BaseSpecification {
+
+    private static final int THREADS = 16;
+    private static final int APPOINTMENTS = 50;
+    private static final int OPERATIONS = 800;
+
+    private List<Appointment> setupAppointments() {
+        Provider provider = prepareProvider(ProviderType.TEST_CENTER, graz_test);
+        for (int i = 0; i < APPOINTMENTS; i++) {
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusMinutes(10 * i)));
+        }
+        return createProvider(provider).getAppointments();
+    }
+
+    private List<Customer> setupCustomers() {
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            customers.add(createCustomer(prepareCustomer(lastname, firstname + i, i + email)));
+        }
+        entityManager.clear();
+        return customers;
+    }
+
+    @Test
+    public void gc01_groupedReservationsKeepTheirOwnResults() throws Exception {
+        // given
+        List<Appointment> appointments = setupAppointments();
+        List<Customer> customers = setupCustomers();
+        GroupCommitAppointmentRepository grouped =
+                AppointmentRepositoryFactory.getGroupCommit(entityManagerFactory, 4, 32, 2);
+
+        // when: alle Threads versuchen gleichzeitig, alle Appointments zu reservieren
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (Customer customer : customers) {
+            results.add(executor.submit(() -> {
+                start.await();
+                int reserved = 0;
+                for (Appointment appointment : appointments) {
+                    Appointment byId = new Appointment();
+                    byId.setId(appointment.getId());
+                    if (grouped.reserve(byId, customer)) {
+                        assertThat(byId.getCustomer(), is(customer));
+                        reserved++;
+                    }
+                }
+                return reserved;
+            }));
+        }
+        start.countDown();
+        int reserved = 0;
+        for (Future<Integer> result : results) {
+            reserved += result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then
+        assertThat(reserved, is(APPOINTMENTS));
+        int perCustomer = 0;
+        for (Customer customer : customers) {
+            perCustomer += grouped.getAppointmentsFor(customer).size();
+        }
+        assertThat(perCustomer, is(APPOINTMENTS));
+        assertThat(grouped.getOperations(), is((long) THREADS * APPOINTMENTS));
+        assertThat(grouped.getCommits(), is(lessThan(grouped.getOperations())));
+
+        // and when: Konflikte und ungültige Aufrufe - welcher Customer gewonnen hat, hängt vom Scheduling ab
+        Customer owner = customers.stream()
+                .filter(customer -> !grouped.getAppointmentsFor(customer).isEmpty()).findFirst().get();
+        Customer other = customers.get(customers.indexOf(owner) == 0 ? 1 : 0);
+        Appointment first = grouped.getAppointmentsFor(owner).get(0);
+        Customer unknown = prepareCustomer(lastname, firstname, "unknown@campus02.at");
+
+        // then
+        assertThat(grouped.cancel(first, other), is(false));
+        assertThat(grouped.cancel(first, unknown), is(false));
+        assertThat(grouped.reserve(first, null), is(false));
+        assertThat(grouped.cancel(first, owner), is(true));
+        assertThat(first.getCustomer(), is(nullValue()));
+
+        // and when
+        grouped.close();
+
+        // then
+        assertThrows(IllegalStateException.class, () -> grouped.reserve(first, owner));
+    }
+
+    @Test
+    public void gc02_groupCommitNeedsFewerCommitsThanOperations() throws Exception {
+        // given
+        List<Appointment> appointments = setupAppointments();
+        List<Customer> customers = setupCustomers();
+        GroupCommitAppointmentRepository grouped =
+                AppointmentRepositoryFactory.getGroupCommit(entityManagerFactory, THREADS, 64, 2);
+
+        // when (Durchsatz gegen einzelne Commits: ReservationBenchmark)
+        long commitsBefore = grouped.getCommits();
+        reserveAndCancel(grouped, appointments, customers);
+
+        // then
+        assertThat(grouped.getCommits() - commitsBefore, is(lessThan((long) OPERATIONS)));
+        grouped.close();
+    }
+
+    @Test
+    public void gc03_reservedAppointmentGetsTheNewVersion() {
+        // given
+        Appointment appointment = setupAppointments().get(0);
+        Customer customer = setupCustomers().get(0);
+        GroupCommitAppointmentRepository grouped =
+                AppointmentRepositoryFactory.getGroupCommit(entityManagerFactory, 1, 1, 0);
+
+        // when
+        boolean reserved = grouped.reserve(appointment, customer);
+        appointment.setTime(LocalDateTime.of(2021, 12, 2, 8, 0));
+        Provider updated = grouped.update(appointment.getProvider());
+        grouped.close();
+
+        // then
+        assertThat(reserved, is(true));
+        assertThat(updated.getAppointments().get(0).getTime(), is(LocalDateTime.of(2021, 12, 2, 8, 0)));
+    }
+
+    // jeder Thread reserviert und storniert Appointments aus seinem eigenen Bereich, es gibt also keine Konflikte
+    private static void reserveAndCancel(AppointmentRepository repository, List<Appointment> appointments,
+                                         List<Customer> customers) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Customer customer = customers.get(t);
+            int offset = t * (APPOINTMENTS / THREADS);
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < OPERATIONS / THREADS / 2; i++) {
+                    Appointment appointment = appointments.get(offset + i % (APPOINTMENTS / THREADS));
+                    assertThat(repository.reserve(appointment, customer), is(true));
+                    assertThat(repository.cancel(appointment, customer), is(true));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(120, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+}
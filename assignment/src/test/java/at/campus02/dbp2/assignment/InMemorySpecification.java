@@ -0,0 +1,156 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static at.campus02.dbp2.assignment.BaseSpecification.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class InMemorySpecification {
+
+    private AppointmentRepository repository;
+
+    private Customer customer1;
+    private Customer customer2;
+    private Provider provider1;
+    private Provider provider2;
+    private Appointment appointment1;
+    private Appointment appointment2;
+    private Appointment appointment3;
+
+    @BeforeEach
+    public void before() {
+        repository = AppointmentRepositoryFactory.getInMemory();
+
+        customer1 = prepareCustomer("Dornacher", "Dorothea", "dorli@mail.com");
+        customer2 = prepareCustomer("Hornbacher", "Bernhard", "berni@mail.com");
+        provider1 = prepareProvider(ProviderType.DOCTOR, "Annenstraße 14, 8020 Graz");
+        provider2 = prepareProvider(ProviderType.TEST_CENTER, "Hauptplatz 1, 8430 Leibnitz");
+        appointment1 = prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0));
+        appointment2 = prepareAppointment(LocalDateTime.of(2021, 11, 22, 10, 0));
+        appointment3 = prepareAppointment(LocalDateTime.of(2021, 12, 2, 10, 0));
+        provider1.getAppointments().add(appointment1);
+        provider1.getAppointments().add(appointment2);
+        provider2.getAppointments().add(appointment3);
+
+        repository.create(customer1);
+        repository.create(customer2);
+        repository.create(provider1);
+        repository.create(provider2);
+    }
+
+    @Test
+    public void im01_createAssignsIdsAndIndexesEntities() {
+        // then
+        assertThat(provider1.getId(), is(notNullValue()));
+        assertThat(appointment1.getId(), is(notNullValue()));
+        assertThat(appointment1.getProvider(), is(provider1));
+        assertThat(repository.read(provider1.getId()), is(provider1));
+        assertThat(repository.read(customer1.getEmail()), is(customer1));
+        assertThat(repository.create(customer1), is(false));
+        assertThat(repository.create(provider1), is(false));
+    }
+
+    @Test
+    public void im02_findersUseCaseInsensitiveIndexes() {
+        // when / then
+        assertThat(repository.findCustomersBy("dornacher", "DOROTHEA"), contains(customer1));
+        assertThat(repository.findCustomersBy(null, null), containsInAnyOrder(customer1, customer2));
+        assertThrows(IllegalArgumentException.class, () -> repository.findCustomersBy(null, "Dorothea"));
+        assertThat(repository.findProvidersBy(ProviderType.DOCTOR, "graz"), contains(provider1));
+        assertThat(repository.findProvidersBy(ProviderType.TEST_CENTER, "graz"), is(empty()));
+        assertThat(repository.findAppointmentsAt("GRAZ"), containsInAnyOrder(appointment1, appointment2));
+        assertThat(repository.findAppointments(null, LocalDateTime.of(2021, 11, 30, 0, 0)),
+                containsInAnyOrder(appointment1, appointment2));
+    }
+
+    @Test
+    public void im03_updatesAreReflectedInIndexes() {
+        // when
+        customer1.setLastname("Neumann");
+        repository.update(customer1);
+        provider1.setAddress("Hauptplatz 2, 8430 Leibnitz");
+        provider1.getAppointments().remove(appointment1);
+        repository.update(provider1);
+
+        // then
+        assertThat(repository.findCustomersBy("Dornacher", null), is(empty()));
+        assertThat(repository.findCustomersBy("neumann", null), contains(customer1));
+        assertThat(repository.findAppointmentsAt("graz"), is(empty()));
+        assertThat(repository.findAppointmentsAt("leibnitz"), containsInAnyOrder(appointment2, appointment3));
+        assertThat(repository.findAppointments(null, null), containsInAnyOrder(appointment2, appointment3));
+    }
+
+    @Test
+    public void im04_reserveAndCancelMaintainAvailability() {
+        // when
+        boolean reserved = repository.reserve(appointment1, customer1);
+
+        // then
+        assertThat(reserved, is(true));
+        assertThat(repository.reserve(appointment1, customer2), is(false));
+        assertThat(repository.getAppointmentsFor(customer1), contains(appointment1));
+        assertThat(repository.findAppointmentsAt("graz"), contains(appointment2));
+        assertThat(repository.findAppointments(null, null), contains(appointment2, appointment3));
+        assertThat(repository.cancel(appointment1, customer2), is(false));
+
+        // and when
+        repository.delete(customer1);
+
+        // then
+        assertThat(appointment1.getCustomer(), is(nullValue()));
+        assertThat(repository.findAppointmentsAt("graz"), containsInAnyOrder(appointment1, appointment2));
+        assertThat(repository.findAppointments(null, null), contains(appointment1, appointment2, appointment3));
+    }
+
+    @Test
+    public void im05_deleteProviderRemovesAppointments() {
+        // when
+        repository.delete(provider1);
+
+        // then
+        assertThat(repository.read(provider1.getId()), is(nullValue()));
+        assertThat(repository.findAppointments(null, null), contains(appointment3));
+        assertThrows(IllegalArgumentException.class, () -> repository.delete(provider1));
+    }
+
+    @Test
+    public void im06_concurrentReservationsNeverDoubleBook() throws Exception {
+        // given
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Customer customer = prepareCustomer("last" + i, "first" + i, "mail" + i);
+            repository.create(customer);
+            customers.add(customer);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // when
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (Customer customer : customers) {
+            results.add(executor.submit(() -> repository.reserve(appointment2, customer)));
+        }
+        int successful = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get()) {
+                successful++;
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        // then
+        assertThat(successful, is(1));
+        assertThat(repository.findAppointmentsAt("graz"), contains(appointment1));
+    }
+}
@@ -0,0 +1,92 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class InstrumentationSpecification extends BaseSpecification {
+
+    private static final String NAME = "InstrumentationSpecification";
+
+    @Test
+    public void in01_countsCallsErrorsAndSqlStatementsPerMethod() {
+        // given
+        InstrumentedAppointmentRepository instrumented =
+                AppointmentRepositoryFactory.getInstrumented(entityManagerFactory, null);
+        repository.close();
+        repository = instrumented;
+        Provider provider = prepareProvider(ProviderType.TEST_CENTER, graz_test);
+        provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 10, 0)));
+
+        // when
+        repository.create(prepareCustomer(lastname, firstname, email));
+        repository.create(provider);
+        repository.read(email);
+        repository.read(email);
+        repository.findAppointmentsAt("graz");
+        assertThrows(IllegalArgumentException.class, () -> repository.findCustomersBy(lastname, null, null, 0));
+
+        // then
+        Map<String, MethodStatistics> statistics = instrumented.snapshot();
+        assertThat(statistics.keySet(), containsInAnyOrder(
+                "create(Customer)", "create(Provider)", "read(String)", "findAppointmentsAt", "findCustomersBy(page)"));
+        assertThat(statistics.get("read(String)").getCalls(), is(2L));
+        assertThat(statistics.get("read(String)").getErrors(), is(0L));
+        assertThat(statistics.get("findCustomersBy(page)").getErrors(), is(1L));
+        assertThat(statistics.get("create(Customer)").getSqlStatements(), is(greaterThan(0L)));
+        assertThat(statistics.get("findAppointmentsAt").getSqlStatementsPerCall(), is(greaterThan(0.0)));
+        assertThat(statistics.get("findAppointmentsAt").getP50(), is(greaterThan(0L)));
+
+        // and when
+        instrumented.reset();
+
+        // then
+        assertThat(instrumented.snapshot().isEmpty(), is(true));
+    }
+
+    @Test
+    public void in02_statisticsArePublishedViaJmx() throws Exception {
+        // given
+        ObjectName objectName = new ObjectName(
+                "at.campus02.dbp2.assignment:type=AppointmentRepository,name=" + ObjectName.quote(NAME));
+        repository.close();
+        repository = AppointmentRepositoryFactory.getInstrumented(entityManagerFactory, NAME);
+
+        // when
+        repository.read(email);
+        TabularData statistics = (TabularData) ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(objectName, "Statistics");
+
+        // then
+        assertThat(statistics.size(), is(1));
+        repository.close();
+        repository = null;
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName), is(false));
+    }
+
+    @Test
+    public void in03_histogramPercentilesHaveBoundedRelativeError() {
+        // given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // when
+        for (long i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        // then
+        assertThat(new LatencyHistogram().percentile(0.5), is(0L));
+        assertThat((double) histogram.percentile(0.5), is(closeTo(5_000_000, 5_000_000 * 0.07)));
+        assertThat((double) histogram.percentile(0.99), is(closeTo(9_900_000, 9_900_000 * 0.07)));
+        assertThat((double) histogram.percentile(0.999), is(closeTo(9_990_000, 9_990_000 * 0.07)));
+        assertThat(LatencyHistogram.lowerBoundOf(LatencyHistogram.indexOf(12_345)), is(lessThanOrEqualTo(12_345L)));
+    }
+}
@@ -0,0 +1,167 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static at.campus02.dbp2.assignment.JournalEntry.Type.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JournalSpecification extends BaseSpecification {
+
+    private static final int EVENTS = 200_000;
+    private static final int APPOINTMENTS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void jo01_changesAreRecordedAndReplayedInOrder() {
+        // given
+        JournalingAppointmentRepository journaling = AppointmentRepositoryFactory.getJournaling(repository, directory);
+        repository = journaling;
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        Provider provider = prepareProvider(ProviderType.DOCTOR, graz_doc1);
+        for (int i = 0; i < 3; i++) {
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusMinutes(15L * i)));
+        }
+
+        // when
+        journaling.create(customer);
+        journaling.create(provider);
+        Appointment first = provider.getAppointments().get(0);
+        Appointment second = provider.getAppointments().get(1);
+        journaling.reserve(first, customer);
+        journaling.reserve(second, customer);
+        journaling.cancel(first, customer);
+        // nicht erfolgreich, daher nicht im Journal
+        journaling.cancel(first, customer);
+        journaling.update(prepareCustomer("Ümlaut", firstname, email));
+
+        // then
+        List<JournalEntry.Type> types = new ArrayList<>();
+        List<Long> sequences = new ArrayList<>();
+        Map<Integer, String> reservations = new HashMap<>();
+        long replayed = journaling.getJournal().replay(1, entry -> {
+            types.add(entry.getType());
+            sequences.add(entry.getSequence());
+            switch (entry.getType()) {
+                case PROVIDER_CREATED:
+                    Provider recorded = entry.toProvider();
+                    assertThat(recorded.getId(), is(provider.getId()));
+                    assertThat(recorded.getAddress(), is(graz_doc1));
+                    assertThat(recorded.getType(), is(ProviderType.DOCTOR));
+                    assertThat(recorded.getAppointments().size(), is(3));
+                    assertThat(recorded.getAppointments().get(2).getTime(), is(provider.getAppointments().get(2).getTime()));
+                    break;
+                case CUSTOMER_UPDATED:
+                    assertThat(entry.toCustomer().getLastname(), is("Ümlaut"));
+                    break;
+                case RESERVED:
+                    reservations.put(entry.getAppointmentId(), entry.getEmail());
+                    break;
+                case CANCELLED:
+                    reservations.remove(entry.getAppointmentId());
+                    break;
+                default:
+            }
+        });
+        assertThat(types, contains(CUSTOMER_CREATED, PROVIDER_CREATED, RESERVED, RESERVED, CANCELLED, CUSTOMER_UPDATED));
+        assertThat(replayed, is(6L));
+        assertThat(sequences, contains(1L, 2L, 3L, 4L, 5L, 6L));
+        assertThat(reservations, is(Collections.singletonMap(second.getId(), email)));
+
+        // and when
+        journaling.delete(provider);
+        journaling.delete(customer);
+
+        // then: Replay ab einer Sequenznummer
+        List<JournalEntry.Type> tail = new ArrayList<>();
+        journaling.getJournal().replay(7, entry -> tail.add(entry.getType()));
+        assertThat(tail, contains(PROVIDER_DELETED, CUSTOMER_DELETED));
+    }
+
+    @Test
+    public void jo02_segmentsRollAndReopenedJournalContinues() throws Exception {
+        // given
+        Journal journal = new Journal(directory, 4096);
+
+        // when
+        for (int i = 1; i <= 1000; i++) {
+            journal.reserved(i, i + email);
+        }
+        journal.close();
+
+        // then
+        assertThat(journal.getSegments().size(), is(greaterThan(10)));
+        assertThrows(IllegalStateException.class, () -> journal.cancelled(1, email));
+
+        // and when: erneut öffnen und fortsetzen
+        Journal reopened = new Journal(directory, 4096);
+        long next = reopened.getNextSequence();
+        reopened.cancelled(1000, 1000 + email);
+        List<Long> sequences = new ArrayList<>();
+        long replayed = reopened.replay(500, entry -> sequences.add(entry.getSequence()));
+
+        // then
+        assertThat(next, is(1001L));
+        assertThat(replayed, is(502L));
+        assertThat(sequences.get(0), is(500L));
+        assertThat(sequences.get(sequences.size() - 1), is(1001L));
+
+        // and when: der letzte Eintrag ist nur teilweise geschrieben (letztes Byte der Email fehlt)
+        reopened.close();
+        List<Path> segments = reopened.getSegments();
+        try (RandomAccessFile file = new RandomAccessFile(segments.get(segments.size() - 1).toFile(), "rw")) {
+            long last = file.length() - 1;
+            file.seek(last);
+            while (file.read() == 0) {
+                file.seek(--last);
+            }
+            file.seek(last);
+            file.write(0);
+        }
+        Journal recovered = new Journal(directory, 4096);
+
+        // then
+        assertThat(recovered.getNextSequence(), is(1001L));
+        assertThat(recovered.replay(1, entry -> { }), is(1000L));
+        recovered.reserved(1, email);
+        assertThat(recovered.replay(1001, entry -> assertThat(entry.getEmail(), is(email))), is(1L));
+        recovered.close();
+    }
+
+    @Test
+    public void jo03_replayRebuildsTheReservationIndex() {
+        // given (Durchsatz von append und replay: JournalBenchmark)
+        Journal journal = new Journal(directory);
+        for (int i = 0; i < EVENTS; i++) {
+            int appointment = i % APPOINTMENTS;
+            if ((i / APPOINTMENTS) % 2 == 0)
+                journal.reserved(appointment, "customer" + (appointment % 1000) + "@campus02.at");
+            else
+                journal.cancelled(appointment, "customer" + (appointment % 1000) + "@campus02.at");
+        }
+
+        // when: Aufbau eines Index der reservierten Appointments
+        BitSet reserved = new BitSet(APPOINTMENTS);
+        long replayed = journal.replay(1, entry -> reserved.set(entry.getAppointmentId(), entry.getType() == RESERVED));
+
+        // then
+        assertThat(replayed, is((long) EVENTS));
+        // 20 Durchläufe über alle Appointments: gerade Anzahl, also zuletzt alle storniert
+        assertThat(reserved.cardinality(), is(0));
+        journal.close();
+    }
+}
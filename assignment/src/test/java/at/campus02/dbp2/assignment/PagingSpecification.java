@@ -0,0 +1,169 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PagingSpecification extends BaseSpecification {
+
+    private static final int APPOINTMENTS = 25;
+    // deutlich weniger als APPOINTMENTS, damit Streams mehrere Seiten nachladen
+    private static final int STREAM_PAGE_SIZE = 4;
+
+    private List<Appointment> setupAppointments() {
+        Provider provider = prepareProvider(ProviderType.TEST_CENTER, graz_test);
+        // absichtlich nicht sortiert und mit gleichen Zeitpunkten, damit die ID als zweites Kriterium nötig ist
+        for (int i = APPOINTMENTS - 1; i >= 0; i--) {
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusHours(i / 2)));
+        }
+        createProvider(provider);
+        List<Appointment> expected = new ArrayList<>(provider.getAppointments());
+        expected.sort(Keyset.APPOINTMENT_ORDER);
+        return expected;
+    }
+
+    private static List<Appointment> readAllPages(PageReader reader) {
+        List<Appointment> all = new ArrayList<>();
+        Appointment after = null;
+        List<Appointment> page;
+        do {
+            page = reader.read(after, 10);
+            assertThat(page.size(), is(lessThanOrEqualTo(10)));
+            all.addAll(page);
+            after = page.isEmpty() ? null : page.get(page.size() - 1);
+        } while (page.size() == 10);
+        return all;
+    }
+
+    private interface PageReader {
+        List<Appointment> read(Appointment after, int limit);
+    }
+
+    @Test
+    public void pg01_findAppointmentsPagesCoverAllResultsInOrder() {
+        // given
+        List<Appointment> expected = setupAppointments();
+
+        // when
+        List<Appointment> all = readAllPages((after, limit) -> repository.findAppointments(null, null, after, limit));
+
+        // then
+        assertThat(all, is(expected));
+    }
+
+    @Test
+    public void pg02_findAppointmentsAtPagesCoverAllResultsInOrder() {
+        // given
+        List<Appointment> expected = setupAppointments();
+
+        // when
+        List<Appointment> all = readAllPages((after, limit) -> repository.findAppointmentsAt("graz", after, limit));
+
+        // then
+        assertThat(all, is(expected));
+    }
+
+    @Test
+    public void pg03_getAppointmentsForPagesOnlyReservedAppointments() {
+        // given
+        List<Appointment> appointments = setupAppointments();
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        List<Appointment> expected = new ArrayList<>();
+        for (int i = 0; i < appointments.size(); i += 2) {
+            repository.reserve(appointments.get(i), customer);
+            expected.add(appointments.get(i));
+        }
+
+        // when
+        List<Appointment> first = repository.getAppointmentsFor(customer, null, 10);
+        List<Appointment> second = repository.getAppointmentsFor(customer, first.get(first.size() - 1), 10);
+
+        // then
+        assertThat(first, is(expected.subList(0, 10)));
+        assertThat(second, is(expected.subList(10, expected.size())));
+    }
+
+    @Test
+    public void pg04_customerAndProviderPagesAreOrderedByKey() {
+        // given
+        for (int i = 0; i < 5; i++) {
+            createCustomer(prepareCustomer(lastname, firstname + i, i + email));
+            createProvider(prepareProvider(ProviderType.DOCTOR, graz_doc1));
+        }
+
+        // when
+        List<Customer> customers = repository.findCustomersBy("LASTNAME", null, null, 3);
+        List<Customer> moreCustomers = repository.findCustomersBy("LASTNAME", null, customers.get(2), 3);
+        List<Provider> providers = repository.findProvidersBy(ProviderType.DOCTOR, "graz", null, 3);
+        List<Provider> moreProviders = repository.findProvidersBy(ProviderType.DOCTOR, "graz", providers.get(2), 3);
+
+        // then
+        assertThat(customers.stream().map(Customer::getEmail).collect(Collectors.toList()),
+                contains("0" + email, "1" + email, "2" + email));
+        assertThat(moreCustomers.stream().map(Customer::getEmail).collect(Collectors.toList()),
+                contains("3" + email, "4" + email));
+        assertThat(providers.size(), is(3));
+        assertThat(moreProviders.size(), is(2));
+        assertThat(moreProviders.get(0).getId(), is(greaterThan(providers.get(2).getId())));
+        assertThrows(IllegalArgumentException.class, () -> repository.findCustomersBy(lastname, null, null, 0));
+    }
+
+    @Test
+    public void pg05_streamAppointmentsReturnsAllResultsInOrder() {
+        // given
+        List<Appointment> expected = setupAppointments();
+        AppointmentRepositoryJpa smallPages = new AppointmentRepositoryJpa(entityManagerFactory);
+        smallPages.setStreamPageSize(STREAM_PAGE_SIZE);
+
+        // when
+        List<Appointment> streamed;
+        try (Stream<Appointment> stream = smallPages.streamAppointments(null, null)) {
+            streamed = stream.collect(Collectors.toList());
+        }
+        List<Appointment> streamedAt;
+        try (Stream<Appointment> stream = smallPages.streamAppointmentsAt("graz")) {
+            streamedAt = stream.collect(Collectors.toList());
+        }
+        smallPages.close();
+
+        // then
+        assertThat(streamed, is(expected));
+        assertThat(streamedAt, is(expected));
+    }
+
+    @Test
+    public void pg06_inMemoryRepositoryPagesWithSameOrder() {
+        // given
+        AppointmentRepository inMemory = AppointmentRepositoryFactory.getInMemory();
+        Provider provider = prepareProvider(ProviderType.TEST_CENTER, graz_test);
+        for (int i = APPOINTMENTS - 1; i >= 0; i--) {
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusHours(i / 2)));
+        }
+        inMemory.create(provider);
+        List<Appointment> expected = new ArrayList<>(provider.getAppointments());
+        expected.sort(Keyset.APPOINTMENT_ORDER);
+
+        // when
+        List<Appointment> all = readAllPages((after, limit) -> inMemory.findAppointments(null, null, after, limit));
+        List<Appointment> allAt = readAllPages((after, limit) -> inMemory.findAppointmentsAt("graz", after, limit));
+        List<Appointment> streamed;
+        try (Stream<Appointment> stream = inMemory.streamAppointments(null, null)) {
+            streamed = stream.collect(Collectors.toList());
+        }
+
+        // then
+        assertThat(all, is(expected));
+        assertThat(allAt, is(expected));
+        assertThat(streamed, is(expected));
+        // gleicher Zeitpunkt, die Seite beginnt bei der nächsten ID
+        assertThat(inMemory.findAppointments(null, null, expected.get(0), 1), contains(expected.get(1)));
+    }
+}
@@ -0,0 +1,129 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PooledSpecification extends BaseSpecification {
+
+    private static final int THREADS = 16;
+    private static final int POOL_SIZE = 4;
+    private static final int APPOINTMENTS = 50;
+
+    @Test
+    public void po01_crudWithPooledRepositoryReturnsDetachedEntities() {
+        // given
+        AppointmentRepository pooled = AppointmentRepositoryFactory.getPooled(entityManagerFactory, POOL_SIZE);
+        Customer customer = prepareCustomer(lastname, firstname, email);
+
+        // when
+        boolean created = pooled.create(customer);
+        customer.setFirstname("changed");
+        Customer updated = pooled.update(customer);
+        Customer read = pooled.read(email);
+        read.setLastname("not saved");
+
+        // then
+        assertThat(created, is(true));
+        assertThat(updated.getFirstname(), is("changed"));
+        assertThat(pooled.read(email).getLastname(), is(lastname));
+        assertThrows(IllegalArgumentException.class,
+                () -> pooled.update(prepareCustomer(lastname, firstname, "unknown@campus02.at")));
+        assertThat(pooled.delete(customer), is(true));
+        assertThat(pooled.read(email), is(nullValue()));
+
+        // and when
+        pooled.close();
+
+        // then
+        assertThrows(IllegalStateException.class, () -> pooled.read(email));
+    }
+
+    @Test
+    public void po02_sharedPooledRepositoryNeverDoubleBooksAnAppointment() throws Exception {
+        // given
+        Provider provider = prepareProvider(ProviderType.TEST_CENTER, graz_test);
+        for (int i = 0; i < APPOINTMENTS; i++) {
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusMinutes(10 * i)));
+        }
+        createProvider(provider);
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            customers.add(createCustomer(prepareCustomer(lastname, firstname + i, i + email)));
+        }
+        // mehr Threads als EntityManager im Pool
+        AppointmentRepository pooled = AppointmentRepositoryFactory.getPooled(entityManagerFactory, POOL_SIZE);
+
+        // when
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (Customer customer : customers) {
+            results.add(executor.submit(() -> {
+                start.await();
+                int reserved = 0;
+                for (Appointment appointment : provider.getAppointments()) {
+                    if (pooled.reserve(appointment, customer))
+                        reserved++;
+                }
+                return reserved;
+            }));
+        }
+        start.countDown();
+        int reserved = 0;
+        for (Future<Integer> result : results) {
+            reserved += result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then
+        assertThat(reserved, is(APPOINTMENTS));
+        int perCustomer = 0;
+        for (Customer customer : customers) {
+            perCustomer += pooled.getAppointmentsFor(customer).size();
+        }
+        assertThat(perCustomer, is(APPOINTMENTS));
+        pooled.close();
+    }
+
+    @Test
+    public void po03_concurrentCreatesOfTheSameCustomerCreateItOnce() throws Exception {
+        // given
+        AppointmentRepository pooled = AppointmentRepositoryFactory.getPooled(entityManagerFactory, POOL_SIZE);
+
+        // when: alle Threads lesen gleichzeitig "nicht vorhanden" und legen dann an
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            String name = firstname + i;
+            results.add(executor.submit(() -> {
+                start.await();
+                return pooled.create(prepareCustomer(lastname, name, email));
+            }));
+        }
+        start.countDown();
+        int created = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(60, TimeUnit.SECONDS))
+                created++;
+        }
+        executor.shutdown();
+
+        // then
+        assertThat(created, is(1));
+        assertThat(pooled.read(email), is(notNullValue()));
+        pooled.close();
+    }
+}
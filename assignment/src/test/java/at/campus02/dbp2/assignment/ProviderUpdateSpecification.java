@@ -0,0 +1,146 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ProviderUpdateSpecification extends BaseSpecification {
+
+    private static final int SMALL_SCHEDULE = 10;
+    private static final int LARGE_SCHEDULE = 2000;
+
+    private Provider createProviderWithSchedule(int appointments) {
+        Provider provider = prepareProvider(ProviderType.PHARMACY, graz_doc1);
+        for (int i = 0; i < appointments; i++) {
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusMinutes(5 * i)));
+        }
+        repository.create(provider);
+        return provider;
+    }
+
+    private long statementsForSmallChange(Provider provider) {
+        long before = SqlStatementCounter.current();
+        provider.getAppointments().remove(0);
+        provider.getAppointments().get(0).setTime(LocalDateTime.of(2022, 1, 1, 8, 0));
+        provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2022, 1, 2, 8, 0)));
+        repository.update(provider);
+        return SqlStatementCounter.current() - before;
+    }
+
+    @Test
+    public void pu01_updateWritesOnlyTheDelta() {
+        // given
+        Provider provider = createProviderWithSchedule(SMALL_SCHEDULE);
+        Appointment removed = provider.getAppointments().get(0);
+        Appointment changed = provider.getAppointments().get(1);
+        Appointment added = prepareAppointment(LocalDateTime.of(2022, 1, 2, 8, 0));
+
+        // when
+        provider.getAppointments().remove(removed);
+        changed.setTime(LocalDateTime.of(2022, 1, 1, 8, 0));
+        provider.getAppointments().add(added);
+        Provider updated = repository.update(provider);
+
+        // then
+        assertThat(added.getId(), is(notNullValue()));
+        assertThat(updated.getAppointments().size(), is(SMALL_SCHEDULE));
+        assertThat(updated.getAppointments(), hasItems(changed, added));
+        assertThat(entityManager.find(Appointment.class, removed.getId()), is(nullValue()));
+        assertThat(entityManager.find(Appointment.class, changed.getId()).getTime(),
+                is(LocalDateTime.of(2022, 1, 1, 8, 0)));
+        List<Appointment> stored = entityManager
+                .createQuery("select a from Appointment a where a.provider.id = :id", Appointment.class)
+                .setParameter("id", provider.getId())
+                .getResultList();
+        assertThat(stored.size(), is(SMALL_SCHEDULE));
+    }
+
+    @Test
+    public void pu02_statementCountDoesNotGrowWithScheduleSize() {
+        // given
+        SqlStatementCounter.register(entityManagerFactory);
+        Provider small = createProviderWithSchedule(SMALL_SCHEDULE);
+        Provider large = createProviderWithSchedule(LARGE_SCHEDULE);
+
+        // when
+        long smallStatements = statementsForSmallChange(small);
+        long largeStatements = statementsForSmallChange(large);
+
+        // then
+        // +/- ein Statement, falls gerade ein neuer Block IDs aus der Sequence-Tabelle reserviert wird
+        assertThat(largeStatements, is(lessThanOrEqualTo(smallStatements + 1)));
+        assertThat(repository.read(large.getId()).getAppointments().size(), is(LARGE_SCHEDULE));
+    }
+
+    @Test
+    public void pu03_updateKeepsThePersistenceContextAndSkipsUnchangedAppointments() throws IllegalAccessException {
+        // given
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        repository.create(customer);
+        Provider provider = createProviderWithSchedule(SMALL_SCHEDULE);
+        Appointment untouched = provider.getAppointments().get(1);
+        // ein anderer EntityManager ändert das Appointment, das der Aufrufer nicht anfasst
+        entityManager.getTransaction().begin();
+        entityManager.find(Appointment.class, untouched.getId()).setTime(LocalDateTime.of(2022, 3, 1, 8, 0));
+        entityManager.getTransaction().commit();
+
+        // when
+        provider.getAppointments().remove(0);
+        Provider updated = repository.update(provider);
+
+        // then
+        EntityManager repositoryManager = getEntityManagerFromInterface(repository);
+        assertThat(repositoryManager.contains(customer), is(true));
+        assertThat(repositoryManager.contains(updated), is(true));
+        assertThat(updated.getAppointments().size(), is(SMALL_SCHEDULE - 1));
+        entityManager.clear();
+        assertThat(entityManager.find(Appointment.class, untouched.getId()).getTime(),
+                is(LocalDateTime.of(2022, 3, 1, 8, 0)));
+    }
+
+    @Test
+    public void pu04_appointmentMovedFromAnotherProviderIsMergedNotInsertedAgain() {
+        // given
+        Provider from = createProviderWithSchedule(SMALL_SCHEDULE);
+        Provider to = createProviderWithSchedule(SMALL_SCHEDULE);
+        // von einem anderen EntityManager gelesen, also für das Repository nicht verwaltet
+        Appointment moved = entityManager.find(Appointment.class, from.getAppointments().get(0).getId());
+
+        // when
+        to.getAppointments().add(moved);
+        repository.update(to);
+
+        // then
+        entityManager.clear();
+        assertThat(entityManager.find(Appointment.class, moved.getId()).getProvider().getId(), is(to.getId()));
+        assertThat(entityManager.find(Provider.class, to.getId()).getAppointments().size(), is(SMALL_SCHEDULE + 1));
+        assertThat(entityManager.find(Provider.class, from.getId()).getAppointments().size(), is(SMALL_SCHEDULE - 1));
+        assertThat(repository.read(from.getId()).getAppointments().size(), is(SMALL_SCHEDULE - 1));
+    }
+
+    @Test
+    public void pu05_removingAnAppointmentThatMovedMeanwhileDoesNotDeleteIt() {
+        // given
+        Provider other = createProviderWithSchedule(SMALL_SCHEDULE);
+        Integer providerId = createProviderWithSchedule(SMALL_SCHEDULE).getId();
+        // der Aufrufer hält einen Provider, dessen Liste veraltet ist: das Appointment wurde inzwischen verschoben
+        Provider stale = entityManager.find(Provider.class, providerId);
+        Appointment moved = stale.getAppointments().get(0);
+        entityManager.getTransaction().begin();
+        moved.setProvider(entityManager.find(Provider.class, other.getId()));
+        entityManager.getTransaction().commit();
+
+        // when
+        stale.getAppointments().remove(moved);
+        repository.update(stale);
+
+        // then
+        entityManager.clear();
+        assertThat(entityManager.find(Appointment.class, moved.getId()).getProvider().getId(), is(other.getId()));
+    }
+}
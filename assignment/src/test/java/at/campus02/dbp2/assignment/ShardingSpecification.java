@@ -0,0 +1,192 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ShardingSpecification extends BaseSpecification {
+
+    private static final int THREADS = 8;
+    private static final int PROVIDERS = 400;
+
+    private final List<EntityManagerFactory> shardFactories = new ArrayList<>();
+
+    // Shards mit eigener Datenbank je Index, "first" erlaubt mehrere getrennte Repositories in einem Test
+    private ShardedAppointmentRepository sharded(int first, int shards) {
+        for (int i = shardFactories.size(); i < first + shards; i++) {
+            shardFactories.add(Persistence.createEntityManagerFactory("assignment", Collections.singletonMap(
+                    "javax.persistence.jdbc.url", "jdbc:derby:build/shards/shard" + i + ";create=true")));
+        }
+        return AppointmentRepositoryFactory.getSharded(shardFactories.subList(first, first + shards), THREADS);
+    }
+
+    @AfterEach
+    public void closeShards() {
+        for (EntityManagerFactory factory : shardFactories) {
+            if (factory.isOpen())
+                factory.close();
+        }
+    }
+
+    private static Provider providerWithAppointments(String address, int appointments) {
+        Provider provider = prepareProvider(ProviderType.DOCTOR, address);
+        for (int i = 0; i < appointments; i++) {
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusMinutes(15L * i)));
+        }
+        return provider;
+    }
+
+    @Test
+    public void sh01_providersAreRoutedByPostalCodeAndSearchesMergeAllShards() {
+        // given
+        ShardedAppointmentRepository sharded = sharded(0, 3);
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        List<Provider> providers = new ArrayList<>();
+        for (String address : new String[]{graz_doc1, graz_doc2, leibnitz_test, "Koloman-Wallisch-Platz 1, 8600 Bruck an der Mur"}) {
+            providers.add(providerWithAppointments(address, 3));
+        }
+
+        // when
+        boolean created = sharded.create(customer);
+        List<Boolean> results = sharded.createProviders(providers);
+
+        // then
+        assertThat(created, is(true));
+        assertThat(sharded.create(customer), is(false));
+        assertThat(results, everyItem(is(true)));
+        for (Provider provider : providers) {
+            // der ID-Bereich gehört zum Shard der Postleitzahl
+            assertThat((provider.getId() - 1) / ShardedAppointmentRepository.ID_RANGE,
+                    is(sharded.shardOf(provider.getAddress())));
+            assertThat(sharded.read(provider.getId()).getAddress(), is(provider.getAddress()));
+        }
+        assertThat(providers.stream().map(p -> sharded.shardOf(p.getAddress())).distinct().count(), is(3L));
+        assertThat(sharded.read(-1), is(nullValue()));
+
+        // and when: ein Appointment je Provider reservieren (der Customer ist auf allen Shards vorhanden)
+        for (Provider provider : providers) {
+            assertThat(sharded.reserve(provider.getAppointments().get(0), customer), is(true));
+        }
+
+        // then
+        List<Appointment> reserved = sharded.getAppointmentsFor(customer);
+        assertThat(reserved.size(), is(providers.size()));
+        assertThat(sharded.getAppointmentsForCustomers(Collections.singletonList(customer)).get(customer),
+                is(reserved));
+        List<Appointment> free = sharded.findAppointments(null, null);
+        assertThat(free.size(), is(providers.size() * 2));
+        assertThat(sharded.findAppointmentsAt("graz").size(), is(4));
+
+        // seitenweise über alle Shards in derselben Reihenfolge wie das ganze Ergebnis
+        List<Appointment> paged = new ArrayList<>();
+        Appointment after = null;
+        List<Appointment> page;
+        while (!(page = sharded.findAppointments(null, null, after, 3)).isEmpty()) {
+            paged.addAll(page);
+            after = page.get(page.size() - 1);
+        }
+        assertThat(paged, is(free));
+        try (Stream<Appointment> stream = sharded.streamAppointments(null, null)) {
+            assertThat(stream.collect(Collectors.toList()), is(free));
+        }
+
+        // and when
+        sharded.delete(customer);
+
+        // then
+        assertThat(sharded.read(email), is(nullValue()));
+        assertThat(sharded.findAppointments(null, null).size(), is(providers.size() * 3));
+        sharded.close();
+    }
+
+    @Test
+    public void sh02_concurrentWritesAreSpreadOverAllShards() throws Exception {
+        // given
+        ShardedAppointmentRepository sharded = sharded(0, 4);
+
+        // when: jeder create(Provider) ist eine eigene Transaktion (Durchsatz: ShardingBenchmark)
+        createConcurrently(sharded);
+
+        // then
+        List<Provider> providers = sharded.findProvidersBy(ProviderType.DOCTOR, "gasse");
+        assertThat(providers.size(), is(PROVIDERS));
+        assertThat(providers.stream().map(p -> (p.getId() - 1) / ShardedAppointmentRepository.ID_RANGE)
+                .distinct().count(), is(4L));
+        sharded.close();
+    }
+
+    @Test
+    public void sh03_failedReplicaWritesAreRepairedFromTheHomeShard() {
+        // given: das Replikat kennt den Customer schon mit veraltetem Stand
+        ShardedAppointmentRepository sharded = sharded(0, 2);
+        EntityManagerFactory replicaFactory = shardFactories.get(1 - Math.floorMod(email.hashCode(), 2));
+        new AppointmentRepositoryJpa(replicaFactory).create(prepareCustomer(lastname, "Stale", email));
+        Customer customer = prepareCustomer(lastname, firstname, email);
+
+        // when
+        boolean created = sharded.create(customer);
+
+        // then
+        assertThat(created, is(true));
+        assertThat(new AppointmentRepositoryJpa(replicaFactory).read(email).getFirstname(), is(firstname));
+        assertThat(sharded.getUnsyncedCustomers(), is(empty()));
+
+        // and when: das Replikat ist nicht erreichbar
+        replicaFactory.close();
+        customer.setFirstname("Changed");
+        IllegalStateException failure = null;
+        try {
+            sharded.update(customer);
+        } catch (IllegalStateException e) {
+            failure = e;
+        }
+
+        // then: der Heimat-Shard hat committed, der Customer bleibt zum Abgleich vorgemerkt
+        assertThat(failure, is(notNullValue()));
+        assertThat(sharded.read(email).getFirstname(), is("Changed"));
+        assertThat(sharded.getUnsyncedCustomers(), contains(email));
+        assertThat(sharded.resync(email), is(false));
+        sharded.close();
+    }
+
+    // die Postleitzahlen verteilen sich gleichmäßig auf die Shards
+    private static void createConcurrently(AppointmentRepository repository) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                int i;
+                while ((i = next.getAndIncrement()) < PROVIDERS) {
+                    assertThat(repository.create(providerWithAppointments("Gasse " + i + ", " + (8000 + i) + " Graz", 2)),
+                            is(true));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(120, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+}
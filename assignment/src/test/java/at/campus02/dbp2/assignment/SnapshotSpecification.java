@@ -0,0 +1,165 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class SnapshotSpecification extends BaseSpecification {
+
+    private static final int CUSTOMERS = 1_000;
+    private static final int PROVIDERS = 100;
+    private static final int APPOINTMENTS_PER_PROVIDER = 20;
+
+    @TempDir
+    Path directory;
+
+    private static Provider providerWithAppointments(String address, int appointments) {
+        Provider provider = prepareProvider(ProviderType.DOCTOR, address);
+        for (int i = 0; i < appointments; i++) {
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusMinutes(15L * i)));
+        }
+        return provider;
+    }
+
+    // Appointment-ID -> Email des Customers ("" für frei) aller Provider eines Repositories
+    private static Map<Integer, String> reservations(AppointmentRepository repository) {
+        Map<Integer, String> reservations = new TreeMap<>();
+        for (Provider provider : repository.findProvidersBy(ProviderType.DOCTOR, "", Provider.WITH_APPOINTMENTS)) {
+            for (Appointment appointment : provider.getAppointments()) {
+                reservations.put(appointment.getId(),
+                        appointment.getCustomer() == null ? "" : appointment.getCustomer().getEmail());
+            }
+        }
+        return reservations;
+    }
+
+    @Test
+    public void sn01_loadedSnapshotCatchesUpWithTheJournal() {
+        // given
+        JournalingAppointmentRepository journaling =
+                AppointmentRepositoryFactory.getJournaling(repository, directory.resolve("journal"));
+        repository = journaling;
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Customer customer = prepareCustomer(lastname, firstname + i, i + email);
+            journaling.create(customer);
+            customers.add(customer);
+        }
+        Provider provider = providerWithAppointments(graz_doc1, 4);
+        journaling.create(provider);
+        journaling.reserve(provider.getAppointments().get(0), customers.get(0));
+        journaling.reserve(provider.getAppointments().get(1), customers.get(1));
+
+        RepositorySnapshot replica = RepositorySnapshot.empty();
+        replica.catchUp(journaling.getJournal());
+        Path file = directory.resolve("repository.snapshot");
+        long size = replica.write(file);
+
+        // when: weitere Änderungen nach dem Snapshot
+        journaling.cancel(provider.getAppointments().get(0), customers.get(0));
+        journaling.reserve(provider.getAppointments().get(2), customers.get(2));
+        journaling.update(prepareCustomer("Ümlaut", firstname, 0 + email));
+        journaling.create(providerWithAppointments(graz_doc2, 2));
+        journaling.delete(customers.get(1));
+        RepositorySnapshot loaded = RepositorySnapshot.load(file);
+
+        // then: zuerst der Stand des Snapshots
+        assertThat(loaded.getSize(), is(size));
+        assertThat(loaded.getJournalSequence(), is(replica.getJournalSequence()));
+        assertThat(reservations(loaded.getRepository()).values(),
+                contains(0 + email, 1 + email, "", ""));
+
+        // and when
+        long caughtUp = loaded.catchUp(journaling.getJournal());
+
+        // then: derselbe Zustand wie in der Datenbank (neu gelesen, reserve/cancel umgehen den Persistence Context)
+        assertThat(caughtUp, is(5L));
+        AppointmentRepository warm = loaded.getRepository();
+        AppointmentRepository fresh = AppointmentRepositoryFactory.get(entityManagerFactory);
+        assertThat(reservations(warm), is(reservations(fresh)));
+        fresh.close();
+        assertThat(warm.read(0 + email).getLastname(), is("Ümlaut"));
+        assertThat(warm.read(1 + email), is(nullValue()));
+        assertThat(warm.findCustomersBy(null, null).size(), is(2));
+        assertThat(warm.findAppointmentsAt("herrengasse").size(), is(2));
+
+        // and when: neue Provider im Replica bekommen keine bereits vergebenen IDs
+        List<Integer> existing = new ArrayList<>(reservations(warm).keySet());
+        Provider local = providerWithAppointments(graz_test, 1);
+        warm.create(local);
+
+        // then
+        assertThat(existing, not(hasItem(local.getAppointments().get(0).getId())));
+        assertThat(warm.read(provider.getId()).getAddress(), is(graz_doc1));
+    }
+
+    @Test
+    public void sn02_warmStartFromSnapshotAndJournalMatchesTheDatabase() {
+        // given (Dauer von rebuild gegen load: SnapshotBenchmark)
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers.add(prepareCustomer("Lastname" + i, firstname, "customer" + i + "@campus02.at"));
+        }
+        repository.createCustomers(customers);
+        List<Provider> providers = new ArrayList<>();
+        for (int i = 0; i < PROVIDERS; i++) {
+            providers.add(providerWithAppointments("Gasse " + i + ", 8010 Graz", APPOINTMENTS_PER_PROVIDER));
+        }
+        repository.createProviders(providers);
+        // jedes vierte Appointment ist reserviert
+        entityManager.getTransaction().begin();
+        int reserved = 0;
+        for (Provider provider : providers) {
+            for (Appointment appointment : provider.getAppointments()) {
+                if (appointment.getId() % 4 == 0) {
+                    entityManager.createNativeQuery("update APPOINTMENT set CUSTOMER_EMAIL = ?1 where ID = ?2")
+                            .setParameter(1, "customer" + (appointment.getId() % CUSTOMERS) + "@campus02.at")
+                            .setParameter(2, appointment.getId())
+                            .executeUpdate();
+                    reserved++;
+                }
+            }
+        }
+        entityManager.getTransaction().commit();
+        // wie nach einem Neustart: nichts aus dem Persistence Context bzw. dem Shared Cache verwenden
+        entityManagerFactory.getCache().evictAll();
+        repository.close();
+        repository = AppointmentRepositoryFactory.get(entityManagerFactory);
+
+        // when
+        RepositorySnapshot cold = RepositorySnapshot.rebuild(repository, 1);
+        Path file = directory.resolve("repository.snapshot");
+        long size = cold.write(file);
+        RepositorySnapshot warm = RepositorySnapshot.load(file);
+
+        // and when: Änderungen seit dem Snapshot aus dem Journal nachholen
+        Journal journal = new Journal(directory.resolve("journal"));
+        int changes = 0;
+        for (Provider provider : providers) {
+            for (Appointment appointment : provider.getAppointments()) {
+                if (appointment.getId() % 4 == 1) {
+                    journal.reserved(appointment.getId(), customers.get(changes % CUSTOMERS).getEmail());
+                    changes++;
+                }
+            }
+        }
+        long caughtUp = warm.catchUp(journal);
+        journal.close();
+
+        // then
+        assertThat(size, is(greaterThan(0L)));
+        assertThat(caughtUp, is((long) changes));
+        assertThat(warm.getRepository().findCustomersBy(null, null).size(), is(CUSTOMERS));
+        assertThat(reservations(warm.getRepository()).values().stream().filter(e -> !e.isEmpty()).count(),
+                is((long) reserved + changes));
+    }
+}
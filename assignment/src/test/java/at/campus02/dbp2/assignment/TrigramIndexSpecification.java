@@ -0,0 +1,130 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class TrigramIndexSpecification extends BaseSpecification {
+
+    private static final int PROVIDERS = 100_000;
+    private static final String[] CITIES = {"Graz", "Leibnitz", "Wien", "Linz", "Salzburg", "Klagenfurt", "Leoben"};
+
+    @Test
+    public void tr01_candidatesContainAllTextsWithEveryTrigram() {
+        // given
+        TrigramIndex<Integer> index = new TrigramIndex<>();
+        index.add(1, "Annenstraße 14, 8020 Graz");
+        index.add(2, "Hauptplatz 1, 8430 Leibnitz");
+        index.add(3, "Grazer Straße 5, 8430 Leibnitz");
+
+        // when / then
+        assertThat(index.candidates("graz"), containsInAnyOrder(1, 3));
+        assertThat(index.candidates("LEIBNITZ"), containsInAnyOrder(2, 3));
+        assertThat(index.candidates("leoben"), is(empty()));
+        assertThat(index.candidates("gr"), is(nullValue()));
+
+        // and when
+        index.remove(3, "Grazer Straße 5, 8430 Leibnitz");
+
+        // then
+        assertThat(index.candidates("graz"), contains(1));
+    }
+
+    @Test
+    public void tr02_candidatesAt100kProvidersAreFewAndContainEveryMatch() {
+        // given
+        TrigramIndex<Integer> index = new TrigramIndex<>();
+        List<String> addresses = new ArrayList<>(PROVIDERS);
+        for (int i = 0; i < PROVIDERS; i++) {
+            String address = "Gasse " + i + ", " + (8000 + i % 1000) + " " + CITIES[i % CITIES.length];
+            addresses.add(address);
+            index.add(i, address);
+        }
+        String part = "8123 salz";
+
+        // when
+        Set<Integer> candidates = index.candidates(part);
+
+        // then: jeder Treffer des Scans ist Kandidat, aber nur ein Bruchteil aller Provider wird geprüft
+        for (int i = 0; i < PROVIDERS; i++) {
+            if (addresses.get(i).toLowerCase(Locale.ROOT).contains(part))
+                assertThat(candidates, hasItem(i));
+        }
+        assertThat(candidates, is(not(empty())));
+        assertThat(candidates.size(), is(lessThan(PROVIDERS / 100)));
+    }
+
+    @Test
+    public void tr03_trigramTableFollowsCreateUpdateAndDelete() {
+        // given: einmal über das Repository, einmal direkt über den EntityManager angelegt
+        Provider viaRepository = prepareProvider(ProviderType.DOCTOR, graz_doc1);
+        repository.create(viaRepository);
+        Provider viaEntityManager = createProvider(prepareProvider(ProviderType.DOCTOR, graz_doc2));
+
+        // when / then
+        assertThat(repository.findProvidersBy(ProviderType.DOCTOR, "GRAZ"),
+                containsInAnyOrder(viaRepository, viaEntityManager));
+        assertThat(trigramsOf(viaRepository), is(greaterThan(0L)));
+
+        // and when
+        viaRepository.setAddress(leibnitz_test);
+        repository.update(viaRepository);
+
+        // then
+        assertThat(repository.findProvidersBy(ProviderType.DOCTOR, "graz"), contains(viaEntityManager));
+        assertThat(repository.findProvidersBy(ProviderType.DOCTOR, "leibnitz"), contains(viaRepository));
+        assertThat(trigramsOf(viaRepository), is((long) TrigramIndex.trigrams(leibnitz_test).size()));
+
+        // and when
+        repository.delete(viaRepository);
+
+        // then
+        assertThat(trigramsOf(viaRepository), is(0L));
+    }
+
+    @Test
+    public void tr04_wildcardsAreSearchedAsCharactersLikeInMemory() {
+        // given
+        AppointmentRepository inMemory = AppointmentRepositoryFactory.getInMemory();
+        for (AppointmentRepository target : Arrays.asList(repository, inMemory)) {
+            for (String address : Arrays.asList("Gasse 10%, 8010 Graz", "Gasse 100, 8010 Graz",
+                    "Lager_Halle 1, 8020 Graz", "Lagerhalle 2, 8020 Graz", "Lagerxhalle 3, 8020 Graz")) {
+                target.create(prepareProvider(ProviderType.PHARMACY, address));
+            }
+        }
+
+        // when / then
+        for (AppointmentRepository target : Arrays.asList(repository, inMemory)) {
+            assertThat(addressesOf(target.findProvidersBy(ProviderType.PHARMACY, "10%")),
+                    contains("Gasse 10%, 8010 Graz"));
+            assertThat(addressesOf(target.findProvidersBy(ProviderType.PHARMACY, "r_h")),
+                    contains("Lager_Halle 1, 8020 Graz"));
+            assertThat(addressesOf(target.findProvidersBy(ProviderType.PHARMACY, "%")),
+                    contains("Gasse 10%, 8010 Graz"));
+        }
+    }
+
+    // <editor-fold desc="Hilfsmethoden">
+    private long trigramsOf(Provider provider) {
+        return ((Number) entityManager
+                .createNativeQuery("select count(*) from PROVIDER_TRIGRAM where PROVIDER_ID = ?")
+                .setParameter(1, provider.getId())
+                .getSingleResult()).longValue();
+    }
+
+    private static List<String> addressesOf(List<Provider> providers) {
+        List<String> addresses = new ArrayList<>();
+        for (Provider provider : providers) {
+            addresses.add(provider.getAddress());
+        }
+        return addresses;
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,156 @@
+package at.campus02.dbp2.repository;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Gemeinsamer Datenbestand eines Benchmarks: <code>customers</code> Customer, die vor der Messung in das gewählte
+ * Repository geladen werden. JDBC und JPA verwenden je eine eigene, neu angelegte Derby-Datenbank auf der Platte
+ * (im Temp-Verzeichnis), damit Commits wirklich geschrieben werden.
+ * <p>
+ * <code>repository</code>: "inMemory", "jdbc" und "jpa" sind die drei Varianten aus <code>Application</code>;
+ * zusätzlich möglich sind "concurrentInMemory", "pooledJdbc" und "writeBehind".
+ */
+@State(Scope.Benchmark)
+public class BenchmarkData {
+
+    @Param({"inMemory", "jdbc", "jpa"})
+    public String repository;
+
+    @Param({"1000", "100000"})
+    public int customers;
+
+    String jdbcUrl;
+    EntityManagerFactory factory;
+    // thread-safe Repositories werden von allen Threads gemeinsam verwendet
+    CustomerRepository shared;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (repository) {
+            case "inMemory":
+                break;
+            case "concurrentInMemory":
+                shared = new ConcurrentInMemoryRepository();
+                fill(shared);
+                break;
+            case "jdbc":
+            case "pooledJdbc":
+            case "writeBehind":
+                jdbcUrl = "jdbc:derby:" + database(repository) + ";create=true";
+                JdbcRepository loader = new JdbcRepository(jdbcUrl);
+                loader.createAll(dataset());
+                if (repository.equals("pooledJdbc"))
+                    shared = new PooledJdbcRepository(jdbcUrl, 64, 10_000);
+                else if (repository.equals("writeBehind"))
+                    shared = new WriteBehindRepository(loader);
+                break;
+            case "jpa":
+                // drop-and-create-tables: jede Factory beginnt mit einer leeren Tabelle
+                factory = Persistence.createEntityManagerFactory("nameOfJpaPersistenceUnit", Collections.singletonMap(
+                        "javax.persistence.jdbc.url", "jdbc:derby:" + database(repository) + ";create=true"));
+                fillJpa();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown repository: " + repository);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (shared instanceof AutoCloseable)
+            ((AutoCloseable) shared).close();
+        if (factory != null)
+            factory.close();
+    }
+
+    boolean isShared() {
+        return shared != null;
+    }
+
+    /**
+     * @return ein neues Repository für einen Benchmark-Thread (nur für nicht thread-safe Varianten).
+     */
+    CustomerRepository newRepository() {
+        switch (repository) {
+            case "inMemory":
+                // InMemoryRepository ist nicht thread-safe: jeder Thread bekommt eine eigene Kopie des Datenbestands
+                CustomerRepository inMemory = new InMemoryRepository();
+                fill(inMemory);
+                return inMemory;
+            case "jdbc":
+                return new JdbcRepository(jdbcUrl);
+            case "jpa":
+                return new JpaRepository(factory);
+            default:
+                throw new IllegalStateException("Repository is shared: " + repository);
+        }
+    }
+
+    String randomEmail() {
+        return email(ThreadLocalRandom.current().nextInt(customers));
+    }
+
+    private List<Customer> dataset() {
+        List<Customer> dataset = new ArrayList<>(customers);
+        for (int i = 0; i < customers; i++) {
+            Customer customer = new Customer();
+            customer.setEmail(email(i));
+            customer.setLastname("Lastname" + i);
+            customer.setFirstname("Firstname" + i);
+            dataset.add(customer);
+        }
+        return dataset;
+    }
+
+    private void fill(CustomerRepository target) {
+        for (Customer customer : dataset()) {
+            target.create(customer);
+        }
+    }
+
+    // in Chunks zu je 1000 Customern, danach den Persistence Context leeren
+    private void fillJpa() {
+        EntityManager manager = factory.createEntityManager();
+        List<Customer> dataset = dataset();
+        for (int start = 0; start < dataset.size(); start += 1000) {
+            manager.getTransaction().begin();
+            for (Customer customer : dataset.subList(start, Math.min(start + 1000, dataset.size()))) {
+                manager.persist(customer);
+            }
+            manager.getTransaction().commit();
+            manager.clear();
+        }
+        manager.close();
+    }
+
+    private static String email(int i) {
+        return "customer" + i + "@customers.com";
+    }
+
+    private static String database(String name) {
+        Path path = Paths.get(System.getProperty("java.io.tmpdir"), "customer-repository-benchmark", name);
+        if (Files.exists(path)) {
+            try (Stream<Path> files = Files.walk(path)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return path.toString();
+    }
+}
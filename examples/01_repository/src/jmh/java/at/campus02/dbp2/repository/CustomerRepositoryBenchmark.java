@@ -0,0 +1,52 @@
+package at.campus02.dbp2.repository;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Derselbe CRUD-Workload gegen alle Implementierungen von <code>{@link CustomerRepository}</code>: Lesen und Ändern
+ * eines zufälligen Customers aus dem Datenbestand sowie ein kompletter Durchlauf wie in <code>Application</code>
+ * (create, read, update, read, delete) mit einem neuen Customer, damit der Datenbestand gleich groß bleibt.
+ * <p>
+ * Standardmäßig wird der Durchsatz gemessen; Latenz (Perzentile) mit <code>-PjmhModes=thrpt,sample</code>,
+ * die Allokationsrate liefert der GC-Profiler. Die Vergleichstabelle erzeugt <code>{@link RepositoryComparison}</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class CustomerRepositoryBenchmark {
+
+    @Benchmark
+    public Customer read(BenchmarkData data, RepositoryPerThread state) {
+        return state.repository.read(data.randomEmail());
+    }
+
+    @Benchmark
+    public Customer update(BenchmarkData data, RepositoryPerThread state) {
+        Customer customer = state.repository.read(data.randomEmail());
+        customer.setFirstname("Firstname" + ThreadLocalRandom.current().nextInt(1000));
+        state.repository.update(customer);
+        return customer;
+    }
+
+    @Benchmark
+    public Customer crud(RepositoryPerThread state) {
+        Customer customer = new Customer();
+        customer.setEmail("benchmark" + ThreadLocalRandom.current().nextLong() + "@customers.com");
+        customer.setLastname("Customer");
+        customer.setFirstname("Carlo");
+        state.repository.create(customer);
+
+        Customer fromRepository = state.repository.read(customer.getEmail());
+        fromRepository.setFirstname("Conrad");
+        state.repository.update(fromRepository);
+
+        Customer updated = state.repository.read(customer.getEmail());
+        state.repository.delete(updated);
+        return updated;
+    }
+}
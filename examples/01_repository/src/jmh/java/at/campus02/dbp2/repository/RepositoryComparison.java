@@ -0,0 +1,140 @@
+package at.campus02.dbp2.repository;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Führt <code>{@link CustomerRepositoryBenchmark}</code> für alle Repositories, Datenbestände und Thread-Anzahlen aus
+ * (Durchsatz und Latenz, jeweils mit GC-Profiler) und gibt danach eine Vergleichstabelle aus. Aufruf z.B. mit
+ * <code>gradle runRepositoryComparison --args="1,4 1000,100000 inMemory,jdbc,jpa 2"</code> (Threads, Customer,
+ * Repositories, Sekunden je Iteration).
+ */
+public class RepositoryComparison {
+
+    public static void main(String[] args) throws RunnerException {
+        String[] threads = (args.length > 0 ? args[0] : "1,4").split(",");
+        String[] customers = (args.length > 1 ? args[1] : "1000,100000").split(",");
+        String[] repositories = (args.length > 2 ? args[2] : "inMemory,jdbc,jpa").split(",");
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+        Map<String, Row> rows = new LinkedHashMap<>();
+        // die Thread-Anzahl ist pro Lauf fix
+        for (String threadCount : threads) {
+            Options options = new OptionsBuilder()
+                    .include(CustomerRepositoryBenchmark.class.getName() + "\\.")
+                    .param("repository", repositories)
+                    .param("customers", customers)
+                    .threads(Integer.parseInt(threadCount))
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .warmupTime(TimeValue.seconds(seconds))
+                    .measurementTime(TimeValue.seconds(seconds))
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            for (RunResult result : new Runner(options).run()) {
+                BenchmarkParams params = result.getParams();
+                String benchmark = params.getBenchmark().substring(params.getBenchmark().lastIndexOf('.') + 1);
+                String key = benchmark + "/" + params.getParam("repository") + "/" + params.getParam("customers") +
+                        "/" + params.getThreads();
+                Row row = rows.computeIfAbsent(key, k -> new Row(benchmark, params.getParam("repository"),
+                        Integer.parseInt(params.getParam("customers")), params.getThreads()));
+                row.add(params.getMode(), result);
+            }
+        }
+        print(new ArrayList<>(rows.values()));
+    }
+
+    private static void print(List<Row> rows) {
+        rows.sort(Comparator.comparing((Row row) -> row.benchmark)
+                .thenComparingInt(row -> row.customers)
+                .thenComparingInt(row -> row.threads)
+                .thenComparing(row -> -row.throughput));
+        Application.log(String.format("%-8s %-20s %9s %7s %14s %9s %10s %10s %12s %12s",
+                "workload", "repository", "customers", "threads", "ops/s", "x slower", "p50 us", "p99 us",
+                "alloc B/op", "alloc MB/s"));
+        for (Row row : rows) {
+            // Faktor zum schnellsten Repository bei gleichem Workload, Datenbestand und Threads
+            double best = 0;
+            for (Row other : rows) {
+                if (other.benchmark.equals(row.benchmark) && other.customers == row.customers
+                        && other.threads == row.threads)
+                    best = Math.max(best, other.throughput);
+            }
+            Application.log(String.format("%-8s %-20s %9d %7d %14.0f %9.1f %10.1f %10.1f %12.0f %12.1f",
+                    row.benchmark, row.repository, row.customers, row.threads, row.throughput,
+                    best / row.throughput, row.p50Micros, row.p99Micros,
+                    row.allocBytesPerOp, row.allocMegabytesPerSecond));
+        }
+    }
+
+    private static class Row {
+        final String benchmark;
+        final String repository;
+        final int customers;
+        final int threads;
+        double throughput = Double.NaN;
+        double p50Micros = Double.NaN;
+        double p99Micros = Double.NaN;
+        double allocBytesPerOp = Double.NaN;
+        double allocMegabytesPerSecond = Double.NaN;
+
+        Row(String benchmark, String repository, int customers, int threads) {
+            this.benchmark = benchmark;
+            this.repository = repository;
+            this.customers = customers;
+            this.threads = threads;
+        }
+
+        void add(Mode mode, RunResult result) {
+            Result<?> primary = result.getPrimaryResult();
+            if (mode == Mode.Throughput) {
+                throughput = primary.getScore() * perSecond(primary.getScoreUnit());
+                // die Allokation kommt aus dem Durchsatz-Lauf (im Sample-Modus stört die Zeitmessung mehr)
+                for (String label : result.getSecondaryResults().keySet()) {
+                    Result<?> secondary = result.getSecondaryResults().get(label);
+                    if (label.endsWith("gc.alloc.rate.norm"))
+                        allocBytesPerOp = secondary.getScore();
+                    else if (label.endsWith("gc.alloc.rate"))
+                        allocMegabytesPerSecond = secondary.getScore();
+                }
+            } else if (mode == Mode.SampleTime) {
+                double factor = micros(primary.getScoreUnit());
+                p50Micros = primary.getStatistics().getPercentile(50) * factor;
+                p99Micros = primary.getStatistics().getPercentile(99) * factor;
+            }
+        }
+
+        // "ops/s", "ops/ms", ... -> Faktor auf Operationen je Sekunde
+        private static double perSecond(String unit) {
+            return 1e6 / micros(unit.substring(unit.indexOf('/') + 1) + "/op");
+        }
+
+        // "s/op", "ms/op", "us/op", "ns/op" -> Faktor auf Mikrosekunden
+        private static double micros(String unit) {
+            switch (unit.substring(0, unit.indexOf('/'))) {
+                case "s":
+                    return 1e6;
+                case "ms":
+                    return 1e3;
+                case "ns":
+                    return 1e-3;
+                default:
+                    return 1;
+            }
+        }
+    }
+}
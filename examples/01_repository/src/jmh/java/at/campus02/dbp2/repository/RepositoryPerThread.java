@@ -0,0 +1,19 @@
+package at.campus02.dbp2.repository;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Repository, das ein Benchmark-Thread verwendet. <code>InMemoryRepository</code>, <code>JdbcRepository</code>
+ * (eine Connection) und <code>JpaRepository</code> (ein EntityManager) sind nicht thread-safe, daher bekommt jeder
+ * Thread sein eigenes; thread-safe Varianten werden von allen Threads gemeinsam verwendet.
+ */
+@State(Scope.Thread)
+public class RepositoryPerThread {
+
+    CustomerRepository repository;
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkData data) {
+        repository = data.isShared() ? data.shared : data.newRepository();
+    }
+}
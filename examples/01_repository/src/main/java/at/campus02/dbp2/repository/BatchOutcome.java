@@ -0,0 +1,15 @@
+package at.campus02.dbp2.repository;
+
+/**
+ * Ergebnis einer einzelnen Zeile bei <code>createAll</code> bzw. <code>upsertAll</code>.
+ */
+public enum BatchOutcome {
+    /** Customer wurde neu angelegt. */
+    INSERTED,
+    /** Customer existierte bereits und wurde geändert (nur <code>upsertAll</code>). */
+    UPDATED,
+    /** Customer existierte bereits und wurde nicht verändert (nur <code>createAll</code>). */
+    DUPLICATE,
+    /** Zeile ungültig (z.B. keine Email, Werte zu lang), alle anderen Zeilen werden trotzdem übernommen. */
+    FAILED
+}
@@ -0,0 +1,37 @@
+package at.campus02.dbp2.repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe Variante von <code>{@link InMemoryRepository}</code>: gleiche Semantik, aber mit einer
+ * <code>ConcurrentHashMap</code>, damit beliebig viele Threads ohne Sperren lesen und schreiben können.
+ */
+public class ConcurrentInMemoryRepository implements CustomerRepository {
+
+    private final Map<String, Customer> storage = new ConcurrentHashMap<>();
+
+    @Override
+    public void create(Customer customer) {
+        storage.put(customer.getEmail(), customer);
+    }
+
+    @Override
+    public Customer read(String email) {
+        return storage.get(email);
+    }
+
+    @Override
+    public void update(Customer customer) {
+        storage.replace(customer.getEmail(), customer);
+    }
+
+    @Override
+    public void delete(Customer customer) {
+        storage.remove(customer.getEmail());
+    }
+
+    public int size() {
+        return storage.size();
+    }
+}
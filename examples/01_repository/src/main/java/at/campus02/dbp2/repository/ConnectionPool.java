@@ -0,0 +1,260 @@
+package at.campus02.dbp2.repository;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Einfacher, begrenzter Pool von JDBC Connections.
+ * <p>
+ * Es werden höchstens <code>maxConnections</code> Connections geöffnet (erst bei Bedarf). Ist keine frei, wartet
+ * <code>borrow()</code> bis zum Timeout. Eine Connection, die länger als <code>validationInterval</code> nicht
+ * verwendet wurde, wird vor der Ausgabe geprüft (<code>Connection.isValid</code>) und bei einem Fehler durch eine
+ * neue ersetzt (Health Check).
+ * <p>
+ * Jede Connection hat ihren eigenen Cache von PreparedStatements: ein SQL-Statement wird je Connection nur einmal
+ * vorbereitet (geparst und kompiliert) und danach wiederverwendet. Da eine Connection immer nur von einem Thread
+ * ausgeliehen ist, braucht der Cache keine Synchronisierung.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private final String jdbcUrl;
+    private final long borrowTimeoutNanos;
+    private final long validationIntervalNanos;
+    // Anzahl der Connections, die noch ausgegeben werden dürfen (frei oder noch nicht geöffnet)
+    private final Semaphore permits;
+    private final BlockingQueue<PooledConnection> idle = new LinkedBlockingQueue<>();
+    private final List<PooledConnection> all = new ArrayList<>();
+    private volatile boolean closed;
+
+    // <editor-fold desc="Metriken">
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder replaced = new LongAdder();
+    // </editor-fold>
+
+    /**
+     * @param jdbcUrl URL für <code>DriverManager.getConnection</code>.
+     * @param maxConnections maximale Anzahl gleichzeitig geöffneter Connections.
+     * @param borrowTimeoutMillis maximale Wartezeit auf eine freie Connection.
+     * @param validationIntervalMillis ungenutzte Connections werden nach dieser Zeit vor der Ausgabe geprüft.
+     */
+    public ConnectionPool(String jdbcUrl, int maxConnections, long borrowTimeoutMillis, long validationIntervalMillis) {
+        if (maxConnections <= 0)
+            throw new IllegalArgumentException("At least one connection is required.");
+        this.jdbcUrl = jdbcUrl;
+        this.borrowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        this.validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(validationIntervalMillis);
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    /**
+     * Leiht eine Connection aus, die mit <code>release</code> wieder zurückgegeben werden muss.
+     * @throws IllegalStateException wenn innerhalb des Timeouts keine Connection frei wird.
+     */
+    public PooledConnection borrow() {
+        if (closed)
+            throw new IllegalStateException("Connection pool is closed.");
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                timeouts.increment();
+                throw new IllegalStateException("No database connection available.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a connection.", e);
+        }
+        long waited = System.nanoTime() - start;
+        borrows.increment();
+        waitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        try {
+            PooledConnection connection = idle.poll();
+            if (connection != null && !isHealthy(connection)) {
+                discard(connection);
+                replaced.increment();
+                connection = null;
+            }
+            return connection != null ? connection : open();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gibt eine Connection zurück.
+     * @param failed <code>true</code>, wenn bei der Verwendung ein Fehler aufgetreten ist: dann wird die
+     *               Connection sofort geprüft und im Fehlerfall geschlossen.
+     */
+    public void release(PooledConnection connection, boolean failed) {
+        try {
+            if (closed || (failed && !isValid(connection.connection))) {
+                discard(connection);
+            } else {
+                connection.lastUsed = System.nanoTime();
+                idle.offer(connection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean isHealthy(PooledConnection connection) {
+        if (System.nanoTime() - connection.lastUsed < validationIntervalNanos)
+            return true;
+        return isValid(connection.connection);
+    }
+
+    private static boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() {
+        try {
+            PooledConnection connection = new PooledConnection(DriverManager.getConnection(jdbcUrl));
+            opened.increment();
+            synchronized (all) {
+                all.add(connection);
+            }
+            return connection;
+        } catch (SQLException e) {
+            throw new IllegalStateException("No database connection.", e);
+        }
+    }
+
+    private void discard(PooledConnection connection) {
+        synchronized (all) {
+            all.remove(connection);
+        }
+        connection.close();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (all) {
+            for (PooledConnection connection : all) {
+                connection.close();
+            }
+            all.clear();
+        }
+        idle.clear();
+    }
+
+    // <editor-fold desc="Metriken">
+    public long getBorrows() {
+        return borrows.sum();
+    }
+
+    /**
+     * @return Anzahl der <code>borrow</code>-Aufrufe, die wegen des Timeouts abgebrochen wurden.
+     */
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * @return durchschnittliche Wartezeit auf eine Connection in Mikrosekunden.
+     */
+    public double getAverageWaitMicros() {
+        long count = borrows.sum();
+        return count == 0 ? 0 : waitNanos.sum() / 1000.0 / count;
+    }
+
+    public double getMaxWaitMicros() {
+        return maxWaitNanos.get() / 1000.0;
+    }
+
+    /**
+     * @return Anzahl der insgesamt geöffneten Connections.
+     */
+    public long getOpened() {
+        return opened.sum();
+    }
+
+    /**
+     * @return Anzahl der Connections, die der Health Check ersetzt hat.
+     */
+    public long getReplaced() {
+        return replaced.sum();
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "borrows=" + getBorrows() +
+                ", timeouts=" + getTimeouts() +
+                ", averageWaitMicros=" + String.format("%.1f", getAverageWaitMicros()) +
+                ", maxWaitMicros=" + String.format("%.1f", getMaxWaitMicros()) +
+                ", opened=" + getOpened() +
+                ", replaced=" + getReplaced() +
+                '}';
+    }
+    // </editor-fold>
+
+    /**
+     * Eine Connection aus dem Pool samt ihrem Cache von PreparedStatements.
+     */
+    public static class PooledConnection {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        private long lastUsed = System.nanoTime();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * @return das PreparedStatement für dieses SQL, beim ersten Aufruf je Connection wird es vorbereitet.
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        void close() {
+            try {
+                for (PreparedStatement statement : statements.values()) {
+                    statement.close();
+                }
+                statements.clear();
+                connection.close();
+            } catch (SQLException e) {
+                // Connection ist ohnehin nicht mehr verwendbar
+            }
+        }
+    }
+}
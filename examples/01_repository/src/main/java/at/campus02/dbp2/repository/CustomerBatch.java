@@ -0,0 +1,228 @@
+package at.campus02.dbp2.repository;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Anlegen bzw. Upsert vieler Customer über eine Connection (für <code>{@link JdbcRepository}</code> und
+ * <code>{@link PooledJdbcRepository}</code>).
+ * <p>
+ * Die Customer werden in Chunks aufgeteilt, jeder Chunk wird als ein JDBC Batch (<code>addBatch</code>/
+ * <code>executeBatch</code>) in einer eigenen Transaktion ausgeführt: statt eines Commits (Log Flush) je Zeile gibt
+ * es einen je Chunk. Schlägt eine Zeile fehl, bricht Derby den Batch ab - dann wird der Chunk zurückgerollt und
+ * Zeile für Zeile wiederholt, damit nur die fehlerhaften Zeilen als <code>FAILED</code> gemeldet werden.
+ */
+final class CustomerBatch {
+
+    static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    // Parameter ohne Typ sind in Derby im Select nicht erlaubt. Die maximale Länge, weil CAST sonst
+    // stillschweigend abschneiden würde - so meldet erst die Spalte einen zu langen Wert.
+    private static final String PARAMETER = "cast(? as varchar(32672))";
+
+    // legt nur an, wenn es die Email noch nicht gibt: 0 geänderte Zeilen heißt DUPLICATE, statt einer Exception,
+    // die den ganzen Batch abbrechen würde
+    private static final String INSERT_IF_ABSENT =
+            "insert into CUSTOMER select " + PARAMETER + ", " + PARAMETER + ", " + PARAMETER +
+                    " from SYSIBM.SYSDUMMY1 " +
+                    "where not exists (select 1 from CUSTOMER where EMAIL = " + PARAMETER + ")";
+
+    // Derby erlaubt als Quelle von MERGE nur Tabellen, die Werte kommen daher aus den Parametern
+    private static final String MERGE =
+            "merge into CUSTOMER c using SYSIBM.SYSDUMMY1 on c.EMAIL = " + PARAMETER + " " +
+                    "when matched then update set LASTNAME = ?, FIRSTNAME = ? " +
+                    "when not matched then insert values (" + PARAMETER + ", " + PARAMETER + ", " + PARAMETER + ")";
+
+    private static final String EXISTS = "select 1 from CUSTOMER where EMAIL = ?";
+
+    private static final String DELETE = "delete from CUSTOMER where EMAIL = ?";
+
+    private CustomerBatch() {
+    }
+
+    static List<BatchOutcome> createAll(Connection connection, List<Customer> customers, int chunkSize) {
+        return execute(connection, customers, chunkSize, INSERT_IF_ABSENT, false);
+    }
+
+    static List<BatchOutcome> upsertAll(Connection connection, List<Customer> customers, int chunkSize) {
+        return execute(connection, customers, chunkSize, MERGE, true);
+    }
+
+    /**
+     * Löscht alle Customer mit diesen Emails, je <code>chunkSize</code> Emails in einem Batch und einer Transaktion.
+     * @return Anzahl der gelöschten Customer.
+     */
+    static int deleteAll(Connection connection, List<String> emails, int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        if (emails == null || emails.isEmpty())
+            return 0;
+        int deleted = 0;
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(DELETE)) {
+                for (int start = 0; start < emails.size(); start += chunkSize) {
+                    for (String email : emails.subList(start, Math.min(start + chunkSize, emails.size()))) {
+                        statement.setString(1, email);
+                        statement.addBatch();
+                    }
+                    for (int count : statement.executeBatch()) {
+                        deleted += count;
+                    }
+                    connection.commit();
+                }
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not delete customers.", e);
+        }
+        return deleted;
+    }
+
+    private static List<BatchOutcome> execute(Connection connection, List<Customer> customers, int chunkSize,
+                                              String sql, boolean upsert) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        if (customers == null || customers.isEmpty())
+            return Collections.emptyList();
+        BatchOutcome[] outcomes = new BatchOutcome[customers.size()];
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try (PreparedStatement exists = connection.prepareStatement(EXISTS)) {
+                for (int start = 0; start < customers.size(); start += chunkSize) {
+                    List<Customer> chunk = customers.subList(start, Math.min(start + chunkSize, customers.size()));
+                    Set<String> existing = upsert ? existingEmails(exists, chunk) : Collections.emptySet();
+                    if (!executeChunk(connection, sql, statement, chunk, existing, outcomes, start, upsert)) {
+                        // nach einem Fehler meldet ein MERGE-Statement denselben Fehler auch für spätere Batches
+                        statement.close();
+                        statement = connection.prepareStatement(sql);
+                    }
+                    connection.commit();
+                }
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                statement.close();
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(upsert ? "Could not upsert customers." : "Could not insert customers!", e);
+        }
+        return Arrays.asList(outcomes);
+    }
+
+    // liefert false, wenn der Batch abgebrochen wurde und die Zeilen einzeln ausgeführt wurden
+    private static boolean executeChunk(Connection connection, String sql, PreparedStatement statement,
+                                     List<Customer> chunk, Set<String> existing, BatchOutcome[] outcomes, int offset,
+                                     boolean upsert) throws SQLException {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            Customer customer = chunk.get(i);
+            if (customer == null || customer.getEmail() == null) {
+                outcomes[offset + i] = BatchOutcome.FAILED;
+                continue;
+            }
+            bind(statement, customer, upsert);
+            statement.addBatch();
+            rows.add(i);
+        }
+        try {
+            int[] counts = statement.executeBatch();
+            Set<String> seen = new HashSet<>(existing);
+            for (int k = 0; k < rows.size(); k++) {
+                int row = rows.get(k);
+                outcomes[offset + row] = outcome(chunk.get(row), counts[k], seen, upsert);
+            }
+            return true;
+        } catch (BatchUpdateException e) {
+            // Derby bricht beim ersten Fehler ab: alles zurück und die Zeilen einzeln ausführen
+            statement.clearBatch();
+            connection.rollback();
+            executeSingly(connection, sql, chunk, rows, existing, outcomes, offset, upsert);
+            return false;
+        }
+    }
+
+    private static void executeSingly(Connection connection, String sql, List<Customer> chunk, List<Integer> rows,
+                                      Set<String> existing, BatchOutcome[] outcomes, int offset, boolean upsert)
+            throws SQLException {
+        Set<String> seen = new HashSet<>(existing);
+        PreparedStatement single = null;
+        try {
+            for (int row : rows) {
+                Customer customer = chunk.get(row);
+                if (single == null)
+                    single = connection.prepareStatement(sql);
+                try {
+                    bind(single, customer, upsert);
+                    outcomes[offset + row] = outcome(customer, single.executeUpdate(), seen, upsert);
+                } catch (SQLException failed) {
+                    // Derby rollt nur dieses Statement zurück, die Transaktion bleibt bestehen. Ein MERGE-Statement
+                    // ist nach einem Fehler aber nicht mehr verwendbar (meldet denselben Fehler erneut).
+                    outcomes[offset + row] = BatchOutcome.FAILED;
+                    single.close();
+                    single = null;
+                }
+            }
+        } finally {
+            if (single != null)
+                single.close();
+        }
+    }
+
+    private static BatchOutcome outcome(Customer customer, int count, Set<String> seen, boolean upsert) {
+        if (!upsert)
+            return count > 0 ? BatchOutcome.INSERTED : BatchOutcome.DUPLICATE;
+        // auch eine Email, die früher im selben Chunk angelegt wurde, ist ein Update
+        return seen.add(customer.getEmail()) ? BatchOutcome.INSERTED : BatchOutcome.UPDATED;
+    }
+
+    private static void bind(PreparedStatement statement, Customer customer, boolean upsert) throws SQLException {
+        if (upsert) {
+            statement.setString(1, customer.getEmail());
+            statement.setString(2, customer.getLastname());
+            statement.setString(3, customer.getFirstname());
+            statement.setString(4, customer.getEmail());
+            statement.setString(5, customer.getLastname());
+            statement.setString(6, customer.getFirstname());
+        } else {
+            statement.setString(1, customer.getEmail());
+            statement.setString(2, customer.getLastname());
+            statement.setString(3, customer.getFirstname());
+            statement.setString(4, customer.getEmail());
+        }
+    }
+
+    // bereits existierende Emails eines Chunks, innerhalb derselben Transaktion wie der MERGE. Einzelne Abfragen über
+    // den Primary Key sind in Derby (embedded) deutlich schneller als große IN-Listen.
+    private static Set<String> existingEmails(PreparedStatement exists, List<Customer> chunk) throws SQLException {
+        Set<String> existing = new HashSet<>();
+        for (Customer customer : chunk) {
+            if (customer == null || customer.getEmail() == null)
+                continue;
+            exists.setString(1, customer.getEmail());
+            try (ResultSet rs = exists.executeQuery()) {
+                if (rs.next())
+                    existing.add(customer.getEmail());
+            }
+        }
+        return existing;
+    }
+}
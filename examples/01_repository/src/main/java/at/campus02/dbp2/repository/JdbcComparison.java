@@ -0,0 +1,136 @@
+package at.campus02.dbp2.repository;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durchsatz von <code>{@link JdbcRepository}</code> (eine Connection, neues Statement je Aufruf) im Vergleich zu
+ * <code>{@link PooledJdbcRepository}</code> (Connection Pool, Statement Cache) mit einem und mehreren Threads.
+ * <p>
+ * Zusätzlich wird <code>{@link WriteBehindRepository}</code> gemessen (Lesen aus dem Speicher, asynchrones Schreiben).
+ * <p>
+ * Jeder Thread wiederholt create, read, update, read und delete mit eigenen Customern. Danach wird ein Import
+ * einzeln (<code>create</code>) und als Batch (<code>createAll</code>, <code>upsertAll</code>) verglichen. Aufruf z.B.
+ * mit <code>gradle runJdbcComparison --args="10 8 20000"</code> (Sekunden je Messung, Threads, Customer je Import).
+ */
+public class JdbcComparison {
+
+    private static final String JDBC_URL = "jdbc:derby:build/comparison;create=true";
+    private static final int OPERATIONS_PER_ROUND = 5;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int importSize = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+
+        JdbcRepository single = new JdbcRepository(JDBC_URL);
+        measure("warm-up", single, 1, 1);
+        double singleRate = measure("JdbcRepository", single, 1, seconds);
+
+        try (PooledJdbcRepository pooled = new PooledJdbcRepository(JDBC_URL, threads, 1000)) {
+            measure("warm-up", pooled, 1, 1);
+            double pooledRate = measure("PooledJdbcRepository", pooled, 1, seconds);
+            double parallelRate = measure("PooledJdbcRepository", pooled, threads, seconds);
+            Application.log(String.format("speedup: 1 thread %.1fx, %d threads %.1fx",
+                    pooledRate / singleRate, threads, parallelRate / singleRate));
+            Application.log("pool: " + pooled.getPool());
+        }
+
+        try (WriteBehindRepository writeBehind = new WriteBehindRepository(new JdbcRepository(JDBC_URL))) {
+            double writeBehindRate = measure("WriteBehindRepository", writeBehind, threads, seconds);
+            long start = System.nanoTime();
+            writeBehind.flush();
+            Application.log(String.format("speedup: %d threads %.1fx, flush after measurement: %d ms",
+                    threads, writeBehindRate / singleRate, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            Application.log("write-behind: " + writeBehind);
+        }
+
+        measureImport(single, importSize);
+    }
+
+    private static void measureImport(JdbcRepository repository, int size) {
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Customer customer = new Customer();
+            customer.setEmail("import-" + i + "@customers.com");
+            customer.setLastname("Customer");
+            customer.setFirstname("Carlo");
+            customers.add(customer);
+        }
+
+        long start = System.nanoTime();
+        for (Customer customer : customers) {
+            repository.create(customer);
+        }
+        double singleRate = rate("create", size, start);
+        customers.forEach(repository::delete);
+
+        start = System.nanoTime();
+        List<BatchOutcome> created = repository.createAll(customers);
+        double batchRate = rate("createAll", size, start);
+
+        customers.forEach(customer -> customer.setFirstname("Conrad"));
+        start = System.nanoTime();
+        List<BatchOutcome> upserted = repository.upsertAll(customers);
+        rate("upsertAll", size, start);
+        Application.log(String.format("speedup createAll: %.1fx, outcomes: %s / %s",
+                batchRate / singleRate, count(created), count(upserted)));
+        customers.forEach(repository::delete);
+    }
+
+    private static double rate(String name, int size, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double rate = size / seconds;
+        Application.log(String.format("%-20s %6d customers: %8.0f customers/s", name, size, rate));
+        return rate;
+    }
+
+    private static Map<BatchOutcome, Integer> count(List<BatchOutcome> outcomes) {
+        Map<BatchOutcome, Integer> counts = new EnumMap<>(BatchOutcome.class);
+        for (BatchOutcome outcome : outcomes) {
+            counts.merge(outcome, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private static double measure(String name, CustomerRepository repository, int threads, int seconds)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String prefix = name + "-" + t + "-";
+            results.add(executor.submit(() -> {
+                long rounds = 0;
+                while (System.nanoTime() < end) {
+                    Customer customer = new Customer();
+                    customer.setEmail(prefix + rounds + "@customers.com");
+                    customer.setLastname("Customer");
+                    customer.setFirstname("Carlo");
+                    repository.create(customer);
+                    Customer fromRepository = repository.read(customer.getEmail());
+                    fromRepository.setFirstname("Conrad");
+                    repository.update(fromRepository);
+                    repository.read(customer.getEmail());
+                    repository.delete(fromRepository);
+                    rounds++;
+                }
+                return rounds;
+            }));
+        }
+        long rounds = 0;
+        for (Future<Long> result : results) {
+            rounds += result.get();
+        }
+        executor.shutdown();
+        double rate = (double) rounds * OPERATIONS_PER_ROUND / seconds;
+        Application.log(String.format("%-20s %2d thread(s): %8.0f operations/s", name, threads, rate));
+        return rate;
+    }
+}
@@ -1,6 +1,8 @@
 package at.campus02.dbp2.repository;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 
 public class JdbcRepository implements CustomerRepository {
 
@@ -9,13 +11,14 @@ public class JdbcRepository implements CustomerRepository {
     public JdbcRepository(String jdbcUrl) {
         try {
             connection = DriverManager.getConnection(jdbcUrl);
-            ensureTable();
+            ensureTable(connection);
         } catch (SQLException e) {
             throw new IllegalStateException("No database connection.", e);
         }
     }
 
-    private void ensureTable() throws SQLException {
+    // wird auch von PooledJdbcRepository verwendet
+    static void ensureTable(Connection connection) throws SQLException {
         boolean tableExists = connection.getMetaData()
                 .getTables(null, null, "CUSTOMER", null)
                 .next();
@@ -67,6 +70,26 @@ public class JdbcRepository implements CustomerRepository {
         }
     }
 
+    /**
+     * @return alle Customer der Tabelle.
+     */
+    public List<Customer> readAll() {
+        try (PreparedStatement statement = connection.prepareStatement("select * from CUSTOMER");
+             ResultSet rs = statement.executeQuery()) {
+            List<Customer> customers = new ArrayList<>();
+            while (rs.next()) {
+                Customer fromDB = new Customer();
+                fromDB.setEmail(rs.getString(1));
+                fromDB.setLastname(rs.getString(2));
+                fromDB.setFirstname(rs.getString(3));
+                customers.add(fromDB);
+            }
+            return customers;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read customers.", e);
+        }
+    }
+
     @Override
     public void update(Customer customer) {
         try {
@@ -96,4 +119,46 @@ public class JdbcRepository implements CustomerRepository {
             throw new IllegalStateException("Could not delete customer.", e);
         }
     }
+
+    /**
+     * Legt alle Customer an, die es noch nicht gibt, in Batches von je 1000 Zeilen.
+     * @return Ergebnis je Customer, in derselben Reihenfolge wie <code>customers</code>.
+     */
+    public List<BatchOutcome> createAll(List<Customer> customers) {
+        return createAll(customers, CustomerBatch.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Legt alle Customer an, die es noch nicht gibt. Je <code>chunkSize</code> Zeilen werden als ein Batch in einer
+     * Transaktion ausgeführt, bereits existierende Emails bleiben unverändert (<code>DUPLICATE</code>).
+     * @return Ergebnis je Customer, in derselben Reihenfolge wie <code>customers</code>.
+     */
+    public List<BatchOutcome> createAll(List<Customer> customers, int chunkSize) {
+        return CustomerBatch.createAll(connection, customers, chunkSize);
+    }
+
+    /**
+     * Legt alle Customer an bzw. ändert die bereits existierenden, in Batches von je 1000 Zeilen.
+     * @return Ergebnis je Customer, in derselben Reihenfolge wie <code>customers</code>.
+     */
+    public List<BatchOutcome> upsertAll(List<Customer> customers) {
+        return upsertAll(customers, CustomerBatch.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Legt alle Customer an bzw. ändert die bereits existierenden (<code>MERGE</code>). Je <code>chunkSize</code>
+     * Zeilen werden als ein Batch in einer Transaktion ausgeführt.
+     * @return Ergebnis je Customer, in derselben Reihenfolge wie <code>customers</code>.
+     */
+    public List<BatchOutcome> upsertAll(List<Customer> customers, int chunkSize) {
+        return CustomerBatch.upsertAll(connection, customers, chunkSize);
+    }
+
+    /**
+     * Löscht alle Customer mit diesen Emails, in Batches von je 1000 Zeilen.
+     * @return Anzahl der gelöschten Customer.
+     */
+    public int deleteAll(List<String> emails) {
+        return CustomerBatch.deleteAll(connection, emails, CustomerBatch.DEFAULT_CHUNK_SIZE);
+    }
 }
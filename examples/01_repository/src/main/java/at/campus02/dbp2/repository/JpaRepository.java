@@ -9,8 +9,12 @@ public class JpaRepository implements CustomerRepository {
     private EntityManager manager;
 
     public JpaRepository() {
-        EntityManagerFactory factory = Persistence
-                .createEntityManagerFactory("nameOfJpaPersistenceUnit");
+        this(Persistence.createEntityManagerFactory("nameOfJpaPersistenceUnit"));
+    }
+
+    // ein EntityManager ist nicht thread-safe: mehrere Threads verwenden je ein eigenes Repository
+    // von derselben Factory
+    public JpaRepository(EntityManagerFactory factory) {
         manager = factory.createEntityManager();
     }
 
@@ -0,0 +1,131 @@
+package at.campus02.dbp2.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Thread-safe Variante von <code>{@link JdbcRepository}</code>: jeder Aufruf leiht sich eine Connection aus einem
+ * <code>{@link ConnectionPool}</code> und verwendet deren bereits vorbereitete PreparedStatements, statt für jeden
+ * Aufruf ein neues Statement zu erzeugen (und nie zu schließen).
+ */
+public class PooledJdbcRepository implements CustomerRepository, AutoCloseable {
+
+    private static final String INSERT = "insert into CUSTOMER values(?,?,?)";
+    private static final String SELECT = "select * from CUSTOMER where EMAIL = ?";
+    private static final String UPDATE = "update CUSTOMER set lastname = ?, firstname = ? where email = ?";
+    private static final String DELETE = "delete from CUSTOMER where email = ?";
+
+    private final ConnectionPool pool;
+
+    /**
+     * @param jdbcUrl URL der Datenbank.
+     * @param maxConnections maximale Anzahl gleichzeitig verwendeter Connections (= Threads, die gleichzeitig auf
+     *                       die Datenbank zugreifen).
+     * @param borrowTimeoutMillis maximale Wartezeit auf eine freie Connection.
+     */
+    public PooledJdbcRepository(String jdbcUrl, int maxConnections, long borrowTimeoutMillis) {
+        this(new ConnectionPool(jdbcUrl, maxConnections, borrowTimeoutMillis, 30_000));
+    }
+
+    public PooledJdbcRepository(ConnectionPool pool) {
+        this.pool = pool;
+        execute("No database connection.", connection -> {
+            JdbcRepository.ensureTable(connection.getConnection());
+            return null;
+        });
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public void create(Customer customer) {
+        execute("Could not insert customer!", connection -> {
+            PreparedStatement statement = connection.prepare(INSERT);
+            statement.setString(1, customer.getEmail());
+            statement.setString(2, customer.getLastname());
+            statement.setString(3, customer.getFirstname());
+            return statement.executeUpdate();
+        });
+    }
+
+    @Override
+    public Customer read(String email) {
+        return execute("Could not read customer.", connection -> {
+            PreparedStatement statement = connection.prepare(SELECT);
+            statement.setString(1, email);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next())
+                    return null;
+                Customer fromDB = new Customer();
+                fromDB.setEmail(rs.getString(1));
+                fromDB.setLastname(rs.getString(2));
+                fromDB.setFirstname(rs.getString(3));
+                return fromDB;
+            }
+        });
+    }
+
+    @Override
+    public void update(Customer customer) {
+        execute("Could not update customer.", connection -> {
+            PreparedStatement statement = connection.prepare(UPDATE);
+            statement.setString(1, customer.getLastname());
+            statement.setString(2, customer.getFirstname());
+            statement.setString(3, customer.getEmail());
+            return statement.executeUpdate();
+        });
+    }
+
+    @Override
+    public void delete(Customer customer) {
+        execute("Could not delete customer.", connection -> {
+            PreparedStatement statement = connection.prepare(DELETE);
+            statement.setString(1, customer.getEmail());
+            return statement.executeUpdate();
+        });
+    }
+
+    /**
+     * @see JdbcRepository#createAll(List, int)
+     */
+    public List<BatchOutcome> createAll(List<Customer> customers, int chunkSize) {
+        return execute("Could not insert customers!",
+                connection -> CustomerBatch.createAll(connection.getConnection(), customers, chunkSize));
+    }
+
+    /**
+     * @see JdbcRepository#upsertAll(List, int)
+     */
+    public List<BatchOutcome> upsertAll(List<Customer> customers, int chunkSize) {
+        return execute("Could not upsert customers.",
+                connection -> CustomerBatch.upsertAll(connection.getConnection(), customers, chunkSize));
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    // leiht eine Connection aus, führt die Arbeit aus und gibt die Connection in jedem Fall zurück
+    private <T> T execute(String errorMessage, SqlWork<T> work) {
+        ConnectionPool.PooledConnection connection = pool.borrow();
+        boolean failed = true;
+        try {
+            T result = work.execute(connection);
+            failed = false;
+            return result;
+        } catch (SQLException e) {
+            throw new IllegalStateException(errorMessage, e);
+        } finally {
+            pool.release(connection, failed);
+        }
+    }
+
+    private interface SqlWork<T> {
+        T execute(ConnectionPool.PooledConnection connection) throws SQLException;
+    }
+}
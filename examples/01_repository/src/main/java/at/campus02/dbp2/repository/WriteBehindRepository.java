@@ -0,0 +1,340 @@
+package at.campus02.dbp2.repository;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-Behind Cache vor einem <code>{@link JdbcRepository}</code>.
+ * <p>
+ * Beim Erzeugen werden alle Customer aus der Datenbank in ein <code>{@link ConcurrentInMemoryRepository}</code>
+ * geladen, Lesezugriffe kommen danach nur noch aus dem Speicher. Schreibzugriffe ändern sofort den Speicher und
+ * merken die Email als "offen" vor; ein Hintergrund-Thread schreibt die offenen Customer in Batches
+ * (<code>upsertAll</code>/<code>deleteAll</code>) in die Datenbank. Mehrere Änderungen derselben Email vor dem
+ * nächsten Flush werden zusammengefasst, geschrieben wird nur der letzte Stand.
+ * <p>
+ * Die Anzahl offener Emails ist begrenzt: ist die Queue voll, blockieren schreibende Threads, bis der
+ * Hintergrund-Thread wieder Platz gemacht hat (Back-Pressure). <code>close()</code> schreibt alle offenen Änderungen,
+ * bevor es zurückkehrt.
+ * <p>
+ * Voraussetzung: niemand sonst schreibt in die Tabelle, und das <code>JdbcRepository</code> wird nach der Übergabe
+ * nur noch von diesem Repository verwendet.
+ */
+public class WriteBehindRepository implements CustomerRepository, AutoCloseable {
+
+    // Markierung für gelöschte Customer in der Queue
+    private static final Customer DELETED = new Customer();
+    private static final long RETRY_MILLIS = 1000;
+
+    private final JdbcRepository target;
+    private final ConcurrentInMemoryRepository cache = new ConcurrentInMemoryRepository();
+    private final int capacity;
+    private final int batchSize;
+
+    // offene Änderungen je Email, in der Reihenfolge der ersten Änderung
+    private final Map<String, Customer> pending = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private boolean writing;
+    private boolean closed;
+    private RuntimeException failure;
+    private final Thread flusher;
+
+    // <editor-fold desc="Metriken">
+    private long writes;
+    private long coalesced;
+    private long batches;
+    private long written;
+    private long failed;
+    private long blockedNanos;
+    // </editor-fold>
+
+    public WriteBehindRepository(JdbcRepository target) {
+        this(target, 10_000, CustomerBatch.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param target Repository, in das geschrieben wird.
+     * @param capacity maximale Anzahl offener (noch nicht geschriebener) Emails.
+     * @param batchSize maximale Anzahl Emails je Flush.
+     */
+    public WriteBehindRepository(JdbcRepository target, int capacity, int batchSize) {
+        if (capacity <= 0 || batchSize <= 0)
+            throw new IllegalArgumentException("Capacity and batch size must be positive.");
+        this.target = target;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        for (Customer customer : target.readAll()) {
+            cache.create(customer);
+        }
+        flusher = new Thread(this::flushLoop, "write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public void create(Customer customer) {
+        write(customer.getEmail(), copy(customer), true);
+    }
+
+    @Override
+    public Customer read(String email) {
+        Customer cached = cache.read(email);
+        return cached == null ? null : copy(cached);
+    }
+
+    @Override
+    public void update(Customer customer) {
+        write(customer.getEmail(), copy(customer), false);
+    }
+
+    @Override
+    public void delete(Customer customer) {
+        write(customer.getEmail(), DELETED, false);
+    }
+
+    // ändert den Cache und merkt die Änderung vor - beides unter dem Lock, damit Cache und Queue für jede Email
+    // dieselbe Reihenfolge sehen
+    private void write(String email, Customer customer, boolean create) {
+        lock.lock();
+        try {
+            long start = 0;
+            while (!closed && pending.size() >= capacity && !pending.containsKey(email)) {
+                if (start == 0)
+                    start = System.nanoTime();
+                notFull.awaitUninterruptibly();
+            }
+            if (start != 0)
+                blockedNanos += System.nanoTime() - start;
+            if (closed)
+                throw new IllegalStateException("Repository is closed.");
+            writes++;
+            if (customer == DELETED) {
+                if (cache.read(email) == null)
+                    return;
+                cache.delete(customer(email));
+            } else if (create) {
+                cache.create(customer);
+            } else {
+                // wie InMemoryRepository: update ändert nur existierende Customer
+                if (cache.read(email) == null)
+                    return;
+                cache.update(customer);
+            }
+            if (pending.put(email, customer) != null)
+                coalesced++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wartet, bis alle bisherigen Änderungen in die Datenbank geschrieben wurden.
+     * @throws IllegalStateException wenn das Schreiben fehlschlägt (der Hintergrund-Thread versucht es weiter).
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            while ((!pending.isEmpty() || writing) && flusher.isAlive()) {
+                if (failure != null && !writing)
+                    throw new IllegalStateException("Could not write pending customers.", failure);
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Schreibt alle offenen Änderungen und beendet den Hintergrund-Thread.
+     * @throws IllegalStateException wenn offene Änderungen nicht geschrieben werden konnten.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing pending customers.", e);
+        }
+        lock.lock();
+        try {
+            if (!pending.isEmpty())
+                throw new IllegalStateException("Could not write " + pending.size() + " pending customers.", failure);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            Map<String, Customer> batch = new LinkedHashMap<>();
+            boolean closing;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (pending.isEmpty())
+                    return;
+                Iterator<Map.Entry<String, Customer>> entries = pending.entrySet().iterator();
+                while (entries.hasNext() && batch.size() < batchSize) {
+                    Map.Entry<String, Customer> entry = entries.next();
+                    batch.put(entry.getKey(), entry.getValue());
+                    entries.remove();
+                }
+                writing = true;
+                closing = closed;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            RuntimeException error = null;
+            int rowsFailed = 0;
+            try {
+                rowsFailed = writeBatch(batch);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                writing = false;
+                if (error == null) {
+                    failure = null;
+                    batches++;
+                    written += batch.size() - rowsFailed;
+                    failed += rowsFailed;
+                } else {
+                    // Batch wieder einreihen, neuere Änderungen derselben Email haben Vorrang
+                    failure = error;
+                    for (Map.Entry<String, Customer> entry : batch.entrySet()) {
+                        pending.putIfAbsent(entry.getKey(), entry.getValue());
+                    }
+                    // wartende flush()-Aufrufe bekommen den Fehler
+                    flushed.signalAll();
+                    if (closing)
+                        return;
+                }
+                if (pending.isEmpty())
+                    flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (error != null)
+                pause();
+        }
+    }
+
+    // schreibt einen Batch, liefert die Anzahl der Customer, die die Datenbank abgelehnt hat
+    private int writeBatch(Map<String, Customer> batch) {
+        List<Customer> upserts = new ArrayList<>();
+        List<String> deletes = new ArrayList<>();
+        for (Map.Entry<String, Customer> entry : batch.entrySet()) {
+            if (entry.getValue() == DELETED)
+                deletes.add(entry.getKey());
+            else
+                upserts.add(entry.getValue());
+        }
+        int rowsFailed = 0;
+        for (BatchOutcome outcome : target.upsertAll(upserts, batchSize)) {
+            if (outcome == BatchOutcome.FAILED)
+                rowsFailed++;
+        }
+        target.deleteAll(deletes);
+        return rowsFailed;
+    }
+
+    private void pause() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Customer customer(String email) {
+        Customer customer = new Customer();
+        customer.setEmail(email);
+        return customer;
+    }
+
+    // der Cache enthält eigene Kopien: Änderungen am Objekt des Aufrufers ändern weder Cache noch Queue
+    private static Customer copy(Customer customer) {
+        Customer copy = new Customer();
+        copy.setEmail(customer.getEmail());
+        copy.setLastname(customer.getLastname());
+        copy.setFirstname(customer.getFirstname());
+        return copy;
+    }
+
+    // <editor-fold desc="Metriken">
+    public int getPending() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Anzahl der Schreibzugriffe, die eine noch offene Änderung derselben Email ersetzt haben.
+     */
+    public long getCoalesced() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Anzahl der Customer, die die Datenbank abgelehnt hat (z.B. Werte zu lang); sie sind nur im Cache.
+     */
+    public long getFailed() {
+        lock.lock();
+        try {
+            return failed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return "WriteBehindRepository{" +
+                    "writes=" + writes +
+                    ", coalesced=" + coalesced +
+                    ", batches=" + batches +
+                    ", written=" + written +
+                    ", failed=" + failed +
+                    ", pending=" + pending.size() +
+                    ", blockedMillis=" + TimeUnit.NANOSECONDS.toMillis(blockedNanos) +
+                    '}';
+        } finally {
+            lock.unlock();
+        }
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,113 @@
+package at.campus02.dbp2.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ConnectionPoolSpecification {
+
+    private static final String JDBC_URL = "jdbc:derby:memory:connectionPool;create=true";
+
+    private ConnectionPool pool;
+
+    @AfterEach
+    public void after() {
+        if (pool != null)
+            pool.close();
+    }
+
+    @Test
+    public void cp01_borrowTimesOutWhenAllConnectionsAreInUse() {
+        // given
+        pool = new ConnectionPool(JDBC_URL, 1, 100, 30_000);
+        ConnectionPool.PooledConnection borrowed = pool.borrow();
+
+        // when
+        IllegalStateException timeout = assertThrows(IllegalStateException.class, () -> pool.borrow());
+        pool.release(borrowed, false);
+        ConnectionPool.PooledConnection again = pool.borrow();
+
+        // then
+        assertThat(timeout.getMessage(), is("No database connection available."));
+        assertThat(pool.getTimeouts(), is(1L));
+        assertThat(again, is(sameInstance(borrowed)));
+        assertThat(pool.getOpened(), is(1L));
+        assertThat(pool.getBorrows(), is(2L));
+        pool.release(again, false);
+    }
+
+    @Test
+    public void cp02_brokenIdleConnectionIsReplaced() throws SQLException {
+        // given: jede ungenutzte Connection wird vor der Ausgabe geprüft
+        pool = new ConnectionPool(JDBC_URL, 1, 100, 0);
+        ConnectionPool.PooledConnection broken = pool.borrow();
+        broken.getConnection().close();
+        pool.release(broken, false);
+
+        // when
+        ConnectionPool.PooledConnection replacement = pool.borrow();
+
+        // then
+        assertThat(replacement, is(not(sameInstance(broken))));
+        assertThat(replacement.getConnection().isValid(1), is(true));
+        assertThat(pool.getReplaced(), is(1L));
+        assertThat(pool.getOpened(), is(2L));
+        pool.release(replacement, false);
+    }
+
+    @Test
+    public void cp03_failedConnectionIsDiscardedOnRelease() throws SQLException {
+        // given
+        pool = new ConnectionPool(JDBC_URL, 1, 100, 30_000);
+        ConnectionPool.PooledConnection broken = pool.borrow();
+        broken.getConnection().close();
+
+        // when
+        pool.release(broken, true);
+        ConnectionPool.PooledConnection next = pool.borrow();
+
+        // then
+        assertThat(next, is(not(sameInstance(broken))));
+        assertThat(pool.getOpened(), is(2L));
+        assertThat(pool.getReplaced(), is(0L));
+        pool.release(next, false);
+        assertThat(pool.getIdle(), is(1));
+    }
+
+    @Test
+    public void cp04_statementsAreCachedPerConnection() throws SQLException {
+        // given
+        pool = new ConnectionPool(JDBC_URL, 2, 100, 30_000);
+        ConnectionPool.PooledConnection first = pool.borrow();
+        ConnectionPool.PooledConnection second = pool.borrow();
+
+        // when
+        PreparedStatement statement = first.prepare("values 1");
+
+        // then
+        assertThat(first.prepare("values 1"), is(sameInstance(statement)));
+        assertThat(second.prepare("values 1"), is(not(sameInstance(statement))));
+        pool.release(first, false);
+        pool.release(second, false);
+    }
+
+    @Test
+    public void cp05_closedPoolRejectsBorrow() {
+        // given
+        pool = new ConnectionPool(JDBC_URL, 1, 100, 30_000);
+        pool.release(pool.borrow(), false);
+
+        // when
+        pool.close();
+
+        // then
+        assertThrows(IllegalStateException.class, () -> pool.borrow());
+        assertThat(pool.getIdle(), is(0));
+    }
+}
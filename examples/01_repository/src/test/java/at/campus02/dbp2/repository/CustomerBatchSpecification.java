@@ -0,0 +1,178 @@
+package at.campus02.dbp2.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static at.campus02.dbp2.repository.BatchOutcome.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CustomerBatchSpecification {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    // länger als die Spalte (varchar(50))
+    private static final String TOO_LONG = String.join("", Collections.nCopies(60, "x"));
+
+    private String jdbcUrl;
+    private JdbcRepository repository;
+
+    @BeforeEach
+    public void before() {
+        jdbcUrl = "jdbc:derby:memory:customerBatch" + DATABASES.incrementAndGet() + ";create=true";
+        repository = new JdbcRepository(jdbcUrl);
+    }
+
+    static Customer prepareCustomer(String email, String lastname) {
+        Customer customer = new Customer();
+        customer.setEmail(email);
+        customer.setLastname(lastname);
+        customer.setFirstname("Carlo");
+        return customer;
+    }
+
+    @Test
+    public void cb01_createAllReportsOutcomePerRow() {
+        // given
+        List<Customer> customers = Arrays.asList(
+                prepareCustomer("a@customers.com", "First"),
+                prepareCustomer("b@customers.com", TOO_LONG),
+                null,
+                prepareCustomer("a@customers.com", "Second"),
+                prepareCustomer(null, "NoEmail"),
+                prepareCustomer("d@customers.com", "Fourth"));
+
+        // when
+        List<BatchOutcome> outcomes = repository.createAll(customers, 4);
+
+        // then
+        assertThat(outcomes, contains(INSERTED, FAILED, FAILED, DUPLICATE, FAILED, INSERTED));
+        assertThat(repository.read("a@customers.com").getLastname(), is("First"));
+        assertThat(repository.read("b@customers.com"), is(nullValue()));
+        assertThat(repository.read("d@customers.com").getLastname(), is("Fourth"));
+    }
+
+    @Test
+    public void cb02_upsertAllReportsInsertedAndUpdated() {
+        // given
+        repository.create(prepareCustomer("x@customers.com", "Existing"));
+        List<Customer> customers = Arrays.asList(
+                prepareCustomer("x@customers.com", "Changed"),
+                prepareCustomer("y@customers.com", "New"),
+                prepareCustomer("y@customers.com", "NewAgain"),
+                prepareCustomer("z@customers.com", TOO_LONG));
+
+        // when
+        List<BatchOutcome> outcomes = repository.upsertAll(customers, 10);
+
+        // then
+        assertThat(outcomes, contains(UPDATED, INSERTED, UPDATED, FAILED));
+        assertThat(repository.read("x@customers.com").getLastname(), is("Changed"));
+        assertThat(repository.read("y@customers.com").getLastname(), is("NewAgain"));
+        assertThat(repository.read("z@customers.com"), is(nullValue()));
+    }
+
+    @Test
+    public void cb03_failedRowFallsBackToSingleRowsOnlyInItsChunk() throws SQLException {
+        // given: 3 Chunks zu je 3 Customern, ein fehlerhafter im ersten
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            customers.add(prepareCustomer("c" + i + "@customers.com", i == 1 ? TOO_LONG : "Customer"));
+        }
+        AtomicInteger singleRows = new AtomicInteger();
+
+        // when
+        List<BatchOutcome> outcomes;
+        try (Connection connection = DriverManager.getConnection(jdbcUrl)) {
+            outcomes = CustomerBatch.upsertAll(counting(connection, singleRows), customers, 3);
+        }
+
+        // then: nur die Zeilen des ersten Chunks wurden einzeln ausgeführt
+        assertThat(outcomes, contains(INSERTED, FAILED, INSERTED, INSERTED, INSERTED, INSERTED,
+                INSERTED, INSERTED, INSERTED));
+        assertThat(singleRows.get(), is(3));
+        assertThat(repository.readAll(), hasSize(8));
+    }
+
+    @Test
+    public void cb04_pooledRepositoryReportsSameOutcomes() {
+        // given
+        try (PooledJdbcRepository pooled = new PooledJdbcRepository(jdbcUrl, 1, 1000)) {
+            // when
+            List<BatchOutcome> created = pooled.createAll(Arrays.asList(
+                    prepareCustomer("p@customers.com", "Pooled"),
+                    prepareCustomer("p@customers.com", "Again")), 10);
+            List<BatchOutcome> upserted = pooled.upsertAll(Arrays.asList(
+                    prepareCustomer("p@customers.com", "Upserted"),
+                    prepareCustomer("q@customers.com", TOO_LONG)), 10);
+
+            // then
+            assertThat(created, contains(INSERTED, DUPLICATE));
+            assertThat(upserted, contains(UPDATED, FAILED));
+            assertThat(pooled.read("p@customers.com").getLastname(), is("Upserted"));
+        }
+    }
+
+    @Test
+    public void cb05_invalidArguments() {
+        // when / then
+        assertThat(repository.createAll(Collections.emptyList()), is(empty()));
+        assertThat(repository.upsertAll(null), is(empty()));
+        assertThrows(IllegalArgumentException.class,
+                () -> repository.createAll(Collections.singletonList(prepareCustomer("a@b.c", "A")), 0));
+    }
+
+    @Test
+    public void cb06_deleteAllReturnsNumberOfDeletedCustomers() {
+        // given
+        repository.createAll(Arrays.asList(prepareCustomer("a@customers.com", "A"),
+                prepareCustomer("b@customers.com", "B")));
+
+        // when
+        int deleted = repository.deleteAll(Arrays.asList("a@customers.com", "b@customers.com", "c@customers.com"));
+
+        // then
+        assertThat(deleted, is(2));
+        assertThat(repository.readAll(), is(empty()));
+    }
+
+    // <editor-fold desc="Zählen einzeln ausgeführter Zeilen">
+    // zählt executeUpdate()-Aufrufe aller PreparedStatements der Connection
+    private static Connection counting(Connection connection, AtomicInteger singleRows) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (!(result instanceof PreparedStatement))
+                        return result;
+                    PreparedStatement statement = (PreparedStatement) result;
+                    return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                            new Class<?>[]{PreparedStatement.class}, (p, m, a) -> {
+                                if (m.getName().equals("executeUpdate") && m.getParameterCount() == 0)
+                                    singleRows.incrementAndGet();
+                                return invoke(statement, m, a);
+                            });
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+    // </editor-fold>
+}
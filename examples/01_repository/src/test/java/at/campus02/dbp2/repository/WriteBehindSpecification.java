@@ -0,0 +1,229 @@
+package at.campus02.dbp2.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static at.campus02.dbp2.repository.CustomerBatchSpecification.prepareCustomer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class WriteBehindSpecification {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private String jdbcUrl;
+    private JdbcRepository database;
+    private WriteBehindRepository repository;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @BeforeEach
+    public void before() {
+        jdbcUrl = "jdbc:derby:memory:writeBehind" + DATABASES.incrementAndGet() + ";create=true";
+        // eigene Connection, um den Stand der Datenbank zu prüfen
+        database = new JdbcRepository(jdbcUrl);
+    }
+
+    @AfterEach
+    public void after() {
+        executor.shutdownNow();
+        if (repository != null)
+            repository.close();
+    }
+
+    @Test
+    public void wb01_preloadedCustomersAreReadFromMemory() {
+        // given
+        database.create(prepareCustomer("seed@customers.com", "Seed"));
+
+        // when
+        repository = new WriteBehindRepository(new JdbcRepository(jdbcUrl));
+        Customer seed = repository.read("seed@customers.com");
+        seed.setLastname("Changed");
+
+        // then: der Cache liefert Kopien
+        assertThat(repository.read("seed@customers.com").getLastname(), is("Seed"));
+        assertThat(repository.read("unknown@customers.com"), is(nullValue()));
+    }
+
+    @Test
+    public void wb02_writesToTheSameEmailAreCoalesced() throws Exception {
+        // given: der Hintergrund-Thread hängt am ersten Batch, bis die Tabelle wieder frei ist
+        repository = new WriteBehindRepository(new JdbcRepository(jdbcUrl));
+        Connection locker = lockTable();
+        repository.create(prepareCustomer("a@customers.com", "Version0"));
+        awaitPending(0);
+
+        // when
+        for (int i = 1; i <= 10; i++) {
+            repository.update(prepareCustomer("a@customers.com", "Version" + i));
+        }
+        int pending = repository.getPending();
+        locker.commit();
+        locker.close();
+        repository.flush();
+
+        // then
+        assertThat(pending, is(1));
+        assertThat(repository.getCoalesced(), is(9L));
+        assertThat(repository.read("a@customers.com").getLastname(), is("Version10"));
+        assertThat(database.readAll().get(0).getLastname(), is("Version10"));
+    }
+
+    @Test
+    public void wb03_fullQueueBlocksWritersUntilFlushed() throws Exception {
+        // given: höchstens 2 offene Emails
+        repository = new WriteBehindRepository(new JdbcRepository(jdbcUrl), 2, 1);
+        Connection locker = lockTable();
+        repository.create(prepareCustomer("a@customers.com", "A"));
+        awaitPending(0);
+        repository.create(prepareCustomer("b@customers.com", "B"));
+        repository.create(prepareCustomer("c@customers.com", "C"));
+
+        // when
+        Future<?> blocked = executor.submit(() -> repository.create(prepareCustomer("d@customers.com", "D")));
+        Thread.sleep(300);
+        boolean doneWhileFull = blocked.isDone();
+        // eine bereits offene Email belegt keinen weiteren Platz
+        repository.update(prepareCustomer("b@customers.com", "B2"));
+        locker.commit();
+        locker.close();
+        blocked.get(10, TimeUnit.SECONDS);
+        repository.flush();
+
+        // then
+        assertThat(doneWhileFull, is(false));
+        assertThat(emailsIn(database), containsInAnyOrder(
+                "a@customers.com", "b@customers.com", "c@customers.com", "d@customers.com"));
+        assertThat(database.read("b@customers.com").getLastname(), is("B2"));
+    }
+
+    @Test
+    public void wb04_closeWritesAllPendingChanges() {
+        // given
+        repository = new WriteBehindRepository(new JdbcRepository(jdbcUrl));
+        for (int i = 0; i < 1000; i++) {
+            repository.create(prepareCustomer("c" + i + "@customers.com", "Customer"));
+        }
+        repository.delete(prepareCustomer("c0@customers.com", null));
+
+        // when
+        repository.close();
+
+        // then
+        assertThat(database.readAll(), hasSize(999));
+        assertThat(repository.getPending(), is(0));
+        assertThrows(IllegalStateException.class,
+                () -> repository.create(prepareCustomer("late@customers.com", "Late")));
+    }
+
+    @Test
+    public void wb05_cacheEqualsDatabaseAfterConcurrentWrites() throws Exception {
+        // given
+        database.create(prepareCustomer("seed@customers.com", "Seed"));
+        repository = new WriteBehindRepository(new JdbcRepository(jdbcUrl), 50, 20);
+
+        // when: 4 Threads ändern zufällig dieselben 200 Emails
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            String thread = "Thread" + t;
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    Customer customer = prepareCustomer("c" + random.nextInt(200) + "@customers.com", thread + "-" + i);
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            repository.create(customer);
+                            break;
+                        case 1:
+                            repository.update(customer);
+                            break;
+                        default:
+                            repository.delete(customer);
+                    }
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        repository.close();
+
+        // then
+        Map<String, String> inDatabase = new HashMap<>();
+        for (Customer customer : database.readAll()) {
+            inDatabase.put(customer.getEmail(), customer.getLastname());
+        }
+        Map<String, String> inMemory = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            Customer customer = repository.read("c" + i + "@customers.com");
+            if (customer != null)
+                inMemory.put(customer.getEmail(), customer.getLastname());
+        }
+        inMemory.put("seed@customers.com", "Seed");
+        assertThat(inDatabase, is(inMemory));
+        assertThat(repository.getCoalesced(), is(greaterThan(0L)));
+    }
+
+    @Test
+    public void wb06_flushFailsWhileDatabaseFailsAndCloseWritesAfterRecovery() throws Exception {
+        // given
+        repository = new WriteBehindRepository(new JdbcRepository(jdbcUrl));
+        try (Connection connection = DriverManager.getConnection(jdbcUrl)) {
+            connection.createStatement().execute("drop table CUSTOMER");
+        }
+        repository.create(prepareCustomer("a@customers.com", "A"));
+
+        // when
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> repository.flush());
+        try (Connection connection = DriverManager.getConnection(jdbcUrl)) {
+            JdbcRepository.ensureTable(connection);
+        }
+        repository.close();
+
+        // then
+        assertThat(failure.getMessage(), is("Could not write pending customers."));
+        assertThat(emailsIn(database), contains("a@customers.com"));
+    }
+
+    // <editor-fold desc="Hilfsmethoden">
+    // sperrt die Tabelle in einer offenen Transaktion, bis commit() aufgerufen wird
+    private Connection lockTable() throws SQLException {
+        Connection connection = DriverManager.getConnection(jdbcUrl);
+        connection.setAutoCommit(false);
+        connection.createStatement().execute("lock table CUSTOMER in exclusive mode");
+        return connection;
+    }
+
+    private void awaitPending(int pending) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (repository.getPending() != pending && System.nanoTime() < end) {
+            Thread.sleep(10);
+        }
+        assertThat(repository.getPending(), is(pending));
+    }
+
+    private static List<String> emailsIn(JdbcRepository database) {
+        List<String> emails = new ArrayList<>();
+        for (Customer customer : database.readAll()) {
+            emails.add(customer.getEmail());
+        }
+        return emails;
+    }
+    // </editor-fold>
+}